@@ -14,12 +14,16 @@
 package org.moqui.impl.context
 
 import groovy.transform.CompileStatic
+import org.moqui.impl.entity.EntityCacheValueCodec
+import org.moqui.impl.entity.EntityCacheWeigher
 import org.moqui.jcache.MCache
 import org.moqui.jcache.MCacheConfiguration
 import org.moqui.jcache.MCacheManager
 import org.moqui.impl.tools.MCacheToolFactory
 import org.moqui.jcache.MEntry
+import org.moqui.jcache.MHistogram
 import org.moqui.jcache.MStats
+import org.moqui.jcache.MWeigher
 import org.moqui.util.CollectionUtilities
 import org.moqui.util.MNode
 import org.moqui.util.ObjectUtilities
@@ -37,6 +41,8 @@ import javax.cache.expiry.ExpiryPolicy
 import java.sql.Timestamp
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.Executor
+import java.util.function.Function
 
 import org.moqui.context.CacheFacade
 import org.slf4j.Logger
@@ -47,6 +53,7 @@ import java.util.concurrent.TimeUnit
 @CompileStatic
 public class CacheFacadeImpl implements CacheFacade {
     protected final static Logger logger = LoggerFactory.getLogger(CacheFacadeImpl.class)
+    static final long defaultOffHeapMaxBytes = 64L * 1024L * 1024L
 
     protected final ExecutionContextFactoryImpl ecfi
 
@@ -61,6 +68,10 @@ public class CacheFacadeImpl implements CacheFacade {
         MNode cacheListNode = ecfi.getConfXmlRoot().first("cache-list")
         String localCacheFactoryName = cacheListNode.attribute("local-factory") ?: MCacheToolFactory.TOOL_NAME
         localCacheManagerInternal = ecfi.getTool(localCacheFactoryName, CacheManager.class)
+        // set even if empty, MCacheManager is a singleton
+        String maxTotalWeightStr = cacheListNode.attribute("max-total-weight")
+        if (localCacheManagerInternal instanceof MCacheManager)
+            ((MCacheManager) localCacheManagerInternal).setMaxTotalWeight(maxTotalWeightStr ? Long.parseLong(maxTotalWeightStr) : 0L)
     }
 
     CacheManager getDistCacheManager() {
@@ -163,15 +174,21 @@ public class CacheFacadeImpl implements CacheFacade {
             if (co instanceof MCache) {
                 MCache mc = co.unwrap(MCache.class)
                 MStats stats = mc.getMStats()
+                MHistogram loadHistogram = stats.getLoadHistogram()
                 Long expireIdle = mc.getAccessDuration()?.durationAmount ?: 0
                 Long expireLive = mc.getCreationDuration()?.durationAmount ?: 0
                 ci.add([name:co.getName(), expireTimeIdle:expireIdle,
                         expireTimeLive:expireLive, maxElements:mc.getMaxEntries(),
-                        evictionStrategy:"LRU", size:mc.size(),
+                        weight:mc.getWeight(), maxWeight:mc.getMaxWeight(),
+                        evictionStrategy:"W-TinyLFU", size:mc.size(),
                         getCount:stats.getCacheGets(), putCount:stats.getCachePuts(),
                         hitCount:stats.getCacheHits(), missCountTotal:stats.getCacheMisses(),
                         evictionCount:stats.getCacheEvictions(), removeCount:stats.getCacheRemovals(),
-                        expireCount:stats.getCacheExpires()] as Map<String, Object>)
+                        expireCount:stats.getCacheExpires(), offHeap:mc.isOffHeap(),
+                        offHeapMaxBytes:mc.getOffHeapMaxBytes(), offHeapUsedBytes:mc.getOffHeapUsedBytes(),
+                        hitPercent:stats.getCacheHitPercentage(), loadCount:loadHistogram?.getCount(),
+                        loadAvgMillis:loadHistogram?.getAverageMillis(), loadP50Millis:loadHistogram?.getPercentileMillis(50),
+                        loadP99Millis:loadHistogram?.getPercentileMillis(99)] as Map<String, Object>)
             } else {
                 logger.warn("Cannot get detailed info for cache ${cn} which is of type ${co.class.name}")
             }
@@ -180,6 +197,17 @@ public class CacheFacadeImpl implements CacheFacade {
         return ci
     }
 
+    /** Set the loader for a cache configured with refresh-ahead, does nothing otherwise. Refreshes run in the worker
+     * pool with an ExecutionContext. */
+    void setRefreshLoader(Cache cache, Function loader) {
+        if (!(cache instanceof MCache)) return
+        MCache mCache = (MCache) cache
+        if (!mCache.isRefreshAhead()) return
+        mCache.setRefreshLoader(loader, { Runnable runnable ->
+            ecfi.workerPool.execute(new ExecutionContextImpl.ThreadPoolRunnable(ecfi, { -> runnable.run() }))
+        } as Executor)
+    }
+
     protected MNode getCacheNode(String cacheName) {
         MNode cacheListNode = ecfi.getConfXmlRoot().first("cache-list")
         MNode cacheElement = cacheListNode.first({ MNode it -> it.name == "cache" && it.attribute("name") == cacheName })
@@ -236,6 +264,24 @@ public class CacheFacadeImpl implements CacheFacade {
                     int maxElements = Integer.parseInt(maxElementsStr)
                     mConf.setMaxEntries(maxElements)
                 }
+                if ("off-heap".equals(cacheNode.attribute("storage"))) {
+                    String maxBytesStr = cacheNode.attribute("off-heap-max-bytes")
+                    long maxBytes = maxBytesStr ? Long.parseLong(maxBytesStr) : defaultOffHeapMaxBytes
+                    mConf.setOffHeap(maxBytes, new EntityCacheValueCodec(ecfi))
+                }
+                String maxWeightStr = cacheNode.attribute("max-weight")
+                String weigherClass = cacheNode.attribute("weigher")
+                // with a max total weight weigh all caches so the total is complete
+                if (weigherClass || (maxWeightStr && maxWeightStr != "0") ||
+                        (cacheManager instanceof MCacheManager && ((MCacheManager) cacheManager).getMaxTotalWeight() > 0)) {
+                    MWeigher weigher = weigherClass ? (MWeigher) Thread.currentThread().getContextClassLoader()
+                            .loadClass(weigherClass).getDeclaredConstructor().newInstance() : new EntityCacheWeigher()
+                    mConf.setWeigher(weigher)
+                    if (maxWeightStr) mConf.setMaxWeight(Long.parseLong(maxWeightStr))
+                }
+                if ("true".equals(cacheNode.attribute("load-histogram"))) mConf.setLoadHistogram(true)
+                String refreshAheadStr = cacheNode.attribute("refresh-ahead")
+                if (refreshAheadStr) mConf.setRefreshAhead(Double.parseDouble(refreshAheadStr))
 
                 config = (Configuration) mConf
             /* TODO: somehow support external cache configuration like Hazelcast, through some sort of Moqui interface, maybe pass cacheNode to Cache factory?
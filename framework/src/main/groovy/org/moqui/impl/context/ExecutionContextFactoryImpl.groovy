@@ -75,6 +75,7 @@ import java.util.concurrent.ScheduledThreadPoolExecutor
 import java.util.concurrent.ThreadPoolExecutor
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicBoolean
+import java.util.function.Function
 import java.util.jar.JarFile
 import java.util.zip.ZipEntry
 import java.util.zip.ZipInputStream
@@ -593,6 +594,9 @@ class ExecutionContextFactoryImpl implements ExecutionContextFactory {
 
         // Warm cache on start if configured to do so
         if (confXmlRoot.first("cache-list").attribute("warm-on-start") != "false") warmCache()
+        // for l10n.message with refresh-ahead
+        cacheFacade.setRefreshLoader(cacheFacade.getCache("l10n.message"),
+                { String cacheKey -> L10nFacadeImpl.findLocalizedMessage(getEci(), cacheKey) } as Function<String, String>)
 
         // Run init() in ToolFactory implementations from tools.tool-factory elements
         Iterator<Map.Entry<String, ToolFactory>> tfIterator = toolFactoryMap.entrySet().iterator()
@@ -71,6 +71,10 @@ public class ExecutionContextImpl implements ExecutionContext {
     public final TransactionFacadeImpl transactionFacade;
 
     private Boolean skipStats = null;
+    /** count of read-only services/screens currently running, see EntityFacadeImpl.useCloneForRead() */
+    private int readOnlyDepth = 0;
+    /** set on the first entity write so later finds in this context see the writes (go to the primary, not a clone) */
+    private boolean entityWritten = false;
     private Cache<String, String> l10nMessageCache;
     private Cache<String, ArrayList> tarpitHitCache;
 
@@ -212,6 +216,12 @@ public class ExecutionContextImpl implements ExecutionContext {
         return skipStats;
     }
 
+    public void pushReadOnly() { readOnlyDepth++; }
+    public void popReadOnly() { if (readOnlyDepth > 0) readOnlyDepth--; }
+    public boolean isReadOnly() { return readOnlyDepth > 0; }
+    public void markEntityWrite() { entityWritten = true; }
+    public boolean isEntityWritten() { return entityWritten; }
+
     @Override
     public Future runAsync(@Nonnull Closure closure) {
         ThreadPoolRunnable runnable = new ThreadPoolRunnable(this, closure);
@@ -70,6 +70,16 @@ public class L10nFacadeImpl implements L10nFacade {
         String lmsg = eci.getL10nMessageCache().get(cacheKey);
         if (lmsg != null) return lmsg;
 
+        String result = findLocalizedMessage(eci, original, localeString);
+        eci.getL10nMessageCache().put(cacheKey, result);
+        return result;
+    }
+    /** Find the localized message for a l10n.message cache key (original::locale), for the cache refresh ahead loader */
+    static String findLocalizedMessage(ExecutionContextImpl eci, String cacheKey) {
+        int sepIndex = cacheKey.lastIndexOf("::");
+        return findLocalizedMessage(eci, cacheKey.substring(0, sepIndex), cacheKey.substring(sepIndex + 2));
+    }
+    static String findLocalizedMessage(ExecutionContextImpl eci, String original, String localeString) {
         String defaultValue = original;
         int localeUnderscoreIndex = localeString.indexOf('_');
 
@@ -97,9 +107,7 @@ public class L10nFacadeImpl implements L10nFacade {
             }
         }
 
-        String result = localizedMessage != null ? localizedMessage.getString("localized") : defaultValue;
-        eci.getL10nMessageCache().put(cacheKey, result);
-        return result;
+        return localizedMessage != null ? localizedMessage.getString("localized") : defaultValue;
     }
 
     @Override
@@ -51,6 +51,8 @@ import javax.xml.transform.URIResolver
 import javax.xml.transform.sax.SAXResult
 import javax.xml.transform.stream.StreamSource
 import java.lang.reflect.Method
+import java.util.concurrent.Callable
+import java.util.function.Function
 
 @CompileStatic
 class ResourceFacadeImpl implements ResourceFacade {
@@ -89,6 +91,10 @@ class ResourceFacadeImpl implements ResourceFacade {
         xmlActionsScriptRunner.init(ecfi)
 
         textLocationCache = ecfi.cacheFacade.getCache("resource.text.location", String.class, String.class)
+        ecfi.cacheFacade.setRefreshLoader(textLocationCache, { String location ->
+            ResourceReference textRr = getLocationReference(location)
+            return textRr != null ? readLocationText(textRr, location, null) : (String) null
+        } as Function<String, String>)
         // a plain HashMap is faster and just fine here: scriptGroovyExpressionCache = ecfi.cacheFacade.getCache("resource.groovy.expression")
         resourceReferenceByLocation = ecfi.cacheFacade.getCache("resource.reference.location", String.class, ResourceReference.class)
 
@@ -295,14 +301,23 @@ class ResourceFacadeImpl implements ResourceFacade {
                 cachedText = (String) textLocationCache.get(location)
             }
             if (cachedText != null) return cachedText
-        }
-        InputStream locStream = textRr.openStream(versionName)
-        if (locStream == null) logger.info("Cannot get text, no resource found at location [${location}]")
-        String text = ObjectUtilities.getStreamText(locStream)
+            // concurrent misses on the same location wait for one read
+            if (textLocationCache instanceof MCache) return ((MCache<String, String>) textLocationCache).loadSingleFlight(location, { ->
+                String text = readLocationText(textRr, location, versionName)
+                textLocationCache.put(location, text)
+                return text
+            } as Callable<String>)
+        }
+        String text = readLocationText(textRr, location, versionName)
         if (cache) textLocationCache.put(location, text)
         // logger.warn("==== getLocationText at ${location} version ${versionName} text ${text.length() > 100 ? text.substring(0, 100) : text}")
         return text
     }
+    protected static String readLocationText(ResourceReference textRr, String location, String versionName) {
+        InputStream locStream = textRr.openStream(versionName)
+        if (locStream == null) logger.info("Cannot get text, no resource found at location [${location}]")
+        return ObjectUtilities.getStreamText(locStream)
+    }
 
     @Override DataSource getLocationDataSource(String location) {
         int hashIdx = location.indexOf("#")
@@ -15,8 +15,10 @@ package org.moqui.impl.context
 
 import groovy.transform.CompileStatic
 import org.moqui.entity.EntityCondition
+import org.moqui.entity.EntityDatasourceFactory
 import org.moqui.entity.EntityException
 import org.moqui.entity.EntityValue
+import org.moqui.impl.entity.EntityDatasourceFactoryImpl
 import org.moqui.impl.entity.EntityDefinition
 import org.moqui.impl.entity.EntityFacadeImpl
 import org.moqui.impl.entity.EntityFindBase
@@ -282,12 +284,20 @@ class TransactionCache implements Synchronization {
         // NOTE: do nothing here on forUpdate, handled by caller
         Map<String, Object> key = makeKeyFind(efb)
         if (key == null) return null
-
+        return oneGetKey(efb.getEntityDef(), key)
+    }
+    /** Get by a Map with all primary key fields, used for multi-get in EntityFacadeImpl.fastFindMany() */
+    EntityValueBase oneGet(EntityDefinition ed, Map<String, Object> pkMap) {
+        Map<String, Object> key = new HashMap<>(pkMap)
+        key.put("_entityName", ed.getFullEntityName())
+        return oneGetKey(ed, key)
+    }
+    protected EntityValueBase oneGetKey(EntityDefinition ed, Map<String, Object> key) {
         if (!readOnly) {
             // if this has been deleted return a DeletedEntityValue instance so caller knows it was deleted and doesn't look in the DB for another record
             EntityWriteInfo currentEwi = (EntityWriteInfo) lastWriteInfoMap.get(key)
             if (currentEwi != null && currentEwi.writeMode == WriteMode.DELETE)
-                return new EntityValueBase.DeletedEntityValue(efb.getEntityDef(), ecfi.entityFacade)
+                return new EntityValueBase.DeletedEntityValue(ed, ecfi.entityFacade)
         }
 
         // cloneValue() so that updates aren't in the read cache until an update is done
@@ -451,29 +461,45 @@ class TransactionCache implements Synchronization {
                 int createCount = 0
                 int updateCount = 0
                 int deleteCount = 0
+                int batchCount = 0
                 // for (EntityWriteInfo ewi in writeInfoList) logger.warn("===== TX Cache value to ${ewi.writeMode} ${ewi.evb.resolveEntityName()}: \n${ewi.evb}")
                 if (readOnly && writeInfoListSize > 0) logger.warn("Read only TX cache has ${writeInfoListSize} values to write")
-                for (int i = 0; i < writeInfoListSize; i++) {
-                    EntityWriteInfo ewi = (EntityWriteInfo) writeInfoList.get(i)
-                    String groupName = ewi.evb.getEntityDefinition().getEntityGroupName()
+                // move writes together by entity and mode where it doesn't change the result (see makeFlushList()), then
+                //     run consecutive writes of the same entity and mode together in JDBC batches
+                ArrayList<EntityWriteInfo> flushList = makeFlushList(writeInfoList)
+                int flushListSize = flushList.size()
+                ArrayList<EntityValueBase> runValues = new ArrayList<>()
+                int runStart = 0
+                while (runStart < flushListSize) {
+                    EntityWriteInfo firstEwi = (EntityWriteInfo) flushList.get(runStart)
+                    WriteMode writeMode = firstEwi.writeMode
+                    String entityName = firstEwi.evb.resolveEntityName()
+                    runValues.clear()
+                    int runEnd = runStart
+                    while (runEnd < flushListSize) {
+                        EntityWriteInfo ewi = (EntityWriteInfo) flushList.get(runEnd)
+                        if (!ewi.writeMode.is(writeMode) || !entityName.equals(ewi.evb.resolveEntityName())) break
+                        runValues.add(ewi.evb)
+                        runEnd++
+                    }
+
+                    String groupName = firstEwi.evb.getEntityDefinition().getEntityGroupName()
                     Connection con = connectionByGroup.get(groupName)
                     if (con == null) {
                         con = efi.getConnection(groupName)
                         connectionByGroup.put(groupName, con)
                     }
+                    EntityDatasourceFactory edf = efi.getDatasourceFactory(groupName)
+                    int batchSize = edf instanceof EntityDatasourceFactoryImpl ? ((EntityDatasourceFactoryImpl) edf).getBulkBatchSize() : 0
 
-                    if (ewi.writeMode.is(WriteMode.CREATE)) {
-                        ewi.evb.basicCreate(con)
-                        createCount++
-                    } else if (ewi.writeMode.is(WriteMode.DELETE)) {
-                        ewi.evb.deleteExtended(con)
-                        deleteCount++
-                    } else {
-                        ewi.evb.basicUpdate(con)
-                        updateCount++
-                    }
+                    batchCount += EntityValueBase.basicWriteBulk(writeMode, runValues, 0, runValues.size(), batchSize, con)
+                    if (writeMode.is(WriteMode.CREATE)) createCount += runValues.size()
+                    else if (writeMode.is(WriteMode.DELETE)) deleteCount += runValues.size()
+                    else updateCount += runValues.size()
+
+                    runStart = runEnd
                 }
-                if (logger.isDebugEnabled()) logger.debug("Flushed TransactionCache in ${System.currentTimeMillis() - startTime}ms: ${createCount} creates, ${updateCount} updates, ${deleteCount} deletes, ${readOneCache.size()} read entries, ${readListCache.size()} entities with list cache")
+                if (logger.isDebugEnabled()) logger.debug("Flushed TransactionCache in ${System.currentTimeMillis() - startTime}ms: ${createCount} creates, ${updateCount} updates, ${deleteCount} deletes in ${batchCount} batches, ${readOneCache.size()} read entries, ${readListCache.size()} entities with list cache")
             }
 
             writeInfoList.clear()
@@ -495,6 +521,59 @@ class TransactionCache implements Synchronization {
         }
     }
 
+    /** Reorder writes so more writes of the same entity and mode are together for JDBC batches. A create or update
+     * is moved back to the last run of writes for its entity if that run has the same mode and the writes it moves
+     * past are creates and updates of other entities with no FK relationship (either way) to its entity. Writes of
+     * the same entity always stay in their original order, and deletes are only batched with consecutive deletes of
+     * the same entity so are never moved past other writes. */
+    static ArrayList<EntityWriteInfo> makeFlushList(ArrayList<EntityWriteInfo> writeInfoList) {
+        int writeInfoListSize = writeInfoList.size()
+        ArrayList<ArrayList<EntityWriteInfo>> runList = new ArrayList<>()
+        Map<String, Integer> lastRunByEntity = new HashMap<>()
+        Map<String, Boolean> relatedByEntityPair = new HashMap<>()
+        for (int i = 0; i < writeInfoListSize; i++) {
+            EntityWriteInfo ewi = (EntityWriteInfo) writeInfoList.get(i)
+            String entityName = ewi.evb.resolveEntityName()
+            Integer lastRunIndex = lastRunByEntity.get(entityName)
+            if (lastRunIndex != null) {
+                ArrayList<EntityWriteInfo> lastRun = runList.get(lastRunIndex)
+                if (lastRun.get(0).writeMode.is(ewi.writeMode) && canMoveToRun(ewi, runList, lastRunIndex, relatedByEntityPair)) {
+                    lastRun.add(ewi)
+                    continue
+                }
+            }
+            ArrayList<EntityWriteInfo> newRun = new ArrayList<>()
+            newRun.add(ewi)
+            runList.add(newRun)
+            lastRunByEntity.put(entityName, runList.size() - 1)
+        }
+
+        ArrayList<EntityWriteInfo> flushList = new ArrayList<>(writeInfoListSize)
+        for (ArrayList<EntityWriteInfo> run in runList) flushList.addAll(run)
+        return flushList
+    }
+    protected static boolean canMoveToRun(EntityWriteInfo ewi, ArrayList<ArrayList<EntityWriteInfo>> runList, int runIndex,
+                                          Map<String, Boolean> relatedByEntityPair) {
+        int runListSize = runList.size()
+        if (runIndex == runListSize - 1) return true
+        if (WriteMode.DELETE.is(ewi.writeMode)) return false
+        EntityDefinition ed = ewi.evb.getEntityDefinition()
+        // runs after the last run for this entity are all for other entities
+        for (int i = runIndex + 1; i < runListSize; i++) {
+            EntityWriteInfo otherEwi = (EntityWriteInfo) runList.get(i).get(0)
+            if (WriteMode.DELETE.is(otherEwi.writeMode)) return false
+            EntityDefinition otherEd = otherEwi.evb.getEntityDefinition()
+            String pairKey = ed.getFullEntityName() + ":" + otherEd.getFullEntityName()
+            Boolean related = relatedByEntityPair.get(pairKey)
+            if (related == null) {
+                related = ed.hasFkRelationship(otherEd) || otherEd.hasFkRelationship(ed)
+                relatedByEntityPair.put(pairKey, related)
+            }
+            if (related.booleanValue()) return false
+        }
+        return true
+    }
+
     @Override void beforeCompletion() { flushCache(true) }
     @Override void afterCompletion(int i) { }
 }
@@ -82,7 +82,14 @@ public class FtlTemplateRenderer implements TemplateRenderer {
                 theTemplate = templateFtlLocationCache.get(location);
             }
         }
-        if (theTemplate == null) theTemplate = makeTemplate(location, hasVersion);
+        if (theTemplate == null) {
+            // concurrent misses on the same location wait for one parse
+            if (!hasVersion && templateFtlLocationCache instanceof MCache) {
+                theTemplate = ((MCache<String, Template>) templateFtlLocationCache).loadSingleFlight(location, () -> makeTemplate(location, false));
+            } else {
+                theTemplate = makeTemplate(location, hasVersion);
+            }
+        }
         if (theTemplate == null) throw new BaseArtifactException("Could not find template at " + location);
         return theTemplate;
     }
@@ -26,6 +26,7 @@ import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 
 import javax.cache.Cache
+import java.util.concurrent.Callable
 
 @CompileStatic
 class GStringTemplateRenderer implements TemplateRenderer {
@@ -65,7 +66,10 @@ class GStringTemplateRenderer implements TemplateRenderer {
             // TODO: doesn't support on the fly reloading without cache expire/clear!
             theTemplate = templateGStringLocationCache.get(location);
         }
-        if (!theTemplate) theTemplate = makeGStringTemplate(location)
+        // concurrent misses on the same location wait for one parse
+        if (!theTemplate) theTemplate = templateGStringLocationCache instanceof MCache ?
+                ((MCache<String, Template>) templateGStringLocationCache).loadSingleFlight(location, { -> makeGStringTemplate(location) } as Callable<Template>) :
+                makeGStringTemplate(location)
         if (!theTemplate) throw new BaseArtifactException("Could not find template at [${location}]")
         return theTemplate
     }
@@ -20,9 +20,11 @@ import org.moqui.context.ExecutionContext
 import org.moqui.context.ExecutionContextFactory
 import org.moqui.context.ScriptRunner
 import org.moqui.impl.context.ExecutionContextFactoryImpl
+import org.moqui.jcache.MCache
 import org.moqui.util.StringUtilities
 
 import javax.cache.Cache
+import java.util.concurrent.Callable
 
 @CompileStatic
 class GroovyScriptRunner implements ScriptRunner {
@@ -55,16 +57,25 @@ class GroovyScriptRunner implements ScriptRunner {
 
     Class getGroovyByLocation(String location) {
         Class gc = (Class) scriptGroovyLocationCache.get(location)
-        if (gc == null) gc = loadGroovy(location)
+        if (gc == null) {
+            // concurrent misses on the same location wait for one compile, compiles of other locations don't wait
+            if (scriptGroovyLocationCache instanceof MCache) {
+                gc = ((MCache<String, Class>) scriptGroovyLocationCache).loadSingleFlight(location, { -> compileGroovy(location) } as Callable<Class>)
+            } else {
+                gc = loadGroovy(location)
+            }
+        }
         return gc
     }
     private synchronized Class loadGroovy(String location) {
         Class gc = (Class) scriptGroovyLocationCache.get(location)
-        if (gc == null) {
-            String groovyText = ecfi.resourceFacade.getLocationText(location, false)
-            gc = ecfi.compileGroovy(groovyText, StringUtilities.cleanStringForJavaName(location))
-            scriptGroovyLocationCache.put(location, gc)
-        }
+        if (gc == null) gc = compileGroovy(location)
+        return gc
+    }
+    private Class compileGroovy(String location) {
+        String groovyText = ecfi.resourceFacade.getLocationText(location, false)
+        Class gc = ecfi.compileGroovy(groovyText, StringUtilities.cleanStringForJavaName(location))
+        scriptGroovyLocationCache.put(location, gc)
         return gc
     }
 }
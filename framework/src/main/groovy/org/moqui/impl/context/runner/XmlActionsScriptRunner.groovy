@@ -21,10 +21,12 @@ import org.moqui.impl.context.ExecutionContextFactoryImpl
 import org.moqui.impl.actions.XmlAction
 import org.moqui.context.ExecutionContext
 import org.moqui.impl.context.ExecutionContextImpl
+import org.moqui.jcache.MCache
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 
 import javax.cache.Cache
+import java.util.concurrent.Callable
 
 @CompileStatic
 class XmlActionsScriptRunner implements ScriptRunner {
@@ -51,15 +53,24 @@ class XmlActionsScriptRunner implements ScriptRunner {
 
     XmlAction getXmlActionByLocation(String location) {
         XmlAction xa = (XmlAction) scriptXmlActionLocationCache.get(location)
-        if (xa == null) xa = loadXmlAction(location)
+        if (xa == null) {
+            // concurrent misses on the same location wait for one parse, other locations don't wait
+            if (scriptXmlActionLocationCache instanceof MCache) {
+                xa = ((MCache<String, XmlAction>) scriptXmlActionLocationCache).loadSingleFlight(location, { -> makeXmlAction(location) } as Callable<XmlAction>)
+            } else {
+                xa = loadXmlAction(location)
+            }
+        }
         return xa
     }
     protected synchronized XmlAction loadXmlAction(String location) {
         XmlAction xa = (XmlAction) scriptXmlActionLocationCache.get(location)
-        if (xa == null) {
-            xa = new XmlAction(ecfi, ecfi.resourceFacade.getLocationText(location, false), location)
-            scriptXmlActionLocationCache.put(location, xa)
-        }
+        if (xa == null) xa = makeXmlAction(location)
+        return xa
+    }
+    protected XmlAction makeXmlAction(String location) {
+        XmlAction xa = new XmlAction(ecfi, ecfi.resourceFacade.getLocationText(location, false), location)
+        scriptXmlActionLocationCache.put(location, xa)
         return xa
     }
 
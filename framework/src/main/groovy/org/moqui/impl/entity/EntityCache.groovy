@@ -19,12 +19,20 @@ import javax.cache.Cache
 import org.moqui.entity.EntityCondition
 import org.moqui.entity.EntityList
 import org.moqui.entity.EntityValue
+import org.moqui.Moqui
 import org.moqui.impl.context.CacheFacadeImpl
+import org.moqui.impl.context.ExecutionContextFactoryImpl
+import org.moqui.impl.context.TransactionFacadeImpl
+import org.moqui.util.LiteStringMap
 import org.moqui.util.MNode
 import org.moqui.util.SimpleTopic
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 
+import jakarta.transaction.Status
+import jakarta.transaction.Synchronization
+import java.sql.Time
+import java.sql.Timestamp
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.ConcurrentMap
 
@@ -43,12 +51,24 @@ class EntityCache {
     static final String listViewRaKeyBase = "entity.record.list_view_ra."
     static final String countKeyBase = "entity.record.count."
 
-    Cache<String, Set<EntityCondition>> oneBfCache
+    /** Conditions for one cache entries with no record, by entity name; can't use RA cache because there is no PK */
+    Cache<String, EntityConditionIndex> oneBfCache
     protected final Map<String, List<String>> cachedListViewEntitiesByMember = new HashMap<>()
+    /** Index of list cache conditions by entity name, so clearing for a value only checks conditions it could match */
+    protected final ConcurrentHashMap<String, EntityConditionIndex> listCacheIndexByEntity = new ConcurrentHashMap<>()
+    /** Index of count cache conditions by entity name, same as for the list cache */
+    protected final ConcurrentHashMap<String, EntityConditionIndex> countCacheIndexByEntity = new ConcurrentHashMap<>()
 
     protected final boolean distributedCacheInvalidate
     /** Entity Cache Invalidate Topic */
-    private SimpleTopic<EntityCacheInvalidate> entityCacheInvalidateTopic = null
+    protected SimpleTopic<Externalizable> entityCacheInvalidateTopic = null
+
+    /** Shared (distributed) log of record versions for one cache validation, see one-cache-version-check; keys are
+     * entity name plus PK String for records and entity name alone for the per-entity high-water mark */
+    protected Cache<String, Long> versionCache = (Cache<String, Long>) null
+    protected final long versionCheckInterval
+    /** Per-entity high-water mark from versionCache with the time it was read (checked), by entity name */
+    protected final ConcurrentHashMap<String, long[]> localHighWaterByEntity = new ConcurrentHashMap<>()
 
     EntityCache(EntityFacadeImpl efi) {
         this.efi = efi
@@ -63,13 +83,22 @@ class EntityCache {
         if (distributedCacheInvalidate) {
             try {
                 String dciTopicFactory = entityFacadeNode.attribute("dci-topic-factory")
-                entityCacheInvalidateTopic = (SimpleTopic<EntityCacheInvalidate>) efi.ecfi.getTool(dciTopicFactory, SimpleTopic.class)
+                entityCacheInvalidateTopic = (SimpleTopic<Externalizable>) efi.ecfi.getTool(dciTopicFactory, SimpleTopic.class)
             } catch (Exception e) {
                 logger.error("Entity distributed cache invalidate is enabled but could not initialize", e)
             }
         }
+
+        versionCheckInterval = (entityFacadeNode.attribute("one-cache-version-interval") ?: "1000") as long
+        if (entityFacadeNode.attribute("one-cache-version-check") == "true") {
+            versionCache = (Cache<String, Long>) cfi.getDistributedCache("entity.record.version")
+            logger.info("Entity one cache version check enabled, high-water mark interval ${versionCheckInterval}ms")
+        }
     }
 
+    /** Single record distributed cache invalidate message, the format from earlier versions. Not published any more,
+     * kept so topic listeners can still read it from older servers during a rolling upgrade; see
+     * EntityCacheInvalidateBatch and EntityCache.clearCacheForInvalidate() */
     static class EntityCacheInvalidate implements Externalizable {
         boolean isCreate
         EntityValueBase evb
@@ -97,17 +126,318 @@ class EntityCache {
         }
     }
 
+    /** Distributed cache invalidate message with one or more changed records, published for each committed transaction
+     * (or each change when there is no transaction). Records are written with an entity-aware encoding: entity name,
+     * then name and a type tag with the value for each non-null field, instead of generic serialization of the
+     * EntityValue and its field Map. Receivers call EntityCache.clearCacheForInvalidate() with the message.
+     *
+     * NOTE: this is a different class from the single record EntityCacheInvalidate so topic listeners on servers from
+     * before it existed fail on it (class not found or cast error) instead of clearing caches for only some records. */
+    static class EntityCacheInvalidateBatch implements Externalizable {
+        ArrayList<EntityValueBase> evbList
+        ArrayList<Boolean> isCreateList
+        /** all field values before the change if known, for count cache clearing; written as the fields that differ */
+        ArrayList<Map<String, Object>> prevValueMapList
+
+        EntityCacheInvalidateBatch() { }
+        EntityCacheInvalidateBatch(int initialCapacity) {
+            evbList = new ArrayList<>(initialCapacity)
+            isCreateList = new ArrayList<>(initialCapacity)
+            prevValueMapList = new ArrayList<>(initialCapacity)
+        }
+        EntityCacheInvalidateBatch(EntityValueBase evb, boolean isCreate, Map<String, Object> prevValueMap) {
+            this(1)
+            add(evb, isCreate, prevValueMap)
+        }
+
+        int size() { return evbList.size() }
+        void add(EntityValueBase evb, boolean isCreate, Map<String, Object> prevValueMap) {
+            evbList.add(evb)
+            isCreateList.add(isCreate)
+            prevValueMapList.add(prevValueMap)
+        }
+
+        @Override void writeExternal(ObjectOutput out) throws IOException {
+            int evbListSize = evbList.size()
+            out.writeInt(evbListSize)
+            for (int i = 0; i < evbListSize; i++) {
+                EntityValueBase evb = (EntityValueBase) evbList.get(i)
+                FieldInfo[] allFieldInfoArray = evb.getEntityDefinition().entityInfo.allFieldInfoArray
+                LiteStringMap<Object> valueMap = evb.getValueMap()
+                out.writeUTF(evb.resolveEntityName())
+                out.writeBoolean(isCreateList.get(i).booleanValue())
+                int fieldCount = 0
+                for (int j = 0; j < allFieldInfoArray.length; j++) {
+                    FieldInfo fi = allFieldInfoArray[j]
+                    if (valueMap.getByIString(fi.name, fi.index) != null) fieldCount++
+                }
+                out.writeShort(fieldCount)
+                for (int j = 0; j < allFieldInfoArray.length; j++) {
+                    FieldInfo fi = allFieldInfoArray[j]
+                    Object value = valueMap.getByIString(fi.name, fi.index)
+                    if (value == null) continue
+                    out.writeUTF(fi.name)
+                    writeFieldValue(out, value)
+                }
+
+                Map<String, Object> prevValueMap = (Map<String, Object>) prevValueMapList.get(i)
+                out.writeBoolean(prevValueMap != null)
+                if (prevValueMap == null) continue
+                int changedCount = 0
+                for (int j = 0; j < allFieldInfoArray.length; j++) {
+                    FieldInfo fi = allFieldInfoArray[j]
+                    if (!Objects.equals(prevValueMap.get(fi.name), valueMap.getByIString(fi.name, fi.index))) changedCount++
+                }
+                out.writeShort(changedCount)
+                for (int j = 0; j < allFieldInfoArray.length; j++) {
+                    FieldInfo fi = allFieldInfoArray[j]
+                    Object prevValue = prevValueMap.get(fi.name)
+                    if (Objects.equals(prevValue, valueMap.getByIString(fi.name, fi.index))) continue
+                    out.writeUTF(fi.name)
+                    writeFieldValue(out, prevValue)
+                }
+            }
+        }
+
+        @Override void readExternal(ObjectInput objectInput) throws IOException, ClassNotFoundException {
+            ExecutionContextFactoryImpl ecfi = (ExecutionContextFactoryImpl) Moqui.getExecutionContextFactory()
+            if (ecfi == null) throw new IOException("No ExecutionContextFactory found, cannot read EntityCacheInvalidateBatch")
+            EntityFacadeImpl efi = ecfi.entityFacade
+            int evbListSize = objectInput.readInt()
+            evbList = new ArrayList<>(evbListSize)
+            isCreateList = new ArrayList<>(evbListSize)
+            prevValueMapList = new ArrayList<>(evbListSize)
+            for (int i = 0; i < evbListSize; i++) {
+                String entityName = objectInput.readUTF()
+                boolean isCreate = objectInput.readBoolean()
+                int fieldCount = objectInput.readShort()
+                EntityDefinition ed = efi.getEntityDefinition(entityName)
+                EntityValueImpl evb = ed != null ? new EntityValueImpl(ed, efi) : (EntityValueImpl) null
+                for (int j = 0; j < fieldCount; j++) {
+                    String fieldName = objectInput.readUTF()
+                    Object value = readFieldValue(objectInput)
+                    FieldInfo fi = ed != null ? ed.getFieldInfo(fieldName) : (FieldInfo) null
+                    if (fi != null) evb.getValueMap().putByIString(fi.name, value, fi.index)
+                }
+
+                HashMap<String, Object> prevValueMap = (HashMap<String, Object>) null
+                if (objectInput.readBoolean()) {
+                    int changedCount = objectInput.readShort()
+                    // fields not written are the same as after the change
+                    if (evb != null) {
+                        prevValueMap = new HashMap<>()
+                        for (FieldInfo fi in ed.entityInfo.allFieldInfoArray) prevValueMap.put(fi.name, evb.getValueMap().getByIString(fi.name, fi.index))
+                    }
+                    for (int j = 0; j < changedCount; j++) {
+                        String fieldName = objectInput.readUTF()
+                        Object prevValue = readFieldValue(objectInput)
+                        if (prevValueMap != null && prevValueMap.containsKey(fieldName)) prevValueMap.put(fieldName, prevValue)
+                    }
+                }
+                if (evb == null) { logger.warn("Skipping cache invalidate for unknown entity ${entityName}"); continue }
+                add(evb, isCreate, prevValueMap)
+            }
+        }
+
+        // writeUTF() is limited to 65535 bytes, up to 3 bytes per char
+        static final int maxUtfChars = 21845
+        static void writeFieldValue(ObjectOutput out, Object value) throws IOException {
+            if (value == null) { out.writeByte(10) }
+            else if (value instanceof String && ((String) value).length() <= maxUtfChars) { out.writeByte(1); out.writeUTF((String) value) }
+            else if (value instanceof Long) { out.writeByte(2); out.writeLong(((Long) value).longValue()) }
+            else if (value instanceof Integer) { out.writeByte(3); out.writeInt(((Integer) value).intValue()) }
+            else if (value instanceof BigDecimal) { out.writeByte(4); out.writeUTF(((BigDecimal) value).toString()) }
+            else if (value instanceof Timestamp) {
+                Timestamp ts = (Timestamp) value
+                out.writeByte(5); out.writeLong(ts.getTime()); out.writeInt(ts.getNanos())
+            }
+            else if (value instanceof Boolean) { out.writeByte(6); out.writeBoolean(((Boolean) value).booleanValue()) }
+            else if (value instanceof Double) { out.writeByte(7); out.writeDouble(((Double) value).doubleValue()) }
+            else if (value instanceof java.sql.Date) { out.writeByte(8); out.writeLong(((java.sql.Date) value).getTime()) }
+            else if (value instanceof Time) { out.writeByte(9); out.writeLong(((Time) value).getTime()) }
+            else { out.writeByte(0); out.writeObject(value) }
+        }
+        static Object readFieldValue(ObjectInput objectInput) throws IOException, ClassNotFoundException {
+            int type = objectInput.readByte()
+            switch (type) {
+                case 1: return objectInput.readUTF()
+                case 2: return Long.valueOf(objectInput.readLong())
+                case 3: return Integer.valueOf(objectInput.readInt())
+                case 4: return new BigDecimal(objectInput.readUTF())
+                case 5:
+                    Timestamp ts = new Timestamp(objectInput.readLong())
+                    ts.setNanos(objectInput.readInt())
+                    return ts
+                case 6: return Boolean.valueOf(objectInput.readBoolean())
+                case 7: return Double.valueOf(objectInput.readDouble())
+                case 8: return new java.sql.Date(objectInput.readLong())
+                case 9: return new Time(objectInput.readLong())
+                case 10: return null
+                default: return objectInput.readObject()
+            }
+        }
+    }
+
+    /** Collects cache invalidations for a transaction, one per record (by entity and PK) with the latest values, and
+     * after commit publishes them in a single message and records versions for one cache validation; nothing is
+     * published or recorded if the transaction is rolled back */
+    static class EntityCacheInvalidateSynchronization implements Synchronization {
+        static final String syncName = "EntityCacheInvalidateSynchronization"
+
+        protected final EntityCache entityCache
+        protected final LinkedHashMap<String, EntityValueBase> evbByKey = new LinkedHashMap<>()
+        protected final HashMap<String, Boolean> isCreateByKey = new HashMap<>()
+        protected final HashSet<String> deleteKeys = new HashSet<>()
+        /** values before the first change in the transaction (null if not known), what other nodes last saw committed */
+        protected final HashMap<String, Map<String, Object>> prevValueMapByKey = new HashMap<>()
+
+        EntityCacheInvalidateSynchronization(EntityCache entityCache) { this.entityCache = entityCache }
+
+        void add(EntityValueBase evb, boolean isCreate, boolean isDelete, Map<String, Object> prevValueMap) {
+            EntityDefinition ed = evb.getEntityDefinition()
+            String key = ed.getFullEntityName().concat("|").concat(evb.getPrimaryKeysString())
+            // copy the values as the EntityValue may be changed again before commit
+            EntityValueImpl snapshot = new EntityValueImpl(ed, entityCache.efi)
+            LiteStringMap<Object> valueMap = evb.getValueMap()
+            LiteStringMap<Object> snapshotMap = snapshot.getValueMap()
+            FieldInfo[] allFieldInfoArray = ed.entityInfo.allFieldInfoArray
+            for (int i = 0; i < allFieldInfoArray.length; i++) {
+                FieldInfo fi = allFieldInfoArray[i]
+                Object value = valueMap.getByIString(fi.name, fi.index)
+                if (value != null) snapshotMap.putByIString(fi.name, value, fi.index)
+            }
+            evbByKey.put(key, snapshot)
+            if (!prevValueMapByKey.containsKey(key)) {
+                // for a create counts from before did not include the record, values at create are enough
+                Map<String, Object> firstPrev = isCreate ? (Map<String, Object>) snapshotMap : prevValueMap
+                prevValueMapByKey.put(key, firstPrev != null ? (Map<String, Object>) new HashMap<String, Object>(firstPrev) : (Map<String, Object>) null)
+            }
+            // a create only if all changes were creates (create then update), otherwise other nodes must check RA caches
+            Boolean existingIsCreate = isCreateByKey.get(key)
+            isCreateByKey.put(key, existingIsCreate != null ? (existingIsCreate.booleanValue() && isCreate) : isCreate)
+            if (isDelete) deleteKeys.add(key) else deleteKeys.remove(key)
+        }
+
+        @Override void beforeCompletion() { }
+        @Override void afterCompletion(int status) {
+            if (status != Status.STATUS_COMMITTED || evbByKey.isEmpty()) return
+            if (entityCache.versionCache != null) {
+                for (Map.Entry<String, EntityValueBase> entry in evbByKey.entrySet()) {
+                    EntityValueBase evb = entry.getValue()
+                    if (evb.getEntityDefinition().entityInfo.lastUpdatedStampInfo == null) continue
+                    try {
+                        entityCache.recordVersion(evb, deleteKeys.contains(entry.getKey()))
+                    } catch (Throwable t) {
+                        logger.error("Error recording cache version for ${entry.getKey()}", t)
+                    }
+                }
+            }
+            SimpleTopic<Externalizable> topic = entityCache.distributedCacheInvalidate ? entityCache.entityCacheInvalidateTopic : (SimpleTopic<Externalizable>) null
+            if (topic == null) return
+            EntityCacheInvalidateBatch eci = new EntityCacheInvalidateBatch(evbByKey.size())
+            for (Map.Entry<String, EntityValueBase> entry in evbByKey.entrySet())
+                eci.add(entry.getValue(), isCreateByKey.get(entry.getKey()).booleanValue(), prevValueMapByKey.get(entry.getKey()))
+            try {
+                topic.publish(eci)
+            } catch (Throwable t) {
+                logger.error("Error publishing distributed cache invalidate for ${eci.size()} records", t)
+            }
+        }
+    }
+
     static class EmptyRecord extends EntityValueImpl {
+        /** entity version high-water mark when cached, for one cache version check */
+        transient long cacheVersion = 0L
         EmptyRecord() { }
         EmptyRecord(EntityDefinition ed, EntityFacadeImpl efip) { super(ed, efip) }
     }
 
+    /** Get from the one cache, with one-cache-version-check removes and returns null for entries changed since cached */
+    EntityValueBase getFromOneCache(EntityDefinition ed, EntityCondition whereCondition, Cache<EntityCondition, EntityValueBase> entityOneCache) {
+        if (entityOneCache == null) entityOneCache = ed.getCacheOne(this)
+        EntityValueBase cacheHit = (EntityValueBase) entityOneCache.get(whereCondition)
+        if (cacheHit == null || versionCache == null || ed.entityInfo.lastUpdatedStampInfo == null) return cacheHit
+        if (isVersionValid(ed, cacheHit)) return cacheHit
+        entityOneCache.remove(whereCondition)
+        return (EntityValueBase) null
+    }
+
+    /* ========== One cache version check ==========
+     * Record versions are the lastUpdatedStamp millis of the last committed change by entity and PK, negative for a
+     * delete or when the same stamp might be used for more than one change so cached values must be newer (not equal).
+     * The per-entity high-water mark is the max stamp recorded, read from the shared versionCache no more often than
+     * versionCheckInterval so for most cache hits validation is a local check; a record version is only looked up when
+     * the entity changed after the cached value. Values are validated lazily on get so a node that restarts or misses
+     * messages still sees changes in the shared log. */
+
+    protected boolean isVersionValid(EntityDefinition ed, EntityValueBase cacheHit) {
+        String fullEntityName = ed.getFullEntityName()
+        long highWater = getHighWaterMark(fullEntityName, false)
+        if (cacheHit instanceof EmptyRecord) return highWater <= ((EmptyRecord) cacheHit).cacheVersion
+
+        long cachedVersion = getStampVersion(ed, cacheHit)
+        if (cachedVersion > highWater) return true
+        Long recordVersion = (Long) versionCache.get(fullEntityName.concat("|").concat(cacheHit.getPrimaryKeysString()))
+        if (recordVersion == null) return true
+        long version = recordVersion.longValue()
+        return version >= 0L ? cachedVersion >= version : cachedVersion > -version
+    }
+    protected long getHighWaterMark(String fullEntityName, boolean forceRead) {
+        long now = System.currentTimeMillis()
+        long[] local = (long[]) localHighWaterByEntity.get(fullEntityName)
+        if (!forceRead && local != null && now - local[1] < versionCheckInterval) return local[0]
+        Long highWater = (Long) versionCache.get(fullEntityName)
+        long highWaterValue = highWater != null ? highWater.longValue() : 0L
+        localHighWaterByEntity.put(fullEntityName, [highWaterValue, now] as long[])
+        return highWaterValue
+    }
+    protected static long getStampVersion(EntityDefinition ed, EntityValueBase evb) {
+        FieldInfo stampInfo = ed.entityInfo.lastUpdatedStampInfo
+        Object stamp = evb.getValueMap().getByIString(stampInfo.name, stampInfo.index)
+        return stamp instanceof Timestamp ? ((Timestamp) stamp).getTime() : -1L
+    }
+    /** Record the version of a committed change, called after commit by EntityCacheInvalidateSynchronization */
+    protected void recordVersion(EntityValueBase evb, boolean isDelete) {
+        EntityDefinition ed = evb.getEntityDefinition()
+        String fullEntityName = ed.getFullEntityName()
+        long stamp = getStampVersion(ed, evb)
+        if (stamp < 0L) stamp = System.currentTimeMillis()
+        String key = fullEntityName.concat("|").concat(evb.getPrimaryKeysString())
+
+        // replace with compare so concurrent changes on other nodes aren't lost, retry a few times then force
+        boolean recorded = false
+        for (int i = 0; i < 5 && !recorded; i++) {
+            Long existing = (Long) versionCache.get(key)
+            long existingAbs = existing != null ? Math.abs(existing.longValue()) : -1L
+            // stamp not newer than recorded (same stamp used again, or commits out of order): values must be newer
+            long version = existingAbs >= stamp ? -existingAbs : (isDelete ? -stamp : stamp)
+            recorded = existing == null ? versionCache.putIfAbsent(key, version) : versionCache.replace(key, existing, version)
+        }
+        if (!recorded) versionCache.put(key, -Math.max(stamp, System.currentTimeMillis()))
+
+        boolean raised = false
+        for (int i = 0; i < 5 && !raised; i++) {
+            Long highWater = (Long) versionCache.get(fullEntityName)
+            if (highWater != null && highWater.longValue() >= stamp) break
+            raised = highWater == null ? versionCache.putIfAbsent(fullEntityName, stamp) : versionCache.replace(fullEntityName, highWater, stamp)
+        }
+        // make sure this node sees its own change immediately
+        localHighWaterByEntity.remove(fullEntityName)
+    }
+
     void putInOneCache(EntityDefinition ed, EntityCondition whereCondition, EntityValueBase newEntityValue,
                        Cache<EntityCondition, EntityValueBase> entityOneCache) {
         if (entityOneCache == null) entityOneCache = ed.getCacheOne(this)
 
         if (newEntityValue != null) newEntityValue.setFromCache()
-        entityOneCache.put(whereCondition, newEntityValue != null ? newEntityValue : new EmptyRecord(ed, efi))
+        EntityValueBase cacheValue = newEntityValue
+        if (cacheValue == null) {
+            EmptyRecord emptyRecord = new EmptyRecord(ed, efi)
+            if (versionCache != null && ed.entityInfo.lastUpdatedStampInfo != null)
+                emptyRecord.cacheVersion = getHighWaterMark(ed.getFullEntityName(), true)
+            cacheValue = emptyRecord
+        }
+        entityOneCache.put(whereCondition, cacheValue)
         // need to register an RA just in case the condition was not actually a primary key
         registerCacheOneRa(ed.getFullEntityName(), whereCondition, newEntityValue)
     }
@@ -130,35 +460,121 @@ class EntityCache {
         EntityListImpl elToCache = el != null ? el : efi.getEmptyList()
         elToCache.setFromCache()
         entityListCache.put(whereCondition, elToCache)
+        // view-entity list caches are cleared by member entity field matching, no index needed
+        if (!ed.isViewEntity) getListCacheIndex(ed.getFullEntityName()).addAndPrune(whereCondition, entityListCache)
         registerCacheListRa(ed.getFullEntityName(), whereCondition, elToCache)
     }
-    /*
+    EntityConditionIndex getListCacheIndex(String fullEntityName) { return getConditionIndex(listCacheIndexByEntity, fullEntityName) }
+    EntityConditionIndex getCountCacheIndex(String fullEntityName) { return getConditionIndex(countCacheIndexByEntity, fullEntityName) }
+    protected static EntityConditionIndex getConditionIndex(ConcurrentHashMap<String, EntityConditionIndex> indexByEntity, String fullEntityName) {
+        EntityConditionIndex condIndex = indexByEntity.get(fullEntityName)
+        if (condIndex == null) {
+            condIndex = new EntityConditionIndex()
+            EntityConditionIndex existing = indexByEntity.putIfAbsent(fullEntityName, condIndex)
+            if (existing != null) condIndex = existing
+        }
+        return condIndex
+    }
+
     Long getFromCountCache(EntityDefinition ed, EntityCondition whereCondition, Cache<EntityCondition, Long> entityCountCache) {
-        if (entityCountCache == null) entityCountCache = getCacheCount(ed.getFullEntityName())
+        if (whereCondition == null) return null
+        if (entityCountCache == null) entityCountCache = ed.getCacheCount(this)
         return (Long) entityCountCache.get(whereCondition)
     }
-    */
+    void putInCountCache(EntityDefinition ed, EntityCondition whereCondition, long count, Cache<EntityCondition, Long> entityCountCache) {
+        if (whereCondition == null) return
+        if (entityCountCache == null) entityCountCache = ed.getCacheCount(this)
+        entityCountCache.put(whereCondition, count)
+        // like the list cache index, needed to clear only the counts a changed record matches
+        if (!ed.isViewEntity) getCountCacheIndex(ed.getFullEntityName()).addAndPrune(whereCondition, entityCountCache)
+    }
 
     /** Called from EntityValueBase */
-    void clearCacheForValue(EntityValueBase evb, boolean isCreate) {
+    void clearCacheForValue(EntityValueBase evb, boolean isCreate) { clearCacheForValue(evb, isCreate, false, null) }
+    void clearCacheForValue(EntityValueBase evb, boolean isCreate, boolean isDelete) { clearCacheForValue(evb, isCreate, isDelete, null) }
+    /** @param prevValueMap for an update the original values from the database, used if it has all fields */
+    void clearCacheForValue(EntityValueBase evb, boolean isCreate, boolean isDelete, Map<String, Object> prevValueMap) {
         if (evb == null) return
         EntityDefinition ed = evb.getEntityDefinition()
         if (ed.entityInfo.neverCache) return
+        // for a delete the values before are the deleted record
+        prevValueMap = isCreate ? (Map<String, Object>) null : completeValueMap(ed, isDelete ? (Map<String, Object>) evb.getValueMap() : prevValueMap)
 
         // String entityName = evb.resolveEntityName()
         // if (!entityName.startsWith("moqui.")) logger.info("========== ========== ========== clearCacheForValue ${entityName}")
-        if (distributedCacheInvalidate && entityCacheInvalidateTopic != null) {
+        boolean publish = distributedCacheInvalidate && entityCacheInvalidateTopic != null
+        boolean doVersion = versionCache != null && ed.entityInfo.lastUpdatedStampInfo != null
+        if (publish || doVersion) {
             // NOTE: this takes some time to run and is done a LOT, for nearly all entity CrUD ops
             // NOTE: have set many entities as never cache
             // NOTE: can't avoid message when caches don't exist and not used in view-entity as it might be on another server
-            EntityCacheInvalidate eci = new EntityCacheInvalidate(evb, isCreate)
+            // clear local caches now, publish to all nodes and record version after commit with other changes in the transaction
+            TransactionFacadeImpl tfi = efi.ecfi.transactionFacade
+            int txStatus = tfi.getStatus()
+            if (txStatus == Status.STATUS_ACTIVE) {
+                clearCacheForValueActual(evb, isCreate, prevValueMap)
+                EntityCacheInvalidateSynchronization ecis = (EntityCacheInvalidateSynchronization) tfi.getActiveSynchronization(EntityCacheInvalidateSynchronization.syncName)
+                if (ecis == null) {
+                    ecis = new EntityCacheInvalidateSynchronization(this)
+                    tfi.putAndEnlistActiveSynchronization(EntityCacheInvalidateSynchronization.syncName, ecis)
+                }
+                ecis.add(evb, isCreate, isDelete, prevValueMap)
+            } else if (txStatus == Status.STATUS_NO_TRANSACTION) {
+                if (publish) entityCacheInvalidateTopic.publish(new EntityCacheInvalidateBatch(evb, isCreate, prevValueMap))
+                else clearCacheForValueActual(evb, isCreate, prevValueMap)
+                if (doVersion) recordVersion(evb, isDelete)
+            } else {
+                // marked rollback only or completing, change will not be committed so only clear locally
+                clearCacheForValueActual(evb, isCreate, prevValueMap)
+            }
+        } else {
+            clearCacheForValueActual(evb, isCreate, prevValueMap)
+        }
+    }
+    /** Like clearCacheForValue() for creates of a range of values of the same entity, such as a bulk create batch;
+     * when not in a transaction sends one distributed invalidate message for the range instead of one per value */
+    void clearCacheForCreates(ArrayList<EntityValueBase> evbList, int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex) return
+        EntityDefinition ed = evbList.get(fromIndex).getEntityDefinition()
+        if (ed.entityInfo.neverCache) return
+
+        boolean publish = distributedCacheInvalidate && entityCacheInvalidateTopic != null
+        boolean doVersion = versionCache != null && ed.entityInfo.lastUpdatedStampInfo != null
+        if ((!publish && !doVersion) || efi.ecfi.transactionFacade.getStatus() != Status.STATUS_NO_TRANSACTION) {
+            // in a transaction invalidations are already collected and sent in one message after commit
+            for (int i = fromIndex; i < toIndex; i++) clearCacheForValue(evbList.get(i), true, false, null)
+            return
+        }
+
+        if (publish) {
+            EntityCacheInvalidateBatch eci = new EntityCacheInvalidateBatch(toIndex - fromIndex)
+            for (int i = fromIndex; i < toIndex; i++) eci.add(evbList.get(i), true, null)
             entityCacheInvalidateTopic.publish(eci)
         } else {
-            clearCacheForValueActual(evb, isCreate)
+            for (int i = fromIndex; i < toIndex; i++) clearCacheForValueActual(evbList.get(i), true, null)
+        }
+        if (doVersion) for (int i = fromIndex; i < toIndex; i++) recordVersion(evbList.get(i), false)
+    }
+    /** Called by the distributed cache invalidate topic listener for each message received, an EntityCacheInvalidateBatch
+     * or a single record EntityCacheInvalidate from a server on an earlier version */
+    void clearCacheForInvalidate(Object message) {
+        if (message instanceof EntityCacheInvalidateBatch) {
+            EntityCacheInvalidateBatch eci = (EntityCacheInvalidateBatch) message
+            if (eci.evbList == null) return
+            int evbListSize = eci.evbList.size()
+            for (int i = 0; i < evbListSize; i++)
+                clearCacheForValueActual((EntityValueBase) eci.evbList.get(i), eci.isCreateList.get(i).booleanValue(), eci.prevValueMapList.get(i))
+        } else if (message instanceof EntityCacheInvalidate) {
+            EntityCacheInvalidate eci = (EntityCacheInvalidate) message
+            if (eci.evb != null) clearCacheForValueActual(eci.evb, eci.isCreate, (Map<String, Object>) null)
+        } else if (message != null) {
+            logger.warn("Ignoring unknown entity cache invalidate message type ${message.getClass().getName()}")
         }
     }
     /** Does actual cache clear, called directly or distributed through topic */
-    void clearCacheForValueActual(EntityValueBase evb, boolean isCreate) {
+    void clearCacheForValueActual(EntityValueBase evb, boolean isCreate) { clearCacheForValueActual(evb, isCreate, (Map<String, Object>) null) }
+    /** @param prevValueMap all field values before the change (update or delete) if known, used to clear only matching count cache entries */
+    void clearCacheForValueActual(EntityValueBase evb, boolean isCreate, Map<String, Object> prevValueMap) {
         // logger.info("====== clearCacheForValueActual isCreate=${isCreate}, evb: ${evb}")
         try {
             EntityDefinition ed = evb.getEntityDefinition()
@@ -193,20 +609,18 @@ class EntityCache {
                     // we've cleared all entries that this was referring to, so clean it out too
                     oneRaCache.remove(pkCondition)
                 }
-                // see if there are any cached entries with no result using the bf (brute-force) matching
-                Set<EntityCondition> bfKeySet = (Set<EntityCondition>) oneBfCache.get(fullEntityName)
-                if (bfKeySet != null && bfKeySet.size() > 0) {
-                    ArrayList<EntityCondition> keysToRemove = new ArrayList<EntityCondition>()
-                    Iterator<EntityCondition> bfKeySetIter = bfKeySet.iterator()
-                    while (bfKeySetIter.hasNext()) {
-                        EntityCondition bfKey = (EntityCondition) bfKeySetIter.next()
-                        if (bfKey.mapMatches(evbMap)) keysToRemove.add(bfKey)
-                    }
-                    int keysToRemoveSize = keysToRemove.size()
-                    for (int i = 0; i < keysToRemoveSize; i++) {
-                        EntityCondition key = (EntityCondition) keysToRemove.get(i)
-                        entityOneCache.remove(key)
-                        bfKeySet.remove(key)
+                // see if there are any cached entries with no result using the bf (brute-force) matching, only for
+                //     conditions indexed by this record's field values (and those that can't be indexed)
+                EntityConditionIndex bfIndex = (EntityConditionIndex) oneBfCache.get(fullEntityName)
+                if (bfIndex != null) {
+                    ArrayList<EntityCondition> candidateList = bfIndex.getCandidates(evbMap)
+                    int candidateListSize = candidateList.size()
+                    for (int i = 0; i < candidateListSize; i++) {
+                        EntityCondition bfKey = (EntityCondition) candidateList.get(i)
+                        if (bfKey.mapMatches(evbMap)) {
+                            entityOneCache.remove(bfKey)
+                            bfIndex.remove(bfKey)
+                        }
                     }
                 }
             }
@@ -238,16 +652,23 @@ class EntityCache {
 
                 Cache<EntityCondition, EntityListImpl> entityListCache = ed.getCacheList(this)
 
-                // if this was a create the RA cache won't help, so go through EACH entry and see if it matches the created value
+                // if this was a create the RA cache won't help, so check each entry that could match the created value
                 // The RA cache doesn't work for updates in the scenario where a record exists but its fields don't
                 //     match a find condition when the cached list find is initially done, but is then updated so the
                 //     fields do match
-                Iterator<Cache.Entry<EntityCondition, EntityListImpl>> elcIterator = entityListCache.iterator()
-                while (elcIterator.hasNext()) {
-                    Cache.Entry<EntityCondition, EntityListImpl> entry = (Cache.Entry<EntityCondition, EntityListImpl>) elcIterator.next()
-                    EntityCondition ec = (EntityCondition) entry.getKey()
-                    // any way to efficiently clear out the RA cache for these? for now just leave and they are handled eventually
-                    if (ec.mapMatches(evbMap)) entityListCache.remove(ec)
+                // all conditions put in the list cache are in the index, get those that might match instead of checking every entry
+                EntityConditionIndex listIndex = listCacheIndexByEntity.get(fullEntityName)
+                if (listIndex != null) {
+                    ArrayList<EntityCondition> candidateList = listIndex.getCandidates(evbMap)
+                    int candidateListSize = candidateList.size()
+                    for (int i = 0; i < candidateListSize; i++) {
+                        EntityCondition ec = (EntityCondition) candidateList.get(i)
+                        // any way to efficiently clear out the RA cache for these? for now just leave and they are handled eventually
+                        if (ec.mapMatches(evbMap)) {
+                            entityListCache.remove(ec)
+                            listIndex.remove(ec)
+                        }
+                    }
                 }
 
                 // if this is an update also check reverse associations (RA) as the condition check above may not match
@@ -339,35 +760,54 @@ class EntityCache {
             String countKey = countKeyBase.concat(fullEntityName)
             if (localCacheMap.containsKey(countKey)) {
                 Cache<EntityCondition, Long> entityCountCache = ed.getCacheCount(this)
-                // with so little information about count cache results we can't do RA and checking conditions fails to clear in
-                //     cases where a value no longer matches, would handle newly matched clearing where count increases but not no
-                //     longer matches cases where count decreases
-                // no choice but to clear the whole cache
-                entityCountCache.clear()
-                /*
-                Iterator<Cache.Entry<EntityCondition, Long>> eccIterator = entityCountCache.iterator()
-                while (eccIterator.hasNext()) {
-                    Cache.Entry<EntityCondition, Long> entry = (Cache.Entry<EntityCondition, Long>) eccIterator.next()
-                    EntityCondition ec = (EntityCondition) entry.getKey()
-                    logger.warn("checking count condition: ${ec.toString()} matches? ${ec.mapMatchesAny(evbMap) || ec.mapKeysNotContained(evbMap)}")
-                    if (ec.mapMatchesAny(evbMap) || ec.mapKeysNotContained(evbMap)) eccIterator.remove()
+                EntityConditionIndex countIndex = countCacheIndexByEntity.get(fullEntityName)
+                if (!isCreate && prevValueMap == null) {
+                    // without the values before an update the record may have matched any condition and the count will
+                    //     go down when it no longer matches, so no choice but to clear the whole cache
+                    entityCountCache.clear()
+                    if (countIndex != null) countIndex.clear()
+                } else if (countIndex != null) {
+                    // a count changes only if the record matches the condition after (create, update) or before (update, delete)
+                    clearCountMatches(entityCountCache, countIndex, evbMap)
+                    if (!isCreate && !prevValueMap.is(evbMap)) clearCountMatches(entityCountCache, countIndex, prevValueMap)
                 }
-                */
             }
         } catch (Throwable t) {
             logger.error("Suppressed error in entity cache clearing [${evb.resolveEntityName()}; ${isCreate ? 'create' : 'non-create'}]", t)
         }
     }
+    protected static void clearCountMatches(Cache<EntityCondition, Long> entityCountCache, EntityConditionIndex countIndex, Map<String, Object> valueMap) {
+        ArrayList<EntityCondition> candidateList = countIndex.getCandidates(valueMap)
+        int candidateListSize = candidateList.size()
+        for (int i = 0; i < candidateListSize; i++) {
+            EntityCondition ec = (EntityCondition) candidateList.get(i)
+            if (ec.mapMatches(valueMap)) {
+                entityCountCache.remove(ec)
+                countIndex.remove(ec)
+            }
+        }
+    }
+    /** Values before a change for count cache clearing only if all fields are known (like a record read from the database), otherwise null */
+    static Map<String, Object> completeValueMap(EntityDefinition ed, Map<String, Object> valueMap) {
+        if (valueMap == null) return null
+        FieldInfo[] allFieldInfoArray = ed.entityInfo.allFieldInfoArray
+        for (int i = 0; i < allFieldInfoArray.length; i++) if (!valueMap.containsKey(allFieldInfoArray[i].name)) return null
+        return valueMap
+    }
+
     void registerCacheOneRa(String entityName, EntityCondition ec, EntityValueBase evb) {
         // don't skip it for null values because we're caching those too: if (evb == null) return
         if (evb == null) {
             // can't use RA cache because we don't know the PK, so use a brute-force cache but keep it separate to perform better
-            Set<EntityCondition> bfKeySet = (Set<EntityCondition>) oneBfCache.get(entityName)
-            if (bfKeySet == null) {
-                bfKeySet = ConcurrentHashMap.newKeySet()
-                oneBfCache.put(entityName, bfKeySet)
+            EntityConditionIndex bfIndex = (EntityConditionIndex) oneBfCache.get(entityName)
+            if (bfIndex == null) {
+                bfIndex = new EntityConditionIndex()
+                if (!oneBfCache.putIfAbsent(entityName, bfIndex)) {
+                    EntityConditionIndex existing = (EntityConditionIndex) oneBfCache.get(entityName)
+                    if (existing != null) bfIndex = existing
+                }
             }
-            bfKeySet.add(ec)
+            bfIndex.addAndPrune(ec, efi.getEntityDefinition(entityName).getCacheOne(this))
         } else {
             EntityDefinition ed = evb.getEntityDefinition()
             Cache<EntityCondition, Set<EntityCondition>> oneRaCache = ed.getCacheOneRa(this)
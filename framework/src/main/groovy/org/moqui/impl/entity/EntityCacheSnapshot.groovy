@@ -0,0 +1,260 @@
+/*
+ * This software is in the public domain under CC0 1.0 Universal plus a
+ * Grant of Patent License.
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication
+ * along with this software (see the LICENSE.md file). If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package org.moqui.impl.entity
+
+import groovy.transform.CompileStatic
+import org.moqui.entity.EntityCondition
+import org.moqui.entity.EntityList
+import org.moqui.entity.EntityValue
+import org.moqui.impl.context.ExecutionContextImpl
+import org.moqui.util.LiteStringMap
+import org.moqui.util.MNode
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import javax.cache.Cache
+import java.sql.Timestamp
+import java.util.concurrent.Future
+import java.util.zip.GZIPInputStream
+import java.util.zip.GZIPOutputStream
+
+/** Save and restore entity one and list cache entries so a node starts with warm caches, and preload all records of
+ * small reference entities into the one cache. Configured with entity-facade.@cache-snapshot-file and cache-warm
+ * elements.
+ *
+ * For each entity the snapshot has the max lastUpdatedStamp and record count from the database when saved. On restore
+ * these are checked against the database and if either is different the entity changed since the snapshot (update or
+ * create changes the max stamp, delete changes the count) and its entries are not restored. Only entities with a
+ * lastUpdatedStamp field are saved. Values are written with the entity-aware field encoding used for distributed
+ * cache invalidate, and read with the EntityFacade so this can run before Moqui.getExecutionContextFactory() is set. */
+@CompileStatic
+class EntityCacheSnapshot {
+    protected final static Logger logger = LoggerFactory.getLogger(EntityCacheSnapshot.class)
+    static final int formatVersion = 1
+
+    protected final EntityFacadeImpl efi
+    protected final EntityCache entityCache
+
+    EntityCacheSnapshot(EntityFacadeImpl efi) {
+        this.efi = efi
+        this.entityCache = efi.getEntityCache()
+    }
+
+    File getSnapshotFile() {
+        String location = efi.getEntityFacadeNode().attribute("cache-snapshot-file")
+        if (!location) return (File) null
+        File file = new File(location)
+        if (!file.isAbsolute()) file = new File(efi.ecfi.getRuntimePath(), location)
+        return file
+    }
+    ArrayList<String> getWarmEntityNames(String attrName, String defaultValue) {
+        ArrayList<String> entityNames = new ArrayList<>()
+        for (MNode cacheWarmNode in efi.getEntityFacadeNode().children("cache-warm")) {
+            String attrValue = cacheWarmNode.attribute(attrName) ?: defaultValue
+            if (!"true".equals(attrValue)) continue
+            String entityName = cacheWarmNode.attribute("entity-name")
+            EntityDefinition ed = efi.getEntityDefinition(entityName)
+            if (ed == null) { logger.warn("Entity ${entityName} not found for cache-warm"); continue }
+            if (ed.entityInfo.neverCache) { logger.warn("Entity ${entityName} is never cache, not warming"); continue }
+            entityNames.add(ed.getFullEntityName())
+        }
+        return entityNames
+    }
+
+    /** Save cache entries for cache-warm entities with snapshot=true, returns number of entries saved */
+    int save() {
+        File file = getSnapshotFile()
+        if (file == null) return 0
+        ArrayList<String> entityNames = getWarmEntityNames("snapshot", "true")
+        if (entityNames.isEmpty()) return 0
+
+        long startTime = System.currentTimeMillis()
+        int entryCount = 0
+        File tempFile = new File(file.getPath() + ".tmp")
+        if (file.getParentFile() != null) file.getParentFile().mkdirs()
+        ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile))))
+        try {
+            out.writeInt(formatVersion)
+            for (String entityName in entityNames) {
+                EntityDefinition ed = efi.getEntityDefinition(entityName)
+                if (ed.entityInfo.lastUpdatedStampInfo == null || ed.isViewEntity) continue
+                out.writeBoolean(true)
+                out.writeUTF(entityName)
+                out.writeLong(getMaxStamp(ed))
+                out.writeLong(getRecordCount(ed))
+
+                ArrayList<Cache.Entry<EntityCondition, EntityValueBase>> oneEntries = new ArrayList<>()
+                if (efi.ecfi.cacheFacade.localCacheMap.containsKey(EntityCache.oneKeyBase.concat(entityName))) {
+                    for (Cache.Entry<EntityCondition, EntityValueBase> entry in ed.getCacheOne(entityCache))
+                        if (!(entry.getValue() instanceof EntityCache.EmptyRecord)) oneEntries.add(entry)
+                }
+                out.writeInt(oneEntries.size())
+                for (Cache.Entry<EntityCondition, EntityValueBase> entry in oneEntries) {
+                    out.writeObject(entry.getKey())
+                    writeValue(out, ed, entry.getValue())
+                }
+
+                ArrayList<Cache.Entry<EntityCondition, EntityListImpl>> listEntries = new ArrayList<>()
+                if (efi.ecfi.cacheFacade.localCacheMap.containsKey(EntityCache.listKeyBase.concat(entityName))) {
+                    for (Cache.Entry<EntityCondition, EntityListImpl> entry in ed.getCacheList(entityCache)) listEntries.add(entry)
+                }
+                out.writeInt(listEntries.size())
+                for (Cache.Entry<EntityCondition, EntityListImpl> entry in listEntries) {
+                    out.writeObject(entry.getKey())
+                    EntityListImpl el = entry.getValue()
+                    int elSize = el.size()
+                    out.writeInt(elSize)
+                    for (int i = 0; i < elSize; i++) writeValue(out, ed, (EntityValueBase) el.get(i))
+                }
+                entryCount += oneEntries.size() + listEntries.size()
+            }
+            out.writeBoolean(false)
+        } finally {
+            out.close()
+        }
+        if (file.exists()) file.delete()
+        if (!tempFile.renameTo(file)) logger.warn("Could not rename entity cache snapshot ${tempFile.getPath()} to ${file.getPath()}")
+        logger.info("Saved entity cache snapshot with ${entryCount} entries for ${entityNames.size()} entities in ${System.currentTimeMillis() - startTime}ms")
+        return entryCount
+    }
+
+    /** Restore cache entries from the snapshot file for entities not changed since it was saved, returns number of entries restored */
+    int restore() {
+        File file = getSnapshotFile()
+        if (file == null || !file.exists()) return 0
+        long startTime = System.currentTimeMillis()
+        int entryCount = 0
+        int skippedCount = 0
+        ObjectInputStream objectInput = new ObjectInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))))
+        try {
+            if (objectInput.readInt() != formatVersion) { logger.warn("Entity cache snapshot ${file.getPath()} has old format, not restoring"); return 0 }
+            while (objectInput.readBoolean()) {
+                String entityName = objectInput.readUTF()
+                long maxStamp = objectInput.readLong()
+                long recordCount = objectInput.readLong()
+                EntityDefinition ed = efi.getEntityDefinition(entityName)
+                // read all entries to get to the next entity even if not used
+                boolean useEntity = ed != null && !ed.entityInfo.neverCache && ed.entityInfo.lastUpdatedStampInfo != null &&
+                        getMaxStamp(ed) == maxStamp && getRecordCount(ed) == recordCount
+                if (ed != null && !useEntity) logger.info("Entity ${entityName} changed since cache snapshot, not restoring")
+
+                int oneSize = objectInput.readInt()
+                Cache<EntityCondition, EntityValueBase> oneCache = useEntity && oneSize > 0 ? ed.getCacheOne(entityCache) : (Cache<EntityCondition, EntityValueBase>) null
+                for (int i = 0; i < oneSize; i++) {
+                    EntityCondition cond = (EntityCondition) objectInput.readObject()
+                    EntityValueBase evb = readValue(objectInput, ed, efi)
+                    if (useEntity) { entityCache.putInOneCache(ed, cond, evb, oneCache); entryCount++ }
+                    else skippedCount++
+                }
+                int listSize = objectInput.readInt()
+                Cache<EntityCondition, EntityListImpl> listCache = useEntity && listSize > 0 ? ed.getCacheList(entityCache) : (Cache<EntityCondition, EntityListImpl>) null
+                for (int i = 0; i < listSize; i++) {
+                    EntityCondition cond = (EntityCondition) objectInput.readObject()
+                    int elSize = objectInput.readInt()
+                    EntityListImpl el = new EntityListImpl(efi, elSize)
+                    for (int j = 0; j < elSize; j++) el.add(readValue(objectInput, ed, efi))
+                    if (useEntity) { entityCache.putInListCache(ed, el, cond, listCache); entryCount++ }
+                    else skippedCount++
+                }
+            }
+        } catch (Throwable t) {
+            logger.warn("Error restoring entity cache snapshot ${file.getPath()}, restored ${entryCount} entries: ${t.toString()}")
+        } finally {
+            objectInput.close()
+        }
+        logger.info("Restored ${entryCount} entity cache entries (${skippedCount} changed since snapshot) in ${System.currentTimeMillis() - startTime}ms")
+        return entryCount
+    }
+
+    /** Load all records for cache-warm entities with preload=true into the one cache, in parallel on the worker pool */
+    int preload() {
+        ArrayList<String> entityNames = getWarmEntityNames("preload", "false")
+        if (entityNames.isEmpty()) return 0
+        long startTime = System.currentTimeMillis()
+        ArrayList<Future<?>> futureList = new ArrayList<>(entityNames.size())
+        int[] counts = new int[entityNames.size()]
+        for (int i = 0; i < entityNames.size(); i++) {
+            final int entityIndex = i
+            final String entityName = entityNames.get(i)
+            futureList.add(efi.ecfi.workerPool.submit(new ExecutionContextImpl.ThreadPoolRunnable(efi.ecfi, {
+                counts[entityIndex] = preloadEntity(entityName)
+            })))
+        }
+        int recordCount = 0
+        for (int i = 0; i < futureList.size(); i++) {
+            try {
+                futureList.get(i).get()
+                recordCount += counts[i]
+            } catch (Throwable t) {
+                logger.warn("Error preloading entity cache for ${entityNames.get(i)}: ${t.toString()}")
+            }
+        }
+        logger.info("Preloaded ${recordCount} records for ${entityNames.size()} entities in ${System.currentTimeMillis() - startTime}ms")
+        return recordCount
+    }
+    protected int preloadEntity(String entityName) {
+        EntityDefinition ed = efi.getEntityDefinition(entityName)
+        Cache<EntityCondition, EntityValueBase> oneCache = ed.getCacheOne(entityCache)
+        EntityList valueList = efi.find(entityName).useCache(false).disableAuthz().list()
+        int valueListSize = valueList.size()
+        for (int i = 0; i < valueListSize; i++) {
+            EntityValueBase evb = (EntityValueBase) valueList.get(i)
+            // same condition as used for cache clear by primary key
+            entityCache.putInOneCache(ed, efi.getConditionFactory().makeCondition(evb.getPrimaryKeys()), evb, oneCache)
+        }
+        return valueListSize
+    }
+
+    protected long getMaxStamp(EntityDefinition ed) {
+        String stampName = ed.entityInfo.lastUpdatedStampInfo.name
+        EntityValue maxValue = efi.find(ed.getFullEntityName()).condition(stampName, EntityCondition.IS_NOT_NULL, null)
+                .selectField(stampName).orderBy("-" + stampName).limit(1).useCache(false).disableAuthz().one()
+        Timestamp maxStamp = maxValue != null ? (Timestamp) maxValue.get(stampName) : (Timestamp) null
+        return maxStamp != null ? maxStamp.getTime() : 0L
+    }
+    protected long getRecordCount(EntityDefinition ed) {
+        return efi.find(ed.getFullEntityName()).useCache(false).disableAuthz().count()
+    }
+
+    protected static void writeValue(ObjectOutput out, EntityDefinition ed, EntityValueBase evb) throws IOException {
+        FieldInfo[] allFieldInfoArray = ed.entityInfo.allFieldInfoArray
+        LiteStringMap<Object> valueMap = evb.getValueMap()
+        int fieldCount = 0
+        for (int i = 0; i < allFieldInfoArray.length; i++) {
+            FieldInfo fi = allFieldInfoArray[i]
+            if (valueMap.containsKeyIString(fi.name, fi.index)) fieldCount++
+        }
+        out.writeShort(fieldCount)
+        for (int i = 0; i < allFieldInfoArray.length; i++) {
+            FieldInfo fi = allFieldInfoArray[i]
+            if (!valueMap.containsKeyIString(fi.name, fi.index)) continue
+            out.writeUTF(fi.name)
+            EntityCache.EntityCacheInvalidateBatch.writeFieldValue(out, valueMap.getByIString(fi.name, fi.index))
+        }
+    }
+    /** Read a value written by writeValue(), if ed is null (entity no longer exists) reads and returns null */
+    protected static EntityValueBase readValue(ObjectInput objectInput, EntityDefinition ed, EntityFacadeImpl efi) throws IOException, ClassNotFoundException {
+        EntityValueImpl evb = ed != null ? new EntityValueImpl(ed, efi) : (EntityValueImpl) null
+        int fieldCount = objectInput.readShort()
+        for (int i = 0; i < fieldCount; i++) {
+            String fieldName = objectInput.readUTF()
+            Object value = EntityCache.EntityCacheInvalidateBatch.readFieldValue(objectInput)
+            FieldInfo fi = ed != null ? ed.getFieldInfo(fieldName) : (FieldInfo) null
+            if (fi != null) evb.getValueMap().putByIString(fi.name, value, fi.index)
+        }
+        // same state as a value read from the database
+        if (evb != null) evb.setSyncedWithDb()
+        return evb
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * This software is in the public domain under CC0 1.0 Universal plus a
+ * Grant of Patent License.
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication
+ * along with this software (see the LICENSE.md file). If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package org.moqui.impl.entity
+
+import groovy.transform.CompileStatic
+import org.moqui.entity.EntityValue
+import org.moqui.impl.context.ExecutionContextFactoryImpl
+import org.moqui.jcache.MValueCodec
+
+import javax.cache.CacheException
+
+/** MCache off-heap codec for entity cache values. EntityValueBase (including EmptyRecord) and EntityListImpl are
+ * written as the entity name plus typed field values (same encoding as EntityCacheSnapshot) and decoded as values from
+ * cache (not mutable); Strings are written with writeUTF, other values with Java serialization. */
+@CompileStatic
+class EntityCacheValueCodec implements MValueCodec<Object> {
+    static final int otherType = 0
+    static final int valueType = 1
+    static final int emptyRecordType = 2
+    static final int listType = 3
+    static final int stringType = 4
+
+    protected final ExecutionContextFactoryImpl ecfi
+
+    EntityCacheValueCodec(ExecutionContextFactoryImpl ecfi) { this.ecfi = ecfi }
+
+    @Override
+    byte[] encode(Object value) {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(256)
+            ObjectOutputStream out = new ObjectOutputStream(baos)
+            if (value instanceof EntityCache.EmptyRecord) {
+                EntityCache.EmptyRecord emptyRecord = (EntityCache.EmptyRecord) value
+                out.writeByte(emptyRecordType)
+                out.writeUTF(emptyRecord.getEntityDefinition().getFullEntityName())
+                out.writeLong(emptyRecord.cacheVersion)
+            } else if (value instanceof EntityValueBase) {
+                EntityDefinition ed = ((EntityValueBase) value).getEntityDefinition()
+                out.writeByte(valueType)
+                out.writeUTF(ed.getFullEntityName())
+                EntityCacheSnapshot.writeValue(out, ed, (EntityValueBase) value)
+            } else if (value instanceof EntityListImpl && isSingleEntityList((EntityListImpl) value)) {
+                EntityListImpl el = (EntityListImpl) value
+                int elSize = el.size()
+                out.writeByte(listType)
+                out.writeInt(elSize)
+                if (elSize > 0) {
+                    EntityDefinition ed = ((EntityValueBase) el.get(0)).getEntityDefinition()
+                    out.writeUTF(ed.getFullEntityName())
+                    for (int i = 0; i < elSize; i++) EntityCacheSnapshot.writeValue(out, ed, (EntityValueBase) el.get(i))
+                }
+            } else if (value instanceof String && ((String) value).length() <= EntityCache.EntityCacheInvalidateBatch.maxUtfChars) {
+                out.writeByte(stringType)
+                out.writeUTF((String) value)
+            } else {
+                out.writeByte(otherType)
+                out.writeObject(value)
+            }
+            out.close()
+            return baos.toByteArray()
+        } catch (IOException e) {
+            throw new CacheException("Error encoding entity cache value of type ${value?.getClass()?.getName()}", e)
+        }
+    }
+
+    @Override
+    Object decode(byte[] bytes) {
+        EntityFacadeImpl efi = ecfi.entityFacade
+        try {
+            ObjectInputStream objectInput = new ObjectInputStream(new ByteArrayInputStream(bytes))
+            int type = objectInput.readByte()
+            switch (type) {
+                case emptyRecordType:
+                    EntityCache.EmptyRecord emptyRecord = new EntityCache.EmptyRecord(efi.getEntityDefinition(objectInput.readUTF()), efi)
+                    emptyRecord.cacheVersion = objectInput.readLong()
+                    return emptyRecord
+                case valueType:
+                    EntityValueBase evb = EntityCacheSnapshot.readValue(objectInput, efi.getEntityDefinition(objectInput.readUTF()), efi)
+                    if (evb != null) evb.setFromCache()
+                    return evb
+                case listType:
+                    int elSize = objectInput.readInt()
+                    EntityListImpl el = new EntityListImpl(efi, elSize)
+                    if (elSize > 0) {
+                        EntityDefinition ed = efi.getEntityDefinition(objectInput.readUTF())
+                        // entity no longer exists, consider a miss
+                        if (ed == null) return null
+                        for (int i = 0; i < elSize; i++) el.add(EntityCacheSnapshot.readValue(objectInput, ed, efi))
+                    }
+                    el.setFromCache()
+                    return el
+                case stringType:
+                    return objectInput.readUTF()
+                default:
+                    return objectInput.readObject()
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            throw new CacheException("Error decoding entity cache value", e)
+        }
+    }
+
+    protected static boolean isSingleEntityList(EntityListImpl el) {
+        int elSize = el.size()
+        EntityDefinition ed = (EntityDefinition) null
+        for (int i = 0; i < elSize; i++) {
+            EntityValue ev = el.get(i)
+            if (!(ev instanceof EntityValueBase)) return false
+            EntityDefinition curEd = ((EntityValueBase) ev).getEntityDefinition()
+            if (ed == null) ed = curEd
+            else if (!ed.is(curEd)) return false
+        }
+        return true
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * This software is in the public domain under CC0 1.0 Universal plus a
+ * Grant of Patent License.
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication
+ * along with this software (see the LICENSE.md file). If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package org.moqui.impl.entity;
+
+import org.moqui.entity.EntityValue;
+import org.moqui.jcache.MWeigher;
+import org.moqui.util.LiteStringMap;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Map;
+
+/** Default MWeigher for MCache, an estimate in bytes of heap used by an entry with detail for entity values and lists,
+ * Strings, and common field value types. Entity field names are interned and shared so not counted. Other objects
+ * (like conditions used as keys, and conf and artifact cache values) get a fixed estimate, use a custom weigher to do
+ * better for those. */
+public class EntityCacheWeigher implements MWeigher<Object, Object> {
+    /** MEntry, ConcurrentHashMap node, and a table slot */
+    static final int entryOverhead = 96;
+    static final int objectEstimate = 64;
+
+    @Override
+    public int weigh(Object key, Object value) {
+        long weight = entryOverhead + estimate(key) + estimate(value);
+        return weight > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) weight;
+    }
+
+    public static long estimate(Object value) {
+        if (value == null) return 0;
+        if (value instanceof String) return estimateString((String) value);
+        if (value instanceof EntityValueBase) return estimateValue((EntityValueBase) value);
+        if (value instanceof EntityListImpl) {
+            EntityListImpl el = (EntityListImpl) value;
+            int elSize = el.size();
+            // EntityListImpl, ArrayList, and array
+            long weight = 72 + 4L * elSize;
+            for (int i = 0; i < elSize; i++) weight += estimate(el.get(i));
+            return weight;
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Double || value instanceof Boolean) return 16;
+        if (value instanceof BigDecimal) return 40;
+        if (value instanceof java.util.Date) return 32;
+        if (value instanceof Collection) {
+            // per element: a reference plus a map/list node, elements themselves often shared so use the fixed estimate
+            Collection<?> coll = (Collection<?>) value;
+            return 48 + 40L * coll.size();
+        }
+        if (value instanceof Map && !(value instanceof EntityValue)) return 48 + 48L * ((Map<?, ?>) value).size();
+        return objectEstimate;
+    }
+    public static long estimateString(String str) {
+        // String plus byte array, assume compact (Latin-1) most of the time
+        return 40 + str.length();
+    }
+    public static long estimateValue(EntityValueBase evb) {
+        LiteStringMap<Object> valueMap = evb.getValueMap();
+        int size = valueMap.size();
+        // EntityValueImpl and LiteStringMap with key and value arrays
+        long weight = 160 + 8L * size;
+        for (int i = 0; i < size; i++) weight += estimate(valueMap.getValue(i));
+        return weight;
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * This software is in the public domain under CC0 1.0 Universal plus a
+ * Grant of Patent License.
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication
+ * along with this software (see the LICENSE.md file). If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package org.moqui.impl.entity
+
+import groovy.transform.CompileStatic
+import org.moqui.util.MNode
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import java.sql.Connection
+import java.sql.PreparedStatement
+import java.sql.ResultSet
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ThreadLocalRandom
+
+/** Chooses a datasource clone (group-name like 'group#clone') for useClone finds based on recent query latency,
+ * error rate and (optionally) replication lag. Clones with repeated errors are ejected for a short time, clones
+ * lagging more than max-lag-seconds are skipped, and if no clone is usable the base group (primary) is used. */
+@CompileStatic
+class EntityCloneRouter {
+    protected final static Logger logger = LoggerFactory.getLogger(EntityCloneRouter.class)
+
+    /** weight of the newest sample in the latency and error rate moving averages */
+    static final double ewmaAlpha = 0.2d
+    /** consecutive errors (query or connection) before a clone is ejected */
+    static final int ejectErrorCount = 5
+    static final long ejectMillis = 30000L
+    /** clones with an error rate average above this are ejected even without consecutive errors */
+    static final double ejectErrorRate = 0.5d
+    static final long lagProbeSeconds = 10L
+
+    protected final EntityFacadeImpl efi
+    protected final ConcurrentHashMap<String, CloneStats> statsByGroup = new ConcurrentHashMap<>()
+
+    EntityCloneRouter(EntityFacadeImpl efi) { this.efi = efi }
+
+    static class CloneStats {
+        final String groupName
+        String lagQuery = null
+        double maxLagSeconds = 30.0d
+
+        volatile double latencyMillis = -1.0d
+        volatile double errorRate = 0.0d
+        volatile int consecutiveErrors = 0
+        volatile long ejectedUntil = 0L
+        /** replication lag in seconds from the last probe, -1 if not known (no lag-query or probe failed) */
+        volatile double lagSeconds = -1.0d
+        volatile long lagCheckTime = 0L
+        volatile long queryCount = 0L
+        volatile long errorCount = 0L
+
+        CloneStats(String groupName) { this.groupName = groupName }
+
+        boolean isUsable(long now) {
+            if (ejectedUntil > now) return false
+            if (lagSeconds > maxLagSeconds) return false
+            return true
+        }
+
+        synchronized void recordQuery(long nanos, boolean isError) {
+            queryCount++
+            if (isError) {
+                errorCount++
+                errorRate = errorRate + ewmaAlpha * (1.0d - errorRate)
+                consecutiveErrors++
+                if (consecutiveErrors >= ejectErrorCount || (queryCount >= ejectErrorCount && errorRate > ejectErrorRate)) eject()
+            } else {
+                double sampleMillis = nanos / 1000000.0d
+                latencyMillis = latencyMillis < 0 ? sampleMillis : latencyMillis + ewmaAlpha * (sampleMillis - latencyMillis)
+                errorRate = errorRate * (1.0d - ewmaAlpha)
+                consecutiveErrors = 0
+            }
+        }
+
+        protected void eject() {
+            long now = System.currentTimeMillis()
+            if (ejectedUntil > now) return
+            ejectedUntil = now + ejectMillis
+            logger.warn("Ejecting datasource clone ${groupName} for ${ejectMillis/1000}s, ${consecutiveErrors} consecutive errors, error rate ${errorRate}")
+            // start over once back in rotation so one more error does not immediately eject again
+            consecutiveErrors = 0
+            errorRate = ejectErrorRate / 2
+        }
+
+        Map<String, Object> getInfo() {
+            long now = System.currentTimeMillis()
+            return [group:groupName, latencyMillis:latencyMillis, errorRate:errorRate, lagSeconds:lagSeconds,
+                    maxLagSeconds:maxLagSeconds, usable:isUsable(now), ejectedUntil:(ejectedUntil > now ? ejectedUntil : null),
+                    queryCount:queryCount, errorCount:errorCount] as Map<String, Object>
+        }
+    }
+
+    /** Called for each datasource clone when initialized, reads lag-query and max-lag-seconds attributes */
+    void initClone(String cloneGroupName, MNode datasourceNode) {
+        CloneStats stats = getStats(cloneGroupName)
+        String lagQuery = datasourceNode.attribute("lag-query")
+        if (lagQuery != null && !lagQuery.isEmpty()) stats.lagQuery = lagQuery
+        String maxLagAttr = datasourceNode.attribute("max-lag-seconds")
+        if (maxLagAttr != null && !maxLagAttr.isEmpty()) stats.maxLagSeconds = Double.parseDouble(maxLagAttr)
+    }
+    boolean hasLagQuery() {
+        for (CloneStats stats in statsByGroup.values()) if (stats.lagQuery != null) return true
+        return false
+    }
+
+    CloneStats getStats(String cloneGroupName) {
+        CloneStats stats = statsByGroup.get(cloneGroupName)
+        if (stats == null) {
+            stats = new CloneStats(cloneGroupName)
+            CloneStats existing = statsByGroup.putIfAbsent(cloneGroupName, stats)
+            if (existing != null) stats = existing
+        }
+        return stats
+    }
+
+    void recordQuery(String cloneGroupName, long nanos, boolean isError) { getStats(cloneGroupName).recordQuery(nanos, isError) }
+    void recordError(String cloneGroupName) { getStats(cloneGroupName).recordQuery(0L, true) }
+
+    /** Pick one of cloneGroupNames weighted by inverse latency and success rate, or baseGroupName if none are usable */
+    String chooseClone(String baseGroupName, ArrayList<String> cloneGroupNames) {
+        int cloneNamesSize = cloneGroupNames.size()
+        long now = System.currentTimeMillis()
+
+        // clones with no samples yet get the average latency of the others so they get a fair share of traffic
+        double latencyTotal = 0.0d
+        int latencyCount = 0
+        CloneStats[] statsArray = new CloneStats[cloneNamesSize]
+        for (int i = 0; i < cloneNamesSize; i++) {
+            CloneStats stats = getStats(cloneGroupNames.get(i))
+            statsArray[i] = stats
+            if (stats.latencyMillis >= 0) { latencyTotal += stats.latencyMillis; latencyCount++ }
+        }
+        double defaultLatency = latencyCount > 0 ? latencyTotal / latencyCount : 0.0d
+
+        double[] weights = new double[cloneNamesSize]
+        double weightTotal = 0.0d
+        for (int i = 0; i < cloneNamesSize; i++) {
+            CloneStats stats = statsArray[i]
+            if (!stats.isUsable(now)) continue
+            double latency = stats.latencyMillis >= 0 ? stats.latencyMillis : defaultLatency
+            // add 1ms so very fast clones don't get near infinite weight
+            double weight = (1.0d - stats.errorRate) / (latency + 1.0d)
+            // prefer clones closer to the primary, down to half weight at max lag
+            if (stats.lagSeconds > 0) weight = weight * (1.0d - (stats.lagSeconds / stats.maxLagSeconds) / 2)
+            weights[i] = weight
+            weightTotal += weight
+        }
+
+        if (weightTotal <= 0.0d) {
+            if (logger.isTraceEnabled()) logger.trace("No usable datasource clone for ${baseGroupName}, using primary")
+            return baseGroupName
+        }
+
+        double pick = ThreadLocalRandom.current().nextDouble(weightTotal)
+        int lastUsable = -1
+        for (int i = 0; i < cloneNamesSize; i++) {
+            if (weights[i] <= 0.0d) continue
+            lastUsable = i
+            pick -= weights[i]
+            if (pick < 0.0d) return cloneGroupNames.get(i)
+        }
+        // only for floating point rounding
+        return cloneGroupNames.get(lastUsable)
+    }
+
+    /** Run the lag-query for each clone that has one, scheduled by EntityFacadeImpl */
+    void probeLag() {
+        for (CloneStats stats in statsByGroup.values()) {
+            if (stats.lagQuery == null) continue
+            try {
+                Object lagObj = efi.ecfi.transactionFacade.runUseOrBegin(30, "Error in datasource clone lag probe", {
+                    Connection con = efi.getConnection(stats.groupName, false)
+                    PreparedStatement ps = con.prepareStatement(stats.lagQuery)
+                    try {
+                        ResultSet rs = ps.executeQuery()
+                        try { return rs.next() ? rs.getObject(1) : null } finally { rs.close() }
+                    } finally { ps.close() }
+                })
+                double lag = lagObj instanceof Number ? ((Number) lagObj).doubleValue() :
+                        (lagObj != null ? Double.parseDouble(lagObj.toString()) : 0.0d)
+                if (lag > stats.maxLagSeconds && stats.lagSeconds <= stats.maxLagSeconds)
+                    logger.warn("Datasource clone ${stats.groupName} lag ${lag}s is over max ${stats.maxLagSeconds}s, not using until caught up")
+                stats.lagSeconds = lag
+            } catch (Throwable t) {
+                // lag not known, treat like a query error so a clone that can't be reached gets ejected
+                stats.lagSeconds = -1.0d
+                stats.recordQuery(0L, true)
+                logger.warn("Error checking lag for datasource clone ${stats.groupName}: ${t.toString()}")
+            }
+            stats.lagCheckTime = System.currentTimeMillis()
+        }
+    }
+
+    static class LagProbeRunnable implements Runnable {
+        final EntityCloneRouter router
+        LagProbeRunnable(EntityCloneRouter router) { this.router = router }
+        @Override void run() { router.probeLag() }
+    }
+
+    List<Map<String, Object>> getCloneInfoList() {
+        List<Map<String, Object>> infoList = new ArrayList<>(statsByGroup.size())
+        for (CloneStats stats in statsByGroup.values()) infoList.add(stats.getInfo())
+        return infoList
+    }
+}
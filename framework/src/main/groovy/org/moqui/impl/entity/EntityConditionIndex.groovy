@@ -0,0 +1,177 @@
+/*
+ * This software is in the public domain under CC0 1.0 Universal plus a
+ * Grant of Patent License.
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication
+ * along with this software (see the LICENSE.md file). If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package org.moqui.impl.entity
+
+import groovy.transform.CompileStatic
+import org.moqui.entity.EntityCondition
+import org.moqui.impl.entity.condition.ConditionAlias
+import org.moqui.impl.entity.condition.FieldValueCondition
+import org.moqui.impl.entity.condition.ListCondition
+
+import javax.cache.Cache
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+/** Inverted index of cache key conditions for one entity, used in EntityCache to find the conditions a changed record
+ * could match without calling mapMatches() on every cached condition.
+ *
+ * Conditions with an equals (or in) comparison on a field, alone or in a top-level AND, are indexed by field name and
+ * value since a record can only match if it has that value. All other conditions go in a residual set that is always
+ * checked. Values are indexed by a String key that is the same for values that are == in Groovy (like Long 1 and
+ * BigDecimal 1.0) so the index returns a superset of what mapMatches() would match, never less. */
+@CompileStatic
+class EntityConditionIndex {
+    /** remove conditions no longer in the cache (evicted, expired) after this many adds */
+    static final int pruneAddCount = 1000
+
+    protected final ConcurrentHashMap<String, ConcurrentHashMap<String, Set<EntityCondition>>> byFieldValue = new ConcurrentHashMap<>()
+    protected final Set<EntityCondition> residualSet = ConcurrentHashMap.newKeySet()
+    protected final AtomicInteger addsSincePrune = new AtomicInteger(0)
+
+    void add(EntityCondition cond) {
+        FieldValueCondition fvc = getIndexCondition(cond)
+        if (fvc == null) { residualSet.add(cond); return }
+
+        String fieldName = fvc.getFieldName()
+        ConcurrentHashMap<String, Set<EntityCondition>> byValue = byFieldValue.get(fieldName)
+        if (byValue == null) {
+            byValue = new ConcurrentHashMap<>()
+            ConcurrentHashMap<String, Set<EntityCondition>> existing = byFieldValue.putIfAbsent(fieldName, byValue)
+            if (existing != null) byValue = existing
+        }
+        for (String valueKey in getValueKeys(fvc)) {
+            Set<EntityCondition> condSet = byValue.get(valueKey)
+            if (condSet == null) {
+                condSet = ConcurrentHashMap.newKeySet()
+                Set<EntityCondition> existing = byValue.putIfAbsent(valueKey, condSet)
+                if (existing != null) condSet = existing
+            }
+            condSet.add(cond)
+        }
+    }
+
+    void remove(EntityCondition cond) {
+        FieldValueCondition fvc = getIndexCondition(cond)
+        if (fvc == null) { residualSet.remove(cond); return }
+
+        ConcurrentHashMap<String, Set<EntityCondition>> byValue = byFieldValue.get(fvc.getFieldName())
+        if (byValue == null) return
+        for (String valueKey in getValueKeys(fvc)) {
+            Set<EntityCondition> condSet = byValue.get(valueKey)
+            if (condSet == null) continue
+            condSet.remove(cond)
+            // another thread may add between these, if so it just goes in a new Set
+            if (condSet.isEmpty()) byValue.remove(valueKey, condSet)
+        }
+    }
+
+    /** Conditions that could match the record in valueMap: those indexed by its values plus all residual conditions */
+    ArrayList<EntityCondition> getCandidates(Map<String, Object> valueMap) {
+        ArrayList<EntityCondition> candidates = new ArrayList<>(residualSet)
+        for (Map.Entry<String, ConcurrentHashMap<String, Set<EntityCondition>>> entry in byFieldValue.entrySet()) {
+            Object fieldValue = valueMap.get(entry.getKey())
+            if (fieldValue == null) continue
+            String valueKey = makeValueKey(fieldValue)
+            if (valueKey == null) continue
+            Set<EntityCondition> condSet = entry.getValue().get(valueKey)
+            if (condSet != null) candidates.addAll(condSet)
+        }
+        return candidates
+    }
+
+    /** Call after putting a condition in the cache, every pruneAddCount calls removes conditions not in the cache */
+    void addAndPrune(EntityCondition cond, Cache<EntityCondition, ?> cache) {
+        add(cond)
+        if (addsSincePrune.incrementAndGet() < pruneAddCount) return
+        addsSincePrune.set(0)
+        Iterator<EntityCondition> residualIter = residualSet.iterator()
+        while (residualIter.hasNext()) if (!cache.containsKey(residualIter.next())) residualIter.remove()
+        for (ConcurrentHashMap<String, Set<EntityCondition>> byValue in byFieldValue.values()) {
+            Iterator<Map.Entry<String, Set<EntityCondition>>> byValueIter = byValue.entrySet().iterator()
+            while (byValueIter.hasNext()) {
+                Set<EntityCondition> condSet = byValueIter.next().getValue()
+                Iterator<EntityCondition> condIter = condSet.iterator()
+                while (condIter.hasNext()) if (!cache.containsKey(condIter.next())) condIter.remove()
+                if (condSet.isEmpty()) byValueIter.remove()
+            }
+        }
+    }
+
+    int size() {
+        int size = residualSet.size()
+        for (ConcurrentHashMap<String, Set<EntityCondition>> byValue in byFieldValue.values())
+            for (Set<EntityCondition> condSet in byValue.values()) size += condSet.size()
+        return size
+    }
+    void clear() {
+        byFieldValue.clear()
+        residualSet.clear()
+    }
+
+    /** The equals or in condition to index by, must always return the same for a condition so remove() finds it */
+    static FieldValueCondition getIndexCondition(EntityCondition cond) {
+        if (cond instanceof FieldValueCondition) return isIndexable((FieldValueCondition) cond) ? (FieldValueCondition) cond : null
+        if (cond instanceof ListCondition) {
+            ListCondition listCond = (ListCondition) cond
+            if (listCond.getOperator() != EntityCondition.AND) return null
+            ArrayList<? extends EntityCondition> condList = listCond.getConditionList()
+            int condListSize = condList.size()
+            FieldValueCondition inCond = (FieldValueCondition) null
+            for (int i = 0; i < condListSize; i++) {
+                EntityCondition childCond = condList.get(i)
+                if (!(childCond instanceof FieldValueCondition)) continue
+                FieldValueCondition fvc = (FieldValueCondition) childCond
+                if (!isIndexable(fvc)) continue
+                // prefer equals, an in adds the condition once per value
+                if (fvc.getOperator() == EntityCondition.EQUALS) return fvc
+                if (inCond == null) inCond = fvc
+            }
+            return inCond
+        }
+        return null
+    }
+    protected static boolean isIndexable(FieldValueCondition fvc) {
+        if (fvc.getIgnoreCase() || fvc.getField() instanceof ConditionAlias) return false
+        EntityCondition.ComparisonOperator op = fvc.getOperator()
+        Object value = fvc.getValue()
+        if (op == EntityCondition.EQUALS) return makeValueKey(value) != null
+        if (op == EntityCondition.IN && value instanceof Collection) {
+            Collection valueColl = (Collection) value
+            if (valueColl.isEmpty()) return false
+            for (Object inValue in valueColl) if (makeValueKey(inValue) == null) return false
+            return true
+        }
+        return false
+    }
+    protected static List<String> getValueKeys(FieldValueCondition fvc) {
+        Object value = fvc.getValue()
+        if (fvc.getOperator() == EntityCondition.EQUALS) return Collections.singletonList(makeValueKey(value))
+        Collection valueColl = (Collection) value
+        ArrayList<String> valueKeys = new ArrayList<>(valueColl.size())
+        for (Object inValue in valueColl) valueKeys.add(makeValueKey(inValue))
+        return valueKeys
+    }
+    /** Key for String and Number values, numbers normalized so 1, 1L and 1.00 get the same key; null for other types */
+    static String makeValueKey(Object value) {
+        if (value instanceof CharSequence) return value.toString()
+        if (value instanceof BigDecimal) return ((BigDecimal) value).stripTrailingZeros().toPlainString()
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+            return value.toString()
+        if (value instanceof Number) {
+            try { return new BigDecimal(value.toString()).stripTrailingZeros().toPlainString() }
+            catch (NumberFormatException e) { return null }
+        }
+        return null
+    }
+}
@@ -35,6 +35,7 @@ import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 
 import java.util.concurrent.RejectedExecutionException
+import java.util.function.Function
 
 @CompileStatic
 class EntityDataFeed {
@@ -48,6 +49,8 @@ class EntityDataFeed {
     EntityDataFeed(EntityFacadeImpl efi) {
         this.efi = efi
         dataFeedEntityInfo = efi.ecfi.cacheFacade.getLocalCache("entity.data.feed.info")
+        efi.ecfi.cacheFacade.setRefreshLoader(dataFeedEntityInfo,
+                { String fullEntityName -> refreshDataFeedEntityInfo(fullEntityName) } as Function<String, ArrayList<DocumentEntityInfo>>)
     }
 
     EntityFacadeImpl getEfi() { return efi }
@@ -270,15 +273,32 @@ class EntityDataFeed {
         // now we should have all document entityInfos for all entities
         cachedList = (ArrayList<DocumentEntityInfo>) dataFeedEntityInfo.get(fullEntityName)
         if (cachedList != null) return cachedList
+        // rebuilt recently for a refresh, which doesn't put in the cache
+        cachedList = lastRebuildInfo != null ? lastRebuildInfo.get(fullEntityName) : (ArrayList<DocumentEntityInfo>) null
+        if (cachedList != null) {
+            dataFeedEntityInfo.put(fullEntityName, cachedList)
+            return cachedList
+        }
 
         // remember that we don't have any info
         dataFeedEntityInfo.put(fullEntityName, emptyList)
         return emptyList
     }
 
-    // this should never be called except through getDataFeedEntityInfoList()
+    /** Refresh ahead loader for entity.data.feed.info, one rebuild for all entities is used for entries refreshed
+     * within a few seconds of each other */
+    protected ArrayList<DocumentEntityInfo> refreshDataFeedEntityInfo(String fullEntityName) {
+        // don't put in the cache, the refresh sets the entry value and starts a new time to live
+        rebuildDataFeedEntityInfo(false)
+        ArrayList<DocumentEntityInfo> infoList = lastRebuildInfo != null ? lastRebuildInfo.get(fullEntityName) : null
+        return infoList != null ? infoList : emptyList
+    }
+
+    // this should never be called except through getDataFeedEntityInfoList() and refreshDataFeedEntityInfo()
     private long lastRebuildTime = 0
-    protected synchronized void rebuildDataFeedEntityInfo() {
+    private Map<String, ArrayList<DocumentEntityInfo>> lastRebuildInfo = null
+    protected void rebuildDataFeedEntityInfo() { rebuildDataFeedEntityInfo(true) }
+    protected synchronized void rebuildDataFeedEntityInfo(boolean putInCache) {
         // under load make sure waiting threads don't redo it, give it some time
         // NOTE: no other good way to limit this, cache entries may expire individually so we can't check to see if any are missing without a full reload
         if (dataFeedEntityInfo.size() > 0 && System.currentTimeMillis() < (lastRebuildTime + 5000)) return
@@ -330,8 +350,9 @@ class EntityDataFeed {
         } else {
             logger.info("Rebuilt entity.data.feed.info cache in ${System.currentTimeMillis() - startTime}ms, entries for ${entityNameSet.size()} entities")
         }
-        dataFeedEntityInfo.putAll(localInfo)
+        if (putInCache) dataFeedEntityInfo.putAll(localInfo)
         entitiesWithDataFeed = entityNameSet
+        lastRebuildInfo = localInfo
         lastRebuildTime = System.currentTimeMillis()
     }
 
@@ -36,7 +36,7 @@ class EntityDatasourceFactoryImpl implements EntityDatasourceFactory {
 
     protected DataSource dataSource = null
     EntityFacadeImpl.DatasourceInfo dsi = null
-
+    protected int bulkBatchSize = 1000
 
     EntityDatasourceFactoryImpl() { }
 
@@ -45,6 +45,8 @@ class EntityDatasourceFactoryImpl implements EntityDatasourceFactory {
         // local fields
         this.efi = (EntityFacadeImpl) ef
         this.datasourceNode = datasourceNode
+        String bulkBatchSizeAttr = datasourceNode.attribute("bulk-batch-size")
+        if (bulkBatchSizeAttr) bulkBatchSize = bulkBatchSizeAttr as int
 
         // init the DataSource
         dsi = new EntityFacadeImpl.DatasourceInfo(efi, datasourceNode)
@@ -141,14 +143,26 @@ class EntityDatasourceFactoryImpl implements EntityDatasourceFactory {
 
     @Override
     void createBulk(List<EntityValue> valueList) {
-        // basic approach, can probably do better with some JDBC tricks
+        if (valueList == null || valueList.isEmpty()) return
+
+        // group by entity so each entity gets its own INSERT statement and JDBC batches
+        LinkedHashMap<String, ArrayList<EntityValueBase>> valuesByEntity = new LinkedHashMap<>()
         Iterator<EntityValue> valueIterator = valueList.iterator()
         while (valueIterator.hasNext()) {
-            EntityValue ev = (EntityValue) valueIterator.next()
-            ev.create()
+            EntityValueBase evb = (EntityValueBase) valueIterator.next()
+            String entityName = evb.resolveEntityName()
+            ArrayList<EntityValueBase> entityValues = valuesByEntity.get(entityName)
+            if (entityValues == null) { entityValues = new ArrayList<>(); valuesByEntity.put(entityName, entityValues) }
+            entityValues.add(evb)
         }
+
+        for (String entityName in efi.sortByFkDependency(valuesByEntity.keySet()))
+            EntityValueBase.createBulk(valuesByEntity.get(entityName), bulkBatchSize)
     }
 
+    /** Maximum number of records per JDBC batch for bulk creates and TransactionCache flush */
+    int getBulkBatchSize() { return bulkBatchSize }
+
     @Override
     DataSource getDataSource() { return dataSource }
 }
@@ -21,16 +21,20 @@ import org.moqui.util.MNode
 import org.moqui.util.SystemBinding
 
 import java.sql.Connection
+import java.sql.PreparedStatement
 import java.sql.Statement
 import java.sql.DatabaseMetaData
 import java.sql.ResultSet
 import java.sql.Timestamp
 
 import org.moqui.entity.EntityException
+import org.moqui.entity.EntityListIterator
+import org.moqui.entity.EntityValue
 
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.locks.ReentrantLock
 
 @CompileStatic
@@ -45,6 +49,9 @@ class EntityDbMeta {
     protected HashMap<String, Boolean> entityTablesExist = new HashMap<>()
 
     protected HashMap<String, Boolean> runtimeAddMissingMap = new HashMap<>()
+    // native sequences (for sequence-primary-strategy=native) checked to exist or created, by entity name
+    /** Increment of the native sequence by entity name, set once the sequence is known to exist */
+    protected final ConcurrentHashMap<String, Long> sequencesChecked = new ConcurrentHashMap<>()
 
     protected EntityFacadeImpl efi
 
@@ -425,6 +432,11 @@ class EntityDbMeta {
         }
         entityTablesChecked.put(ed.getFullEntityName(), new Timestamp(System.currentTimeMillis()))
         entityTablesExist.put(ed.getFullEntityName(), true)
+        if (ed.entityInfo.sequencePrimaryNative) {
+            // after the table is marked checked as creating the sequence finds existing IDs; not fatal for the table
+            //     check, checked again before the first sequence value is used
+            try { checkSequence(ed) } catch (Throwable t) { logger.error("Error checking sequence for ${ed.getFullEntityName()}: ${t.toString()}") }
+        }
 
         if (logger.isTraceEnabled()) logger.trace("Checked table for entity [${ed.getFullEntityName()}] in ${(System.currentTimeMillis()-startTime)/1000} seconds")
         return doCreate
@@ -1170,6 +1182,167 @@ class EntityDbMeta {
         return constraintName.toString()
     }
 
+    /** Native sequence for entities with sequence-primary-strategy=native, SEQ_ plus the table name */
+    static String makeSequenceName(EntityDefinition ed, int constraintNameClipLength) {
+        StringBuilder seqName = new StringBuilder("SEQ_").append(ed.getTableName())
+        shrinkName(seqName, constraintNameClipLength)
+        return seqName.toString()
+    }
+    String getFullSequenceName(EntityDefinition ed) {
+        MNode databaseNode = efi.getDatabaseNode(ed.getEntityGroupName())
+        int constraintNameClipLength = (databaseNode.attribute("constraint-name-clip-length")?:"30") as int
+        String schemaName = ed.getSchemaName()
+        String seqName = makeSequenceName(ed, constraintNameClipLength)
+        return schemaName ? schemaName + "." + seqName : seqName
+    }
+    /** Make sure the native sequence for the entity exists, creating it if not, and get its increment (the size of the
+     * range each value reserves); only checks the database once per entity, and only once the sequence exists */
+    long checkSequence(EntityDefinition ed) {
+        Long increment = (Long) sequencesChecked.get(ed.getFullEntityName())
+        if (increment != null) return increment.longValue()
+        sqlLock.lock()
+        try {
+            increment = (Long) sequencesChecked.get(ed.getFullEntityName())
+            if (increment != null) return increment.longValue()
+
+            long bankSize = ed.entityInfo.sequenceBankSize
+            if (sequenceExists(ed) || createSequence(ed, null) == null) {
+                // existed, or create failed which may be because the existence check isn't supported by the driver
+                increment = getSequenceIncrement(ed)
+                if (increment == null) {
+                    if (!sequenceExists(ed)) throw new EntityException("Could not create sequence ${getFullSequenceName(ed)} for ${ed.getFullEntityName()}, see the error logged above")
+                    logger.warn("Could not get increment of sequence ${getFullSequenceName(ed)} (no sequence-increment-sql or no result), assuming it is the sequence-bank-size ${bankSize}")
+                    increment = bankSize
+                } else if (increment.longValue() != bankSize) {
+                    logger.warn("Sequence ${getFullSequenceName(ed)} for ${ed.getFullEntityName()} has increment ${increment}, not the sequence-bank-size ${bankSize}; using ${increment}, alter the sequence to change it")
+                }
+            } else {
+                increment = bankSize
+            }
+            if (increment.longValue() < 1L) throw new EntityException("Sequence ${getFullSequenceName(ed)} for ${ed.getFullEntityName()} has increment ${increment}, must be positive")
+            sequencesChecked.put(ed.getFullEntityName(), increment)
+            return increment.longValue()
+        } finally {
+            sqlLock.unlock()
+        }
+    }
+    /** Get the increment of the native sequence with the database sequence-increment-sql, null if not configured or not found */
+    Long getSequenceIncrement(EntityDefinition ed) {
+        MNode databaseNode = efi.getDatabaseNode(ed.getEntityGroupName())
+        String incrementSql = databaseNode.attribute("sequence-increment-sql")
+        if (!incrementSql) return (Long) null
+        int constraintNameClipLength = (databaseNode.attribute("constraint-name-clip-length")?:"30") as int
+        String seqName = makeSequenceName(ed, constraintNameClipLength)
+        Long[] incrementHolder = new Long[1]
+        efi.ecfi.transactionFacade.runRequireNew(10, "Error getting sequence increment", useTxForMetaData, true, {
+            Connection con = null
+            PreparedStatement ps = null
+            try {
+                con = efi.getConnection(ed.getEntityGroupName())
+                ps = con.prepareStatement(incrementSql)
+                // try lower case too, just in case DB is case sensitive
+                for (String nameToTry in [seqName, seqName.toLowerCase()]) {
+                    ps.setString(1, nameToTry)
+                    ResultSet rs = ps.executeQuery()
+                    try {
+                        if (rs.next()) {
+                            // some databases have the increment as a character or variant type
+                            String incrementStr = rs.getString(1)
+                            if (incrementStr) { incrementHolder[0] = Long.valueOf(incrementStr.trim()); return }
+                        }
+                    } finally {
+                        rs.close()
+                    }
+                }
+            } finally {
+                if (ps != null) ps.close()
+                if (con != null) con.close()
+            }
+        })
+        return incrementHolder[0]
+    }
+    boolean sequenceExists(EntityDefinition ed) {
+        MNode databaseNode = efi.getDatabaseNode(ed.getEntityGroupName())
+        int constraintNameClipLength = (databaseNode.attribute("constraint-name-clip-length")?:"30") as int
+        String seqName = makeSequenceName(ed, constraintNameClipLength)
+        String groupName = ed.getEntityGroupName()
+        Connection con = null
+        ResultSet seqSet1 = null
+        ResultSet seqSet2 = null
+        boolean beganTx = useTxForMetaData ? efi.ecfi.transactionFacade.begin(5) : false
+        try {
+            con = efi.getConnection(groupName)
+            DatabaseMetaData dbData = con.getMetaData()
+            String[] types = ["SEQUENCE"]
+            seqSet1 = dbData.getTables(con.getCatalog(), ed.getSchemaName(), seqName, types)
+            if (seqSet1.next()) return true
+            // try lower case, just in case DB is case sensitive
+            seqSet2 = dbData.getTables(con.getCatalog(), ed.getSchemaName(), seqName.toLowerCase(), types)
+            return seqSet2.next()
+        } catch (Exception e) {
+            // some drivers don't support the SEQUENCE type, create will fail harmlessly if it already exists
+            logger.warn("Could not check if sequence ${seqName} exists: ${e.toString()}")
+            return false
+        } finally {
+            if (seqSet1 != null && !seqSet1.isClosed()) seqSet1.close()
+            if (seqSet2 != null && !seqSet2.isClosed()) seqSet2.close()
+            if (con != null) con.close()
+            if (beganTx) efi.ecfi.transactionFacade.commit()
+        }
+    }
+    /** Create the native sequence starting after the values already used, see getSequenceStart(); returns null if
+     * the create failed (error is logged) */
+    Integer createSequence(EntityDefinition ed, Connection sharedCon) {
+        String groupName = ed.getEntityGroupName()
+        long start = getSequenceStart(ed)
+        // increment by the bank size so each next value reserves a full bank, see EntityFacadeImpl.dbSequenceNativeRange()
+        StringBuilder sql = new StringBuilder("CREATE SEQUENCE ").append(getFullSequenceName(ed))
+                .append(" START WITH ").append(start).append(" INCREMENT BY ").append(ed.entityInfo.sequenceBankSize)
+        logger.info("Creating sequence ${getFullSequenceName(ed)} for ${ed.getFullEntityName()} starting with ${start}")
+        return runSqlUpdate(sql, groupName, sharedCon)
+    }
+    /** Start for a new native sequence: 100000 or after the last value reserved in SequenceValueItem and the highest
+     * numeric ID in the table, whichever is higher, so an entity switched to native sequences doesn't reuse IDs. Reads
+     * all IDs in the table, only done once when the sequence is created. */
+    long getSequenceStart(EntityDefinition ed) {
+        long maxUsed = 99999L
+        String pkName = ed.getPkFieldNames().get(0)
+        efi.ecfi.transactionFacade.runUseOrBegin(null, "Error getting start for sequence", {
+            boolean enableAuthz = !efi.ecfi.getEci().artifactExecutionFacade.disableAuthz()
+            try {
+                EntityValue svi = efi.find("moqui.entity.SequenceValueItem").condition("seqName", ed.getFullEntityName())
+                        .useCache(false).one()
+                Long seqNum = svi != null ? svi.getLong("seqNum") : (Long) null
+                if (seqNum != null && seqNum.longValue() > maxUsed) maxUsed = seqNum.longValue()
+
+                EntityListIterator eli = efi.find(ed.getFullEntityName()).selectField(pkName).useCache(false).iterator()
+                try {
+                    EntityValue ev
+                    while ((ev = eli.next()) != null) {
+                        long idNum = trailingNumber(ev.get(pkName))
+                        if (idNum > maxUsed) maxUsed = idNum
+                    }
+                } finally {
+                    eli.close()
+                }
+            } finally {
+                if (enableAuthz) efi.ecfi.getEci().artifactExecutionFacade.enableAuthz()
+            }
+        })
+        return maxUsed + 1L
+    }
+    /** Number at the end of an ID (after any prefix), -1 if none or too long for a long */
+    protected static long trailingNumber(Object id) {
+        if (id == null) return -1L
+        if (id instanceof Number) return ((Number) id).longValue()
+        String idStr = id.toString()
+        int start = idStr.length()
+        while (start > 0 && Character.isDigit(idStr.charAt(start - 1))) start--
+        int digits = idStr.length() - start
+        if (digits == 0 || digits > 18) return -1L
+        return Long.parseLong(idStr.substring(start))
+    }
+
     static void shrinkName(StringBuilder name, int maxLength) {
         if (name.length() > maxLength) {
             // remove vowels from end toward beginning
@@ -19,6 +19,8 @@ import org.moqui.entity.EntityFind
 import org.moqui.impl.context.ExecutionContextImpl
 import org.moqui.impl.entity.condition.ConditionAlias
 import org.moqui.impl.entity.condition.DateCondition
+import org.moqui.jcache.MCache
+import org.moqui.jcache.MCacheConfiguration
 import org.moqui.util.LiteStringMap
 import org.moqui.util.ObjectUtilities
 import org.moqui.util.StringUtilities
@@ -706,6 +708,17 @@ class EntityDefinition {
         for (RelationshipInfo info in relationshipInfoList) if (info.dependent) infoListCopy.add(info)
         return infoListCopy
     }
+    /** True if this entity has a type one relationship, with a foreign key, to the other entity */
+    boolean hasFkRelationship(EntityDefinition otherEd) {
+        if (relationshipInfoList == null) makeRelInfoList()
+        String otherName = otherEd.getFullEntityName()
+        int relInfoListSize = relationshipInfoList.size()
+        for (int i = 0; i < relInfoListSize; i++) {
+            RelationshipInfo relInfo = (RelationshipInfo) relationshipInfoList.get(i)
+            if (relInfo.isFk && otherName.equals(relInfo.relatedEntityName)) return true
+        }
+        return false
+    }
     private synchronized void makeRelInfoList() {
         if (relationshipInfoList != null) return
 
@@ -1185,6 +1198,46 @@ class EntityDefinition {
         return tableExistVerified
     }
 
+    // SQL for finds by shape key, see EntityFindImpl; a new EntityDefinition is created on reload so these won't be stale
+    protected final static int maxFindSqlPlans = 500
+    /** created on first put, most entities are never queried with SQL that can be reused */
+    protected volatile MCache<String, EntityFindBuilder.FindSqlPlan> findSqlPlanCache = (MCache<String, EntityFindBuilder.FindSqlPlan>) null
+    protected Boolean findSqlPlanCacheable = (Boolean) null
+
+    EntityFindBuilder.FindSqlPlan getFindSqlPlan(String shapeKey) {
+        MCache<String, EntityFindBuilder.FindSqlPlan> planCache = findSqlPlanCache
+        return planCache != null ? planCache.get(shapeKey) : (EntityFindBuilder.FindSqlPlan) null
+    }
+    void putFindSqlPlan(String shapeKey, EntityFindBuilder.FindSqlPlan plan) {
+        // shapes are usually few per entity but many offsets or large IN lists can add more, so keep it bounded with the
+        //     frequently used ones kept by the eviction policy; if created by two threads at once one cache is dropped, no problem
+        MCache<String, EntityFindBuilder.FindSqlPlan> planCache = findSqlPlanCache
+        if (planCache == null) {
+            planCache = new MCache<String, EntityFindBuilder.FindSqlPlan>("entity.sql.plan.".concat(fullEntityName), null,
+                    new MCacheConfiguration<String, EntityFindBuilder.FindSqlPlan>().setMaxEntries(maxFindSqlPlans))
+            findSqlPlanCache = planCache
+        }
+        planCache.put(shapeKey, plan)
+    }
+    /** Can SQL for this entity be reused for finds with the same shape? Not for view-entities with sub-selects or
+     * member-entity join conditions as those add parameters in the FROM clause with values that may vary (like date filters). */
+    boolean isFindSqlPlanCacheable() {
+        if (findSqlPlanCacheable != null) return findSqlPlanCacheable.booleanValue()
+        boolean cacheable = true
+        if (isDynamicView) {
+            cacheable = false
+        } else if (isViewEntity) {
+            if (hasSubSelectMembers) cacheable = false
+            if (cacheable) for (MNode memberEntity in internalEntityNode.children("member-entity")) {
+                if (memberEntity.hasChild("entity-condition")) { cacheable = false; break }
+                EntityDefinition memberEd = efi.getEntityDefinition(memberEntity.attribute("entity-name"))
+                if (memberEd.isViewEntity && !memberEd.isFindSqlPlanCacheable()) { cacheable = false; break }
+            }
+        }
+        findSqlPlanCacheable = cacheable
+        return cacheable
+    }
+
     // these methods used by EntityFacadeImpl to avoid redundant lookups of entity info
     EntityFind makeEntityFind() {
         if (entityInfo.isEntityDatasourceFactoryImpl) {
@@ -29,6 +29,7 @@ import org.moqui.resource.ResourceReference
 import org.moqui.entity.*
 import org.moqui.impl.context.ArtifactExecutionFacadeImpl
 import org.moqui.impl.context.ExecutionContextFactoryImpl
+import org.moqui.impl.context.TransactionCache
 import org.moqui.impl.context.TransactionFacadeImpl
 import org.moqui.impl.entity.EntityJavaUtil.RelationshipInfo
 import org.moqui.util.CollectionUtilities
@@ -51,11 +52,9 @@ import java.util.concurrent.ArrayBlockingQueue
 import java.util.concurrent.BlockingQueue
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.ThreadFactory
-import java.util.concurrent.ThreadLocalRandom
 import java.util.concurrent.ThreadPoolExecutor
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicInteger
-import java.util.concurrent.locks.Lock
 import java.util.concurrent.locks.ReentrantLock
 
 @CompileStatic
@@ -77,10 +76,10 @@ class EntityFacadeImpl implements EntityFacade {
     /** Map for framework entity definitions, avoid cache overhead and timeout issues */
     final HashMap<String, EntityDefinition> frameworkEntityDefinitions = new HashMap<>()
 
-    /** Sequence name (often entity name) is the key and the value is an array of 2 Longs the first is the next
-     * available value and the second is the highest value reserved/cached in the bank. */
-    final Cache<String, long[]> entitySequenceBankCache
-    protected final ConcurrentHashMap<String, Lock> dbSequenceLocks = new ConcurrentHashMap<String, Lock>()
+    /** Sequence name (often entity name) is the key and the value is the bank of values reserved for it */
+    final Cache<String, EntitySequenceBank> entitySequenceBankCache
+    /** Entities with a native sequence already warned about a requested bank size different from the sequence increment */
+    protected final Set<String> nativeSequenceSizeWarned = ConcurrentHashMap.newKeySet()
     protected final ReentrantLock locationLoadLock = new ReentrantLock()
 
     protected HashMap<String, ArrayList<EntityEcaRule>> eecaRulesByEntityName = new HashMap<>()
@@ -93,9 +92,11 @@ class EntityFacadeImpl implements EntityFacade {
     protected final ThreadLocal<Calendar> databaseTzLcCalendar = new ThreadLocal<>()
     protected final String sequencedIdPrefix
     boolean queryStats = false
+    protected boolean readOnlyUseClone = false
 
     protected EntityDbMeta dbMeta = null
     protected final EntityCache entityCache
+    protected final EntityCloneRouter cloneRouter
     protected final EntityDataFeed entityDataFeed
     protected final EntityDataDocument entityDataDocument
 
@@ -118,6 +119,7 @@ class EntityFacadeImpl implements EntityFacade {
         defaultGroupName = entityFacadeNode.attribute("default-group-name")
         sequencedIdPrefix = entityFacadeNode.attribute("sequenced-id-prefix") ?: null
         queryStats = entityFacadeNode.attribute("query-stats") == "true"
+        readOnlyUseClone = entityFacadeNode.attribute("read-only-use-clone") == "true"
 
         TimeZone theTimeZone = null
         if (entityFacadeNode.attribute("database-time-zone")) {
@@ -145,7 +147,11 @@ class EntityFacadeImpl implements EntityFacade {
         entitySequenceBankCache = ecfi.cacheFacade.getCache("entity.sequence.bank")
 
         // init connection pool (DataSource) for each group
+        cloneRouter = new EntityCloneRouter(this)
         initAllDatasources()
+        // probe replication lag for datasource clones with a lag-query (every 10 seconds, after 10 second init delay)
+        if (cloneRouter.hasLagQuery()) ecfi.scheduleAtFixedRate(new EntityCloneRouter.LagProbeRunnable(cloneRouter),
+                EntityCloneRouter.lagProbeSeconds, EntityCloneRouter.lagProbeSeconds)
 
         entityCache = new EntityCache(this)
         entityDataFeed = new EntityDataFeed(this)
@@ -172,6 +178,9 @@ class EntityFacadeImpl implements EntityFacade {
     }
 
     void destroy() {
+        // before datasources are destroyed, needs them to check entity max lastUpdatedStamp and count
+        try { saveCacheSnapshot() } catch (Throwable t) { logger.warn("Error saving entity cache snapshot: ${t.toString()}") }
+
         Set<String> groupNames = this.datasourceFactoryByGroupMap.keySet()
         for (String groupName in groupNames) {
             EntityDatasourceFactory edf = this.datasourceFactoryByGroupMap.get(groupName)
@@ -186,6 +195,7 @@ class EntityFacadeImpl implements EntityFacade {
     }
 
     EntityCache getEntityCache() { return entityCache }
+    EntityCloneRouter getCloneRouter() { return cloneRouter }
     EntityDataFeed getEntityDataFeed() { return entityDataFeed }
     EntityDataDocument getEntityDataDocument() { return entityDataDocument }
     String getDefaultGroupName() { return defaultGroupName }
@@ -291,6 +301,7 @@ class EntityFacadeImpl implements EntityFacade {
             String objectFactoryClass = datasourceNode.attribute("object-factory") ?: "org.moqui.impl.entity.EntityDatasourceFactoryImpl"
             EntityDatasourceFactory edf = (EntityDatasourceFactory) Thread.currentThread().getContextClassLoader().loadClass(objectFactoryClass).newInstance()
             datasourceFactoryByGroupMap.put(groupName, edf.init(this, datasourceNode))
+            if (groupName.contains('#')) cloneRouter.initClone(groupName, datasourceNode)
         }
     }
 
@@ -423,7 +434,14 @@ class EntityFacadeImpl implements EntityFacade {
         }
 
         logger.info("Warmed entity definition cache for ${entityNames.size()} entities in ${System.currentTimeMillis() - startTime}ms")
+
+        // restore cache entries from snapshot, then preload configured entities (see cache-warm elements)
+        EntityCacheSnapshot cacheSnapshot = new EntityCacheSnapshot(this)
+        try { cacheSnapshot.restore() } catch (Throwable t) { logger.warn("Error restoring entity cache snapshot: ${t.toString()}") }
+        try { cacheSnapshot.preload() } catch (Throwable t) { logger.warn("Error preloading entity caches: ${t.toString()}") }
     }
+    /** Save entries in entity caches configured with cache-warm.@snapshot to entity-facade.@cache-snapshot-file, also done on destroy */
+    int saveCacheSnapshot() { return new EntityCacheSnapshot(this).save() }
 
     Set<String> getDatasourceGroupNames() {
         Set<String> groupNames = new TreeSet<String>()
@@ -1347,13 +1365,23 @@ class EntityFacadeImpl implements EntityFacade {
             if (edf instanceof EntityDatasourceFactoryImpl) {
                 EntityDatasourceFactoryImpl edfi = (EntityDatasourceFactoryImpl) edf
                 DatasourceInfo dsi = edfi.dsi
-                dsiList.add([group:groupName, uniqueName:dsi.uniqueName, database:dsi.database.attribute('name'), detail:dsi.dsDetails] as Map<String, Object>)
+                Map<String, Object> dsInfo = [group:groupName, uniqueName:dsi.uniqueName, database:dsi.database.attribute('name'),
+                        detail:dsi.dsDetails] as Map<String, Object>
+                if (groupName.contains('#')) dsInfo.put("clone", cloneRouter.getStats(groupName).getInfo())
+                dsiList.add(dsInfo)
             } else {
                 dsiList.add([group:groupName] as Map<String, Object>)
             }
         }
         return dsiList
     }
+    /** True if there is at least one datasource clone (group name plus '#' and a suffix) for the group */
+    boolean hasDatasourceClone(String groupName) {
+        String baseGroupName = groupName == null || groupName.isEmpty() ? defaultGroupName : groupName
+        String groupPrefix = baseGroupName.concat('#')
+        for (String curGroup in datasourceFactoryByGroupMap.keySet()) if (curGroup.startsWith(groupPrefix)) return true
+        return false
+    }
     String getDatasourceCloneName(String groupName) {
         String baseGroupName = groupName == null || groupName.isEmpty() ? defaultGroupName : groupName
         String groupPrefix = baseGroupName.concat('#')
@@ -1362,15 +1390,20 @@ class EntityFacadeImpl implements EntityFacade {
         for (String curGroup in datasourceFactoryByGroupMap.keySet())
             if (curGroup.startsWith(groupPrefix)) cloneGroupNames.add(curGroup)
 
-        int cloneNamesSize = cloneGroupNames.size()
-        if (cloneNamesSize == 0) {
-            return baseGroupName
-        } else if (cloneNamesSize == 1) {
-            // logger.warn("Using DB clone ${cloneGroupNames.get(0)} instead of ${groupName}")
-            return cloneGroupNames.get(0)
-        } else {
-            return cloneGroupNames.get(ThreadLocalRandom.current().nextInt(cloneNamesSize))
-        }
+        if (cloneGroupNames.size() == 0) return baseGroupName
+        // even with a single clone go through the router so an ejected or lagging clone falls back to the primary
+        return cloneRouter.chooseClone(baseGroupName, cloneGroupNames)
+    }
+
+    /** With entity-facade.@read-only-use-clone finds use a datasource clone in a read-only service or screen or with a
+     * read-only TransactionCache, unless for update or anything has been written in the current execution context */
+    boolean useCloneForRead(boolean forUpdate) {
+        if (!readOnlyUseClone || forUpdate) return false
+        ExecutionContextImpl eci = ecfi.getEci()
+        if (eci.isEntityWritten()) return false
+        if (eci.isReadOnly()) return true
+        TransactionCache txCache = ecfi.transactionFacade.getTransactionCache()
+        return txCache != null && txCache.isReadOnly()
     }
 
     @Override EntityConditionFactory getConditionFactory() { return this.entityConditionFactory }
@@ -1523,7 +1556,7 @@ class EntityFacadeImpl implements EntityFacade {
 
                 Cache<EntityCondition, EntityValueBase> entityOneCache = doCache ?
                         ed.getCacheOne(entityCache) : (Cache<EntityCondition, EntityValueBase>) null
-                EntityValueBase cacheHit = doCache ? (EntityValueBase) entityOneCache.get(whereCondition) : (EntityValueBase) null
+                EntityValueBase cacheHit = doCache ? entityCache.getFromOneCache(ed, whereCondition, entityOneCache) : (EntityValueBase) null
 
                 EntityValueBase newEntityValue
                 if (cacheHit != null) {
@@ -1544,6 +1577,186 @@ class EntityFacadeImpl implements EntityFacade {
             if (enableAuthz) aefi.enableAuthz()
         }
     }
+    /** Max keys per query in fastFindMany(), stays under the 1000 element IN limit on some databases */
+    public static final int fastFindManyChunkSize = 500
+
+    /** Multi-get by primary key; like fastFindOne() doesn't filter find based on authz; does use the TransactionCache
+     * and entity one cache, then one query per chunk of keys for the rest */
+    @Override
+    List<EntityValue> fastFindMany(String entityName, Boolean useCache, boolean disableAuthz, Collection<?> pkValues) {
+        int valuesSize = pkValues != null ? pkValues.size() : 0
+        ArrayList<EntityValue> resultList = new ArrayList<>(valuesSize)
+        if (valuesSize == 0) return resultList
+
+        ExecutionContextImpl ec = ecfi.getEci()
+        ArtifactExecutionFacadeImpl aefi = ec.artifactExecutionFacade
+        boolean enableAuthz = disableAuthz ? !aefi.disableAuthz() : false
+        try {
+            EntityDefinition ed = getEntityDefinition(entityName)
+            if (ed == null) throw new EntityException("Entity not found with name ${entityName}")
+            EntityJavaUtil.EntityInfo entityInfo = ed.entityInfo
+            FieldInfo[] pkFieldInfoArray = entityInfo.pkFieldInfoArray
+            int pkSize = pkFieldInfoArray.length
+
+            // PK values in PK field order, null if any are empty (result is null, like fastFindOne())
+            Object[][] pkArrays = new Object[valuesSize][]
+            int pkIndex = 0
+            for (Object pkValue in pkValues) pkArrays[pkIndex++] = makePkArray(ed, pkValue, ec)
+
+            if (ed.isViewEntity || !entityInfo.isEntityDatasourceFactoryImpl) {
+                for (int i = 0; i < valuesSize; i++) resultList.add(pkArrays[i] != null ?
+                        fastFindOne(entityName, useCache, disableAuthz, pkArrays[i]) : (EntityValue) null)
+                return resultList
+            }
+
+            ArtifactExecutionInfoImpl aei = new ArtifactExecutionInfoImpl(ed.getFullEntityName(),
+                    ArtifactExecutionInfo.AT_ENTITY, ArtifactExecutionInfo.AUTHZA_VIEW, "list")
+            aefi.pushInternal(aei, !entityInfo.authorizeSkipView, false)
+
+            try {
+                boolean doCache = useCache != null ? (useCache.booleanValue() ? !entityInfo.neverCache : false) : "true".equals(entityInfo.useCache)
+                Cache<EntityCondition, EntityValueBase> entityOneCache = doCache ?
+                        ed.getCacheOne(entityCache) : (Cache<EntityCondition, EntityValueBase>) null
+                TransactionCache txCache = ecfi.transactionFacade.getTransactionCache()
+
+                EntityValue[] results = new EntityValue[valuesSize]
+                EntityConditionImplBase[] cacheConds = doCache ? new EntityConditionImplBase[valuesSize] : (EntityConditionImplBase[]) null
+                // keys not found in a cache to indexes in pkValues, keyed by String values of the PK values converted
+                //     to the field types in makePkArray() so they match the values from the DB
+                LinkedHashMap<Object, ArrayList<Integer>> missingByKey = new LinkedHashMap<>()
+                LinkedHashMap<Object, Object[]> missingPkArrays = new LinkedHashMap<>()
+                for (int i = 0; i < valuesSize; i++) {
+                    Object[] pkArray = pkArrays[i]
+                    if (pkArray == null) continue
+
+                    // try the TX cache before the entity cache, should be more up-to-date
+                    if (txCache != null) {
+                        Map<String, Object> pkMap = new HashMap<>()
+                        for (int j = 0; j < pkSize; j++) pkMap.put(pkFieldInfoArray[j].name, pkArray[j])
+                        EntityValueBase txcValue = txCache.oneGet(ed, pkMap)
+                        if (txcValue != null) {
+                            if (!(txcValue instanceof EntityValueBase.DeletedEntityValue)) results[i] = txcValue
+                            continue
+                        }
+                    }
+                    if (doCache) {
+                        EntityConditionImplBase whereCondition = makePkCondition(pkFieldInfoArray, pkArray)
+                        cacheConds[i] = whereCondition
+                        EntityValueBase cacheHit = entityCache.getFromOneCache(ed, whereCondition, entityOneCache)
+                        if (cacheHit != null) {
+                            if (!(cacheHit instanceof EntityCache.EmptyRecord)) results[i] = cacheHit
+                            continue
+                        }
+                    }
+
+                    Object key = makePkMatchKey(pkArray)
+                    ArrayList<Integer> indexList = missingByKey.get(key)
+                    if (indexList == null) {
+                        indexList = new ArrayList<>(1)
+                        missingByKey.put(key, indexList)
+                        missingPkArrays.put(key, pkArray)
+                    }
+                    indexList.add(i)
+                }
+
+                int missingSize = missingPkArrays.size()
+                if (missingSize > 0) {
+                    ArrayList<Object[]> missingList = new ArrayList<>(missingPkArrays.values())
+                    for (int start = 0; start < missingSize; start += fastFindManyChunkSize) {
+                        int end = Math.min(start + fastFindManyChunkSize, missingSize)
+                        EntityCondition findCond
+                        if (pkSize == 1) {
+                            ArrayList<Object> inList = new ArrayList<>(end - start)
+                            for (int i = start; i < end; i++) inList.add(missingList.get(i)[0])
+                            findCond = new FieldValueCondition(pkFieldInfoArray[0].conditionField, EntityCondition.IN, inList)
+                        } else {
+                            // no tuple IN on all databases, OR of ANDs works everywhere and uses the PK index
+                            ListCondition orCond = new ListCondition(null, EntityCondition.OR)
+                            for (int i = start; i < end; i++) orCond.addCondition(makePkCondition(pkFieldInfoArray, missingList.get(i)))
+                            findCond = orCond
+                        }
+
+                        EntityList foundList = find(entityName).condition(findCond).useCache(false).disableAuthz().list()
+                        int foundSize = foundList.size()
+                        for (int i = 0; i < foundSize; i++) {
+                            EntityValueBase foundValue = (EntityValueBase) foundList.get(i)
+                            Object[] foundPkArray = new Object[pkSize]
+                            for (int j = 0; j < pkSize; j++) foundPkArray[j] = foundValue.getNoCheckSimple(pkFieldInfoArray[j].name)
+                            ArrayList<Integer> indexList = missingByKey.remove(makePkMatchKey(foundPkArray))
+                            if (indexList == null) continue
+
+                            int indexListSize = indexList.size()
+                            for (int j = 0; j < indexListSize; j++) results[indexList.get(j).intValue()] = foundValue
+                            if (txCache != null) txCache.onePut(foundValue, false)
+                            if (doCache) entityCache.putInOneCache(ed, cacheConds[indexList.get(0).intValue()], foundValue, entityOneCache)
+                        }
+                    }
+                    // the rest were not found, cache that too (like fastFindOne())
+                    if (doCache) for (ArrayList<Integer> indexList in missingByKey.values())
+                        entityCache.putInOneCache(ed, cacheConds[indexList.get(0).intValue()], (EntityValueBase) null, entityOneCache)
+                }
+
+                for (int i = 0; i < valuesSize; i++) resultList.add(results[i])
+                return resultList
+            } finally {
+                // pop the ArtifactExecutionInfo
+                aefi.pop(aei)
+            }
+        } finally {
+            if (enableAuthz) aefi.enableAuthz()
+        }
+    }
+    /** PK values converted to the type of each field so they match the values from the database, and the one cache
+     * conditions are the same as for fastFindOne() and EntityFind.one() */
+    protected static Object[] makePkArray(EntityDefinition ed, Object pkValue, ExecutionContextImpl ec) {
+        FieldInfo[] pkFieldInfoArray = ed.entityInfo.pkFieldInfoArray
+        int pkSize = pkFieldInfoArray.length
+        Object[] pkArray = new Object[pkSize]
+        if (pkValue instanceof Map) {
+            Map pkMap = (Map) pkValue
+            for (int i = 0; i < pkSize; i++) pkArray[i] = pkMap.get(pkFieldInfoArray[i].name)
+        } else if (pkSize == 1) {
+            pkArray[0] = pkValue
+        } else if (pkValue instanceof List && ((List) pkValue).size() == pkSize) {
+            List pkList = (List) pkValue
+            for (int i = 0; i < pkSize; i++) pkArray[i] = pkList.get(i)
+        } else {
+            throw new EntityException("PK value ${pkValue} for entity ${ed.fullEntityName} with ${pkSize} primary key fields must be a Map or a List with ${pkSize} values")
+        }
+        for (int i = 0; i < pkSize; i++) {
+            if (ObjectUtilities.isEmpty(pkArray[i])) return (Object[]) null
+            pkArray[i] = convertPkValue(pkFieldInfoArray[i], pkArray[i], ec)
+        }
+        return pkArray
+    }
+    protected static Object convertPkValue(FieldInfo fi, Object value, ExecutionContextImpl ec) {
+        if (value instanceof CharSequence) {
+            return fi.typeValue == 1 ? value.toString() : fi.convertFromString(value.toString(), ec.l10nFacade)
+        } else if (value instanceof BigDecimal && fi.typeValue == 9) {
+            return FieldInfo.safeStripZeroes((BigDecimal) value)
+        } else {
+            return ObjectUtilities.basicConvert(value, fi.javaType)
+        }
+    }
+    protected static EntityConditionImplBase makePkCondition(FieldInfo[] pkFieldInfoArray, Object[] pkArray) {
+        // same condition as fastFindOne() and EntityFind.one() so cache entries are shared
+        if (pkFieldInfoArray.length == 1) return new FieldValueCondition(pkFieldInfoArray[0].conditionField, EntityCondition.EQUALS, pkArray[0])
+        ListCondition listCond = new ListCondition(null, EntityCondition.AND)
+        for (int i = 0; i < pkFieldInfoArray.length; i++)
+            listCond.addCondition(new FieldValueCondition(pkFieldInfoArray[i].conditionField, EntityCondition.EQUALS, pkArray[i]))
+        return listCond
+    }
+    static Object makePkMatchKey(Object[] pkArray) {
+        if (pkArray.length == 1) return makeMatchKeyString(pkArray[0])
+        ArrayList<String> keyList = new ArrayList<>(pkArray.length)
+        for (int i = 0; i < pkArray.length; i++) keyList.add(makeMatchKeyString(pkArray[i]))
+        return keyList
+    }
+    protected static String makeMatchKeyString(Object value) {
+        // the same number with a different scale (like 1.5 and 1.50) is the same key
+        if (value instanceof BigDecimal) return FieldInfo.safeStripZeroes((BigDecimal) value).toPlainString()
+        return ObjectUtilities.toPlainString(value)
+    }
     public EntityValueBase fastFindOneExtended(EntityDefinition ed, Object... values) throws EntityException {
         // table doesn't exist, just return null
         if (!ed.tableExistsDbMetaOnly()) return null
@@ -1625,6 +1838,33 @@ class EntityFacadeImpl implements EntityFacade {
         datasourceFactory.createBulk(valueList)
     }
 
+    /** Sort entity names so that entities referenced by a type one relationship (FK) from another entity in the set come
+     * before it, otherwise leave in the original order; for FK cycles the original order is used. Used for bulk
+     * creates of values for multiple entities. */
+    ArrayList<String> sortByFkDependency(Collection<String> entityNames) {
+        ArrayList<String> sortedNames = new ArrayList<>(entityNames.size())
+        if (entityNames.size() == 1) { sortedNames.addAll(entityNames); return sortedNames }
+
+        LinkedHashSet<String> remainingNames = new LinkedHashSet<>(entityNames)
+        while (remainingNames.size() > 0) {
+            String nextName = null
+            for (String entityName in remainingNames) {
+                boolean hasRemainingParent = false
+                ArrayList<RelationshipInfo> relInfoList = getEntityDefinition(entityName).getRelationshipsInfo(false)
+                for (int i = 0; i < relInfoList.size(); i++) {
+                    RelationshipInfo relInfo = (RelationshipInfo) relInfoList.get(i)
+                    String relatedName = relInfo.relatedEd.getFullEntityName()
+                    if (relInfo.isFk && !entityName.equals(relatedName) && remainingNames.contains(relatedName)) { hasRemainingParent = true; break }
+                }
+                if (!hasRemainingParent) { nextName = entityName; break }
+            }
+            if (nextName == null) nextName = remainingNames.iterator().next()
+            remainingNames.remove(nextName)
+            sortedNames.add(nextName)
+        }
+        return sortedNames
+    }
+
     final static Map<String, String> operationByMethod = [get:'find', post:'create', put:'store', patch:'update', delete:'delete']
     @Override
     Object rest(String operation, List<String> entityPath, Map parameters, boolean masterNameInPath) {
@@ -1891,10 +2131,7 @@ class EntityFacadeImpl implements EntityFacade {
     }
 
     void tempSetSequencedIdPrimary(String seqName, long nextSeqNum, long bankSize) {
-        long[] bank = new long[2]
-        bank[0] = nextSeqNum
-        bank[1] = nextSeqNum + bankSize
-        entitySequenceBankCache.put(seqName, bank)
+        entitySequenceBankCache.put(seqName, new EntitySequenceBank(this, seqName, nextSeqNum, nextSeqNum + bankSize))
     }
     void tempResetSequencedIdPrimary(String seqName) {
         entitySequenceBankCache.put(seqName, null)
@@ -1932,79 +2169,121 @@ class EntityFacadeImpl implements EntityFacade {
     }
 
     protected final static long defaultBankSize = 50L
-    protected Lock getDbSequenceLock(String seqName) {
-        Lock oldLock, dbSequenceLock = dbSequenceLocks.get(seqName)
-        if (dbSequenceLock == null) {
-            dbSequenceLock = new ReentrantLock()
-            oldLock = dbSequenceLocks.putIfAbsent(seqName, dbSequenceLock)
-            if (oldLock != null) return oldLock
+    protected EntitySequenceBank getSequenceBank(String seqName) {
+        EntitySequenceBank bank = (EntitySequenceBank) entitySequenceBankCache.get(seqName)
+        if (bank == null) {
+            bank = new EntitySequenceBank(this, seqName)
+            if (!entitySequenceBankCache.putIfAbsent(seqName, bank)) {
+                EntitySequenceBank existing = (EntitySequenceBank) entitySequenceBankCache.get(seqName)
+                if (existing != null) bank = existing
+            }
         }
-        return dbSequenceLock
+        return bank
     }
     protected String dbSequencedIdPrimary(String seqName, long staggerMax, long bankSize) {
-
-        // TODO: find some way to get this running non-synchronized for performance reasons (right now if not
-        // TODO:     synchronized the forUpdate won't help if the record doesn't exist yet, causing errors in high
-        // TODO:     traffic creates; is it creates only?)
-
-        Lock dbSequenceLock = getDbSequenceLock(seqName)
-        dbSequenceLock.lock()
+        long seqNum = getSequenceBank(seqName).nextSeqNum(staggerMax, bankSize)
+        return sequencedIdPrefix != null ? sequencedIdPrefix + seqNum : seqNum
+    }
+    /** Reserve the next range of values for a sequence in SequenceValueItem, called by EntitySequenceBank with its
+     * fetch lock held. The range starts after the last reserved value or at minStart if higher. */
+    EntitySequenceBank.Range dbSequenceFetchRange(String seqName, long minStart, long bankSize, boolean requireNew) {
+        EntityDefinition nativeEd = isEntityDefined(seqName) ? getEntityDefinition(seqName) : null
+        if (nativeEd != null && nativeEd.entityInfo.sequencePrimaryNative) {
+            String nextSql = getDatabaseNode(nativeEd.getEntityGroupName())?.attribute("sequence-next-sql")
+            if (nextSql) return dbSequenceNativeRange(nativeEd, nextSql, minStart, bankSize, requireNew)
+            if (logger.isTraceEnabled()) logger.trace("No sequence-next-sql for database of ${seqName}, using SequenceValueItem")
+        }
 
         // NOTE: simple approach with forUpdate, not using the update/select "ethernet" approach used in OFBiz; consider
         // that in the future if there are issues with this approach
-
-        try {
-            // first get a bank if we don't have one already
-            long[] bank = (long[]) entitySequenceBankCache.get(seqName)
-            if (bank == null || bank[0] > bank[1]) {
-                if (bank == null) {
-                    bank = new long[2]
-                    bank[0] = 0
-                    bank[1] = -1
-                    entitySequenceBankCache.put(seqName, bank)
+        long[] range = new long[2]
+        Closure fetchClosure = {
+            ArtifactExecutionFacadeImpl aefi = ecfi.getEci().artifactExecutionFacade
+            boolean enableAuthz = !aefi.disableAuthz()
+            try {
+                EntityValue svi = find("moqui.entity.SequenceValueItem").condition("seqName", seqName)
+                        .useCache(false).forUpdate(true).one()
+                if (svi == null) {
+                    svi = makeValue("moqui.entity.SequenceValueItem")
+                    svi.set("seqName", seqName)
+                    // a new tradition: start sequenced values at one hundred thousand instead of ten thousand
+                    range[0] = minStart > 100000L ? minStart : 100000L
+                    range[1] = range[0] + bankSize
+                    svi.set("seqNum", range[1])
+                    svi.create()
+                } else {
+                    Long lastSeqNum = svi.getLong("seqNum")
+                    range[0] = (lastSeqNum >= minStart ? lastSeqNum + 1L : minStart)
+                    range[1] = range[0] + bankSize
+                    svi.set("seqNum", range[1])
+                    svi.update()
                 }
-
-                ecfi.transactionFacade.runRequireNew(null, "Error getting primary sequenced ID", true, true, {
-                    ArtifactExecutionFacadeImpl aefi = ecfi.getEci().artifactExecutionFacade
-                    boolean enableAuthz = !aefi.disableAuthz()
-                    try {
-                        EntityValue svi = find("moqui.entity.SequenceValueItem").condition("seqName", seqName)
-                                .useCache(false).forUpdate(true).one()
-                        if (svi == null) {
-                            svi = makeValue("moqui.entity.SequenceValueItem")
-                            svi.set("seqName", seqName)
-                            // a new tradition: start sequenced values at one hundred thousand instead of ten thousand
-                            bank[0] = 100000L
-                            bank[1] = bank[0] + bankSize
-                            svi.set("seqNum", bank[1])
-                            svi.create()
-                        } else {
-                            Long lastSeqNum = svi.getLong("seqNum")
-                            bank[0] = (lastSeqNum > bank[0] ? lastSeqNum + 1L : bank[0])
-                            bank[1] = bank[0] + bankSize
-                            svi.set("seqNum", bank[1])
-                            svi.update()
-                        }
-                    } finally {
-                        if (enableAuthz) aefi.enableAuthz()
-                    }
-                })
+            } finally {
+                if (enableAuthz) aefi.enableAuthz()
             }
-
-            long seqNum = bank[0]
-            if (staggerMax > 1L) {
-                long stagger = Math.round(Math.random() * staggerMax)
-                bank[0] = seqNum + stagger
-                // NOTE: if bank[0] > bank[1] because of this just leave it and the next time we try to get a sequence
-                //     value we'll get one from a new bank
-            } else {
-                bank[0] = seqNum + 1L
+        }
+        // when called in a creating thread run in a separate transaction so the SequenceValueItem lock is released right away
+        if (requireNew) {
+            ecfi.transactionFacade.runRequireNew(null, "Error getting primary sequenced ID", true, true, fetchClosure)
+        } else {
+            ecfi.transactionFacade.runUseOrBegin(null, "Error getting primary sequenced ID", fetchClosure)
+        }
+        if (isTraceEnabled) logger.trace("Reserved sequence bank for ${seqName} from ${range[0]} to ${range[1]}")
+        return new EntitySequenceBank.Range(range[0], range[1])
+    }
+
+    /** Reserve the next range of values for an entity with sequence-primary-strategy=native from its database SEQUENCE,
+     * which is incremented by sequence-bank-size when created so the value returned is the start of a full bank. The
+     * range size is always the increment of the sequence in the database, a different requested bankSize is logged and
+     * ignored. Values from the sequence below minStart are skipped, if the sequence is too far behind minStart an
+     * EntityException is thrown. */
+    protected EntitySequenceBank.Range dbSequenceNativeRange(EntityDefinition ed, String nextSql, long minStart,
+            long bankSize, boolean requireNew) {
+        EntityDbMeta entityDbMeta = getEntityDbMeta()
+        // a range of any size other than the sequence increment would either waste values or overlap the range the next
+        //     call to the sequence reserves
+        long incrementSize = entityDbMeta.checkSequence(ed)
+        String sql = nextSql.replace("{name}", entityDbMeta.getFullSequenceName(ed))
+        if (bankSize != incrementSize && nativeSequenceSizeWarned.add(ed.getFullEntityName()))
+            logger.warn("Requested bank size ${bankSize} for native sequence of ${ed.getFullEntityName()} does not match the sequence increment ${incrementSize}, using ${incrementSize}")
+
+        long[] startHolder = new long[1]
+        Closure nextClosure = {
+            Connection con = getConnection(ed.getEntityGroupName())
+            PreparedStatement ps = null
+            ResultSet rs = null
+            try {
+                ps = con.prepareStatement(sql)
+                // a range entirely below minStart (like after tempSetSequencedIdPrimary()) can't be used, get the next
+                for (int i = 0; i < 100; i++) {
+                    rs = ps.executeQuery()
+                    if (!rs.next()) throw new EntityException("No value from sequence for ${ed.getFullEntityName()} with SQL: ${sql}")
+                    startHolder[0] = rs.getLong(1)
+                    rs.close()
+                    rs = null
+                    if (startHolder[0] + incrementSize - 1L >= minStart) return
+                }
+                throw new EntityException("Sequence for ${ed.getFullEntityName()} is at ${startHolder[0]}, too far below the minimum ${minStart}; restart it at or above the minimum")
+            } catch (SQLException e) {
+                throw new EntitySqlException("Error getting next value from sequence for ${ed.getFullEntityName()} with SQL: ${sql}", e)
+            } finally {
+                if (rs != null) rs.close()
+                if (ps != null) ps.close()
             }
-
-            return sequencedIdPrefix != null ? sequencedIdPrefix + seqNum : seqNum
-        } finally {
-            dbSequenceLock.unlock()
         }
+        // sequence values aren't transactional, a separate transaction just keeps this connection out of the creating thread's
+        if (requireNew) {
+            ecfi.transactionFacade.runRequireNew(null, "Error getting native sequence value", true, true, nextClosure)
+        } else {
+            ecfi.transactionFacade.runUseOrBegin(null, "Error getting native sequence value", nextClosure)
+        }
+        long start = startHolder[0]
+        // values in this bank below minStart are already used, the rest of it is still reserved by the sequence
+        if (start < minStart) {
+            if (isTraceEnabled) logger.trace("Native sequence for ${ed.getFullEntityName()} returned ${start} below minimum ${minStart}, starting bank at minimum")
+            start = minStart
+        }
+        return new EntitySequenceBank.Range(start, startHolder[0] + incrementSize - 1L)
     }
 
     Set<String> getAllEntityNamesInGroup(String groupName) {
@@ -13,6 +13,8 @@
  */
 package org.moqui.impl.entity
 
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
 import groovy.transform.CompileStatic
 import org.moqui.BaseException
 import org.moqui.context.ArtifactAuthorizationException
@@ -28,6 +30,7 @@ import org.moqui.impl.context.TransactionCache
 import org.moqui.impl.context.TransactionFacadeImpl
 import org.moqui.impl.entity.condition.*
 import org.moqui.impl.entity.EntityJavaUtil.FieldOrderOptions
+import org.moqui.jcache.MCache
 import org.moqui.util.CollectionUtilities
 import org.moqui.util.MNode
 import org.moqui.util.ObjectUtilities
@@ -35,9 +38,11 @@ import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 
 import javax.cache.Cache
+import java.nio.charset.StandardCharsets
 import java.sql.ResultSet
 import java.sql.SQLException
 import java.sql.Timestamp
+import java.util.concurrent.Callable
 
 @CompileStatic
 abstract class EntityFindBase implements EntityFind {
@@ -74,6 +79,7 @@ abstract class EntityFindBase implements EntityFind {
     protected boolean distinct = false
     protected Integer offset = (Integer) null
     protected Integer limit = (Integer) null
+    protected Map<String, Object> seekAfterValues = (Map<String, Object>) null
     protected boolean forUpdate = false
     protected boolean useClone = false
 
@@ -87,6 +93,8 @@ abstract class EntityFindBase implements EntityFind {
     protected boolean hasSearchFormParameters = false
 
     protected ArrayList<String> queryTextList = new ArrayList<>()
+    /** Authz find filters for the current user, looked up once per one/list/iterator/count and also used for the SQL shape key */
+    protected ArrayList findFilterList = (ArrayList) null
 
 
     EntityFindBase(EntityFacadeImpl efi, String entityName) {
@@ -411,10 +419,17 @@ abstract class EntityFindBase implements EntityFind {
         }
 
         // look for the pageIndex and optional pageSize parameters; don't set these if should cache as will disable the cached query
-        if ((alwaysPaginate || inputFieldsMap?.get("pageIndex") || inputFieldsMap?.get("pageSize")) && !shouldCache()) {
-            int pageIndex = (inputFieldsMap?.get("pageIndex") ?: 0) as int
+        // if there is a pageSeekToken (from makeSeekToken() on the last record of the previous page) use it instead of pageIndex
+        String pageSeekToken = (String) inputFieldsMap?.get("pageSeekToken")
+        if ((alwaysPaginate || inputFieldsMap?.get("pageIndex") || inputFieldsMap?.get("pageSize") || pageSeekToken) && !shouldCache()) {
             int pageSize = (inputFieldsMap?.get("pageSize") ?: (this.limit ?: 20)) as int
-            offset(pageIndex, pageSize)
+            // if the token can't be used (nullable order by field, aggregate view) go back to offset with pageIndex
+            if (pageSeekToken) seekAfterToken(pageSeekToken)
+            if (seekAfterValues != null && !canSeekPaginate()) seekAfterValues = (Map<String, Object>) null
+            if (seekAfterValues == null) {
+                int pageIndex = (inputFieldsMap?.get("pageIndex") ?: 0) as int
+                offset(pageIndex, pageSize)
+            }
             limit(pageSize)
         }
 
@@ -422,6 +437,7 @@ abstract class EntityFindBase implements EntityFind {
         if ("true".equals(inputFieldsMap?.get("pageNoLimit")) || inputFieldsMap?.get("pageNoLimit") == true) {
             offset = null
             limit = null
+            seekAfterValues = (Map<String, Object>) null
         }
 
         return this
@@ -616,6 +632,105 @@ abstract class EntityFindBase implements EntityFind {
     @Override int getPageIndex() { return offset == null ? 0 : (offset/getPageSize()).intValue() }
     @Override int getPageSize() { return limit != null ? limit : 20 }
 
+    @Override EntityFind seekAfter(Map<String, Object> afterValues) { this.seekAfterValues = afterValues; return this }
+    @Override Map<String, Object> getSeekAfter() { return seekAfterValues }
+    @Override
+    EntityFind seekAfterToken(String seekToken) {
+        if (seekToken == null || seekToken.isEmpty()) { seekAfterValues = (Map<String, Object>) null; return this }
+        EntityDefinition ed = getEntityDef()
+        Map<String, Object> tokenMap
+        try {
+            tokenMap = (Map<String, Object>) new JsonSlurper().parseText(new String(Base64.getUrlDecoder().decode(seekToken), StandardCharsets.UTF_8))
+        } catch (Exception e) {
+            throw new EntityException("Invalid seek token for find on ${ed.fullEntityName}", e)
+        }
+        Map<String, Object> afterValues = new HashMap<>()
+        for (Map.Entry<String, Object> entry in tokenMap.entrySet()) {
+            FieldInfo fi = ed.getFieldInfo(entry.key)
+            if (fi == null) throw new EntityException("Invalid seek token for find on ${ed.fullEntityName}, field ${entry.key} not found")
+            afterValues.put(fi.name, seekValueFromString(fi, (String) entry.value))
+        }
+        seekAfterValues = afterValues
+        return this
+    }
+    @Override
+    String makeSeekToken(Map<String, Object> lastValue) {
+        if (lastValue == null || !canSeekPaginate()) return null
+        ArrayList<String> seekOrderBy = makeSeekOrderBy(getEntityDef())
+
+        Map<String, String> tokenMap = new LinkedHashMap<>()
+        for (String orderByField in seekOrderBy) {
+            String fieldName = new FieldOrderOptions(orderByField).fieldName
+            Object fieldValue = lastValue.get(fieldName)
+            if (fieldValue == null) return null
+            tokenMap.put(fieldName, ObjectUtilities.toPlainString(fieldValue))
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(JsonOutput.toJson(tokenMap).getBytes(StandardCharsets.UTF_8))
+    }
+    /** True if seek pagination can be used for this find: not distinct, no aggregate function aliases (the PK
+     * fields would change the group by), and all order by fields not null (the seek condition doesn't match nulls) */
+    boolean canSeekPaginate() {
+        EntityDefinition ed = getEntityDef()
+        if (getDistinct() || ed.entityInfo.hasFunctionAlias) return false
+        for (String orderByField in makeSeekOrderBy(ed)) {
+            FieldInfo fi = ed.getFieldInfo(new FieldOrderOptions(orderByField).fieldName)
+            if (fi == null || !isSeekField(fi)) return false
+        }
+        return true
+    }
+    protected ArrayList<String> makeSeekOrderBy(EntityDefinition ed) {
+        ArrayList<String> seekOrderBy = new ArrayList<>()
+        if (orderByFields != null) seekOrderBy.addAll(orderByFields)
+        MNode entityConditionNode = ed.entityInfo.isView ? ed.entityConditionNode : (MNode) null
+        if (entityConditionNode != null) for (MNode orderBy in entityConditionNode.children("order-by")) {
+            String fieldName = orderBy.attribute("field-name")
+            if (!seekOrderBy.contains(fieldName)) seekOrderBy.add(fieldName)
+        }
+        addSeekPkOrderBy(ed, seekOrderBy)
+        return seekOrderBy
+    }
+    protected static boolean isSeekField(FieldInfo fi) { return fi.isPk || "true".equals(fi.fieldNode.attribute("not-null")) }
+    protected static Object seekValueFromString(FieldInfo fi, String valueStr) {
+        if (valueStr == null || valueStr.isEmpty()) return null
+        // date/time values are in the token as millis, see ObjectUtilities.toPlainString()
+        switch (fi.javaType) {
+            case "java.sql.Timestamp": return new Timestamp(Long.parseLong(valueStr))
+            case "java.sql.Date": return new java.sql.Date(Long.parseLong(valueStr))
+            case "java.sql.Time": return new java.sql.Time(Long.parseLong(valueStr))
+            default: return ObjectUtilities.basicConvert(valueStr, fi.javaType)
+        }
+    }
+    /** Add primary key fields not already in the order by so the order is unique, needed for seek pagination */
+    protected static void addSeekPkOrderBy(EntityDefinition ed, ArrayList<String> orderByExpanded) {
+        Set<String> orderByNames = new HashSet<>()
+        for (String orderByField in orderByExpanded) orderByNames.add(new FieldOrderOptions(orderByField).fieldName)
+        for (String pkName in ed.getPkFieldNames()) if (!orderByNames.contains(pkName)) orderByExpanded.add(pkName)
+    }
+    /** Make the keyset condition for records after seekAfterValues in the order: (a > ?) OR (a = ? AND b > ?) OR ... */
+    protected EntityConditionImplBase makeSeekCondition(EntityDefinition ed, ArrayList<String> seekOrderBy) {
+        ArrayList<EntityConditionImplBase> orList = new ArrayList<>()
+        ArrayList<EntityConditionImplBase> equalsList = new ArrayList<>()
+        int seekOrderBySize = seekOrderBy.size()
+        for (int i = 0; i < seekOrderBySize; i++) {
+            FieldOrderOptions foo = new FieldOrderOptions((String) seekOrderBy.get(i))
+            FieldInfo fi = ed.getFieldInfo(foo.fieldName)
+            if (fi != null && !isSeekField(fi))
+                throw new EntityException("Seek pagination not supported with order by nullable field ${foo.fieldName} on entity ${ed.fullEntityName}, use offset pagination")
+            if (foo.getCaseUpperLower() != null)
+                throw new EntityException("Seek pagination not supported with case insensitive order by ${foo.fieldName} on entity ${ed.fullEntityName}")
+            Object value = seekAfterValues.get(foo.fieldName)
+            if (value == null)
+                throw new EntityException("Seek pagination requires a value for each order by and primary key field, no value for ${foo.fieldName} on entity ${ed.fullEntityName}")
+
+            ConditionField condField = new ConditionField(foo.fieldName)
+            ArrayList<EntityConditionImplBase> andList = new ArrayList<>(equalsList)
+            andList.add(new FieldValueCondition(condField, foo.descending ? EntityCondition.LESS_THAN : EntityCondition.GREATER_THAN, value))
+            orList.add(andList.size() == 1 ? andList.get(0) : new ListCondition(andList, EntityCondition.AND))
+            equalsList.add(new FieldValueCondition(condField, EntityCondition.EQUALS, value))
+        }
+        return orList.size() == 1 ? orList.get(0) : new ListCondition(orList, EntityCondition.OR)
+    }
+
     @Override
     EntityFind forUpdate(boolean forUpdate) {
         this.forUpdate = forUpdate
@@ -657,7 +772,7 @@ abstract class EntityFindBase implements EntityFind {
     boolean shouldCache() {
         if (dynamicView != null) return false
         if (havingEntityCondition != null) return false
-        if (limit != null || offset != null) return false
+        if (limit != null || offset != null || seekAfterValues != null) return false
         if (forUpdate) return false
         if (useCache != null) {
             boolean useCacheLocal = useCache.booleanValue()
@@ -800,11 +915,9 @@ abstract class EntityFindBase implements EntityFind {
 
         boolean doCache = shouldCache()
         // NOTE: artifactExecutionFacade.filterFindForUser() no longer called here, called in EntityFindBuilder after trimming if needed for view-entity
-        if (doCache) {
-            // don't cache if there are any applicable filter conditions
-            ArrayList findFilterList = ec.artifactExecutionFacade.getFindFiltersForUser(ed, null)
-            if (findFilterList != null && findFilterList.size() > 0) doCache = false
-        }
+        findFilterList = ec.artifactExecutionFacade.getFindFiltersForUser(ed, null)
+        // don't cache if there are any applicable filter conditions
+        if (doCache && findFilterList != null && findFilterList.size() > 0) doCache = false
 
         EntityConditionImplBase whereCondition = getWhereEntityConditionInternal(ed)
 
@@ -828,7 +941,8 @@ abstract class EntityFindBase implements EntityFind {
         Cache<EntityCondition, EntityValueBase> entityOneCache = doCache ?
                 ed.getCacheOne(efi.getEntityCache()) : (Cache<EntityCondition, EntityValueBase>) null
         EntityValueBase cacheHit = (EntityValueBase) null
-        if (doCache && txcValue == null && !forUpdate) cacheHit = (EntityValueBase) entityOneCache.get(whereCondition)
+        if (doCache && txcValue == null && !forUpdate) cacheHit = efi.getEntityCache().getFromOneCache(ed, whereCondition, entityOneCache)
+        boolean doCachePut = doCache && !isAutoCloneRead()
 
         // we always want fieldInfoArray populated so that we know the order of the results coming back
         int ftsSize = fieldsToSelect != null ? fieldsToSelect.size() : 0
@@ -927,27 +1041,22 @@ abstract class EntityFindBase implements EntityFind {
         } else if (cacheHit != null) {
             if (cacheHit instanceof EntityCache.EmptyRecord) newEntityValue = (EntityValueBase) null
             else newEntityValue = cacheHit
+        } else if (doCachePut && txCache == null && entityOneCache instanceof MCache && canLoadSingleFlight(ec)) {
+            // concurrent misses on the same condition wait for one query instead of each running it
+            EntityConditionImplBase cond = isViewEntity ? getConditionForQuery(ed, whereCondition) : whereCondition
+            newEntityValue = ((MCache<EntityCondition, EntityValueBase>) entityOneCache).loadSingleFlight(whereCondition, { ->
+                EntityValueBase dbValue = oneQuery(ec, ed, cond, hasFullPk, fieldInfoArray, fieldOptionsArray)
+                efi.getEntityCache().putInOneCache(ed, whereCondition, dbValue, entityOneCache)
+                return dbValue
+            } as Callable<EntityValueBase>)
         } else {
-            // for find one we'll always use the basic result set type and concurrency:
-            this.resultSetType = ResultSet.TYPE_FORWARD_ONLY
-            this.resultSetConcurrency = ResultSet.CONCUR_READ_ONLY
-
             EntityConditionImplBase cond = isViewEntity ? getConditionForQuery(ed, whereCondition) : whereCondition
 
             // register lock before if we have a full pk, otherwise after
             if (forUpdate && hasFullPk && efi.ecfi.transactionFacade.getUseLockTrack())
                 registerForUpdateLock(simpleAndMap != null ? simpleAndMap : [(singleCondField):singleCondValue])
 
-            try {
-                tempHasFullPk = hasFullPk
-                newEntityValue = oneExtended(cond, fieldInfoArray, fieldOptionsArray)
-            } catch (SQLException e) {
-                throw new EntitySqlException(makeErrorMsg("Error finding one", ONE_ERROR, cond, ed, ec), e)
-            } catch (Exception e) {
-                throw new EntityException(makeErrorMsg("Error finding one", ONE_ERROR, cond, ed, ec), e)
-            } finally {
-                tempHasFullPk = null
-            }
+            newEntityValue = oneQuery(ec, ed, cond, hasFullPk, fieldInfoArray, fieldOptionsArray)
 
             // register lock before if we have a full pk, otherwise after
             if (forUpdate && !hasFullPk && efi.ecfi.transactionFacade.getUseLockTrack())
@@ -957,7 +1066,7 @@ abstract class EntityFindBase implements EntityFind {
             if (txCache != null) txCache.onePut(newEntityValue, forUpdate)
 
             // put it in whether null or not (already know cacheHit is null)
-            if (doCache) efi.getEntityCache().putInOneCache(ed, whereCondition, newEntityValue, entityOneCache)
+            if (doCachePut) efi.getEntityCache().putInOneCache(ed, whereCondition, newEntityValue, entityOneCache)
         }
 
         // if (logger.traceEnabled) logger.trace("Find one on entity [${ed.fullEntityName}] with condition [${whereCondition}] found value [${newEntityValue}]")
@@ -967,6 +1076,33 @@ abstract class EntityFindBase implements EntityFind {
 
         return newEntityValue
     }
+    /** True if the query will be run on a read-only clone the caller didn't ask for with useClone(), results may lag
+     * the main database so are not put in the entity caches; false if the entity's group has no clone configured */
+    protected boolean isAutoCloneRead() {
+        return !useClone && efi.useCloneForRead(forUpdate) && efi.hasDatasourceClone(getEntityDef().getEntityGroupName())
+    }
+    /** Don't share a cache miss load with other threads once in a transaction that has written, a load in another
+     * thread may be blocked on a row lock held by this transaction and waiting on it would deadlock until timeout */
+    protected static boolean canLoadSingleFlight(ExecutionContextImpl ec) {
+        return !(ec.isEntityWritten() && ec.transactionFacade.isTransactionInPlace())
+    }
+    protected EntityValueBase oneQuery(ExecutionContextImpl ec, EntityDefinition ed, EntityConditionImplBase cond, boolean hasFullPk,
+                                       FieldInfo[] fieldInfoArray, FieldOrderOptions[] fieldOptionsArray) {
+        // for find one we'll always use the basic result set type and concurrency:
+        this.resultSetType = ResultSet.TYPE_FORWARD_ONLY
+        this.resultSetConcurrency = ResultSet.CONCUR_READ_ONLY
+
+        try {
+            tempHasFullPk = hasFullPk
+            return oneExtended(cond, fieldInfoArray, fieldOptionsArray)
+        } catch (SQLException e) {
+            throw new EntitySqlException(makeErrorMsg("Error finding one", ONE_ERROR, cond, ed, ec), e)
+        } catch (Exception e) {
+            throw new EntityException(makeErrorMsg("Error finding one", ONE_ERROR, cond, ed, ec), e)
+        } finally {
+            tempHasFullPk = null
+        }
+    }
 
     EntityConditionImplBase getConditionForQuery(EntityDefinition ed, EntityConditionImplBase whereCondition) {
         // NOTE: do actual query condition as a separate condition because this will always be added on and isn't a
@@ -1063,16 +1199,18 @@ abstract class EntityFindBase implements EntityFind {
             }
         }
 
+        if (seekAfterValues != null) addSeekPkOrderBy(ed, orderByExpanded)
+
         boolean doEntityCache = shouldCache()
 
         // NOTE: artifactExecutionFacade.filterFindForUser() no longer called here, called in EntityFindBuilder after trimming if needed for view-entity
-        if (doEntityCache) {
-            // don't cache if there are any applicable filter conditions
-            ArrayList findFilterList = ec.artifactExecutionFacade.getFindFiltersForUser(ed, null)
-            if (findFilterList != null && findFilterList.size() > 0) doEntityCache = false
-        }
+        findFilterList = ec.artifactExecutionFacade.getFindFiltersForUser(ed, null)
+        // don't cache if there are any applicable filter conditions
+        if (doEntityCache && findFilterList != null && findFilterList.size() > 0) doEntityCache = false
 
         EntityConditionImplBase whereCondition = getWhereEntityConditionInternal(ed)
+        if (seekAfterValues != null)
+            whereCondition = EntityConditionFactoryImpl.makeConditionImpl(whereCondition, EntityCondition.AND, makeSeekCondition(ed, orderByExpanded))
         // don't cache if no whereCondition
         if (whereCondition == null) doEntityCache = false
 
@@ -1148,31 +1286,32 @@ abstract class EntityFindBase implements EntityFind {
                 havingCondition = EntityConditionFactoryImpl.makeConditionImpl(havingCondition, EntityCondition.AND, viewHaving)
             }
 
-            // call the abstract method
-            try (EntityListIterator eli = iteratorExtended(queryWhereCondition, havingCondition, orderByExpanded, fieldInfoArray, fieldOptionsArray)) {
-                MNode databaseNode = this.efi.getDatabaseNode(ed.getEntityGroupName())
-                if (limit != null && databaseNode != null && "cursor".equals(databaseNode.attribute("offset-style"))) {
-                    el = (EntityListImpl) eli.getPartialList(offset != null ? offset : 0, limit, false)
-                } else {
-                    el = (EntityListImpl) eli.getCompleteList(false);
-                }
-            }
-            catch (SQLException e) { throw new EntitySqlException(makeErrorMsg("Error finding list of", LIST_ERROR, queryWhereCondition, ed, ec), e) }
-            catch (ArtifactAuthorizationException e) { throw e }
-            catch (Exception e) { throw new EntityException(makeErrorMsg("Error finding list of", LIST_ERROR, queryWhereCondition, ed, ec), e) }
-
-            // register lock after because we can't before, don't know which records will be returned
-            if (forUpdate && !isViewEntity && efi.ecfi.transactionFacade.getUseLockTrack()) {
-                int elSize = el.size()
-                for (int i = 0; i < elSize; i++) {
-                    EntityValue ev = (EntityValue) el.get(i)
-                    registerForUpdateLock(ev)
+            boolean doCachePut = doEntityCache && !isAutoCloneRead()
+            if (doCachePut && txCache == null && entityListCache instanceof MCache && canLoadSingleFlight(ec)) {
+                // concurrent misses on the same condition wait for one query instead of each running it
+                el = ((MCache<EntityCondition, EntityListImpl>) entityListCache).loadSingleFlight(whereCondition, { ->
+                    EntityListImpl dbList = listQuery(ec, ed, queryWhereCondition, havingCondition, orderByExpanded, fieldInfoArray, fieldOptionsArray)
+                    efi.getEntityCache().putInListCache(ed, dbList, whereCondition, entityListCache)
+                    return dbList
+                } as Callable<EntityListImpl>)
+                // the list may be from a query in another thread with a different order by, sort like a cache hit
+                if (orderByExpanded.size() > 0) el.orderByFields(orderByExpanded)
+            } else {
+                el = listQuery(ec, ed, queryWhereCondition, havingCondition, orderByExpanded, fieldInfoArray, fieldOptionsArray)
+
+                // register lock after because we can't before, don't know which records will be returned
+                if (forUpdate && !isViewEntity && efi.ecfi.transactionFacade.getUseLockTrack()) {
+                    int elSize = el.size()
+                    for (int i = 0; i < elSize; i++) {
+                        EntityValue ev = (EntityValue) el.get(i)
+                        registerForUpdateLock(ev)
+                    }
                 }
-            }
 
-            // don't put in tx cache if it is going in list cache
-            if (txCache != null && !doEntityCache && ftsSize == 0) txCache.listPut(ed, whereCondition, el)
-            if (doEntityCache) efi.getEntityCache().putInListCache(ed, el, whereCondition, entityListCache)
+                // don't put in tx cache if it is going in list cache
+                if (txCache != null && !doCachePut && ftsSize == 0) txCache.listPut(ed, whereCondition, el)
+                if (doCachePut) efi.getEntityCache().putInListCache(ed, el, whereCondition, entityListCache)
+            }
 
             // if (ed.getFullEntityName().contains("OrderItem")) logger.warn("======== Got OrderItem from DATABASE ${el.size()} results where: ${whereCondition}")
             // logger.warn("======== Got ${ed.getFullEntityName()} from DATABASE ${el.size()} results where: ${whereCondition}")
@@ -1183,6 +1322,22 @@ abstract class EntityFindBase implements EntityFind {
 
         return el
     }
+    protected EntityListImpl listQuery(ExecutionContextImpl ec, EntityDefinition ed, EntityConditionImplBase queryWhereCondition,
+            EntityConditionImplBase havingCondition, ArrayList<String> orderByExpanded, FieldInfo[] fieldInfoArray,
+            FieldOrderOptions[] fieldOptionsArray) {
+        // call the abstract method
+        try (EntityListIterator eli = iteratorExtended(queryWhereCondition, havingCondition, orderByExpanded, fieldInfoArray, fieldOptionsArray)) {
+            MNode databaseNode = this.efi.getDatabaseNode(ed.getEntityGroupName())
+            if (limit != null && databaseNode != null && "cursor".equals(databaseNode.attribute("offset-style"))) {
+                return (EntityListImpl) eli.getPartialList(offset != null ? offset : 0, limit, false)
+            } else {
+                return (EntityListImpl) eli.getCompleteList(false)
+            }
+        }
+        catch (SQLException e) { throw new EntitySqlException(makeErrorMsg("Error finding list of", LIST_ERROR, queryWhereCondition, ed, ec), e) }
+        catch (ArtifactAuthorizationException e) { throw e }
+        catch (Exception e) { throw new EntityException(makeErrorMsg("Error finding list of", LIST_ERROR, queryWhereCondition, ed, ec), e) }
+    }
 
     @Override
     EntityListIterator iterator() throws EntityException {
@@ -1232,6 +1387,8 @@ abstract class EntityFindBase implements EntityFind {
             }
         }
 
+        if (seekAfterValues != null) addSeekPkOrderBy(ed, orderByExpanded)
+
         // order by fields need to be selected (at least on some databases, Derby is one of them)
         if (getDistinct() && fieldsToSelect != null && fieldsToSelect.size() > 0 && orderByExpanded.size() > 0) {
             for (String orderByField in orderByExpanded) {
@@ -1274,8 +1431,11 @@ abstract class EntityFindBase implements EntityFind {
         }
 
         // NOTE: artifactExecutionFacade.filterFindForUser() no longer called here, called in EntityFindBuilder after trimming if needed for view-entity
+        findFilterList = ec.artifactExecutionFacade.getFindFiltersForUser(ed, null)
 
         EntityConditionImplBase whereCondition = getWhereEntityConditionInternal(ed)
+        if (seekAfterValues != null)
+            whereCondition = EntityConditionFactoryImpl.makeConditionImpl(whereCondition, EntityCondition.AND, makeSeekCondition(ed, orderByExpanded))
         EntityConditionImplBase havingCondition = havingEntityCondition
         if (isViewEntity) {
             EntityConditionImplBase viewWhere = ed.makeViewWhereCondition()
@@ -1342,11 +1502,9 @@ abstract class EntityFindBase implements EntityFind {
         boolean doCache = shouldCache()
 
         // NOTE: artifactExecutionFacade.filterFindForUser() no longer called here, called in EntityFindBuilder after trimming if needed for view-entity
-        if (doCache) {
-            // don't cache if there are any applicable filter conditions
-            ArrayList findFilterList = ec.artifactExecutionFacade.getFindFiltersForUser(ed, null)
-            if (findFilterList != null && findFilterList.size() > 0) doCache = false
-        }
+        findFilterList = ec.artifactExecutionFacade.getFindFiltersForUser(ed, null)
+        // don't cache if there are any applicable filter conditions
+        if (doCache && findFilterList != null && findFilterList.size() > 0) doCache = false
 
         EntityConditionImplBase whereCondition = getWhereEntityConditionInternal(ed)
         // don't cache if no whereCondition
@@ -1355,7 +1513,7 @@ abstract class EntityFindBase implements EntityFind {
 
         Cache<EntityCondition, Long> entityCountCache = doCache ? ed.getCacheCount(efi.getEntityCache()) : (Cache) null
         Long cacheCount = (Long) null
-        if (doCache) cacheCount = (Long) entityCountCache.get(whereCondition)
+        if (doCache) cacheCount = efi.getEntityCache().getFromCountCache(ed, whereCondition, entityCountCache)
 
         long count
         if (cacheCount != null) {
@@ -1416,7 +1574,7 @@ abstract class EntityFindBase implements EntityFind {
             catch (SQLException e) { throw new EntitySqlException(makeErrorMsg("Error finding count of", COUNT_ERROR, queryWhereCondition, ed, ec), e) }
             catch (Exception e) { throw new EntityException(makeErrorMsg("Error finding count of", COUNT_ERROR, queryWhereCondition, ed, ec), e) }
 
-            if (doCache) entityCountCache.put(whereCondition, count)
+            if (doCache && !isAutoCloneRead()) efi.getEntityCache().putInCountCache(ed, whereCondition, count, entityCountCache)
         }
 
         // find EECA rules deprecated, not worth performance hit: efi.runEecaRules(ed.getFullEntityName(), simpleAndMap, "find-count", false)
@@ -1442,6 +1600,8 @@ abstract class EntityFindBase implements EntityFind {
 
         EntityDefinition ed = getEntityDef()
         if (ed.entityInfo.createOnly) throw new EntityException("Entity ${ed.getFullEntityName()} is create-only (immutable), cannot be updated.")
+        // pin to the primary before the find so values to update don't come from a clone
+        efi.ecfi.getEci().markEntityWrite()
 
         this.useCache(false)
         long totalUpdated = 0
@@ -1473,6 +1633,7 @@ abstract class EntityFindBase implements EntityFind {
 
         EntityDefinition ed = getEntityDef()
         if (ed.entityInfo.createOnly) throw new EntityException("Entity ${ed.getFullEntityName()} is create-only (immutable), cannot be deleted.")
+        efi.ecfi.getEci().markEntityWrite()
 
         // if there are no EECAs for the entity OR there is a TransactionCache in place just call ev.delete() on each
         // NOTE DEJ 20200716 always use EV delete, not all JDBC drivers support ResultSet.deleteRow()... like MySQL Connector/J 8.0.20
@@ -48,6 +48,40 @@ public class EntityFindBuilder extends EntityQueryBuilder {
         sqlTopLevel.append("SELECT ");
     }
 
+    /** SQL for a find with a given shape (see EntityFindImpl.makeSqlShapeKey()) and the field for each parameter, in order */
+    public static class FindSqlPlan {
+        final String sql;
+        final FieldInfo[] parameterFields;
+        FindSqlPlan(String sql, FieldInfo[] parameterFields) {
+            this.sql = sql;
+            this.parameterFields = parameterFields;
+        }
+    }
+
+    /** Use SQL already built for a find with the same shape, only binding the values; the parameterValues must be from
+     * makeSqlShape() on the same conditions so they are in the same order. */
+    public boolean useSqlPlan(FindSqlPlan plan, ArrayList<Object> parameterValues) {
+        FieldInfo[] parameterFields = plan.parameterFields;
+        int size = parameterFields.length;
+        if (parameterValues.size() != size) return false;
+        for (int i = 0; i < size; i++)
+            parameters.add(new EntityJavaUtil.EntityConditionParameter(parameterFields[i], parameterValues.get(i), this));
+        finalSql = plan.sql;
+        return true;
+    }
+    /** Make a plan from the SQL built so far; returns null if the parameters don't line up with the shape values */
+    public FindSqlPlan makeSqlPlan(int shapeValuesSize) {
+        int size = parameters.size();
+        if (size != shapeValuesSize) {
+            logger.warn("Not caching SQL for find on " + mainEntityDefinition.fullEntityName + ", found " + size +
+                    " parameters and " + shapeValuesSize + " condition values");
+            return null;
+        }
+        FieldInfo[] parameterFields = new FieldInfo[size];
+        for (int i = 0; i < size; i++) parameterFields[i] = parameters.get(i).getFieldInfo();
+        return new FindSqlPlan(sqlTopLevel.toString(), parameterFields);
+    }
+
     public void makeDistinct() { sqlTopLevel.append("DISTINCT "); }
 
     public void makeCountFunction(FieldOrderOptions[] fieldOptionsArray, boolean isDistinct, boolean isGroupBy) {
@@ -770,7 +804,8 @@ public class EntityFindBuilder extends EntityQueryBuilder {
     @Override
     public PreparedStatement makePreparedStatement() {
         if (connection == null) throw new IllegalStateException("Cannot make PreparedStatement, no Connection in place");
-        finalSql = sqlTopLevel.toString();
+        // finalSql already set if using a FindSqlPlan
+        if (finalSql == null) finalSql = sqlTopLevel.toString();
         // if (this.mainEntityDefinition.getEntityName().contains("FooBar")) logger.warn("========= making find PreparedStatement for SQL: " + finalSql + "; parameters: " + parameters);
         if (isDebugEnabled) logger.debug("making find PreparedStatement for SQL: " + finalSql);
         try {
@@ -51,21 +51,31 @@ public class EntityFindImpl extends EntityFindBase {
         // table doesn't exist, just return null
         if (!ed.tableExistsDbMetaOnly()) return null;
 
+        // NOTE: the having condition is not used for find one but for a view-entity may change the FROM clause
+        ArrayList<Object> shapeValues = new ArrayList<>();
+        String shapeKey = getHavingEntityCondition() == null ? makeSqlShapeKey('1', ed, whereCondition, null,
+                orderByFields, fieldInfoArray, fieldOptionsArray, shapeValues) : null;
+        EntityFindBuilder.FindSqlPlan sqlPlan = shapeKey != null ? ed.getFindSqlPlan(shapeKey) : null;
+
         EntityFindBuilder efb = new EntityFindBuilder(ed, this, whereCondition, fieldInfoArray);
         // flag as a find one, small changes to internal behavior to reduce overhead
         efb.isFindOne();
 
-        // SELECT fields
-        efb.makeSqlSelectFields(fieldInfoArray, fieldOptionsArray, "true".equals(efi.getDatabaseNode(ed.groupName).attribute("add-unique-as")));
-        // FROM Clause
-        efb.makeSqlFromClause();
-        // WHERE clause only for one/pk query
-        efb.makeWhereClause();
-        // GROUP BY clause
-        efb.makeGroupByClause();
-        // NOTE 20200707 don't do this, databases such as Oracle (error ORA-02014) do not allow use of limit/offset with for update: LIMIT/OFFSET clause - for find one always limit to 1: efb.addLimitOffset(1, 0);
-        // FOR UPDATE
-        if (getForUpdate()) efb.makeForUpdate();
+        if (sqlPlan == null || !efb.useSqlPlan(sqlPlan, shapeValues)) {
+            // SELECT fields
+            efb.makeSqlSelectFields(fieldInfoArray, fieldOptionsArray, "true".equals(efi.getDatabaseNode(ed.groupName).attribute("add-unique-as")));
+            // FROM Clause
+            efb.makeSqlFromClause();
+            // WHERE clause only for one/pk query
+            efb.makeWhereClause();
+            // GROUP BY clause
+            efb.makeGroupByClause();
+            // NOTE 20200707 don't do this, databases such as Oracle (error ORA-02014) do not allow use of limit/offset with for update: LIMIT/OFFSET clause - for find one always limit to 1: efb.addLimitOffset(1, 0);
+            // FOR UPDATE
+            if (getForUpdate()) efb.makeForUpdate();
+
+            if (shapeKey != null) putSqlPlan(ed, shapeKey, efb, shapeValues);
+        }
 
         // run the SQL now that it is built
         EntityValueBase newEntityValue = null;
@@ -75,7 +85,7 @@ public class EntityFindImpl extends EntityFindBase {
             // if this is a view-entity and any table in it exists check/create all or will fail with optional members, etc
             if (ed.isViewEntity) efi.getEntityDbMeta().checkTableRuntime(ed);
 
-            efb.makeConnection(useClone);
+            efb.makeConnection(useClone || efi.useCloneForRead(forUpdate));
             efb.makePreparedStatement();
             efb.setPreparedStatementValues();
 
@@ -113,27 +123,36 @@ public class EntityFindImpl extends EntityFindBase {
         // table doesn't exist, just return empty ELI
         if (!ed.tableExistsDbMetaOnly()) return new EntityListIteratorWrapper(new ArrayList<>(), ed, efi, null, null);
 
+        ArrayList<Object> shapeValues = new ArrayList<>();
+        String shapeKey = makeSqlShapeKey('L', ed, whereCondition, havingCondition, orderByExpanded,
+                fieldInfoArray, fieldOptionsArray, shapeValues);
+        EntityFindBuilder.FindSqlPlan sqlPlan = shapeKey != null ? ed.getFindSqlPlan(shapeKey) : null;
+
         EntityFindBuilder efb = new EntityFindBuilder(ed, this, whereCondition, fieldInfoArray);
-        if (getDistinct()) efb.makeDistinct();
-
-        // select fields
-        efb.makeSqlSelectFields(fieldInfoArray, fieldOptionsArray, "true".equals(efi.getDatabaseNode(ed.groupName).attribute("add-unique-as")));
-        // FROM Clause
-        efb.makeSqlFromClause();
-        // WHERE clause
-        efb.makeWhereClause();
-        // GROUP BY clause
-        efb.makeGroupByClause();
-        // HAVING clause
-        efb.makeHavingClause(havingCondition);
-
-        boolean hasLimitOffset = limit != null || offset != null;
-        // ORDER BY clause
-        efb.makeOrderByClause(orderByExpanded, hasLimitOffset);
-        // LIMIT/OFFSET clause
-        if (hasLimitOffset) efb.addLimitOffset(limit, offset);
-        // FOR UPDATE
-        if (getForUpdate()) efb.makeForUpdate();
+        if (sqlPlan == null || !efb.useSqlPlan(sqlPlan, shapeValues)) {
+            if (getDistinct()) efb.makeDistinct();
+
+            // select fields
+            efb.makeSqlSelectFields(fieldInfoArray, fieldOptionsArray, "true".equals(efi.getDatabaseNode(ed.groupName).attribute("add-unique-as")));
+            // FROM Clause
+            efb.makeSqlFromClause();
+            // WHERE clause
+            efb.makeWhereClause();
+            // GROUP BY clause
+            efb.makeGroupByClause();
+            // HAVING clause
+            efb.makeHavingClause(havingCondition);
+
+            boolean hasLimitOffset = limit != null || offset != null;
+            // ORDER BY clause
+            efb.makeOrderByClause(orderByExpanded, hasLimitOffset);
+            // LIMIT/OFFSET clause
+            if (hasLimitOffset) efb.addLimitOffset(limit, offset);
+            // FOR UPDATE
+            if (getForUpdate()) efb.makeForUpdate();
+
+            if (shapeKey != null) putSqlPlan(ed, shapeKey, efb, shapeValues);
+        }
 
         // run the SQL now that it is built
         EntityListIteratorImpl elii;
@@ -143,7 +162,7 @@ public class EntityFindImpl extends EntityFindBase {
             // if this is a view-entity and any table in it exists check/create all or will fail with optional members, etc
             if (ed.isViewEntity) efi.getEntityDbMeta().checkTableRuntime(ed);
 
-            Connection con = efb.makeConnection(useClone);
+            Connection con = efb.makeConnection(useClone || efi.useCloneForRead(forUpdate));
             efb.makePreparedStatement();
             efb.setPreparedStatementValues();
 
@@ -171,25 +190,33 @@ public class EntityFindImpl extends EntityFindBase {
         // table doesn't exist, just return 0
         if (!ed.tableExistsDbMetaOnly()) return 0;
 
-        EntityFindBuilder efb = new EntityFindBuilder(ed, this, whereCondition, fieldInfoArray);
-
-        ArrayList<MNode> entityConditionList = ed.internalEntityNode.children("entity-condition");
-        MNode condNode = entityConditionList != null && entityConditionList.size() > 0 ? entityConditionList.get(0) : null;
-        boolean isDistinct = getDistinct() || (ed.isViewEntity && condNode != null && "true".equals(condNode.attribute("distinct")));
-        boolean isGroupBy = ed.entityInfo.hasFunctionAlias;
+        ArrayList<Object> shapeValues = new ArrayList<>();
+        String shapeKey = makeSqlShapeKey('C', ed, whereCondition, havingCondition, orderByFields,
+                fieldInfoArray, fieldOptionsArray, shapeValues);
+        EntityFindBuilder.FindSqlPlan sqlPlan = shapeKey != null ? ed.getFindSqlPlan(shapeKey) : null;
 
-        // count function instead of select fields
-        efb.makeCountFunction(fieldOptionsArray, isDistinct, isGroupBy);
-        // FROM Clause
-        efb.makeSqlFromClause();
-        // WHERE clause
-        efb.makeWhereClause();
-        // GROUP BY clause
-        efb.makeGroupByClause();
-        // HAVING clause
-        efb.makeHavingClause(havingCondition);
-
-        efb.closeCountSubSelect(fieldInfoArray.length, isDistinct, isGroupBy);
+        EntityFindBuilder efb = new EntityFindBuilder(ed, this, whereCondition, fieldInfoArray);
+        if (sqlPlan == null || !efb.useSqlPlan(sqlPlan, shapeValues)) {
+            ArrayList<MNode> entityConditionList = ed.internalEntityNode.children("entity-condition");
+            MNode condNode = entityConditionList != null && entityConditionList.size() > 0 ? entityConditionList.get(0) : null;
+            boolean isDistinct = getDistinct() || (ed.isViewEntity && condNode != null && "true".equals(condNode.attribute("distinct")));
+            boolean isGroupBy = ed.entityInfo.hasFunctionAlias;
+
+            // count function instead of select fields
+            efb.makeCountFunction(fieldOptionsArray, isDistinct, isGroupBy);
+            // FROM Clause
+            efb.makeSqlFromClause();
+            // WHERE clause
+            efb.makeWhereClause();
+            // GROUP BY clause
+            efb.makeGroupByClause();
+            // HAVING clause
+            efb.makeHavingClause(havingCondition);
+
+            efb.closeCountSubSelect(fieldInfoArray.length, isDistinct, isGroupBy);
+
+            if (shapeKey != null) putSqlPlan(ed, shapeKey, efb, shapeValues);
+        }
 
         // run the SQL now that it is built
         long count = 0;
@@ -199,7 +226,7 @@ public class EntityFindImpl extends EntityFindBase {
             // if this is a view-entity and any table in it exists check/create all or will fail with optional members, etc
             if (ed.isViewEntity) efi.getEntityDbMeta().checkTableRuntime(ed);
 
-            efb.makeConnection(useClone);
+            efb.makeConnection(useClone || efi.useCloneForRead(forUpdate));
             efb.makePreparedStatement();
             efb.setPreparedStatementValues();
 
@@ -213,4 +240,55 @@ public class EntityFindImpl extends EntityFindBase {
 
         return count;
     }
+
+    /** Make a key for the shape of this find: type of find, selected fields, condition structure without values, order by,
+     * limit/offset, etc. Values from the where and having conditions are added to parameterValues in the same order as
+     * the parameters in the SQL. Returns null if the SQL for this find should not be reused. */
+    protected String makeSqlShapeKey(char findType, EntityDefinition ed, EntityConditionImplBase whereCondition,
+                                     EntityConditionImplBase havingCondition, ArrayList<String> orderByList,
+                                     FieldInfo[] fieldInfoArray, FieldOrderOptions[] fieldOptionsArray,
+                                     ArrayList<Object> parameterValues) {
+        if (dynamicView != null || !ed.isFindSqlPlanCacheable()) return null;
+        // authz filter conditions are added to the SQL based on the current user, so don't reuse SQL if there are any;
+        //     filters already looked up for this find in EntityFindBase
+        if (findFilterList != null && findFilterList.size() > 0) return null;
+
+        StringBuilder shapeKey = new StringBuilder(200);
+        shapeKey.append(findType);
+        if (getDistinct()) shapeKey.append('d');
+        if (getForUpdate()) shapeKey.append('u');
+        // limit and offset values are in the SQL text, not parameters
+        if (limit != null) shapeKey.append('l').append(limit.intValue());
+        if (offset != null) shapeKey.append('o').append(offset.intValue());
+
+        shapeKey.append('[');
+        if (fieldInfoArray == ed.entityInfo.allFieldInfoArray && fieldOptionsArray == null) {
+            shapeKey.append('*');
+        } else {
+            for (int i = 0; i < fieldInfoArray.length; i++) {
+                FieldInfo fi = fieldInfoArray[i];
+                if (fi == null) break;
+                if (i > 0) shapeKey.append(',');
+                FieldOrderOptions foo = fieldOptionsArray != null ? fieldOptionsArray[i] : null;
+                if (foo != null && foo.getCaseUpperLower() != null) shapeKey.append(foo.getCaseUpperLower() ? '^' : '~');
+                shapeKey.append(fi.name);
+            }
+        }
+        shapeKey.append(']');
+
+        shapeKey.append("|w");
+        if (whereCondition != null && !whereCondition.makeSqlShape(shapeKey, parameterValues)) return null;
+        shapeKey.append("|h");
+        if (havingCondition != null && !havingCondition.makeSqlShape(shapeKey, parameterValues)) return null;
+        shapeKey.append("|o");
+        if (orderByList != null) {
+            int orderBySize = orderByList.size();
+            for (int i = 0; i < orderBySize; i++) shapeKey.append(orderByList.get(i)).append(',');
+        }
+        return shapeKey.toString();
+    }
+    private static void putSqlPlan(EntityDefinition ed, String shapeKey, EntityFindBuilder efb, ArrayList<Object> shapeValues) {
+        EntityFindBuilder.FindSqlPlan newPlan = efb.makeSqlPlan(shapeValues.size());
+        if (newPlan != null) ed.putFindSqlPlan(shapeKey, newPlan);
+    }
 }
@@ -266,7 +266,7 @@ public class EntityJavaUtil {
         public final boolean neverCache;
         final String sequencePrimaryPrefix;
         public final long sequencePrimaryStagger, sequenceBankSize;
-        public final boolean sequencePrimaryUseUuid;
+        public final boolean sequencePrimaryUseUuid, sequencePrimaryNative;
 
         final boolean hasFieldDefaults;
         final String authorizeSkipStr;
@@ -332,6 +332,7 @@ public class EntityJavaUtil {
 
             sequencePrimaryUseUuid = "true".equals(internalEntityNode.attribute("sequence-primary-use-uuid")) ||
                     (datasourceNode != null && "true".equals(datasourceNode.attribute("sequence-primary-use-uuid")));
+            sequencePrimaryNative = "native".equals(internalEntityNode.attribute("sequence-primary-strategy"));
 
             optimisticLock = "true".equals(internalEntityNode.attribute("optimistic-lock"));
 
@@ -16,11 +16,14 @@ package org.moqui.impl.entity;
 import groovy.lang.Closure;
 import org.moqui.Moqui;
 import org.moqui.entity.EntityCondition;
+import org.moqui.entity.EntityConditionFactory;
 import org.moqui.entity.EntityException;
+import org.moqui.entity.EntityFind;
 import org.moqui.entity.EntityList;
 import org.moqui.entity.EntityValue;
 import org.moqui.impl.context.ExecutionContextFactoryImpl;
 import org.moqui.util.CollectionUtilities;
+import org.moqui.util.ObjectUtilities;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -409,6 +412,102 @@ public class EntityListImpl implements EntityList {
         return this;
     }
 
+    @Override public EntityList prefetchRelated(String... relationshipNames) {
+        // values in lists from the cache are shared, don't hang related records on them
+        if (fromCache || relationshipNames == null || valueList.size() == 0) return this;
+        EntityDefinition ed = ((EntityValueBase) valueList.get(0)).getEntityDefinition();
+        for (String relationshipName : relationshipNames) {
+            EntityJavaUtil.RelationshipInfo relInfo = ed.getRelationshipInfo(relationshipName);
+            if (relInfo == null) throw new EntityException("Relationship " + relationshipName + " not found in entity " + ed.getFullEntityName());
+            prefetchRelated(ed, relInfo);
+        }
+        return this;
+    }
+    private void prefetchRelated(EntityDefinition ed, EntityJavaUtil.RelationshipInfo relInfo) {
+        ArrayList<String> keyFieldList = relInfo.keyFieldList;
+        int keySize = keyFieldList.size();
+        if (keySize == 0) throw new EntityException("Relationship " + relInfo.relationshipName + " in entity " + ed.getFullEntityName() + " has no key-map sub-elements and no default values");
+        String[] relatedFieldNames = new String[keySize];
+        for (int i = 0; i < keySize; i++) relatedFieldNames[i] = relInfo.keyMap.get(keyFieldList.get(i));
+
+        // distinct key values, and the values in this list for each; keyed by String values like fastFindMany()
+        LinkedHashMap<Object, Object[]> keyValuesByMatchKey = new LinkedHashMap<>();
+        HashMap<Object, ArrayList<EntityValueBase>> valuesByMatchKey = new HashMap<>();
+        int valueListSize = valueList.size();
+        for (int i = 0; i < valueListSize; i++) {
+            EntityValueBase evb = (EntityValueBase) valueList.get(i);
+            if (!ed.getFullEntityName().equals(evb.resolveEntityName())) continue;
+            Object[] keyValues = evb.getRelatedKeyValues(relInfo);
+            boolean hasEmptyKey = false;
+            for (int j = 0; j < keySize; j++) if (ObjectUtilities.isEmpty(keyValues[j])) { hasEmptyKey = true; break; }
+            // leave these to findRelated*() as usual
+            if (hasEmptyKey) continue;
+
+            Object matchKey = EntityFacadeImpl.makePkMatchKey(keyValues);
+            ArrayList<EntityValueBase> matchValues = valuesByMatchKey.get(matchKey);
+            if (matchValues == null) {
+                matchValues = new ArrayList<>();
+                valuesByMatchKey.put(matchKey, matchValues);
+                keyValuesByMatchKey.put(matchKey, keyValues);
+            }
+            matchValues.add(evb);
+        }
+        int distinctSize = keyValuesByMatchKey.size();
+        if (distinctSize == 0) return;
+
+        EntityFacadeImpl efi = getEfi();
+        EntityConditionFactory ecf = efi.getConditionFactory();
+        ArrayList<Object[]> keyValuesList = new ArrayList<>(keyValuesByMatchKey.values());
+        HashMap<Object, EntityListImpl> relatedByMatchKey = new HashMap<>();
+        for (int start = 0; start < distinctSize; start += EntityFacadeImpl.fastFindManyChunkSize) {
+            int end = Math.min(start + EntityFacadeImpl.fastFindManyChunkSize, distinctSize);
+            EntityCondition keyCond;
+            if (keySize == 1) {
+                ArrayList<Object> inList = new ArrayList<>(end - start);
+                for (int i = start; i < end; i++) inList.add(keyValuesList.get(i)[0]);
+                keyCond = ecf.makeCondition(relatedFieldNames[0], EntityCondition.IN, inList);
+            } else {
+                ArrayList<EntityCondition> orList = new ArrayList<>(end - start);
+                for (int i = start; i < end; i++) {
+                    Object[] keyValues = keyValuesList.get(i);
+                    Map<String, Object> keyCondMap = new HashMap<>();
+                    for (int j = 0; j < keySize; j++) keyCondMap.put(relatedFieldNames[j], keyValues[j]);
+                    orList.add(ecf.makeCondition(keyCondMap));
+                }
+                keyCond = ecf.makeCondition(orList, EntityCondition.OR);
+            }
+
+            EntityFind find = efi.find(relInfo.relatedEntityName).condition(keyCond).useCache(false);
+            if (relInfo.keyValueMap != null) for (Map.Entry<String, String> keyValueEntry : relInfo.keyValueMap.entrySet())
+                find.condition(keyValueEntry.getKey(), keyValueEntry.getValue());
+            EntityList relatedList = find.list();
+
+            int relatedSize = relatedList.size();
+            for (int i = 0; i < relatedSize; i++) {
+                EntityValue relatedValue = relatedList.get(i);
+                Object[] relatedKeyValues = new Object[keySize];
+                for (int j = 0; j < keySize; j++) relatedKeyValues[j] = relatedValue.getNoCheckSimple(relatedFieldNames[j]);
+                Object matchKey = EntityFacadeImpl.makePkMatchKey(relatedKeyValues);
+                EntityListImpl matchList = relatedByMatchKey.get(matchKey);
+                if (matchList == null) {
+                    matchList = new EntityListImpl(efi, relInfo.isTypeOne ? 1 : 10);
+                    relatedByMatchKey.put(matchKey, matchList);
+                }
+                matchList.valueList.add(relatedValue);
+            }
+        }
+
+        for (Map.Entry<Object, ArrayList<EntityValueBase>> entry : valuesByMatchKey.entrySet()) {
+            EntityListImpl matchList = relatedByMatchKey.get(entry.getKey());
+            Object related;
+            if (relInfo.isTypeOne) related = matchList != null ? matchList.valueList.get(0) : null;
+            else related = matchList != null ? matchList : new EntityListImpl(efi, 0);
+            ArrayList<EntityValueBase> matchValues = entry.getValue();
+            int matchValuesSize = matchValues.size();
+            for (int i = 0; i < matchValuesSize; i++) matchValues.get(i).setPrefetchedRelated(relInfo, related);
+        }
+    }
+
     @Override public int writeXmlText(Writer writer, String prefix, int dependentLevels) {
         int recordsWritten = 0;
         for (EntityValue ev : this) recordsWritten += ev.writeXmlText(writer, prefix, dependentLevels);
@@ -573,6 +672,7 @@ public class EntityListImpl implements EntityList {
         @Override public void move(int fromIndex, int toIndex) { throw new IllegalArgumentException("EmptyEntityList does not support move"); }
         @Override public EntityList addIfMissing(EntityValue value) { throw new IllegalArgumentException("EmptyEntityList does not support add"); }
         @Override public EntityList addAllIfMissing(EntityList el) { throw new IllegalArgumentException("EmptyEntityList does not support add"); }
+        @Override public EntityList prefetchRelated(String... relationshipNames) { return this; }
         @Override public @Nonnull Iterator<EntityValue> iterator() { return emptyIterator; }
         @Override public Object clone() { return this.cloneList(); }
         @Override public int writeXmlText(Writer writer, String prefix, int dependentLevels) { return 0; }
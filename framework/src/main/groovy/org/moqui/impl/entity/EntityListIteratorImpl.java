@@ -356,7 +356,7 @@ public class EntityListIteratorImpl implements EntityListIterator {
     public void remove() {
         // TODO: call EECAs
         try {
-            efi.getEntityCache().clearCacheForValue((EntityValueBase) currentEntityValue(), false);
+            efi.getEntityCache().clearCacheForValue((EntityValueBase) currentEntityValue(), false, true);
             rs.deleteRow();
         } catch (SQLException e) {
             throw new EntityException("Error removing row", e);
@@ -46,6 +46,8 @@ public class EntityQueryBuilder implements Runnable {
     private ResultSet rs = null;
     protected Connection connection = null;
     private boolean externalConnection = false;
+    /** datasource clone group the connection is for, null if not using a clone; query latency and errors go to the EntityCloneRouter */
+    private String cloneGroupName = null;
     private boolean isFindOne = false;
 
     boolean execWithTimeout = false;
@@ -63,7 +65,22 @@ public class EntityQueryBuilder implements Runnable {
     public EntityDefinition getMainEd() { return mainEntityDefinition; }
 
     Connection makeConnection(boolean useClone) {
-        connection = efi.getConnection(mainEntityDefinition.getEntityGroupName(), useClone);
+        String groupName = mainEntityDefinition.getEntityGroupName();
+        if (useClone) {
+            String cloneName = efi.getDatasourceCloneName(groupName);
+            if (cloneName.indexOf('#') > 0) {
+                try {
+                    connection = efi.getConnection(cloneName, false);
+                    cloneGroupName = cloneName;
+                    return connection;
+                } catch (Exception e) {
+                    // clone not available, count it against the clone and use the primary instead of failing the find
+                    efi.getCloneRouter().recordError(cloneName);
+                    logger.warn("Error getting connection for datasource clone " + cloneName + ", using primary: " + e.toString());
+                }
+            }
+        }
+        connection = efi.getConnection(groupName, false);
         return connection;
     }
 
@@ -123,7 +140,7 @@ public class EntityQueryBuilder implements Runnable {
         if (ps == null) throw new IllegalStateException("Cannot Execute Query, no PreparedStatement in place");
         boolean isError = false;
         boolean queryStats = !isFindOne && efi.getQueryStats();
-        long beforeQuery = queryStats ? System.nanoTime() : 0;
+        long beforeQuery = queryStats || cloneGroupName != null ? System.nanoTime() : 0;
 
         execQuery = true;
         if (execWithTimeout) {
@@ -150,6 +167,7 @@ public class EntityQueryBuilder implements Runnable {
             }
         } finally {
             if (queryStats) efi.saveQueryStats(mainEntityDefinition, finalSql, System.nanoTime() - beforeQuery, isError);
+            if (cloneGroupName != null) efi.getCloneRouter().recordQuery(cloneGroupName, System.nanoTime() - beforeQuery, isError);
         }
 
         return rs;
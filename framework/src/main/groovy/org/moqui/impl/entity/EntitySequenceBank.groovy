@@ -0,0 +1,121 @@
+/*
+ * This software is in the public domain under CC0 1.0 Universal plus a
+ * Grant of Patent License.
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication
+ * along with this software (see the LICENSE.md file). If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package org.moqui.impl.entity
+
+import groovy.transform.CompileStatic
+import org.moqui.impl.context.ExecutionContextImpl
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.ReentrantLock
+
+/** Bank of sequenced IDs reserved in moqui.entity.SequenceValueItem for a single sequence name. IDs are handed out
+ * from the current range with an atomic counter. When the current range gets down to the low water mark the next
+ * range is reserved in a worker thread so it is ready before the current one runs out. A creating thread only waits
+ * on the database for the first range or if IDs are used faster than the prefetch can reserve them. */
+@CompileStatic
+class EntitySequenceBank {
+    protected final static Logger logger = LoggerFactory.getLogger(EntitySequenceBank.class)
+
+    /** Range of reserved sequence values, start to end inclusive */
+    static final class Range {
+        final long end
+        final AtomicLong next
+        Range(long start, long end) { this.end = end; next = new AtomicLong(start) }
+        @Override String toString() { return "[" + next.get() + ", " + end + "]" }
+    }
+
+    protected final EntityFacadeImpl efi
+    final String seqName
+
+    protected volatile Range current = (Range) null
+    protected volatile Range prefetched = (Range) null
+    protected final AtomicBoolean prefetchRunning = new AtomicBoolean(false)
+    /** held while getting a range from the database so only one thread at a time does it for this sequence */
+    protected final ReentrantLock fetchLock = new ReentrantLock()
+
+    EntitySequenceBank(EntityFacadeImpl efi, String seqName) {
+        this.efi = efi
+        this.seqName = seqName
+    }
+    /** Bank with a fixed initial range, see EntityFacadeImpl.tempSetSequencedIdPrimary() */
+    EntitySequenceBank(EntityFacadeImpl efi, String seqName, long start, long end) {
+        this(efi, seqName)
+        current = new Range(start, end)
+    }
+
+    long nextSeqNum(long staggerMax, long bankSize) {
+        while (true) {
+            Range cur = current
+            if (cur != null) {
+                long step = staggerMax > 1L ? Math.max(1L, ThreadLocalRandom.current().nextLong(staggerMax + 1L)) : 1L
+                long seqNum = cur.next.getAndAdd(step)
+                if (seqNum <= cur.end) {
+                    // prefetch once a quarter of the bank is left, or at the last value for very small banks
+                    if (cur.end - seqNum <= (bankSize >> 2)) prefetch(cur, bankSize)
+                    return seqNum
+                }
+            }
+
+            // current range used up (or none yet): switch to the prefetched range, or get one now
+            fetchLock.lock()
+            try {
+                // another thread already switched, or a prefetch finished while waiting for the lock
+                if (!current.is(cur)) continue
+                Range pre = prefetched
+                if (pre != null) {
+                    prefetched = (Range) null
+                    current = pre
+                } else {
+                    current = efi.dbSequenceFetchRange(seqName, cur != null ? cur.end + 1L : 0L, bankSize, true)
+                }
+            } finally {
+                fetchLock.unlock()
+            }
+        }
+    }
+
+    protected void prefetch(Range cur, long bankSize) {
+        if (prefetched != null || !prefetchRunning.compareAndSet(false, true)) return
+        try {
+            submitPrefetch(cur, bankSize)
+        } catch (RejectedExecutionException e) {
+            // worker pool queue full or shut down, a creating thread will get a range when the current is used up
+            prefetchRunning.set(false)
+            if (logger.isDebugEnabled()) logger.debug("Could not prefetch sequence bank for ${seqName}: ${e.toString()}")
+        }
+    }
+    protected void submitPrefetch(Range cur, long bankSize) {
+        efi.ecfi.workerPool.submit(new ExecutionContextImpl.ThreadPoolRunnable(efi.ecfi, {
+            fetchLock.lock()
+            try {
+                // may have been used already by a thread that got the lock first
+                if (prefetched == null && current.is(cur))
+                    prefetched = efi.dbSequenceFetchRange(seqName, cur.end + 1L, bankSize, false)
+            } catch (Throwable t) {
+                // not fatal, a creating thread will get a range when the current is used up
+                logger.warn("Error prefetching sequence bank for ${seqName}: ${t.toString()}")
+            } finally {
+                fetchLock.unlock()
+                prefetchRunning.set(false)
+            }
+        }))
+    }
+
+    @Override String toString() { return seqName + " current " + current + " prefetched " + prefetched }
+}
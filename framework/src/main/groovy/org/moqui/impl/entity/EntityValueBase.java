@@ -67,6 +67,8 @@ public abstract class EntityValueBase implements EntityValue {
     protected transient LiteStringMap<Object> oldDbValueMap = null;
     private transient Map<String, Map<String, String>> localizedByLocaleByField = null;
     private transient Set<String> touchedFields = null;
+    /** Related records set by EntityListImpl.prefetchRelated(), by relationship name */
+    private transient HashMap<String, PrefetchedRelated> prefetchedRelated = null;
 
     private transient boolean modified = false;
     private transient boolean mutable = true;
@@ -655,6 +657,11 @@ public abstract class EntityValueBase implements EntityValue {
     public EntityValue store() { return createOrUpdate(); }
 
     private void handleAuditLog(boolean isUpdate, LiteStringMap<Object> oldValues, EntityDefinition ed, ExecutionContextImpl ec) {
+        handleAuditLog(isUpdate, oldValues, ed, ec, null);
+    }
+    /** @param auditParmsList if not null add parameters for each EntityAuditLog record to it instead of creating them */
+    private void handleAuditLog(boolean isUpdate, LiteStringMap<Object> oldValues, EntityDefinition ed, ExecutionContextImpl ec,
+                                ArrayList<Map<String, Object>> auditParmsList) {
         if ((isUpdate && oldValues == null) || !ed.entityInfo.needsAuditLog || ec.artifactExecutionFacade.entityAuditLogDisabled()) return;
 
         Timestamp nowTimestamp = ec.userFacade.getNowTimestamp();
@@ -734,12 +741,28 @@ public abstract class EntityValueBase implements EntityValue {
 
                 // logger.warn("TOREMOVE: in handleAuditLog for [${ed.entityName}.${fieldName}] value=[${value}], oldValue=[${oldValue}], oldValues=[${oldValues}]", new Exception("AuditLog location"))
 
+                if (auditParmsList != null) { auditParmsList.add(parms); continue; }
                 // NOTE: if this is changed to async the time zone on nowTimestamp gets messed up (user's time zone lost)
                 getEntityFacadeImpl().ecfi.serviceFacade.sync().name("create#moqui.entity.EntityAuditLog")
                         .parameters(parms).disableAuthz().call();
             }
         }
     }
+    /** Create EntityAuditLog records collected by handleAuditLog(), with a bulk create unless there are SECA rules
+     * for the create service that expect a service call per record */
+    private static void createAuditLogBulk(ArrayList<Map<String, Object>> auditParmsList, EntityFacadeImpl efi) {
+        final int auditParmsSize = auditParmsList.size();
+        if (auditParmsSize == 0) return;
+        if (efi.ecfi.serviceFacade.secaRules("createmoqui.entity.EntityAuditLog") != null) {
+            for (int i = 0; i < auditParmsSize; i++) efi.ecfi.serviceFacade.sync().name("create#moqui.entity.EntityAuditLog")
+                    .parameters(auditParmsList.get(i)).disableAuthz().call();
+            return;
+        }
+        ArrayList<EntityValue> auditValueList = new ArrayList<>(auditParmsSize);
+        for (int i = 0; i < auditParmsSize; i++)
+            auditValueList.add(efi.makeValue("moqui.entity.EntityAuditLog").setAll(auditParmsList.get(i)).setSequencedIdPrimary());
+        efi.createBulk(auditValueList);
+    }
 
     private void addThreeFieldPkValues(Map<String, Object> parms, EntityDefinition ed) {
         // get pkPrimaryValue, pkSecondaryValue, pkRestCombinedValue (just like the AuditLog stuff)
@@ -775,6 +798,17 @@ public abstract class EntityValueBase implements EntityValue {
         Map<String, String> keyMap = relInfo.keyMap;
         if (keyMap == null || keyMap.size() == 0) throw new EntityException("Relationship " + relInfo.relationshipName + " in entity " + entityName + " has no key-map sub-elements and no default values");
 
+        if (forUpdate == null || !forUpdate) {
+            PrefetchedRelated prefetched = getPrefetchedRelated(relInfo);
+            if (prefetched != null && prefetched.related instanceof EntityList) {
+                // clone so the caller can filter, sort, etc without changing the prefetched list
+                EntityList relList = ((EntityList) prefetched.related).cloneList();
+                if (byAndFields != null && byAndFields.size() > 0) relList.filterByAnd(byAndFields);
+                if (orderBy != null && orderBy.size() > 0) relList.orderByFields(orderBy);
+                return relList;
+            }
+        }
+
         // make a Map where the key is the related entity's field name, and the value is the value from this entity
         Map<String, Object> condMap = new HashMap<>();
         for (Entry<String, String> entry : keyMap.entrySet())
@@ -801,6 +835,11 @@ public abstract class EntityValueBase implements EntityValue {
         Map<String, String> keyMap = relInfo.keyMap;
         if (keyMap == null || keyMap.size() == 0) throw new EntityException("Relationship " + relInfo.relationshipName + " in entity " + entityName + " has no key-map sub-elements and no default values");
 
+        if (forUpdate == null || !forUpdate) {
+            PrefetchedRelated prefetched = getPrefetchedRelated(relInfo);
+            if (prefetched != null && !(prefetched.related instanceof EntityList)) return (EntityValue) prefetched.related;
+        }
+
         // make a Map where the key is the related entity's field name, and the value is the value from this entity
         Map<String, Object> condMap = new HashMap<>();
         for (Entry<String, String> entry : keyMap.entrySet()) condMap.put(entry.getValue(), valueMapInternal.getByString(entry.getKey()));
@@ -824,6 +863,9 @@ public abstract class EntityValueBase implements EntityValue {
         Map<String, String> keyMap = relInfo.keyMap;
         if (keyMap == null || keyMap.size() == 0) throw new EntityException("Relationship " + relInfo.relationshipName + " in entity " + entityName + " has no key-map sub-elements and no default values");
 
+        PrefetchedRelated prefetched = getPrefetchedRelated(relInfo);
+        if (prefetched != null && prefetched.related instanceof EntityList) return ((EntityList) prefetched.related).size();
+
         // make a Map where the key is the related entity's field name, and the value is the value from this entity
         Map<String, Object> condMap = new HashMap<>();
         for (Entry<String, String> entry : keyMap.entrySet()) condMap.put(entry.getValue(), valueMapInternal.getByString(entry.getKey()));
@@ -836,6 +878,35 @@ public abstract class EntityValueBase implements EntityValue {
         return find.condition(condMap).useCache(useCache).count();
     }
 
+    /** Set by EntityListImpl.prefetchRelated(), related is an EntityValue (or null if none) for type one relationships
+     * and an EntityList for type many. Used by findRelated*() until a key field changes. */
+    void setPrefetchedRelated(EntityJavaUtil.RelationshipInfo relInfo, Object related) {
+        if (prefetchedRelated == null) prefetchedRelated = new HashMap<>();
+        prefetchedRelated.put(relInfo.relationshipName, new PrefetchedRelated(getRelatedKeyValues(relInfo), related));
+    }
+    Object[] getRelatedKeyValues(EntityJavaUtil.RelationshipInfo relInfo) {
+        ArrayList<String> keyFieldList = relInfo.keyFieldList;
+        int keySize = keyFieldList.size();
+        Object[] keyValues = new Object[keySize];
+        for (int i = 0; i < keySize; i++) keyValues[i] = valueMapInternal.getByString(keyFieldList.get(i));
+        return keyValues;
+    }
+    private PrefetchedRelated getPrefetchedRelated(EntityJavaUtil.RelationshipInfo relInfo) {
+        if (prefetchedRelated == null) return null;
+        PrefetchedRelated prefetched = prefetchedRelated.get(relInfo.relationshipName);
+        if (prefetched == null) return null;
+        if (!Arrays.equals(prefetched.keyValues, getRelatedKeyValues(relInfo))) {
+            prefetchedRelated.remove(relInfo.relationshipName);
+            return null;
+        }
+        return prefetched;
+    }
+    private static final class PrefetchedRelated {
+        final Object[] keyValues;
+        final Object related;
+        PrefetchedRelated(Object[] keyValues, Object related) { this.keyValues = keyValues; this.related = related; }
+    }
+
     @Override
     public EntityList findRelatedFk(Set<String> skipEntities) {
         EntityList relatedList = new EntityListImpl(getEntityFacadeImpl());
@@ -1502,6 +1573,8 @@ public abstract class EntityValueBase implements EntityValue {
         final ExecutionContextFactoryImpl ecfi = efi.ecfi;
         final ExecutionContextImpl ec = ecfi.getEci();
         final ArtifactExecutionFacadeImpl aefi = ec.artifactExecutionFacade;
+        // pin later finds in this context to the primary so they see this write, even if read-only
+        ec.markEntityWrite();
 
         // check/set defaults
         if (entityInfo.hasFieldDefaults) checkSetFieldDefaults(ed, ec, null);
@@ -1552,8 +1625,15 @@ public abstract class EntityValueBase implements EntityValue {
     }
 
     public void basicCreate(Connection con) throws SQLException {
-        EntityDefinition ed = getEntityDefinition();
-        FieldInfo[] allFieldArray = ed.entityInfo.allFieldInfoArray;
+        FieldInfo[] fieldArray = makeCreateFieldArray();
+
+        // if enabled register locks before operation
+        registerMutateLock();
+
+        createExtended(fieldArray, con);
+    }
+    private FieldInfo[] makeCreateFieldArray() {
+        FieldInfo[] allFieldArray = getEntityDefinition().entityInfo.allFieldInfoArray;
         FieldInfo[] fieldArray = new FieldInfo[allFieldArray.length];
         int size = allFieldArray.length;
         int fieldArrayIndex = 0;
@@ -1564,11 +1644,7 @@ public abstract class EntityValueBase implements EntityValue {
                 fieldArrayIndex++;
             }
         }
-
-        // if enabled register locks before operation
-        registerMutateLock();
-
-        createExtended(fieldArray, con);
+        return fieldArray;
     }
 
     /**
@@ -1577,6 +1653,130 @@ public abstract class EntityValueBase implements EntityValue {
      */
     public abstract void createExtended(FieldInfo[] fieldInfoArray, Connection con) throws SQLException;
 
+    /**
+     * Create all values in the list, which must all be for the same entity, in batches of up to batchSize records.
+     * Defaults, authz and data feed registration are done per value before each batch, cache clear and audit log records
+     * for the batch after.
+     * If the entity has EECA rules or there is a TransactionCache in place this falls back to create() for each value.
+     */
+    public static void createBulk(ArrayList<EntityValueBase> valueList, int batchSize) {
+        final int valueListSize = valueList.size();
+        if (valueListSize == 0) return;
+        final EntityValueBase firstValue = valueList.get(0);
+        final String entityName = firstValue.entityName;
+        final EntityDefinition ed = firstValue.getEntityDefinition();
+        final EntityJavaUtil.EntityInfo entityInfo = ed.entityInfo;
+        final EntityFacadeImpl efi = firstValue.getEntityFacadeImpl();
+        final ExecutionContextFactoryImpl ecfi = efi.ecfi;
+        final ExecutionContextImpl ec = ecfi.getEci();
+        final ArtifactExecutionFacadeImpl aefi = ec.artifactExecutionFacade;
+        ec.markEntityWrite();
+
+        // EECA rules may depend on records created before them, and the TransactionCache handles creates one at a time
+        if (ed.isViewEntity || efi.hasEecaRules(entityName) || firstValue.getTxCache(ecfi) != null) {
+            for (int i = 0; i < valueListSize; i++) valueList.get(i).create();
+            return;
+        }
+        if (batchSize <= 0) batchSize = valueListSize;
+
+        final boolean curDataFeed = firstValue.doDataFeed(ec);
+        final Long time = ecfi.transactionFacade.getCurrentTransactionStartTime();
+        final Timestamp lastUpdatedStamp = new Timestamp(time != null && time > 0 ? time : System.currentTimeMillis());
+        final FieldInfo lastUpdatedStampInfo = entityInfo.lastUpdatedStampInfo;
+        final EntityCache entityCache = efi.getEntityCache();
+        final boolean needsAuditLog = entityInfo.needsAuditLog && !aefi.entityAuditLogDisabled();
+
+        for (int batchStart = 0; batchStart < valueListSize; batchStart += batchSize) {
+            final int batchEnd = Math.min(batchStart + batchSize, valueListSize);
+            for (int i = batchStart; i < batchEnd; i++) {
+                EntityValueBase ev = valueList.get(i);
+                if (entityInfo.hasFieldDefaults) ev.checkSetFieldDefaults(ed, ec, null);
+                if (lastUpdatedStampInfo != null && ev.valueMapInternal.getByIString(lastUpdatedStampInfo.name, lastUpdatedStampInfo.index) == null)
+                    ev.valueMapInternal.putByIString(lastUpdatedStampInfo.name, lastUpdatedStamp, lastUpdatedStampInfo.index);
+
+                ArtifactExecutionInfoImpl aei = new ArtifactExecutionInfoImpl(entityName, ArtifactExecutionInfo.AT_ENTITY, ArtifactExecutionInfo.AUTHZA_CREATE, "create").setParameters(ev.valueMapInternal);
+                aefi.pushInternal(aei, !entityInfo.authorizeSkipCreate, false);
+                try {
+                    // do this before the db change so modified flag isn't cleared
+                    if (curDataFeed) efi.getEntityDataFeed().dataFeedCheckAndRegister(ev, false, ev.valueMapInternal, null);
+                } finally {
+                    aefi.pop(aei);
+                }
+            }
+
+            try {
+                basicWriteBulk(EntityJavaUtil.WriteMode.CREATE, valueList, batchStart, batchEnd, batchSize, null);
+
+                entityCache.clearCacheForCreates(valueList, batchStart, batchEnd);
+                if (needsAuditLog) {
+                    ArrayList<Map<String, Object>> auditParmsList = new ArrayList<>();
+                    for (int i = batchStart; i < batchEnd; i++) valueList.get(i).handleAuditLog(false, null, ed, ec, auditParmsList);
+                    createAuditLogBulk(auditParmsList, efi);
+                }
+            } catch (SQLException e) {
+                throw new EntitySqlException(valueList.get(batchStart).makeErrorMsg("Error creating " + (batchEnd - batchStart) + " records starting with", CREATE_ERROR, ed, ec), e);
+            } catch (EntityException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new EntityException(valueList.get(batchStart).makeErrorMsg("Error creating " + (batchEnd - batchStart) + " records starting with", CREATE_ERROR, ed, ec), e);
+            }
+        }
+    }
+
+    /**
+     * Like basicCreate(), basicUpdate() or deleteExtended() but for the values in valueList from fromIndex (inclusive)
+     * to toIndex (exclusive), which must all be for the same entity. Consecutive values with the same fields to write
+     * are grouped into batches of up to batchSize records for createBulkExtended(), updateBulkExtended() or
+     * deleteBulkExtended(). Returns the number of batches run.
+     */
+    public static int basicWriteBulk(EntityJavaUtil.WriteMode writeMode, ArrayList<EntityValueBase> valueList, int fromIndex,
+                                     int toIndex, int batchSize, Connection con) throws SQLException {
+        if (toIndex <= fromIndex) return 0;
+        if (batchSize <= 0) batchSize = toIndex - fromIndex;
+        final EntityJavaUtil.EntityInfo entityInfo = valueList.get(fromIndex).getEntityDefinition().entityInfo;
+        final FieldInfo[] pkFieldArray = entityInfo.pkFieldInfoArray;
+        final boolean isCreate = EntityJavaUtil.WriteMode.CREATE == writeMode;
+        final boolean isUpdate = EntityJavaUtil.WriteMode.UPDATE == writeMode;
+
+        int batchCount = 0;
+        int batchStart = fromIndex;
+        FieldInfo[] batchFieldArray = null;
+        for (int i = fromIndex; i <= toIndex; i++) {
+            EntityValueBase ev = null;
+            FieldInfo[] fieldArray = null;
+            if (i < toIndex) {
+                ev = valueList.get(i);
+                fieldArray = isCreate ? ev.makeCreateFieldArray() : (isUpdate ? ev.makeUpdateFieldArray() : pkFieldArray);
+            }
+
+            // run the current batch if at the end, the batch is full, or this value has different fields
+            if (batchFieldArray != null && (ev == null || i - batchStart >= batchSize || !Arrays.equals(batchFieldArray, fieldArray))) {
+                EntityValueBase batchFirst = valueList.get(batchStart);
+                if (isCreate) batchFirst.createBulkExtended(batchFieldArray, valueList, batchStart, i, con);
+                else if (isUpdate) batchFirst.updateBulkExtended(pkFieldArray, batchFieldArray, valueList, batchStart, i, con);
+                else batchFirst.deleteBulkExtended(valueList, batchStart, i, con);
+                batchCount++;
+                batchStart = i;
+            }
+            if (ev == null) break;
+            batchFieldArray = fieldArray;
+
+            // if enabled register locks before operation
+            ev.registerMutateLock();
+        }
+        return batchCount;
+    }
+
+    /**
+     * Create records for the values in valueList from fromIndex (inclusive) to toIndex (exclusive), all for the same
+     * entity as this value and with values for the same fields. This default implementation calls createExtended() on
+     * each value, datasources that support it should override to do the creates in a single batch.
+     */
+    public void createBulkExtended(FieldInfo[] fieldInfoArray, ArrayList<EntityValueBase> valueList, int fromIndex, int toIndex,
+                                   Connection con) throws SQLException {
+        for (int i = fromIndex; i < toIndex; i++) valueList.get(i).createExtended(fieldInfoArray, con);
+    }
+
     @Override
     public EntityValue update() {
         final EntityDefinition ed = getEntityDefinition();
@@ -1585,6 +1785,7 @@ public abstract class EntityValueBase implements EntityValue {
         final ExecutionContextFactoryImpl ecfi = efi.ecfi;
         final ExecutionContextImpl ec = ecfi.getEci();
         final ArtifactExecutionFacadeImpl aefi = ec.artifactExecutionFacade;
+        ec.markEntityWrite();
         final TransactionCache curTxCache = getTxCache(ecfi);
         final boolean optimisticLock = entityInfo.optimisticLock;
         final boolean hasFieldDefaults = entityInfo.hasFieldDefaults;
@@ -1689,7 +1890,7 @@ public abstract class EntityValueBase implements EntityValue {
             }
 
             // clear the entity cache
-            efi.getEntityCache().clearCacheForValue(this, false);
+            efi.getEntityCache().clearCacheForValue(this, false, false, originalValues);
             // save audit log(s) if applicable
             if (needsAuditLog) handleAuditLog(true, originalValues, ed, ec);
             // run EECA after rules
@@ -1716,7 +1917,15 @@ public abstract class EntityValueBase implements EntityValue {
         */
 
         FieldInfo[] pkFieldArray = ed.entityInfo.pkFieldInfoArray;
-        FieldInfo[] allNonPkFieldArray = ed.entityInfo.nonPkFieldInfoArray;
+        FieldInfo[] nonPkFieldArray = makeUpdateFieldArray();
+
+        // if enabled register locks before operation
+        registerMutateLock();
+
+        updateExtended(pkFieldArray, nonPkFieldArray, con);
+    }
+    private FieldInfo[] makeUpdateFieldArray() {
+        FieldInfo[] allNonPkFieldArray = getEntityDefinition().entityInfo.nonPkFieldInfoArray;
         FieldInfo[] nonPkFieldArray = new FieldInfo[allNonPkFieldArray.length];
         int size = allNonPkFieldArray.length;
         int nonPkFieldArrayIndex = 0;
@@ -1727,11 +1936,7 @@ public abstract class EntityValueBase implements EntityValue {
                 nonPkFieldArrayIndex++;
             }
         }
-
-        // if enabled register locks before operation
-        registerMutateLock();
-
-        updateExtended(pkFieldArray, nonPkFieldArray, con);
+        return nonPkFieldArray;
     }
 
     /**
@@ -1740,6 +1945,16 @@ public abstract class EntityValueBase implements EntityValue {
      */
     public abstract void updateExtended(FieldInfo[] pkFieldArray, FieldInfo[] nonPkFieldArray, Connection con) throws SQLException;
 
+    /**
+     * Update records for the values in valueList from fromIndex (inclusive) to toIndex (exclusive), all for the same
+     * entity as this value and with the same fields to update. This default implementation calls updateExtended() on
+     * each value, datasources that support it should override to do the updates in a single batch.
+     */
+    public void updateBulkExtended(FieldInfo[] pkFieldArray, FieldInfo[] nonPkFieldArray, ArrayList<EntityValueBase> valueList,
+                                   int fromIndex, int toIndex, Connection con) throws SQLException {
+        for (int i = fromIndex; i < toIndex; i++) valueList.get(i).updateExtended(pkFieldArray, nonPkFieldArray, con);
+    }
+
     @Override
     public EntityValue delete() {
         final EntityDefinition ed = getEntityDefinition();
@@ -1748,6 +1963,7 @@ public abstract class EntityValueBase implements EntityValue {
         final ExecutionContextFactoryImpl ecfi = efi.ecfi;
         final ExecutionContextImpl ec = ecfi.getEci();
         final ArtifactExecutionFacadeImpl aefi = ec.artifactExecutionFacade;
+        ec.markEntityWrite();
 
         // NOTE: this is create-only on the entity, ignores setting on fields (only considered in update)
         if (entityInfo.createOnly) throw new EntityException("Entity [" + resolveEntityName() + "] is create-only (immutable), cannot be deleted.");
@@ -1773,7 +1989,7 @@ public abstract class EntityValueBase implements EntityValue {
             }
 
             // clear the entity cache
-            efi.getEntityCache().clearCacheForValue(this, false);
+            efi.getEntityCache().clearCacheForValue(this, false, true);
             // run EECA after rules
             efi.runEecaRules(entityName, this, "delete", false);
         } catch (SQLException e) {
@@ -1789,6 +2005,14 @@ public abstract class EntityValueBase implements EntityValue {
     }
 
     public abstract void deleteExtended(Connection con) throws SQLException;
+    /**
+     * Delete records for the values in valueList from fromIndex (inclusive) to toIndex (exclusive), all for the same
+     * entity as this value. This default implementation calls deleteExtended() on each value, datasources that support
+     * it should override to do the deletes in a single batch.
+     */
+    public void deleteBulkExtended(ArrayList<EntityValueBase> valueList, int fromIndex, int toIndex, Connection con) throws SQLException {
+        for (int i = fromIndex; i < toIndex; i++) valueList.get(i).deleteExtended(con);
+    }
 
     @Override
     public boolean refresh() {
@@ -16,6 +16,7 @@ package org.moqui.impl.entity;
 import org.moqui.entity.EntityException;
 import org.moqui.entity.EntityValue;
 import org.moqui.impl.entity.EntityJavaUtil.EntityConditionParameter;
+import org.moqui.util.LiteStringMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -107,6 +108,68 @@ public class EntityValueImpl extends EntityValueBase {
         }
     }
 
+    @SuppressWarnings("MismatchedQueryAndUpdateOfStringBuilder")
+    @Override
+    public void createBulkExtended(FieldInfo[] fieldInfoArray, ArrayList<EntityValueBase> valueList, int fromIndex, int toIndex,
+                                   Connection con) throws SQLException {
+        EntityDefinition ed = getEntityDefinition();
+        EntityFacadeImpl efi = getEntityFacadeImpl();
+        if (ed.isViewEntity) throw new EntityException("Create not yet implemented for view-entity");
+        // not worth the batch overhead for a single record
+        if (toIndex - fromIndex == 1) { valueList.get(fromIndex).createExtended(fieldInfoArray, con); return; }
+
+        EntityQueryBuilder eqb = new EntityQueryBuilder(ed, efi);
+        StringBuilder sql = eqb.sqlTopLevel;
+        sql.append("INSERT INTO ").append(ed.getFullTableName()).append(" (");
+
+        int size = fieldInfoArray.length;
+        StringBuilder values = new StringBuilder(size*3);
+
+        for (int i = 0; i < size; i++) {
+            FieldInfo fieldInfo = fieldInfoArray[i];
+            if (fieldInfo == null) break;
+            if (i > 0) {
+                sql.append(", ");
+                values.append(", ");
+            }
+
+            sql.append(fieldInfo.getFullColumnName());
+            values.append("?");
+        }
+
+        sql.append(") VALUES (").append(values.toString()).append(")");
+
+        try {
+            efi.getEntityDbMeta().checkTableRuntime(ed);
+
+            if (con != null) eqb.useConnection(con);
+            else eqb.makeConnection(false);
+            eqb.makePreparedStatement();
+            for (int vi = fromIndex; vi < toIndex; vi++) {
+                LiteStringMap<Object> curValueMap = valueList.get(vi).valueMapInternal;
+                for (int i = 0; i < size; i++) {
+                    FieldInfo fieldInfo = fieldInfoArray[i];
+                    if (fieldInfo == null) break;
+                    eqb.setPreparedStatementValue(i + 1, curValueMap.getByIString(fieldInfo.name, fieldInfo.index), fieldInfo);
+                }
+                eqb.ps.addBatch();
+            }
+
+            eqb.ps.executeBatch();
+            for (int vi = fromIndex; vi < toIndex; vi++) valueList.get(vi).setSyncedWithDb();
+        } catch (SQLException e) {
+            String txName = "[could not get]";
+            try { txName = efi.ecfi.transactionFacade.getTransactionManager().getTransaction().toString(); }
+            catch (Exception txe) { if (logger.isTraceEnabled()) logger.trace("Error getting transaction name: " + txe.toString()); }
+            logger.warn("Error creating " + (toIndex - fromIndex) + " " + ed.getFullEntityName() + " records starting with " + this.toString() +
+                    " tx " + txName + " con " + eqb.connection + ": " + e.toString());
+            throw e;
+        } finally {
+            try { eqb.closeAll(); }
+            catch (SQLException sqle) { logger.error("Error in JDBC close in bulk create of " + ed.getFullEntityName(), sqle); }
+        }
+    }
+
     @SuppressWarnings("MismatchedQueryAndUpdateOfStringBuilder")
     @Override
     public void updateExtended(FieldInfo[] pkFieldArray, FieldInfo[] nonPkFieldArray, Connection con) throws SQLException {
@@ -154,6 +217,75 @@ public class EntityValueImpl extends EntityValueBase {
         }
     }
 
+    @SuppressWarnings("MismatchedQueryAndUpdateOfStringBuilder")
+    @Override
+    public void updateBulkExtended(FieldInfo[] pkFieldArray, FieldInfo[] nonPkFieldArray, ArrayList<EntityValueBase> valueList,
+                                   int fromIndex, int toIndex, Connection con) throws SQLException {
+        EntityDefinition ed = getEntityDefinition();
+        final EntityFacadeImpl efi = getEntityFacadeImpl();
+        if (ed.isViewEntity) throw new EntityException("Update not yet implemented for view-entity");
+        // not worth the batch overhead for a single record
+        if (toIndex - fromIndex == 1) { valueList.get(fromIndex).updateExtended(pkFieldArray, nonPkFieldArray, con); return; }
+
+        final EntityQueryBuilder eqb = new EntityQueryBuilder(ed, efi);
+        StringBuilder sql = eqb.sqlTopLevel;
+        sql.append("UPDATE ").append(ed.getFullTableName()).append(" SET ");
+
+        int size = nonPkFieldArray.length;
+        int paramCount = 0;
+        for (int i = 0; i < size; i++) {
+            FieldInfo fieldInfo = nonPkFieldArray[i];
+            if (fieldInfo == null) break;
+            if (i > 0) sql.append(", ");
+            sql.append(fieldInfo.getFullColumnName()).append("=?");
+            paramCount++;
+        }
+        sql.append(" WHERE ");
+        int sizePk = pkFieldArray.length;
+        for (int i = 0; i < sizePk; i++) {
+            if (i > 0) sql.append(" AND ");
+            sql.append(pkFieldArray[i].getFullColumnName()).append("=?");
+        }
+
+        try {
+            efi.getEntityDbMeta().checkTableRuntime(ed);
+
+            if (con != null) eqb.useConnection(con);
+            else eqb.makeConnection(false);
+            eqb.makePreparedStatement();
+            for (int vi = fromIndex; vi < toIndex; vi++) {
+                LiteStringMap<Object> curValueMap = valueList.get(vi).valueMapInternal;
+                for (int i = 0; i < paramCount; i++) {
+                    FieldInfo fieldInfo = nonPkFieldArray[i];
+                    eqb.setPreparedStatementValue(i + 1, curValueMap.getByIString(fieldInfo.name, fieldInfo.index), fieldInfo);
+                }
+                for (int i = 0; i < sizePk; i++) {
+                    FieldInfo fieldInfo = pkFieldArray[i];
+                    eqb.setPreparedStatementValue(paramCount + i + 1, curValueMap.getByIString(fieldInfo.name, fieldInfo.index), fieldInfo);
+                }
+                eqb.ps.addBatch();
+            }
+
+            int[] updateCounts = eqb.ps.executeBatch();
+            for (int vi = fromIndex; vi < toIndex; vi++) {
+                // some drivers return SUCCESS_NO_INFO (-2) instead of the count, only a 0 means not found
+                if (updateCounts.length > vi - fromIndex && updateCounts[vi - fromIndex] == 0)
+                    throw new EntityException("Tried to update a value that does not exist [" + valueList.get(vi).toString() + "]. SQL used was " + eqb.sqlTopLevel.toString());
+                valueList.get(vi).setSyncedWithDb();
+            }
+        } catch (SQLException e) {
+            String txName = "[could not get]";
+            try { txName = efi.ecfi.transactionFacade.getTransactionManager().getTransaction().toString(); }
+            catch (Exception txe) { if (logger.isTraceEnabled()) logger.trace("Error getting transaction name: " + txe.toString()); }
+            logger.warn("Error updating " + (toIndex - fromIndex) + " " + ed.getFullEntityName() + " records starting with " + this.toString() +
+                    " tx " + txName + " con " + eqb.connection + ": " + e.toString());
+            throw e;
+        } finally {
+            try { eqb.closeAll(); }
+            catch (SQLException sqle) { logger.error("Error in JDBC close in bulk update of " + ed.getFullEntityName(), sqle); }
+        }
+    }
+
     @SuppressWarnings("MismatchedQueryAndUpdateOfStringBuilder")
     @Override
     public void deleteExtended(Connection con) throws SQLException {
@@ -188,6 +320,58 @@ public class EntityValueImpl extends EntityValueBase {
         }
     }
 
+    @SuppressWarnings("MismatchedQueryAndUpdateOfStringBuilder")
+    @Override
+    public void deleteBulkExtended(ArrayList<EntityValueBase> valueList, int fromIndex, int toIndex, Connection con) throws SQLException {
+        EntityDefinition ed = getEntityDefinition();
+        EntityFacadeImpl efi = getEntityFacadeImpl();
+        if (ed.isViewEntity) throw new EntityException("Delete not implemented for view-entity");
+        // not worth the batch overhead for a single record
+        if (toIndex - fromIndex == 1) { valueList.get(fromIndex).deleteExtended(con); return; }
+
+        EntityQueryBuilder eqb = new EntityQueryBuilder(ed, efi);
+        StringBuilder sql = eqb.sqlTopLevel;
+        sql.append("DELETE FROM ").append(ed.getFullTableName()).append(" WHERE ");
+        FieldInfo[] pkFieldArray = ed.entityInfo.pkFieldInfoArray;
+        int sizePk = pkFieldArray.length;
+        for (int i = 0; i < sizePk; i++) {
+            if (i > 0) sql.append(" AND ");
+            sql.append(pkFieldArray[i].getFullColumnName()).append("=?");
+        }
+
+        try {
+            efi.getEntityDbMeta().checkTableRuntime(ed);
+
+            if (con != null) eqb.useConnection(con);
+            else eqb.makeConnection(false);
+            eqb.makePreparedStatement();
+            for (int vi = fromIndex; vi < toIndex; vi++) {
+                LiteStringMap<Object> curValueMap = valueList.get(vi).valueMapInternal;
+                for (int i = 0; i < sizePk; i++) {
+                    FieldInfo fieldInfo = pkFieldArray[i];
+                    eqb.setPreparedStatementValue(i + 1, curValueMap.getByIString(fieldInfo.name, fieldInfo.index), fieldInfo);
+                }
+                eqb.ps.addBatch();
+            }
+
+            int[] deleteCounts = eqb.ps.executeBatch();
+            for (int vi = fromIndex; vi < toIndex; vi++) {
+                if (deleteCounts.length > vi - fromIndex && deleteCounts[vi - fromIndex] == 0)
+                    logger.info("Tried to delete a value that does not exist " + valueList.get(vi).toString());
+            }
+        } catch (SQLException e) {
+            String txName = "[could not get]";
+            try { txName = efi.ecfi.transactionFacade.getTransactionManager().getTransaction().toString(); }
+            catch (Exception txe) { if (logger.isTraceEnabled()) logger.trace("Error getting transaction name: " + txe.toString()); }
+            logger.warn("Error deleting " + (toIndex - fromIndex) + " " + ed.getFullEntityName() + " records starting with " + this.toString() +
+                    " tx " + txName + " con " + eqb.connection + ": " + e.toString());
+            throw e;
+        } finally {
+            try { eqb.closeAll(); }
+            catch (SQLException sqle) { logger.error("Error in JDBC close in bulk delete of " + ed.getFullEntityName(), sqle); }
+        }
+    }
+
     @SuppressWarnings("MismatchedQueryAndUpdateOfStringBuilder")
     @Override
     public boolean refreshExtended() throws SQLException {
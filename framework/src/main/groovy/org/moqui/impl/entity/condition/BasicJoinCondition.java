@@ -54,6 +54,15 @@ public class BasicJoinCondition implements EntityConditionImplBase {
         sql.append(')');
     }
     @Override
+    public boolean makeSqlShape(StringBuilder shapeKey, ArrayList<Object> parameterValues) {
+        shapeKey.append('(');
+        if (!lhsInternal.makeSqlShape(shapeKey, parameterValues)) return false;
+        shapeKey.append(operator.ordinal());
+        if (!rhsInternal.makeSqlShape(shapeKey, parameterValues)) return false;
+        shapeKey.append(')');
+        return true;
+    }
+    @Override
     public void makeSearchFilter(List<Map<String, Object>> filterList) {
         List<Map<String, Object>> childList = new ArrayList<>(2);
         lhsInternal.makeSearchFilter(childList);
@@ -40,6 +40,8 @@ public class ConditionField implements Externalizable {
     }
 
     public String getFieldName() { return fieldName; }
+    /** The FieldInfo if created with one, null otherwise; for ConditionMatcher */
+    FieldInfo getKnownFieldInfo() { return fieldInfo; }
     public String getColumnName(EntityDefinition ed) {
         if (fieldInfo != null && fieldInfo.ed.fullEntityName.equals(ed.fullEntityName)) return fieldInfo.getFullColumnName();
         return ed.getColumnName(fieldName);
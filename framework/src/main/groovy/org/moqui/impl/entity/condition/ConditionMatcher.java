@@ -0,0 +1,232 @@
+/*
+ * This software is in the public domain under CC0 1.0 Universal plus a
+ * Grant of Patent License.
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication
+ * along with this software (see the LICENSE.md file). If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package org.moqui.impl.entity.condition;
+
+import org.codehaus.groovy.runtime.typehandling.DefaultTypeTransformation;
+import org.moqui.entity.EntityCondition.ComparisonOperator;
+import org.moqui.entity.EntityCondition.JoinOperator;
+import org.moqui.impl.entity.FieldInfo;
+import org.moqui.util.LiteStringMap;
+import org.moqui.util.ObjectUtilities;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/** Condition compiled for in-memory matching (mapMatches) used for cache clearing, TransactionCache list updates,
+ * EntityList.filterByCondition(), etc. Compiled once per condition (see FieldValueCondition.getMatcher() and
+ * ListCondition.getMatcher()) with the operator resolved to a specific class, field values looked up by FieldInfo
+ * index in entity value maps, String constants converted to the field type for numeric and boolean fields, IN values
+ * in a HashSet, and LIKE patterns compiled. */
+public abstract class ConditionMatcher {
+    public abstract boolean matches(Map<String, Object> map);
+
+    public static ConditionMatcher compile(FieldValueCondition fvc) {
+        ConditionField field = fvc.getField();
+        String fieldName = field.getFieldName();
+        FieldInfo fi = field.getKnownFieldInfo();
+        int index = fi != null ? fi.index : -1;
+        ComparisonOperator op = fvc.getOperator();
+        Object value = coerceValue(fi, fvc.getValue());
+
+        switch (op) {
+            case EQUALS: return value == null ? new NullMatcher(fieldName, index, true) : new EqualsMatcher(fieldName, index, value, false);
+            case NOT_EQUAL: return value == null ? new NullMatcher(fieldName, index, false) : new EqualsMatcher(fieldName, index, value, true);
+            case IS_NULL: return new NullMatcher(fieldName, index, true);
+            case IS_NOT_NULL: return new NullMatcher(fieldName, index, false);
+            case IN:
+            case NOT_IN:
+                if (value instanceof Collection) {
+                    Collection<?> valueColl = (Collection<?>) value;
+                    HashSet<Object> valueSet = new HashSet<>(valueColl.size() * 2);
+                    for (Object inValue : valueColl) valueSet.add(coerceValue(fi, inValue));
+                    return new InMatcher(fieldName, index, valueSet, op == ComparisonOperator.NOT_IN);
+                }
+                // not a Collection, same as equals or not equals
+                return new EqualsMatcher(fieldName, index, value, op == ComparisonOperator.NOT_IN);
+            case LESS_THAN:
+            case GREATER_THAN:
+            case LESS_THAN_EQUAL_TO:
+            case GREATER_THAN_EQUAL_TO:
+                return new CompareMatcher(fieldName, index, op, ObjectUtilities.makeComparable(value));
+            case LIKE:
+            case NOT_LIKE:
+                if (value == null || value instanceof CharSequence)
+                    return new LikeMatcher(fieldName, index, value != null ? makeLikePattern((CharSequence) value) : null, op == ComparisonOperator.NOT_LIKE);
+                break;
+        }
+        // BETWEEN and NOT_BETWEEN are rare, just use the interpreted compare
+        return new OperatorMatcher(fieldName, index, op, value);
+    }
+
+    public static ConditionMatcher compile(ListCondition listCond) {
+        ArrayList<EntityConditionImplBase> condList = listCond.getConditionList();
+        int condListSize = condList.size();
+        ConditionMatcher[] matchers = new ConditionMatcher[condListSize];
+        for (int i = 0; i < condListSize; i++) matchers[i] = getMatcher(condList.get(i));
+        if (condListSize == 1) return matchers[0];
+        return listCond.getOperator() == JoinOperator.OR ? new OrMatcher(matchers) : new AndMatcher(matchers);
+    }
+
+    /** Get the cached matcher for FieldValueCondition and ListCondition, for other conditions a matcher that calls mapMatches() */
+    public static ConditionMatcher getMatcher(EntityConditionImplBase cond) {
+        if (cond instanceof FieldValueCondition) return ((FieldValueCondition) cond).getMatcher();
+        if (cond instanceof ListCondition) return ((ListCondition) cond).getMatcher();
+        return new ConditionWrapperMatcher(cond);
+    }
+
+    /** String constants for numeric and boolean fields converted to the field type so they match values from the DB */
+    static Object coerceValue(FieldInfo fi, Object value) {
+        if (fi == null || !(value instanceof CharSequence)) return value;
+        String strValue = value.toString();
+        if (strValue.isEmpty()) return value;
+        try {
+            switch (fi.typeValue) {
+                case 5: return Integer.valueOf(new BigDecimal(strValue).intValueExact());
+                case 6: return Long.valueOf(new BigDecimal(strValue).longValueExact());
+                case 7: return Float.valueOf(strValue);
+                case 8: return Double.valueOf(strValue);
+                case 9: return new BigDecimal(strValue);
+                case 10:
+                    if ("true".equalsIgnoreCase(strValue)) return Boolean.TRUE;
+                    if ("false".equalsIgnoreCase(strValue)) return Boolean.FALSE;
+                    return value;
+            }
+        } catch (NumberFormatException | ArithmeticException e) {
+            // not a plain number, leave as-is like the interpreted compare
+        }
+        return value;
+    }
+    static Pattern makeLikePattern(CharSequence likeValue) {
+        // same as ObjectUtilities.compareLike()
+        int length = likeValue.length();
+        StringBuilder sb = new StringBuilder(length * 2);
+        for (int i = 0; i < length; i++) {
+            char c = likeValue.charAt(i);
+            if ("[](){}.*+?$^|#\\".indexOf(c) != -1) sb.append('\\');
+            sb.append(c);
+        }
+        String regex = sb.toString().replace("_", ".").replace("%", ".*?");
+        return Pattern.compile(regex, (Pattern.CASE_INSENSITIVE | Pattern.DOTALL));
+    }
+
+    static abstract class FieldMatcher extends ConditionMatcher {
+        final String fieldName;
+        final int index;
+        FieldMatcher(String fieldName, int index) { this.fieldName = fieldName; this.index = index; }
+        @SuppressWarnings("unchecked")
+        final Object getValue(Map<String, Object> map) {
+            // entity value maps use the FieldInfo index, fieldName is interned (from ConditionField)
+            if (index >= 0 && map instanceof LiteStringMap) return ((LiteStringMap<Object>) map).getByIStringHint(fieldName, index);
+            return map.get(fieldName);
+        }
+    }
+    static final class EqualsMatcher extends FieldMatcher {
+        final Object value;
+        final Class<?> valueClass;
+        final boolean not;
+        EqualsMatcher(String fieldName, int index, Object value, boolean not) {
+            super(fieldName, index);
+            this.value = value; this.valueClass = value != null ? value.getClass() : null; this.not = not;
+        }
+        @Override public boolean matches(Map<String, Object> map) {
+            Object mapValue = getValue(map);
+            boolean equal;
+            if (mapValue == null) equal = value == null;
+            // same class and not BigDecimal (where equals() considers scale): plain equals() is same as Groovy ==
+            else if (mapValue.getClass() == valueClass && valueClass != BigDecimal.class) equal = value.equals(mapValue);
+            else equal = DefaultTypeTransformation.compareEqual(mapValue, value);
+            return not != equal;
+        }
+    }
+    static final class NullMatcher extends FieldMatcher {
+        final boolean isNull;
+        NullMatcher(String fieldName, int index, boolean isNull) { super(fieldName, index); this.isNull = isNull; }
+        @Override public boolean matches(Map<String, Object> map) { return (getValue(map) == null) == isNull; }
+    }
+    static final class InMatcher extends FieldMatcher {
+        final HashSet<Object> valueSet;
+        final boolean not;
+        InMatcher(String fieldName, int index, HashSet<Object> valueSet, boolean not) {
+            super(fieldName, index); this.valueSet = valueSet; this.not = not;
+        }
+        @Override public boolean matches(Map<String, Object> map) { return not != valueSet.contains(getValue(map)); }
+    }
+    static final class CompareMatcher extends FieldMatcher {
+        final ComparisonOperator op;
+        final Comparable<?> comparable;
+        CompareMatcher(String fieldName, int index, ComparisonOperator op, Comparable<?> comparable) {
+            super(fieldName, index); this.op = op; this.comparable = comparable;
+        }
+        @Override public boolean matches(Map<String, Object> map) {
+            Comparable<?> mapComparable = ObjectUtilities.makeComparable(getValue(map));
+            // Groovy compare handles null and numbers of different types
+            int result = DefaultTypeTransformation.compareTo(mapComparable, comparable);
+            switch (op) {
+                case LESS_THAN: return result < 0;
+                case GREATER_THAN: return result > 0;
+                case LESS_THAN_EQUAL_TO: return result <= 0;
+                default: return result >= 0;
+            }
+        }
+    }
+    static final class LikeMatcher extends FieldMatcher {
+        final Pattern pattern;
+        final boolean not;
+        LikeMatcher(String fieldName, int index, Pattern pattern, boolean not) {
+            super(fieldName, index); this.pattern = pattern; this.not = not;
+        }
+        @Override public boolean matches(Map<String, Object> map) {
+            boolean like;
+            // nothing to be like, consider a match; nothing to compare or not a String, consider a mismatch
+            if (pattern == null) like = true;
+            else {
+                Object mapValue = getValue(map);
+                like = mapValue instanceof CharSequence && pattern.matcher(mapValue.toString()).matches();
+            }
+            return not != like;
+        }
+    }
+    static final class OperatorMatcher extends FieldMatcher {
+        final ComparisonOperator op;
+        final Object value;
+        OperatorMatcher(String fieldName, int index, ComparisonOperator op, Object value) {
+            super(fieldName, index); this.op = op; this.value = value;
+        }
+        @Override public boolean matches(Map<String, Object> map) {
+            return org.moqui.impl.entity.EntityConditionFactoryImpl.compareByOperator(getValue(map), op, value);
+        }
+    }
+    static final class AndMatcher extends ConditionMatcher {
+        final ConditionMatcher[] matchers;
+        AndMatcher(ConditionMatcher[] matchers) { this.matchers = matchers; }
+        @Override public boolean matches(Map<String, Object> map) {
+            for (int i = 0; i < matchers.length; i++) if (!matchers[i].matches(map)) return false;
+            return true;
+        }
+    }
+    static final class OrMatcher extends ConditionMatcher {
+        final ConditionMatcher[] matchers;
+        OrMatcher(ConditionMatcher[] matchers) { this.matchers = matchers; }
+        @Override public boolean matches(Map<String, Object> map) {
+            for (int i = 0; i < matchers.length; i++) if (matchers[i].matches(map)) return true;
+            return false;
+        }
+    }
+    static final class ConditionWrapperMatcher extends ConditionMatcher {
+        final EntityConditionImplBase cond;
+        ConditionWrapperMatcher(EntityConditionImplBase cond) { this.cond = cond; }
+        @Override public boolean matches(Map<String, Object> map) { return cond.mapMatches(map); }
+    }
+}
@@ -47,6 +47,8 @@ class DateCondition implements EntityConditionImplBase, Externalizable {
 
     @Override void makeSqlWhere(EntityQueryBuilder eqb, EntityDefinition subMemberEd) {
         conditionInternal.makeSqlWhere(eqb, subMemberEd) }
+    @Override boolean makeSqlShape(StringBuilder shapeKey, ArrayList<Object> parameterValues) {
+        return conditionInternal.makeSqlShape(shapeKey, parameterValues) }
     @Override void makeSearchFilter(List<Map<String, Object>> filterList) {
         conditionInternal.makeSearchFilter(filterList) }
 
@@ -4,6 +4,7 @@ import org.moqui.entity.EntityCondition;
 import org.moqui.impl.entity.EntityDefinition;
 import org.moqui.impl.entity.EntityQueryBuilder;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -12,6 +13,10 @@ public interface EntityConditionImplBase extends EntityCondition {
 
     /** Build SQL WHERE clause text to evaluate condition in a database. */
     void makeSqlWhere(EntityQueryBuilder eqb, EntityDefinition subMemberEd);
+    /** Append a key for the structure of this condition with values left out (fields, operators, number of values) and add
+     * the values to bind in the same order makeSqlWhere() adds parameters; returns false if the SQL can't be reused for
+     * other values with the same key. */
+    boolean makeSqlShape(StringBuilder shapeKey, ArrayList<Object> parameterValues);
     /** Build ElasticSearch style search filter */
     void makeSearchFilter(List<Map<String, Object>> filterList);
 
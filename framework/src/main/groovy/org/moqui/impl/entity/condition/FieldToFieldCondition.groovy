@@ -77,6 +77,13 @@ class FieldToFieldCondition implements EntityConditionImplBase {
         if (ignoreCase && toTypeValue == 1) sql.append(")")
     }
     @Override
+    boolean makeSqlShape(StringBuilder shapeKey, ArrayList<Object> parameterValues) {
+        shapeKey.append('{').append(field.toString()).append(' ').append(operator.ordinal()).append(' ').append(toField.toString())
+        if (ignoreCase) shapeKey.append('i')
+        shapeKey.append('}')
+        return true
+    }
+    @Override
     void makeSearchFilter(List<Map<String, Object>> filterList) {
         // TODO
     }
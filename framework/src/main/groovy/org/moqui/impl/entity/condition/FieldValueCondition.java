@@ -38,6 +38,7 @@ public class FieldValueCondition implements EntityConditionImplBase, Externaliza
     protected Object value;
     protected boolean ignoreCase = false;
     private int curHashCode;
+    private transient ConditionMatcher matcher = null;
 
     public FieldValueCondition() { }
     public FieldValueCondition(ConditionField field, ComparisonOperator operator, Object value) {
@@ -57,6 +58,7 @@ public class FieldValueCondition implements EntityConditionImplBase, Externaliza
     }
 
     public ComparisonOperator getOperator() { return operator; }
+    public ConditionField getField() { return field; }
     public String getFieldName() { return field.fieldName; }
     public Object getValue() { return value; }
     public boolean getIgnoreCase() { return ignoreCase; }
@@ -108,11 +110,19 @@ public class FieldValueCondition implements EntityConditionImplBase, Externaliza
                 if (value instanceof Collection) {
                     sql.append(" (");
                     boolean isFirst = true;
+                    Object lastValue = null;
                     for (Object curValue : (Collection) value) {
                         if (isFirst) isFirst = false; else sql.append(", ");
                         sql.append("?");
                         if (ignoreCase && (curValue instanceof CharSequence)) curValue = curValue.toString().toUpperCase();
                         eqb.parameters.add(new EntityConditionParameter(fi, curValue, eqb));
+                        lastValue = curValue;
+                    }
+                    int inSize = ((Collection) value).size();
+                    int paddedSize = inListPaddedSize(inSize);
+                    for (int i = inSize; i < paddedSize; i++) {
+                        sql.append(", ?");
+                        eqb.parameters.add(new EntityConditionParameter(fi, lastValue, eqb));
                     }
                     sql.append(')');
                 } else {
@@ -137,6 +147,70 @@ public class FieldValueCondition implements EntityConditionImplBase, Externaliza
             }
         }
     }
+    @Override
+    public boolean makeSqlShape(StringBuilder shapeKey, ArrayList<Object> parameterValues) {
+        // NOTE: this must follow the same paths as makeSqlWhere() so that values are added in the same order as parameters
+        shapeKey.append('{').append(field.toString()).append(' ').append(operator.ordinal());
+        if (ignoreCase) shapeKey.append('i');
+        if (value instanceof Collection && ((Collection) value).isEmpty()) {
+            if (operator == IN || operator == NOT_IN) {
+                shapeKey.append(":e}");
+                return true;
+            }
+            return false;
+        }
+        if (operator == IS_NULL || operator == IS_NOT_NULL) {
+            shapeKey.append('}');
+            return true;
+        }
+        if (value == null && (operator == EQUALS || operator == LIKE || operator == IN || operator == BETWEEN ||
+                operator == NOT_EQUAL || operator == NOT_LIKE || operator == NOT_IN || operator == NOT_BETWEEN)) {
+            shapeKey.append(":n}");
+            return true;
+        }
+
+        if (operator == IN || operator == NOT_IN) {
+            Object inValue = valueToCollection(value);
+            if (inValue instanceof Collection) {
+                Collection inCollection = (Collection) inValue;
+                int inSize = inCollection.size();
+                int paddedSize = inListPaddedSize(inSize);
+                shapeKey.append(":c").append(paddedSize);
+                Object lastValue = null;
+                for (Object curValue : inCollection) { lastValue = ignoreCaseValue(curValue); parameterValues.add(lastValue); }
+                for (int i = inSize; i < paddedSize; i++) parameterValues.add(lastValue);
+            } else {
+                shapeKey.append(":s");
+                parameterValues.add(ignoreCaseValue(inValue));
+            }
+        } else if (operator == BETWEEN || operator == NOT_BETWEEN) {
+            Object betweenValue = valueToCollection(value);
+            if (betweenValue instanceof Collection && ((Collection) betweenValue).size() == 2) {
+                shapeKey.append(":b");
+                Iterator iterator = ((Collection) betweenValue).iterator();
+                parameterValues.add(ignoreCaseValue(iterator.next()));
+                parameterValues.add(ignoreCaseValue(iterator.next()));
+            } else {
+                shapeKey.append(":v");
+                parameterValues.add(ignoreCaseValue(betweenValue));
+            }
+        } else {
+            shapeKey.append(":v");
+            parameterValues.add(ignoreCaseValue(value));
+        }
+        shapeKey.append('}');
+        return true;
+    }
+    /** Size to pad an IN list to, with the last value repeated which doesn't change the result, so that lists of
+     * similar size have the same SQL and share a statement plan: the next power of two for up to 512 values */
+    static int inListPaddedSize(int size) {
+        if (size <= 2 || size > 512) return size;
+        return Integer.highestOneBit(size - 1) << 1;
+    }
+    private Object ignoreCaseValue(Object curValue) {
+        if (ignoreCase && (curValue instanceof CharSequence)) return curValue.toString().toUpperCase();
+        return curValue;
+    }
     Object valueToCollection(Object value) {
         if (value instanceof CharSequence) {
             String valueStr = value.toString();
@@ -251,8 +325,11 @@ public class FieldValueCondition implements EntityConditionImplBase, Externaliza
     }
 
     @Override
-    public boolean mapMatches(Map<String, Object> map) {
-        return EntityConditionFactoryImpl.compareByOperator(map.get(field.fieldName), operator, value);
+    public boolean mapMatches(Map<String, Object> map) { return getMatcher().matches(map); }
+    public ConditionMatcher getMatcher() {
+        // no need to synchronize, worst case compiled more than once
+        if (matcher == null) matcher = ConditionMatcher.compile(this);
+        return matcher;
     }
     @Override
     public boolean mapMatchesAny(Map<String, Object> map) { return mapMatches(map); }
@@ -30,6 +30,7 @@ public class ListCondition implements EntityConditionImplBase {
     protected JoinOperator operator;
     private int conditionListSize = 0;
     private int curHashCode;
+    private transient ConditionMatcher matcher = null;
     private static final Class thisClass = ListCondition.class;
 
     public ListCondition(List<EntityConditionImplBase> conditionList, JoinOperator operator) {
@@ -61,6 +62,7 @@ public class ListCondition implements EntityConditionImplBase {
         if (condition != null) conditionList.add(condition);
         curHashCode = createHashCode();
         conditionListSize = conditionList.size();
+        matcher = null;
     }
     public void addConditions(ArrayList<EntityConditionImplBase> condList) {
         int condListSize = condList != null ? condList.size() : 0;
@@ -90,6 +92,16 @@ public class ListCondition implements EntityConditionImplBase {
         if (conditionListSize > 1) sql.append(')');
     }
     @Override
+    public boolean makeSqlShape(StringBuilder shapeKey, ArrayList<Object> parameterValues) {
+        shapeKey.append('(').append(operator.ordinal());
+        for (int i = 0; i < conditionListSize; i++) {
+            shapeKey.append(',');
+            if (!conditionList.get(i).makeSqlShape(shapeKey, parameterValues)) return false;
+        }
+        shapeKey.append(')');
+        return true;
+    }
+    @Override
     public void makeSearchFilter(List<Map<String, Object>> filterList) {
         if (conditionListSize == 0) return;
 
@@ -107,15 +119,12 @@ public class ListCondition implements EntityConditionImplBase {
     }
 
     @Override
-    public boolean mapMatches(Map<String, Object> map) {
-        for (int i = 0; i < conditionListSize; i++) {
-            EntityConditionImplBase condition = conditionList.get(i);
-            boolean conditionMatches = condition.mapMatches(map);
-            if (conditionMatches && this.operator == OR) return true;
-            if (!conditionMatches && this.operator == AND) return false;
-        }
-        // if we got here it means that it's an OR with no trues, or an AND with no falses
-        return (this.operator == AND);
+    public boolean mapMatches(Map<String, Object> map) { return getMatcher().matches(map); }
+    public ConditionMatcher getMatcher() {
+        // no need to synchronize, worst case compiled more than once; reset in addCondition()
+        ConditionMatcher curMatcher = matcher;
+        if (curMatcher == null) matcher = curMatcher = ConditionMatcher.compile(this);
+        return curMatcher;
     }
     @Override
     public boolean mapMatchesAny(Map<String, Object> map) {
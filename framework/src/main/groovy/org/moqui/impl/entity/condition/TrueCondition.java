@@ -28,6 +28,7 @@ public class TrueCondition implements EntityConditionImplBase {
     public TrueCondition() { }
 
     @Override public void makeSqlWhere(EntityQueryBuilder eqb, EntityDefinition subMemberEd) { eqb.sqlTopLevel.append("1=1"); }
+    @Override public boolean makeSqlShape(StringBuilder shapeKey, ArrayList<Object> parameterValues) { shapeKey.append("{1=1}"); return true; }
     @Override
     public void makeSearchFilter(List<Map<String, Object>> filterList) {
         // TODO how would this work in ES?
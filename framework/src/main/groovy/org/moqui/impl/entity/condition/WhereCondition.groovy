@@ -31,6 +31,8 @@ class WhereCondition implements EntityConditionImplBase {
     }
 
     @Override void makeSqlWhere(EntityQueryBuilder eqb, EntityDefinition subMemberEd) { eqb.sqlTopLevel.append(this.sqlWhereClause) }
+    @Override boolean makeSqlShape(StringBuilder shapeKey, ArrayList<Object> parameterValues) {
+        shapeKey.append('{').append(sqlWhereClause).append('}'); return true }
     @Override
     public void makeSearchFilter(List<Map<String, Object>> filterList) {
         throw new IllegalArgumentException("Where Condition not supported for Elastic Entity")
@@ -820,6 +820,7 @@ class ScreenDefinition {
 
         protected boolean beginTransaction = true
         protected boolean readOnly = false
+        protected boolean readFromClone = false
         protected boolean requireSessionToken = true
 
         protected TransitionItem(ScreenDefinition parentScreen) { this.parentScreen = parentScreen }
@@ -864,6 +865,7 @@ class ScreenDefinition {
             }
 
             readOnly = (actions == null && serviceActions == null) || transitionNode.attribute("read-only") == "true"
+            readFromClone = transitionNode.attribute("read-from-clone") == "true"
 
             // conditional-response*
             for (MNode condResponseNode in transitionNode.children("conditional-response"))
@@ -883,6 +885,7 @@ class ScreenDefinition {
         boolean hasActionsOrSingleService() { return actions != null || serviceActions != null}
         boolean getBeginTransaction() { return beginTransaction }
         boolean isReadOnly() { return readOnly }
+        boolean isReadFromClone() { return readFromClone }
         boolean getRequireSessionToken() { return requireSessionToken }
 
         boolean checkCondition(ExecutionContextImpl ec) { return condition ? condition.checkCondition(ec) : true }
@@ -2066,6 +2066,14 @@ class ScreenForm {
                     includeFields.add(fn)
                 }
 
+                // handle pagination, etc parameters like XML Actions entity-find
+                MNode sfiNode = entityFindNode.first("search-form-inputs")
+                boolean doPaginate = sfiNode != null && !"false".equals(sfiNode.attribute("paginate"))
+                // select PK fields so the last record has what is needed for a seek pagination token (not if distinct or
+                //     aggregate functions as would change results, or seek pagination can't be used with the order by)
+                if (doPaginate && selFields != null && selFields.size() > 0 && ef.canSeekPaginate())
+                    for (String pkName in ef.getEntityDef().getPkFieldNames()) ef.selectField(pkName)
+
                 // logger.warn("TOREMOVE form-list.entity-find: ${ef.toString()}\ndisplayedFieldSet: ${displayedFieldSet}")
 
                 // run the query
@@ -2084,9 +2092,6 @@ class ScreenForm {
                 context.put(listName, efList)
                 context.put(listName.concat("_xafind"), ef)
 
-                // handle pagination, etc parameters like XML Actions entity-find
-                MNode sfiNode = entityFindNode.first("search-form-inputs")
-                boolean doPaginate = sfiNode != null && !"false".equals(sfiNode.attribute("paginate"))
                 if (doPaginate) {
                     long count, pageSize, pageIndex
                     if (ef.getLimit() == null) {
@@ -2099,11 +2104,17 @@ class ScreenForm {
                         pageSize = efList.getPageSize()
                         pageIndex = efList.getPageIndex()
                     } else {
-                        pageIndex = ef.pageIndex
+                        // with a seek token there is no offset so use the pageIndex parameter if passed with the token
+                        boolean seekMode = ef.getSeekAfter() != null
+                        pageIndex = seekMode ? ((context.get("pageIndex") ?: 0) as long) : ef.pageIndex
                         pageSize = ef.pageSize
+                        context.put(listName.concat("PageSeekMode"), seekMode)
                         // this can be expensive, only get count if efList size is equal to pageSize (can skip if no paginate needed)
                         if (efList.size() < pageSize) count = efList.size() + pageSize * pageIndex
                         else count = ef.count()
+                        // token for the next page to pass in the pageSeekToken parameter, faster than pageIndex for deep pages
+                        if (efList.size() > 0 && efList.size() >= pageSize)
+                            context.put(listName.concat("PageSeekToken"), ef.makeSeekToken(efList.get(efList.size() - 1)))
                     }
                     long maxIndex = (new BigDecimal(count-1)).divide(new BigDecimal(pageSize), 0, RoundingMode.DOWN).longValue()
                     long pageRangeLow = (pageIndex * pageSize) + 1
@@ -2127,6 +2138,7 @@ class ScreenForm {
             // NOTE: always call AggregationUtil.aggregateList, passing aggregateList to tell it to do sub-lists or not
             // this does the pre-processing for all form-list renders, handles row-actions, field.@from, etc
             ArrayList<Map<String, Object>> aggList = formInstance.aggregationUtil.aggregateList(listObject, includeFields, aggregateList, ecfi.getEci())
+            if (aggList.size() > 1) prefetchDisplayEntities(aggList)
 
             // set _formListRendered and _formListResultCount so code running later on knows what happened during the screen render
             context.getSharedMap().put("_formListRendered", true)
@@ -2138,6 +2150,32 @@ class ScreenForm {
             return aggList
         }
 
+        /** For display-entity fields keyed by a single field PK get the records for all rows with one query to fill
+         * the entity one cache, instead of one query per row when each row is rendered */
+        protected void prefetchDisplayEntities(ArrayList<Map<String, Object>> aggList) {
+            EntityFacadeImpl efi = ecfi.entityFacade
+            int aggListSize = aggList.size()
+            for (String fieldName in displayedFieldSet) {
+                MNode defaultFieldNode = formInstance.getFieldNode(fieldName)?.first("default-field")
+                MNode widgetNode = defaultFieldNode?.first("display-entity")
+                if (widgetNode == null) continue
+                String useCache = widgetNode.attribute("use-cache") ?: widgetNode.attribute("entity-use-cache") ?: "true"
+                if (!"true".equals(useCache)) continue
+                String entityName = widgetNode.attribute("entity-name")
+                EntityDefinition ed = efi.getEntityDefinition(entityName)
+                if (ed == null || ed.entityInfo.neverCache || ed.getPkFieldNames().size() != 1) continue
+                String keyFieldName = widgetNode.attribute("key-field-name") ?: widgetNode.attribute("entity-key-name")
+                if (keyFieldName && keyFieldName != ed.getPkFieldNames().get(0)) continue
+
+                LinkedHashSet<Object> keyValues = new LinkedHashSet<>()
+                for (int i = 0; i < aggListSize; i++) {
+                    Object keyValue = aggList.get(i).get(fieldName)
+                    if (!ObjectUtilities.isEmpty(keyValue)) keyValues.add(keyValue)
+                }
+                if (keyValues.size() > 1) efi.fastFindMany(entityName, true, false, keyValues)
+            }
+        }
+
         String getOrderByActualJsString(String originalOrderBy) {
             if (originalOrderBy == null || originalOrderBy.length() == 0) return "";
             // strip square braces if there are any
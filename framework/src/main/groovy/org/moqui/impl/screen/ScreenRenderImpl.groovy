@@ -449,6 +449,9 @@ class ScreenRenderImpl implements ScreenRender {
 
             TransactionFacade transactionFacade = sfi.getEcfi().transactionFacade
             boolean beginTransaction = targetTransition.getBeginTransaction()
+            // opt-in only, read-only on a transition just skips the insecure parameter check
+            boolean readFromClone = targetTransition.isReadFromClone()
+            if (readFromClone) ec.pushReadOnly()
             boolean beganTransaction = beginTransaction ? transactionFacade.begin(null) : false
             ResponseItem ri = null
             try {
@@ -471,6 +474,7 @@ class ScreenRenderImpl implements ScreenRender {
                 } catch (Exception e) {
                     logger.error("Error ending screen transition transaction", e)
                 }
+                if (readFromClone) ec.popReadOnly()
 
                 if (!"false".equals(screenUrlInfo.targetScreen.screenNode.attribute("track-artifact-hit"))) {
                     String riType = ri != null ? ri.type : null
@@ -802,6 +806,7 @@ class ScreenRenderImpl implements ScreenRender {
         boolean isServerStatic = screenUrlInfo.targetScreen.isServerStatic(renderMode)
         // TODO: consider server caching of rendered screen, this is the place to do it
 
+        if (screenUrlInfo.readOnly) ec.pushReadOnly()
         boolean beganTransaction = screenUrlInfo.beginTransaction ? sfi.ecfi.transactionFacade.begin(screenUrlInfo.transactionTimeout) : false
         try {
             // run always-actions for all screens in path
@@ -956,6 +961,7 @@ class ScreenRenderImpl implements ScreenRender {
         } finally {
             // if we began a tx commit it
             if (beganTransaction && sfi.ecfi.transactionFacade.isTransactionInPlace()) sfi.ecfi.transactionFacade.commit()
+            if (screenUrlInfo.readOnly) ec.popReadOnly()
         }
     }
 
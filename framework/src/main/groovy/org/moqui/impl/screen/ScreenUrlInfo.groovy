@@ -63,6 +63,8 @@ class ScreenUrlInfo {
     // boolean disableLink = false
     boolean alwaysUseFullPath = false
     boolean beginTransaction = false
+    /** true if any screen in the path is declared read-only, see entity-facade.@read-only-use-clone */
+    boolean readOnly = false
     Integer transactionTimeout = null
 
     String menuImage = (String) null
@@ -470,6 +472,7 @@ class ScreenUrlInfo {
         // encrypt is the default loop through screens if all are not secure/etc use http setting, otherwise https
         requireEncryption = !"false".equals(rootSd?.webSettingsNode?.attribute("require-encryption"))
         if ("true".equals(rootSd?.screenNode?.attribute('begin-transaction'))) beginTransaction = true
+        if ("true".equals(rootSd?.screenNode?.attribute('read-only'))) readOnly = true
         String txTimeoutAttr = rootSd?.screenNode?.attribute("transaction-timeout")
         if (txTimeoutAttr) transactionTimeout = Integer.parseInt(txTimeoutAttr)
 
@@ -624,6 +627,7 @@ class ScreenUrlInfo {
 
             if (curSd.webSettingsNode?.attribute('require-encryption') != "false") this.requireEncryption = true
             if (curSd.screenNode?.attribute('begin-transaction') == "true") this.beginTransaction = true
+            if (curSd.screenNode?.attribute('read-only') == "true") this.readOnly = true
             String curTxTimeoutAttr = curSd.screenNode?.attribute("transaction-timeout")
             if (curTxTimeoutAttr) {
                 Integer curTransactionTimeout = Integer.parseInt(curTxTimeoutAttr)
@@ -725,6 +729,7 @@ class ScreenUrlInfo {
 
             if (curSd.webSettingsNode?.attribute('require-encryption') != "false") this.requireEncryption = true
             if (curSd.screenNode?.attribute('begin-transaction') == "true") this.beginTransaction = true
+            if (curSd.screenNode?.attribute('read-only') == "true") this.readOnly = true
             String curTxTimeoutAttr = curSd.screenNode?.attribute("transaction-timeout")
             if (curTxTimeoutAttr) {
                 Integer curTransactionTimeout = Integer.parseInt(curTxTimeoutAttr)
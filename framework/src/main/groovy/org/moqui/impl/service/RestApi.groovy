@@ -378,21 +378,35 @@ class RestApi {
                     // we don't want to go overboard with these requests, never do an unlimited find, if no limit use 100
                     if (!ef.getLimit() && !"true".equals(ec.context.get("pageNoLimit"))) ef.limit(100)
 
-                    int count = ef.count() as int
-                    int pageIndex = ef.getPageIndex()
                     int pageSize = ef.getPageSize()
-                    int pageMaxIndex = ((count - 1) as BigDecimal).divide(pageSize as BigDecimal, 0, RoundingMode.DOWN).intValue()
-                    int pageRangeLow = pageIndex * pageSize + 1
-                    int pageRangeHigh = (pageIndex * pageSize) + pageSize
-                    if (pageRangeHigh > count) pageRangeHigh = count
-                    Map<String, Object> headers = ['X-Total-Count':count, 'X-Page-Index':pageIndex, 'X-Page-Size':pageSize,
-                        'X-Page-Max-Index':pageMaxIndex, 'X-Page-Range-Low':pageRangeLow, 'X-Page-Range-High':pageRangeHigh] as Map<String, Object>
+                    Map<String, Object> headers
+                    if (ef.getSeekAfter() != null) {
+                        // seek pagination is used for deep pages on large tables, don't do the count (total is in the first page headers)
+                        headers = ['X-Page-Size':pageSize] as Map<String, Object>
+                    } else {
+                        int count = ef.count() as int
+                        int pageIndex = ef.getPageIndex()
+                        int pageMaxIndex = ((count - 1) as BigDecimal).divide(pageSize as BigDecimal, 0, RoundingMode.DOWN).intValue()
+                        int pageRangeLow = pageIndex * pageSize + 1
+                        int pageRangeHigh = (pageIndex * pageSize) + pageSize
+                        if (pageRangeHigh > count) pageRangeHigh = count
+                        headers = ['X-Total-Count':count, 'X-Page-Index':pageIndex, 'X-Page-Size':pageSize,
+                            'X-Page-Max-Index':pageMaxIndex, 'X-Page-Range-Low':pageRangeLow, 'X-Page-Range-High':pageRangeHigh] as Map<String, Object>
+                    }
 
+                    List<Map<String, Object>> resultList
                     if (masterName) {
-                        return new RestResult(ef.listMaster(masterName), headers)
+                        resultList = ef.listMaster(masterName)
                     } else {
-                        return new RestResult(ef.list().getValueMapList(), headers)
+                        resultList = ef.list().getValueMapList()
+                    }
+                    // if a full page there may be more, add a token for the next page to use with pageSeekToken
+                    int resultSize = resultList.size()
+                    if (ef.getLimit() != null && resultSize > 0 && resultSize >= pageSize) {
+                        String seekToken = ef.makeSeekToken(resultList.get(resultSize - 1))
+                        if (seekToken != null) headers.put('X-Page-Seek-Token', seekToken)
                     }
+                    return new RestResult(resultList, headers)
                 } else if (operation == 'count') {
                     EntityFind ef = ec.entity.find(entityName).searchFormMap(ec.context, null, null, null, false)
                     long count = ef.count()
@@ -285,6 +285,7 @@ public class ServiceCallSyncImpl extends ServiceCallImpl implements ServiceCallS
 
         boolean suspendedTransaction = false;
         Map<String, Object> result = new HashMap<>();
+        if (sd.readOnly) eci.pushReadOnly();
         try {
             if (pauseResumeIfNeeded && transactionStatus != Status.STATUS_NO_TRANSACTION) {
                 suspendedTransaction = tf.suspend();
@@ -390,6 +391,7 @@ public class ServiceCallSyncImpl extends ServiceCallImpl implements ServiceCallS
 
             return result;
         } finally {
+            if (sd.readOnly) eci.popReadOnly();
             // clear the semaphore
             if (sd.hasSemaphore) clearSemaphore(eci, currentParameters);
 
@@ -69,6 +69,7 @@ public class ServiceDefinition {
     public final boolean txForceNew;
     public final boolean txUseCache;
     public final boolean noTxCache;
+    public final boolean readOnly;
     public final Integer txTimeout;
     public final boolean validate;
     public final boolean allowRemote;
@@ -187,6 +188,7 @@ public class ServiceDefinition {
         txForceNew = "force-new".equals(transactionAttr) || "force-cache".equals(transactionAttr);
         txUseCache = "cache".equals(transactionAttr) || "force-cache".equals(transactionAttr);
         noTxCache = "true".equals(serviceNode.attribute("no-tx-cache"));
+        readOnly = "true".equals(serviceNode.attribute("read-only"));
         String txTimeoutAttr = serviceNode.attribute("transaction-timeout");
         if (txTimeoutAttr != null && !txTimeoutAttr.isEmpty()) {
             txTimeout = Integer.valueOf(txTimeoutAttr);
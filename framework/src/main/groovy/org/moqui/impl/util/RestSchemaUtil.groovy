@@ -64,6 +64,7 @@ class RestSchemaUtil {
     static final List<Map> swaggerPaginationParameters =
             [[name:'pageIndex', in:'query', required:false, type:'number', format:'int32', description:'Page number to return, starting with zero'],
              [name:'pageSize', in:'query', required:false, type:'number', format:'int32', description:'Number of records per page (default 100)'],
+             [name:'pageSeekToken', in:'query', required:false, type:'string', description:'Token from the X-Page-Seek-Token header of the previous page, used instead of pageIndex for faster deep pages'],
              [name:'orderByField', in:'query', required:false, type:'string', description:'Field name to order by (or comma separated names)'],
              [name:'pageNoLimit', in:'query', required:false, type:'string', description:'If true don\'t limit page size (no pagination)'],
              [name:'dependentLevels', in:'query', required:false, type:'number', format:'int32', description:'Levels of dependent child records to include']
@@ -73,6 +74,7 @@ class RestSchemaUtil {
     static final Map ramlPaginationParameters = [
              pageIndex:[type:'number', description:'Page number to return, starting with zero'],
              pageSize:[type:'number', default:100, description:'Number of records per page (default 100)'],
+             pageSeekToken:[type:'string', description:'Token from the X-Page-Seek-Token header of the previous page, used instead of pageIndex for faster deep pages'],
              orderByField:[type:'string', description:'Field name to order by (or comma separated names)'],
              pageNoLimit:[type:'string', description:'If true don\'t limit page size (no pagination)'],
              dependentLevels:[type:'number', description:'Levels of dependent child records to include']
@@ -17,6 +17,7 @@ import java.sql.Connection;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -54,6 +55,15 @@ public interface EntityFacade {
     EntityFind find(String entityName);
     EntityFind find(MNode entityFindNode);
     EntityValue fastFindOne(String entityName, Boolean useCache, boolean disableAuthz, Object... values);
+    /** Find many records by primary key. Values are looked up in the TransactionCache and entity one cache (if
+     * useCache, or if null per the entity's cache setting) and the rest are selected with one query per 500 keys (IN
+     * for single field PKs, OR of ANDs for multi field PKs), then put in the caches.
+     *
+     * @param pkValues For single field PKs the field values, for multi field PKs a Map or a List with PK field values
+     *                 in the order they are defined on the entity.
+     * @return List with a value for each entry in pkValues in the same order, null where no record is found.
+     */
+    List<EntityValue> fastFindMany(String entityName, Boolean useCache, boolean disableAuthz, Collection<?> pkValues);
 
     /** Bulk create EntityValue records. All values must be for the same entity. */
     void createBulk(List<EntityValue> valueList);
@@ -195,6 +195,26 @@ public interface EntityFind extends java.io.Serializable, SimpleEtl.Extractor {
     /** For use with searchFormInputs when paginated. Equals limit (default 20; exists for consistency/convenience along with getPageIndex()). */
     int getPageSize();
 
+    /** Keyset (seek) pagination: only get records that come after the record with these values in the order by. Much
+     * faster than an offset for deep pages on large tables as the database can seek to the start using an index.
+     * Primary key fields not already in the order by are added to the end of it so the order is unique, so the Map must
+     * have non-null values for each order by and primary key field. Set to null to clear. All order by fields must be
+     * primary key or not-null fields, records with null values would be skipped.
+     * Only applicable for list() and iterator() finds, generally used with limit() and no offset().
+     *
+     * @return Returns this for chaining of method calls.
+     */
+    EntityFind seekAfter(Map<String, Object> afterValues);
+    Map<String, Object> getSeekAfter();
+    /** Same as seekAfter(Map) but using an opaque token from makeSeekToken(), meant for continuation tokens passed to
+     * clients (the pageSeekToken parameter in searchFormInputs). */
+    EntityFind seekAfterToken(String seekToken);
+    /** Make a token for seekAfterToken() from the last record in a page, usually the last value in a list() result.
+     * Returns null if lastValue is null or doesn't have values for all order by and primary key fields, or if seek
+     * pagination can't be used for this find (distinct, aggregate view entity, or ordered by a nullable field); use
+     * the pageIndex for the next page in that case. */
+    String makeSeekToken(Map<String, Object> lastValue);
+
     /** Lock the selected record so only this transaction can change it until it is ended.
      * If this is set when the find is done the useCache setting will be ignored as this will always get the data from
      *     the database.
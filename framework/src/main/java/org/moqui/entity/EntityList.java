@@ -121,6 +121,16 @@ public interface EntityList extends List<EntityValue>, Iterable<EntityValue>, Cl
     /** Adds each value in the passed list to this list if the value isn't already in it. Returns reference to this list. */
     EntityList addAllIfMissing(EntityList el);
 
+    /** Get related records for all values in this list with one query per relationship (per 500 distinct keys), and
+     * keep them on each value so that later findRelated(), findRelatedOne(), and findRelatedCount() calls for these
+     * relationships are done in memory instead of one query per value. Does nothing for lists from the entity cache.
+     *
+     * @param relationshipNames Relationship names as used for findRelated() (full name, or title and related entity
+     *                          name with a hash, or short-alias).
+     * @return This EntityList, for chaining.
+     */
+    EntityList prefetchRelated(String... relationshipNames);
+
     /** Writes XML text with an attribute or CDATA element for each field of each record. If dependents is true also
      * writes all dependent (descendant) records.
      * @param writer A Writer object to write to
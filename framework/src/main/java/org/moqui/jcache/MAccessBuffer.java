@@ -0,0 +1,65 @@
+/*
+ * This software is in the public domain under CC0 1.0 Universal plus a
+ * Grant of Patent License.
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication
+ * along with this software (see the LICENSE.md file). If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package org.moqui.jcache;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** Records reads of MCache entries without writing to the entry from the reading thread, so concurrent reads of hot
+ * entries don't contend on the entry's cache line.
+ *
+ * Reads add the entry to a small lossy buffer that is drained under a lock when available (tryLock), and only the
+ * draining thread updates MEntry.accessCount and the MEvictionPolicy (which uses the same lock). Some reads are
+ * dropped when buffer slots are overwritten before a drain so access counts are approximate, which is fine for
+ * frequency comparisons but counts should not be used as exact read counts (see MStats for those). */
+final class MAccessBuffer<K, V> {
+    private static final int bufferSize = 128, bufferMask = bufferSize - 1;
+
+    final ReentrantLock lock = new ReentrantLock();
+    private final MEntry[] buffer = new MEntry[bufferSize];
+    /** Set by MEvictionPolicy, accessed only with the lock held */
+    MEvictionPolicy<K, V> policy = null;
+
+    /** Called on cache hit, does not block */
+    void record(MEntry<K, V> entry) {
+        int index = ThreadLocalRandom.current().nextInt() & bufferMask;
+        buffer[index] = entry;
+        // drain about every 32 reads if no one else is
+        if ((index & 0x1f) == 0 && lock.tryLock()) {
+            try { drain(); } finally { lock.unlock(); }
+        }
+    }
+
+    /** Must be called with the lock held */
+    @SuppressWarnings("unchecked")
+    void drain() {
+        MEvictionPolicy<K, V> curPolicy = policy;
+        for (int i = 0; i < bufferSize; i++) {
+            MEntry<K, V> entry = (MEntry<K, V>) buffer[i];
+            if (entry == null) continue;
+            buffer[i] = null;
+            entry.accessCount++;
+            if (curPolicy != null) curPolicy.onRead(entry);
+        }
+    }
+
+    void clear() {
+        lock.lock();
+        try {
+            for (int i = 0; i < bufferSize; i++) buffer[i] = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -27,9 +27,14 @@ import javax.cache.processor.EntryProcessor;
 import javax.cache.processor.EntryProcessorException;
 import javax.cache.processor.EntryProcessorResult;
 
+import java.lang.ref.WeakReference;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,17 +60,62 @@ public class MCache<K, V> implements Cache<K, V> {
     private Duration creationDuration = null;
     private Duration updateDuration = null;
     private final boolean hasExpiry;
+    /** Current time in milliseconds for entry created, updated and access times and expiry checks */
+    private LongSupplier timeSource = System::currentTimeMillis;
+    /** Expiry durations in milliseconds, -1 if not set */
+    private long accessMillis = -1, creationMillis = -1, updateMillis = -1;
+    /** Removes expired entries on the worker thread, null if no expiry */
+    private MTimerWheel<K, V> timerWheel = null;
+    private ExpireTask expireTask = null;
     private boolean isClosed = false;
 
-    private EvictRunnable evictRunnable = null;
-    private ScheduledFuture<?> evictFuture = null;
+    private final MAccessBuffer<K, V> accessBuffer = new MAccessBuffer<>();
+    private MEvictionPolicy<K, V> evictionPolicy = null;
+    /** Loads in progress by key for getOrLoad() and loadSingleFlight() */
+    private final ConcurrentHashMap<K, LoadFlight> loadFlights = new ConcurrentHashMap<>();
+    /** For refresh ahead time after created or updated to refresh on get, -1 for no refresh */
+    private long refreshAfterCreationMillis = -1, refreshAfterUpdateMillis = -1;
+    private volatile Function<? super K, ? extends V> refreshLoader = null;
+    private Executor refreshExecutor = null;
+    /** Keys with a refresh in progress */
+    private ConcurrentHashMap<K, Boolean> refreshingKeys = null;
+    /** Per thread key and System.nanoTime() of the last miss, for the load histogram */
+    private ThreadLocal<Object[]> lastMiss = null;
+    private MOffHeapStore<K, V> offHeapStore = null;
+    private MWeigher<K, V> weigher = null;
+    private long maxWeight = 0;
+    private final AtomicLong weight = new AtomicLong(0);
+
+    private volatile long loadWaitMillis = 10000;
+
+    private static final class LoadFlight {
+        final Thread thread = Thread.currentThread();
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+    }
+
+    /** Advances the timer wheel, with a weak reference so a cache not closed can still be garbage collected */
+    private static final class ExpireTask implements Runnable {
+        final WeakReference<MCache> cacheRef;
+        volatile ScheduledFuture<?> future = null;
+        ExpireTask(MCache cache) { cacheRef = new WeakReference<>(cache); }
+        @Override public void run() {
+            MCache cache = cacheRef.get();
+            if (cache == null || cache.isClosed) { cancel(); return; }
+            try {
+                cache.expireEntries(cache.currentTimeMillis());
+            } catch (Throwable t) {
+                logger.error("Error expiring entries in cache " + cache.name, t);
+            }
+        }
+        void cancel() { ScheduledFuture<?> curFuture = future; if (curFuture != null) curFuture.cancel(false); }
+    }
 
     private static class WorkerThreadFactory implements ThreadFactory {
         private final ThreadGroup workerGroup = new ThreadGroup("MCacheEvict");
         private final AtomicInteger threadNumber = new AtomicInteger(1);
         @Override public Thread newThread(Runnable r) { return new Thread(workerGroup, r, "MCacheEvict-" + threadNumber.getAndIncrement()); }
     }
-    private static ScheduledThreadPoolExecutor workerPool = new ScheduledThreadPoolExecutor(1, new WorkerThreadFactory());
+    static ScheduledThreadPoolExecutor workerPool = new ScheduledThreadPoolExecutor(1, new WorkerThreadFactory());
     static { workerPool.setRemoveOnCancelPolicy(true); }
 
     /** Supports a few configurations but both manager and configuration can be null. */
@@ -97,34 +147,74 @@ public class MCache<K, V> implements Cache<K, V> {
             if (configuration instanceof MCacheConfiguration) {
                 MCacheConfiguration<K, V> mCacheConf = (MCacheConfiguration<K, V>) configuration;
 
-                if (mCacheConf.maxEntries > 0) {
-                    evictRunnable = new EvictRunnable(this, mCacheConf.maxEntries);
-                    evictFuture = workerPool.scheduleWithFixedDelay(evictRunnable, 30, mCacheConf.maxCheckSeconds, TimeUnit.SECONDS);
+                if (mCacheConf.timeSource != null) timeSource = mCacheConf.timeSource;
+                weigher = mCacheConf.weigher;
+                if (weigher != null) maxWeight = mCacheConf.maxWeight;
+                // with a weigher and no max weight still needed for the MCacheManager max total weight
+                if (mCacheConf.maxEntries > 0 || weigher != null) evictionPolicy = new MEvictionPolicy<>(this, accessBuffer, mCacheConf.maxEntries);
+                if (mCacheConf.offHeapMaxBytes > 0) {
+                    MValueCodec<V> codec = mCacheConf.offHeapCodec != null ? mCacheConf.offHeapCodec : new MValueCodec.SerializableCodec<>();
+                    offHeapStore = new MOffHeapStore<>(this, codec, mCacheConf.offHeapMaxBytes);
+                }
+                if (mCacheConf.loadHistogram) {
+                    stats.enableLoadHistogram();
+                    lastMiss = new ThreadLocal<>();
                 }
             }
         }
         hasExpiry = accessDuration != null || creationDuration != null || updateDuration != null;
+        if (hasExpiry) {
+            if (accessDuration != null) accessMillis = durationMillis(accessDuration);
+            if (creationDuration != null) creationMillis = durationMillis(creationDuration);
+            if (updateDuration != null) updateMillis = durationMillis(updateDuration);
+            timerWheel = new MTimerWheel<>(this, currentTimeMillis());
+            expireTask = new ExpireTask(this);
+            expireTask.future = workerPool.scheduleWithFixedDelay(expireTask, MTimerWheel.tickMillis, MTimerWheel.tickMillis, TimeUnit.MILLISECONDS);
+        }
+        if (configuration instanceof MCacheConfiguration) {
+            double refreshAhead = ((MCacheConfiguration<K, V>) configuration).refreshAhead;
+            if (refreshAhead > 0) {
+                if (creationDuration != null) refreshAfterCreationMillis = (long) (durationMillis(creationDuration) * (1 - refreshAhead));
+                if (updateDuration != null) refreshAfterUpdateMillis = (long) (durationMillis(updateDuration) * (1 - refreshAhead));
+                if (isRefreshAhead()) refreshingKeys = new ConcurrentHashMap<>();
+            }
+        }
     }
+    /** Current time from the configured time source (see MCacheConfiguration.setTimeSource()), System.currentTimeMillis() by default */
+    public long currentTimeMillis() { return timeSource.getAsLong(); }
+    private static long durationMillis(Duration duration) { return duration.getTimeUnit().toMillis(duration.getDurationAmount()); }
 
     public synchronized void setMaxEntries(int elements) {
-        if (elements == 0) {
-            if (evictRunnable != null) {
-                evictRunnable = null;
-                evictFuture.cancel(false);
-                evictFuture = null;
+        if (elements == 0 && weigher == null) {
+            if (evictionPolicy != null) {
+                MEvictionPolicy<K, V> oldPolicy = evictionPolicy;
+                evictionPolicy = null;
+                oldPolicy.close();
             }
+        } else if (evictionPolicy != null) {
+            evictionPolicy.maxEntries = elements;
+            evictionPolicy.checkLimit();
         } else {
-            if (evictRunnable != null) {
-                evictRunnable.maxEntries = elements;
-            } else {
-                evictRunnable = new EvictRunnable(this, elements);
-                long maxCheckSeconds = 30;
-                if (configuration instanceof MCacheConfiguration) maxCheckSeconds = ((MCacheConfiguration) configuration).maxCheckSeconds;
-                evictFuture = workerPool.scheduleWithFixedDelay(evictRunnable, 1, maxCheckSeconds, TimeUnit.SECONDS);
-            }
+            MEvictionPolicy<K, V> newPolicy = new MEvictionPolicy<>(this, accessBuffer, elements);
+            evictionPolicy = newPolicy;
+            // add existing entries, evicts any over the limit
+            for (MEntry<K, V> entry : new ArrayList<>(entryStore.values())) newPolicy.onAdd(entry);
         }
     }
-    public int getMaxEntries() { return evictRunnable != null ? evictRunnable.maxEntries : 0; }
+    public int getMaxEntries() { MEvictionPolicy<K, V> ep = evictionPolicy; return ep != null ? ep.maxEntries : 0; }
+    /** Total weight of entries from the configured MWeigher, 0 if there is no weigher */
+    public long getWeight() { return weight.get(); }
+    public long getMaxWeight() { return maxWeight; }
+    public boolean hasWeigher() { return weigher != null; }
+
+    /** True if configured for refresh ahead with creation or update expiry, see MCacheConfiguration.setRefreshAhead() */
+    public boolean isRefreshAhead() { return refreshAfterCreationMillis >= 0 || refreshAfterUpdateMillis >= 0; }
+    /** Set the loader to refresh entries ahead of expiry, used only if isRefreshAhead(). The loader is called with the
+     * executor, or the MCache worker thread if null, and a null result leaves the entry to expire. */
+    public void setRefreshLoader(Function<? super K, ? extends V> loader, Executor executor) {
+        refreshExecutor = executor != null ? executor : workerPool;
+        refreshLoader = loader;
+    }
 
     @Override
     public String getName() { return name; }
@@ -133,20 +223,88 @@ public class MCache<K, V> implements Cache<K, V> {
     public V get(K key) {
         MEntry<K, V> entry = getEntryInternal(key, null, null, 0);
         if (entry == null) return null;
-        return entry.value;
+        return entry.getValue();
     }
     public V get(K key, ExpiryPolicy policy) {
         MEntry<K, V> entry = getEntryInternal(key, policy, null, 0);
         if (entry == null) return null;
-        return entry.value;
+        return entry.getValue();
     }
     /** Get with expire if the entry's last updated time is before the expireBeforeTime.
      * Useful when last updated time of a resource is known to see if the cached entry is out of date. */
     public V get(K key, long expireBeforeTime) {
         MEntry<K, V> entry = getEntryInternal(key, null, expireBeforeTime, 0);
         if (entry == null) return null;
-        return entry.value;
+        return entry.getValue();
+    }
+    /** Get the value for the key, on a miss load it with the loader and put it in the cache if not null. Concurrent
+     * misses on the same key wait for one call to the loader instead of each calling it (see loadSingleFlight()), and
+     * all get the same value instance. */
+    public V getOrLoad(K key, Function<? super K, ? extends V> loader) {
+        MEntry<K, V> entry = getEntryInternal(key, null, null, 0);
+        V value = entry != null ? entry.getValue() : null;
+        if (value != null) return value;
+        return loadSingleFlight(key, () -> {
+            // another load may have finished after the miss above
+            MEntry<K, V> curEntry = getCheckExpired(key);
+            V curValue = curEntry != null ? curEntry.getValue() : null;
+            if (curValue != null) return curValue;
+            V newValue = loader.apply(key);
+            if (newValue != null) put(key, newValue);
+            return newValue;
+        });
+    }
+    /** Call the loader for a key not in the cache, only one at a time per key: if a load for the key is in progress
+     * wait for it and return its result (or throw its exception) instead of calling the loader. For loads that need
+     * to put something other than the result in the cache, otherwise use getOrLoad().
+     *
+     * The loader is responsible for putting in the cache. If a load finished just after the caller's miss the loader is
+     * called again, to avoid that a loader may check the cache first. Loads in the same thread for the same key call
+     * the loader directly, but loaders should not load other keys in a way that could wait on a load in another thread
+     * that is waiting on this one. A wait for another thread's load is limited to the load wait time (see
+     * setLoadWaitMillis()), after that the loader is called directly. */
+    @SuppressWarnings("unchecked")
+    public <T> T loadSingleFlight(K key, Callable<T> loader) {
+        if (isClosed) throw new IllegalStateException("Cache " + name + " is closed");
+        if (key == null) throw new IllegalArgumentException("Cache key cannot be null");
+        LoadFlight flight = new LoadFlight();
+        LoadFlight existing = loadFlights.putIfAbsent(key, flight);
+        if (existing != null && existing.thread != flight.thread) {
+            try {
+                return (T) existing.future.get(loadWaitMillis, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                throw loadException(key, e.getCause());
+            } catch (TimeoutException e) {
+                // the other load may be blocked on something this thread holds (like a DB row lock), load directly
+                if (logger.isDebugEnabled()) logger.debug("Waited " + loadWaitMillis + "ms for load of " + key + " in cache " + name + ", loading directly");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            T value = loader.call();
+            if (existing == null) flight.future.complete(value);
+            return value;
+        } catch (Throwable t) {
+            if (existing == null) flight.future.completeExceptionally(t);
+            throw loadException(key, t);
+        } finally {
+            if (existing == null) loadFlights.remove(key, flight);
+        }
     }
+    /** Max time to wait for a load of the same key in another thread in loadSingleFlight() and getOrLoad() before
+     * calling the loader directly, defaults to 10 seconds. */
+    public void setLoadWaitMillis(long millis) {
+        if (millis < 0) throw new IllegalArgumentException("Load wait millis cannot be negative");
+        loadWaitMillis = millis;
+    }
+    public long getLoadWaitMillis() { return loadWaitMillis; }
+    private RuntimeException loadException(K key, Throwable t) {
+        if (t instanceof Error) throw (Error) t;
+        if (t instanceof RuntimeException) return (RuntimeException) t;
+        return new CacheException("Error loading " + key + " in cache " + name, t);
+    }
+
     /** Get an entry, if it is in the cache and not expired, otherwise returns null. The policy can be null to use cache's policy. */
     public MEntry<K, V> getEntry(final K key, final ExpiryPolicy policy) { return getEntryInternal(key, policy, null, 0); }
     /** Simple entry get, doesn't check if expired. */
@@ -155,11 +313,15 @@ public class MCache<K, V> implements Cache<K, V> {
         if (key == null) throw new IllegalArgumentException("Cache key cannot be null");
         MEntry<K, V> entry = entryStore.get(key);
         if (entry != null) {
-            if (statsEnabled) { stats.gets++; stats.hits++; }
-            long accessTime = System.currentTimeMillis();
-            entry.accessCount++; if (accessTime > entry.lastAccessTime) entry.lastAccessTime = accessTime;
+            if (statsEnabled) stats.countHit();
+            // only needed for access expiry, avoid the write otherwise
+            if (accessDuration != null) {
+                long accessTime = currentTimeMillis();
+                if (accessTime > entry.lastAccessTime) entry.lastAccessTime = accessTime;
+            }
+            accessBuffer.record(entry);
         } else {
-            if (statsEnabled) { stats.gets++; stats.misses++; }
+            if (statsEnabled) countMiss(key);
         }
         return entry;
     }
@@ -170,39 +332,41 @@ public class MCache<K, V> implements Cache<K, V> {
 
         if (entry != null) {
             if (policy != null) {
-                if (currentTime == 0) currentTime = System.currentTimeMillis();
+                if (currentTime == 0) currentTime = currentTimeMillis();
                 if (entry.isExpired(currentTime, policy)) {
-                    entryStore.remove(key);
+                    removeKey(key);
                     entry = null;
                     if (statsEnabled) stats.countExpire();
                 }
             } else if (hasExpiry) {
-                if (currentTime == 0) currentTime = System.currentTimeMillis();
+                if (currentTime == 0) currentTime = currentTimeMillis();
                 if (entry.isExpired(currentTime, accessDuration, creationDuration, updateDuration)) {
-                    entryStore.remove(key);
+                    removeKey(key);
                     entry = null;
                     if (statsEnabled) stats.countExpire();
                 }
             }
 
             if (expireBeforeTime != null && entry != null && entry.lastUpdatedTime < expireBeforeTime) {
-                entryStore.remove(key);
+                removeKey(key);
                 entry = null;
                 if (statsEnabled) stats.countExpire();
             }
 
             if (entry != null) {
-                if (statsEnabled) { stats.gets++; stats.hits++; }
-                entry.accessCount++;
+                if (statsEnabled) stats.countHit();
                 // at this point if an ad-hoc policy is used or hasExpiry == true currentTime will be set, otherwise will be 0
                 // meaning we don't need to track the lastAccessTime (only thing we need System.currentTimeMillis() for)
                 // if (currentTime == 0) currentTime = System.currentTimeMillis();
                 if (currentTime > entry.lastAccessTime) entry.lastAccessTime = currentTime;
+                // access count and eviction policy order are updated by the thread that drains the buffer
+                accessBuffer.record(entry);
+                if (refreshLoader != null && currentTime > 0 && isRefreshDue(entry, currentTime)) refresh(key, entry);
             } else {
-                if (statsEnabled) { stats.gets++; stats.misses++; }
+                if (statsEnabled) countMiss(key);
             }
         } else {
-            if (statsEnabled) { stats.gets++; stats.misses++; }
+            if (statsEnabled) countMiss(key);
         }
 
         return entry;
@@ -211,8 +375,8 @@ public class MCache<K, V> implements Cache<K, V> {
         if (isClosed) throw new IllegalStateException("Cache " + name + " is closed");
         if (key == null) throw new IllegalArgumentException("Cache key cannot be null");
         MEntry<K, V> entry = entryStore.get(key);
-        if (hasExpiry && entry != null && entry.isExpired(accessDuration, creationDuration, updateDuration)) {
-            entryStore.remove(key);
+        if (hasExpiry && entry != null && entry.isExpired(currentTimeMillis(), accessDuration, creationDuration, updateDuration)) {
+            removeKey(key);
             entry = null;
             if (statsEnabled) stats.countExpire();
         }
@@ -223,7 +387,7 @@ public class MCache<K, V> implements Cache<K, V> {
         if (key == null) throw new IllegalArgumentException("Cache key cannot be null");
         MEntry<K, V> entry = entryStore.get(key);
         if (hasExpiry && entry != null && entry.isExpired(currentTime, accessDuration, creationDuration, updateDuration)) {
-            entryStore.remove(key);
+            removeKey(key);
             entry = null;
             if (statsEnabled) stats.countExpire();
         }
@@ -232,11 +396,11 @@ public class MCache<K, V> implements Cache<K, V> {
 
     @Override
     public Map<K, V> getAll(Set<? extends K> keys) {
-        long currentTime = System.currentTimeMillis();
+        long currentTime = currentTimeMillis();
         Map<K, V> results = new HashMap<>();
         for (K key: keys) {
             MEntry<K, V> entry = getEntryInternal(key, null, null, currentTime);
-            results.put(key, entry != null ? entry.value : null);
+            results.put(key, entry != null ? entry.getValue() : null);
         }
         return results;
     }
@@ -248,36 +412,179 @@ public class MCache<K, V> implements Cache<K, V> {
 
     @Override
     public void put(K key, V value) {
-        long currentTime = System.currentTimeMillis();
+        long currentTime = currentTimeMillis();
         // get entry, count hit/miss
         MEntry<K, V> entry = getCheckExpired(key, currentTime);
         if (entry != null) {
-            entry.setValue(value, currentTime);
-            if (statsEnabled) stats.puts++;
+            setEntryValue(entry, value, currentTime);
+            if (statsEnabled) countPut(key);
         } else {
-            entry = new MEntry<>(key, value, currentTime);
-            entryStore.put(key, entry);
-            if (statsEnabled) stats.puts++;
+            entry = newEntry(key, value, currentTime);
+            putEntry(key, entry);
+            if (statsEnabled) countPut(key);
         }
     }
     @Override
     public V getAndPut(K key, V value) {
-        long currentTime = System.currentTimeMillis();
+        long currentTime = currentTimeMillis();
         // get entry, count hit/miss
         MEntry<K, V> entry = getCheckExpired(key, currentTime);
         if (entry != null) {
-            V oldValue = entry.value;
-            entry.setValue(value, currentTime);
-            if (statsEnabled) stats.puts++;
+            V oldValue = entry.getValue();
+            setEntryValue(entry, value, currentTime);
+            if (statsEnabled) countPut(key);
             return oldValue;
         } else {
-            entry = new MEntry<>(key, value, currentTime);
-            entryStore.put(key, entry);
-            if (statsEnabled) stats.puts++;
+            entry = newEntry(key, value, currentTime);
+            putEntry(key, entry);
+            if (statsEnabled) countPut(key);
             return null;
         }
     }
 
+    private void countMiss(K key) {
+        stats.countMiss();
+        if (lastMiss != null) lastMiss.set(new Object[] { key, System.nanoTime() });
+    }
+    private void countPut(K key) {
+        stats.countPut();
+        if (lastMiss != null) {
+            // put after a miss on the same key by the same thread, record the time to load the value (miss penalty)
+            Object[] miss = lastMiss.get();
+            if (miss != null && key.equals(miss[0])) {
+                lastMiss.remove();
+                stats.getLoadHistogram().record(System.nanoTime() - (Long) miss[1]);
+            }
+        }
+    }
+    /** Record time to load a value not in the cache, if the cache has a load histogram */
+    public void recordLoadTime(long nanos) {
+        MHistogram histogram = stats.getLoadHistogram();
+        if (histogram != null) histogram.record(nanos);
+    }
+
+    private boolean isRefreshDue(MEntry<K, V> entry, long currentTime) {
+        if (refreshAfterCreationMillis >= 0 && currentTime - entry.getCreatedTime() >= refreshAfterCreationMillis) return true;
+        return refreshAfterUpdateMillis >= 0 && currentTime - entry.lastUpdatedTime >= refreshAfterUpdateMillis;
+    }
+    private void refresh(K key, MEntry<K, V> entry) {
+        // one refresh per key at a time, others get the current value
+        if (refreshingKeys.putIfAbsent(key, Boolean.TRUE) != null) return;
+        Function<? super K, ? extends V> loader = refreshLoader;
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    long loadStartTime = currentTimeMillis();
+                    V value = loader.apply(key);
+                    if (value != null) refreshEntry(entry, value, loadStartTime);
+                } catch (Throwable t) {
+                    logger.warn("Error refreshing " + key + " in cache " + name + ", will expire as usual", t);
+                } finally {
+                    refreshingKeys.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshingKeys.remove(key);
+        }
+    }
+    private void refreshEntry(MEntry<K, V> entry, V value, long loadStartTime) {
+        // removed while loading (cleared, expired, evicted), don't put back a value that may be out of date
+        if (!isCurrentEntry(entry)) return;
+        // with the load start time as the update time a put during the load is not overwritten
+        setEntryValue(entry, value, loadStartTime, false);
+        synchronized (entry.getKey()) {
+            if (entry.lastUpdatedTime == loadStartTime) entry.resetCreatedTime(loadStartTime);
+        }
+        if (statsEnabled) stats.countPut();
+    }
+
+    private MEntry<K, V> newEntry(K key, V value, long currentTime) {
+        MEntry<K, V> entry;
+        if (offHeapStore == null) {
+            entry = new MEntry<>(key, value, currentTime);
+            if (weigher != null) entry.weight = weigher.weigh(key, value);
+            return entry;
+        }
+        entry = new MEntry<>(key, null, currentTime);
+        if (weigher != null) entry.weight = weigher.weigh(key, value);
+        MOffHeapStore.OffHeapRef ref = offHeapStore.write(entry, offHeapStore.encode(value));
+        // too large for off-heap storage, keep on the heap
+        if (ref == null) entry.value = value;
+        else entry.offHeapRef = ref;
+        return entry;
+    }
+    private void putEntry(K key, MEntry<K, V> entry) {
+        MEntry<K, V> oldEntry = entryStore.put(key, entry);
+        if (weigher != null) addWeight(oldEntry != null ? entry.weight - oldEntry.weight : entry.weight);
+        if (timerWheel != null) {
+            if (oldEntry != null) timerWheel.remove(oldEntry);
+            timerWheel.schedule(entry);
+        }
+        if (evictionPolicy != null) {
+            if (oldEntry != null) evictionPolicy.onRemove(oldEntry);
+            evictionPolicy.onAdd(entry);
+        }
+    }
+    private void setEntryValue(MEntry<K, V> entry, V value, long currentTime) { setEntryValue(entry, value, currentTime, true); }
+    private void setEntryValue(MEntry<K, V> entry, V value, long currentTime, boolean reput) {
+        // write off-heap before locking the entry, recycling a segment locks entries
+        MOffHeapStore.OffHeapRef ref = offHeapStore != null ? offHeapStore.write(entry, offHeapStore.encode(value)) : null;
+        if (weigher != null) {
+            int newWeight = weigher.weigh(entry.getKey(), value);
+            synchronized (entry.getKey()) {
+                int oldWeight = entry.weight;
+                if (setEntryValueInternal(entry, ref, value, currentTime)) {
+                    entry.weight = newWeight;
+                    addWeight(newWeight - oldWeight);
+                }
+            }
+        } else {
+            setEntryValueInternal(entry, ref, value, currentTime);
+        }
+        if (offHeapStore != null && reput) checkCurrentEntry(entry);
+        if (evictionPolicy != null) evictionPolicy.onUpdate(entry);
+    }
+    private boolean setEntryValueInternal(MEntry<K, V> entry, MOffHeapStore.OffHeapRef ref, V value, long currentTime) {
+        if (offHeapStore == null) return entry.setValue(value, currentTime);
+        return entry.setOffHeapValue(ref, value, currentTime);
+    }
+    /** If writing the new value recycled the segment with the old value the entry was evicted, put it back */
+    private void checkCurrentEntry(MEntry<K, V> entry) {
+        if (entryStore.get(entry.getKey()) != entry && entryStore.putIfAbsent(entry.getKey(), entry) == null) {
+            addWeight(entry.weight);
+            if (timerWheel != null) timerWheel.schedule(entry);
+            if (evictionPolicy != null) evictionPolicy.onAdd(entry);
+        }
+    }
+    private void removeKey(K key) {
+        MEntry<K, V> entry = entryStore.remove(key);
+        if (entry == null) return;
+        if (weigher != null) addWeight(-entry.weight);
+        if (timerWheel != null) timerWheel.remove(entry);
+        if (evictionPolicy != null) evictionPolicy.onRemove(entry);
+    }
+    private void addWeight(long delta) {
+        if (delta == 0) return;
+        weight.addAndGet(delta);
+        if (manager instanceof MCacheManager) ((MCacheManager) manager).addTotalWeight(delta);
+    }
+    /** Used by MOffHeapStore, true if entry is still in the cache */
+    boolean isCurrentEntry(MEntry<K, V> entry) { return entryStore.get(entry.getKey()) == entry; }
+    /** Used by MOffHeapStore when recycling a segment, removes the entry only if still in the cache */
+    void evictEntry(MEntry<K, V> entry) {
+        boolean[] evicted = new boolean[1];
+        entryStore.computeIfPresent(entry.getKey(), (k, cur) -> {
+            if (cur != entry) return cur;
+            evicted[0] = true;
+            return null;
+        });
+        if (!evicted[0]) return;
+        if (weigher != null) addWeight(-entry.weight);
+        if (timerWheel != null) timerWheel.remove(entry);
+        if (evictionPolicy != null) evictionPolicy.onRemove(entry);
+        if (statsEnabled) stats.countEviction();
+    }
+
     @Override
     public void putAll(Map<? extends K, ? extends V> map) {
         if (map == null) return;
@@ -285,15 +592,18 @@ public class MCache<K, V> implements Cache<K, V> {
     }
     @Override
     public boolean putIfAbsent(K key, V value) {
-        long currentTime = System.currentTimeMillis();
+        long currentTime = currentTimeMillis();
         MEntry<K, V> entry = getCheckExpired(key, currentTime);
         if (entry != null) {
             return false;
         } else {
-            entry = new MEntry<>(key, value, currentTime);
+            entry = newEntry(key, value, currentTime);
             MEntry<K, V> existingValue = entryStore.putIfAbsent(key, entry);
             if (existingValue == null) {
-                if (statsEnabled) stats.puts++;
+                addWeight(entry.weight);
+                if (timerWheel != null) timerWheel.schedule(entry);
+                if (evictionPolicy != null) evictionPolicy.onAdd(entry);
+                if (statsEnabled) countPut(key);
                 return true;
             } else {
                 return false;
@@ -305,7 +615,7 @@ public class MCache<K, V> implements Cache<K, V> {
     public boolean remove(K key) {
         MEntry<K, V> entry = getCheckExpired(key);
         if (entry != null) {
-            entryStore.remove(key);
+            removeKey(key);
             if (statsEnabled) stats.countRemoval();
             return true;
         } else {
@@ -321,6 +631,9 @@ public class MCache<K, V> implements Cache<K, V> {
             if (remove) {
                 // remove with dummy MEntry instance for comparison to ensure still equals
                 remove = entryStore.remove(key, new MEntry<>(key, oldValue));
+                if (remove) addWeight(-entry.weight);
+                if (remove && timerWheel != null) timerWheel.remove(entry);
+                if (remove && evictionPolicy != null) evictionPolicy.onRemove(entry);
                 if (remove && statsEnabled) stats.countRemoval();
             }
             return remove;
@@ -334,8 +647,8 @@ public class MCache<K, V> implements Cache<K, V> {
         // get entry, count hit/miss
         MEntry<K, V> entry = getEntryInternal(key, null, null, 0);
         if (entry != null) {
-            V oldValue = entry.value;
-            entryStore.remove(key);
+            V oldValue = entry.getValue();
+            removeKey(key);
             if (statsEnabled) stats.countRemoval();
             return oldValue;
         }
@@ -344,12 +657,28 @@ public class MCache<K, V> implements Cache<K, V> {
 
     @Override
     public boolean replace(K key, V oldValue, V newValue) {
-        long currentTime = System.currentTimeMillis();
+        long currentTime = currentTimeMillis();
         MEntry<K, V> entry = getCheckExpired(key, currentTime);
 
         if (entry != null) {
-            boolean replaced = entry.setValueIfEquals(oldValue, newValue, currentTime);
-            if (replaced) if (statsEnabled) stats.puts++;
+            boolean replaced;
+            int newWeight = weigher != null ? weigher.weigh(key, newValue) : 0;
+            MOffHeapStore.OffHeapRef ref = offHeapStore != null ? offHeapStore.write(entry, offHeapStore.encode(newValue)) : null;
+            synchronized (entry.getKey()) {
+                int oldWeight = entry.weight;
+                if (offHeapStore != null) {
+                    replaced = entry.setOffHeapValueIfEquals(oldValue, ref, newValue, currentTime);
+                } else {
+                    replaced = entry.setValueIfEquals(oldValue, newValue, currentTime);
+                }
+                if (replaced && weigher != null) {
+                    entry.weight = newWeight;
+                    addWeight(newWeight - oldWeight);
+                }
+            }
+            if (replaced && offHeapStore != null) checkCurrentEntry(entry);
+            if (replaced && evictionPolicy != null) evictionPolicy.onUpdate(entry);
+            if (replaced && statsEnabled) countPut(key);
             return replaced;
         } else {
             return false;
@@ -358,12 +687,12 @@ public class MCache<K, V> implements Cache<K, V> {
 
     @Override
     public boolean replace(K key, V value) {
-        long currentTime = System.currentTimeMillis();
+        long currentTime = currentTimeMillis();
         MEntry<K, V> entry = getCheckExpired(key, currentTime);
 
         if (entry != null) {
-            entry.setValue(value, currentTime);
-            if (statsEnabled) stats.puts++;
+            setEntryValue(entry, value, currentTime);
+            if (statsEnabled) countPut(key);
             return true;
         } else {
             return false;
@@ -372,13 +701,13 @@ public class MCache<K, V> implements Cache<K, V> {
 
     @Override
     public V getAndReplace(K key, V value) {
-        long currentTime = System.currentTimeMillis();
+        long currentTime = currentTimeMillis();
         // get entry, count hit/miss
         MEntry<K, V> entry = getEntryInternal(key, null, null, currentTime);
         if (entry != null) {
-            V oldValue = entry.value;
-            entry.setValue(value, currentTime);
-            if (statsEnabled) stats.puts++;
+            V oldValue = entry.getValue();
+            setEntryValue(entry, value, currentTime);
+            if (statsEnabled) countPut(key);
             return oldValue;
         } else {
             return null;
@@ -396,6 +725,11 @@ public class MCache<K, V> implements Cache<K, V> {
         if (isClosed) throw new IllegalStateException("Cache " + name + " is closed");
         int size = entryStore.size();
         entryStore.clear();
+        if (offHeapStore != null) offHeapStore.clear();
+        if (weigher != null) addWeight(-weight.get());
+        accessBuffer.clear();
+        if (timerWheel != null) timerWheel.clear();
+        if (evictionPolicy != null) evictionPolicy.clear();
         if (statsEnabled) stats.countBulkRemoval(size);
     }
 
@@ -404,6 +738,11 @@ public class MCache<K, V> implements Cache<K, V> {
         if (isClosed) throw new IllegalStateException("Cache " + name + " is closed");
         // don't track removals or do anything else, removeAll does that
         entryStore.clear();
+        if (offHeapStore != null) offHeapStore.clear();
+        if (weigher != null) addWeight(-weight.get());
+        accessBuffer.clear();
+        if (timerWheel != null) timerWheel.clear();
+        if (evictionPolicy != null) evictionPolicy.clear();
     }
 
     @Override
@@ -441,7 +780,13 @@ public class MCache<K, V> implements Cache<K, V> {
     public void close() {
         if (isClosed) throw new IllegalStateException("Cache " + name + " is already closed");
         isClosed = true;
+        if (expireTask != null) expireTask.cancel();
         entryStore.clear();
+        if (offHeapStore != null) offHeapStore.clear();
+        if (weigher != null) addWeight(-weight.get());
+        accessBuffer.clear();
+        if (timerWheel != null) timerWheel.clear();
+        if (evictionPolicy != null) evictionPolicy.clear();
     }
     @Override
     public boolean isClosed() { return isClosed; }
@@ -470,7 +815,7 @@ public class MCache<K, V> implements Cache<K, V> {
             this.mCache = mCache;
             entryList = new ArrayList<>(mCache.entryStore.values());
             maxIndex = entryList.size() - 1;
-            initialTime = System.currentTimeMillis();
+            initialTime = mCache.currentTimeMillis();
         }
 
         @Override
@@ -485,11 +830,11 @@ public class MCache<K, V> implements Cache<K, V> {
                 if (curEntry.isExpired) {
                     curEntry = null;
                 } else if (mCache.hasExpiry && curEntry.isExpired(initialTime, mCache.accessDuration, mCache.creationDuration, mCache.updateDuration)) {
-                    mCache.entryStore.remove(curEntry.getKey());
+                    mCache.removeKey(curEntry.getKey());
                     if (mCache.statsEnabled) mCache.stats.countExpire();
                     curEntry = null;
                 } else {
-                    if (mCache.statsEnabled)  { mCache.stats.gets++; mCache.stats.hits++; }
+                    if (mCache.statsEnabled) mCache.stats.countHit();
                     break;
                 }
             }
@@ -499,7 +844,7 @@ public class MCache<K, V> implements Cache<K, V> {
         @Override
         public void remove() {
             if (curEntry != null) {
-                mCache.entryStore.remove(curEntry.getKey());
+                mCache.removeKey(curEntry.getKey());
                 if (mCache.statsEnabled) mCache.stats.countRemoval();
                 curEntry = null;
             }
@@ -509,7 +854,7 @@ public class MCache<K, V> implements Cache<K, V> {
     /** Gets all entries, checking for expiry and counts a get for each */
     public ArrayList<Entry<K, V>> getEntryList() {
         if (isClosed) throw new IllegalStateException("Cache " + name + " is closed");
-        long currentTime = System.currentTimeMillis();
+        long currentTime = currentTimeMillis();
         ArrayList<K> keyList = new ArrayList<>(entryStore.keySet());
         int keyListSize = keyList.size();
         ArrayList<Entry<K, V>> entryList = new ArrayList<>(keyListSize);
@@ -518,80 +863,76 @@ public class MCache<K, V> implements Cache<K, V> {
             MEntry<K, V> entry = getCheckExpired(key, currentTime);
             if (entry != null) {
                 entryList.add(entry);
-                if (statsEnabled) { stats.gets++; stats.hits++; }
-                entry.accessCount++; if (currentTime > entry.lastAccessTime) entry.lastAccessTime = currentTime;
+                if (statsEnabled) stats.countHit();
+                if (accessDuration != null && currentTime > entry.lastAccessTime) entry.lastAccessTime = currentTime;
+                accessBuffer.record(entry);
             }
         }
         return entryList;
     }
+    /** Remove expired entries, done every second or so on the MCacheEvict thread so there is no need to call this.
+     * Only visits entries due to expire (see MTimerWheel), entries expiring within the last second may remain. */
     public int clearExpired() {
         if (isClosed) throw new IllegalStateException("Cache " + name + " is closed");
-        if (!hasExpiry) return 0;
-        long currentTime = System.currentTimeMillis();
-        ArrayList<K> keyList = new ArrayList<>(entryStore.keySet());
-        int keyListSize = keyList.size();
+        if (timerWheel == null) return 0;
+        return expireEntries(currentTimeMillis());
+    }
+    private int expireEntries(long currentTime) {
+        ArrayList<MEntry<K, V>> expiredList = new ArrayList<>();
+        timerWheel.advance(currentTime, expiredList);
         int expireCount = 0;
-        for (int i = 0; i < keyListSize; i++) {
-            K key = keyList.get(i);
-            MEntry<K, V> entry = entryStore.get(key);
-            if (entry != null && entry.isExpired(currentTime, accessDuration, creationDuration, updateDuration)) {
-                entryStore.remove(key);
-                if (statsEnabled) stats.countExpire();
-                expireCount++;
+        int expiredSize = expiredList.size();
+        for (int i = 0; i < expiredSize; i++) {
+            MEntry<K, V> entry = expiredList.get(i);
+            boolean[] expired = new boolean[1];
+            // check again, may have been read or updated since advance()
+            entryStore.computeIfPresent(entry.getKey(), (k, cur) -> {
+                if (cur != entry || !entry.isExpired(currentTime, accessDuration, creationDuration, updateDuration)) return cur;
+                expired[0] = true;
+                return null;
+            });
+            if (!expired[0]) {
+                // still in the cache and not expired, put back in the wheel
+                timerWheel.schedule(entry);
+                continue;
             }
+            if (weigher != null) addWeight(-entry.weight);
+            if (evictionPolicy != null) evictionPolicy.onRemove(entry);
+            if (statsEnabled) stats.countExpire();
+            expireCount++;
         }
         return expireCount;
     }
+    /** Used by MTimerWheel, the time the entry expires per the cache's expiry durations */
+    long getExpireTime(MEntry<K, V> entry) {
+        long expireTime = Long.MAX_VALUE;
+        if (accessMillis >= 0) expireTime = Math.min(expireTime, entry.lastAccessTime + accessMillis);
+        if (creationMillis >= 0) expireTime = Math.min(expireTime, entry.getCreatedTime() + creationMillis);
+        if (updateMillis >= 0) expireTime = Math.min(expireTime, entry.lastUpdatedTime + updateMillis);
+        return expireTime;
+    }
     public CacheStatisticsMXBean getStats() { return stats; }
     public MStats getMStats() { return stats; }
     public int size() { return entryStore.size(); }
+    public boolean isOffHeap() { return offHeapStore != null; }
+    /** Bytes allocated for off-heap storage, 0 if not off-heap */
+    public long getOffHeapAllocatedBytes() { return offHeapStore != null ? offHeapStore.getAllocatedBytes() : 0; }
+    /** Bytes written to off-heap storage including replaced and removed values not yet recycled */
+    public long getOffHeapUsedBytes() { return offHeapStore != null ? offHeapStore.getUsedBytes() : 0; }
+    public long getOffHeapMaxBytes() { return offHeapStore != null ? offHeapStore.getMaxBytes() : 0; }
 
     public Duration getAccessDuration() { return accessDuration; }
     public Duration getCreationDuration() { return creationDuration; }
     public Duration getUpdateDuration() { return updateDuration; }
 
-    private static class EvictRunnable<K, V> implements Runnable {
-        static AccessComparator comparator = new AccessComparator();
-        MCache cache;
-        int maxEntries;
-        EvictRunnable(MCache mc, int entries) { cache = mc; maxEntries = entries; }
-        @Override
-        @SuppressWarnings("unchecked")
-        public void run() {
-            if (maxEntries == 0) return;
-            int entriesToEvict = cache.entryStore.size() - maxEntries;
-            if (entriesToEvict <= 0) return;
-
-            long startTime = System.currentTimeMillis();
-
-            Collection<MEntry> entrySet = (Collection<MEntry>) cache.entryStore.values();
-            PriorityQueue<MEntry> priorityQueue = new PriorityQueue<>(entrySet.size(), comparator);
-            priorityQueue.addAll(entrySet);
-
-            int entriesEvicted = 0;
-            while (entriesToEvict > 0 && priorityQueue.size() > 0) {
-                MEntry curEntry = priorityQueue.poll();
-                // if an entry was expired after pulling the initial value set
-                if (curEntry.isExpired) continue;
-                cache.entryStore.remove(curEntry.getKey());
-                cache.stats.evictions++;
-                entriesEvicted++;
-                entriesToEvict--;
-            }
-            long timeElapsed = System.currentTimeMillis() - startTime;
-            logger.info("Evicted " + entriesEvicted + " entries in " + timeElapsed + "ms from cache " + cache.name);
-        }
-    }
-    private static class AccessComparator implements Comparator<MEntry> {
-        @Override
-        public int compare(MEntry e1, MEntry e2) {
-            if (e1.accessCount == e2.accessCount) {
-                if (e1.lastAccessTime == e2.lastAccessTime) return 0;
-                else return e1.lastAccessTime > e2.lastAccessTime ? 1 : -1;
-            } else {
-                return e1.accessCount > e2.accessCount ? 1 : -1;
-            }
-        }
+    /** Evict least valuable entries per the eviction policy until at least entriesToEvict entries and weightToEvict
+     * weight are evicted, used for the MCacheManager max total weight. Does nothing without max entries or a weigher. */
+    void evict(int entriesToEvict, long weightToEvict) {
+        MEvictionPolicy<K, V> ep = evictionPolicy;
+        if (ep == null || (entriesToEvict <= 0 && weightToEvict <= 0)) return;
+        long startTime = System.currentTimeMillis();
+        int entriesEvicted = ep.evict(entriesToEvict, weightToEvict);
+        logger.info("Evicted " + entriesEvicted + " entries in " + (System.currentTimeMillis() - startTime) + "ms from cache " + name);
     }
 
 }
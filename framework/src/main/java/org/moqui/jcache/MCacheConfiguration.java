@@ -15,6 +15,7 @@ package org.moqui.jcache;
 
 import javax.cache.configuration.CompleteConfiguration;
 import javax.cache.configuration.MutableConfiguration;
+import java.util.function.LongSupplier;
 
 @SuppressWarnings("unused")
 public class MCacheConfiguration<K, V> extends MutableConfiguration<K, V> {
@@ -28,8 +29,16 @@ public class MCacheConfiguration<K, V> extends MutableConfiguration<K, V> {
 
     int maxEntries = 0;
     long maxCheckSeconds = 30;
+    long offHeapMaxBytes = 0;
+    MValueCodec<V> offHeapCodec = null;
+    long maxWeight = 0;
+    MWeigher<K, V> weigher = null;
+    boolean loadHistogram = false;
+    double refreshAhead = 0;
+    LongSupplier timeSource = null;
 
-    /** Set maximum number of entries in the cache, 0 means no limit (default). Limit is enforced in a scheduled worker, not on put operations. */
+    /** Set maximum number of entries in the cache, 0 means no limit (default). Limit is enforced on put operations
+     * with a W-TinyLFU eviction policy (see MEvictionPolicy). */
     public MCacheConfiguration<K, V> setMaxEntries(int elements) {
         maxEntries = elements;
         return this;
@@ -38,7 +47,7 @@ public class MCacheConfiguration<K, V> extends MutableConfiguration<K, V> {
         return maxEntries;
     }
 
-    /** Set maximum number of entries in the cache, 0 means no limit (default). */
+    /** No longer used, max entries and max weight are enforced on put instead of in a scheduled check. */
     public MCacheConfiguration<K, V> setMaxCheckSeconds(long seconds) {
         maxCheckSeconds = seconds;
         return this;
@@ -47,4 +56,65 @@ public class MCacheConfiguration<K, V> extends MutableConfiguration<K, V> {
     public long getMaxCheckSeconds() {
         return maxCheckSeconds;
     }
+
+    /** Store values serialized off-heap in direct ByteBuffer segments using up to maxBytes, values are decoded on
+     * each get so the cache returns copies. If codec is null uses Java serialization. 0 maxBytes means on-heap (default). */
+    public MCacheConfiguration<K, V> setOffHeap(long maxBytes, MValueCodec<V> codec) {
+        offHeapMaxBytes = maxBytes;
+        offHeapCodec = codec;
+        return this;
+    }
+    public long getOffHeapMaxBytes() {
+        return offHeapMaxBytes;
+    }
+
+    /** Set the weigher used to track cache weight, needed for a max weight or to count toward the MCacheManager max total weight */
+    public MCacheConfiguration<K, V> setWeigher(MWeigher<K, V> weigher) {
+        this.weigher = weigher;
+        return this;
+    }
+    public MWeigher<K, V> getWeigher() {
+        return weigher;
+    }
+    /** Set maximum total weight of entries as calculated by the weigher, 0 means no limit (default). Like max entries
+     * enforced on put operations. */
+    public MCacheConfiguration<K, V> setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
+        return this;
+    }
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /** Track time to load values on a miss in a histogram (see MStats.getLoadHistogram()), measured from a miss to a
+     * put of the same key by the same thread or recorded with MCache.recordLoadTime(). Requires statistics enabled. */
+    public MCacheConfiguration<K, V> setLoadHistogram(boolean loadHistogram) {
+        this.loadHistogram = loadHistogram;
+        return this;
+    }
+    public boolean isLoadHistogram() {
+        return loadHistogram;
+    }
+
+    /** Refresh entries in the background when read within this fraction (0 to 1) of the creation or update expiry
+     * time to live, the old value is returned until the refresh is done. Requires a loader set with
+     * MCache.setRefreshLoader(), otherwise entries expire as usual. 0 means no refresh ahead (default). */
+    public MCacheConfiguration<K, V> setRefreshAhead(double fraction) {
+        if (fraction < 0 || fraction >= 1) throw new IllegalArgumentException("Refresh ahead fraction must be from 0 to less than 1");
+        refreshAhead = fraction;
+        return this;
+    }
+    public double getRefreshAhead() {
+        return refreshAhead;
+    }
+
+    /** Set the source of the current time in milliseconds used for entry times and expiry, mainly to control time in
+     * tests. Null means System.currentTimeMillis() (default). */
+    public MCacheConfiguration<K, V> setTimeSource(LongSupplier timeSource) {
+        this.timeSource = timeSource;
+        return this;
+    }
+    public LongSupplier getTimeSource() {
+        return timeSource;
+    }
 }
@@ -22,9 +22,12 @@ import javax.cache.configuration.Configuration;
 import javax.cache.spi.CachingProvider;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /** This class does not completely support the javax.cache.CacheManager spec, it is just enough to use as a factory for MCache instances. */
 public class MCacheManager implements CacheManager {
@@ -38,6 +41,9 @@ public class MCacheManager implements CacheManager {
     private Properties props = new Properties();
     private Map<String, MCache> cacheMap = new LinkedHashMap<>();
     private boolean isClosed = false;
+    private final AtomicLong totalWeight = new AtomicLong(0);
+    private long maxTotalWeight = 0;
+    private final AtomicBoolean totalEvictPending = new AtomicBoolean(false);
 
     private MCacheManager() {
         try { cmUri = new URI("MCacheManager"); }
@@ -106,6 +112,41 @@ public class MCacheManager implements CacheManager {
     public void enableStatistics(String cacheName, boolean enabled) {
         throw new UnsupportedOperationException("MCacheManager does not support registered statistics; use the MCache.getStats() or getMStats() methods"); }
 
+    /** Total weight of all caches with a MWeigher */
+    public long getTotalWeight() { return totalWeight.get(); }
+    public long getMaxTotalWeight() { return maxTotalWeight; }
+    /** Set the maximum total weight of all caches with a MWeigher, 0 for no limit (default). When over the limit
+     * entries are evicted from each cache with a weigher in proportion to its weight. */
+    public void setMaxTotalWeight(long maxTotalWeight) { this.maxTotalWeight = maxTotalWeight; }
+
+    void addTotalWeight(long delta) {
+        long newTotal = totalWeight.addAndGet(delta);
+        if (delta > 0 && maxTotalWeight > 0 && newTotal > maxTotalWeight && totalEvictPending.compareAndSet(false, true))
+            MCache.workerPool.execute(this::evictTotalWeight);
+    }
+    private void evictTotalWeight() {
+        totalEvictPending.set(false);
+        long weightToEvict = totalWeight.get() - maxTotalWeight;
+        if (maxTotalWeight == 0 || weightToEvict <= 0) return;
+
+        ArrayList<MCache> weighedCaches = new ArrayList<>();
+        long cachesWeight = 0;
+        synchronized (this) {
+            for (MCache cache : cacheMap.values()) {
+                long cacheWeight = cache.getWeight();
+                if (cacheWeight <= 0) continue;
+                weighedCaches.add(cache);
+                cachesWeight += cacheWeight;
+            }
+        }
+        if (cachesWeight == 0) return;
+        for (MCache cache : weighedCaches) {
+            // round up so the total ends up under the limit
+            long cacheShare = (weightToEvict * cache.getWeight() + cachesWeight - 1) / cachesWeight;
+            cache.evict(0, cacheShare);
+        }
+    }
+
     @Override
     public void close() {
         cacheMap.clear();
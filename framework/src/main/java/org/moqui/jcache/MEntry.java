@@ -23,9 +23,20 @@ public class MEntry<K, V> implements Cache.Entry<K, V> {
     V value;
     private long createdTime = 0;
     long lastUpdatedTime = 0;
+    /** only updated on get for caches with access (idle) expiry */
     long lastAccessTime = 0;
+    /** approximate, only updated by the thread draining the cache's MAccessBuffer */
     long accessCount = 0;
     boolean isExpired = false;
+    /** for off-heap storage the location of the serialized value, value is null unless too large to store off-heap */
+    MOffHeapStore.OffHeapRef offHeapRef = null;
+    /** from the cache's MWeigher, 0 if none */
+    int weight = 0;
+    /** for MEvictionPolicy, only used under its lock */
+    MEntry policyPrev = null, policyNext = null;
+    byte policyQueue = 0;
+    /** for MTimerWheel, only used under its lock, null if not in the wheel */
+    MEntry timerPrev = null, timerNext = null;
 
     /**
      * Use this only to create MEntry to compare with an existing entry
@@ -52,7 +63,10 @@ public class MEntry<K, V> implements Cache.Entry<K, V> {
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public V getValue() {
+        MOffHeapStore.OffHeapRef ref = offHeapRef;
+        if (ref != null) return (V) ref.read();
         return value;
     }
 
@@ -64,17 +78,20 @@ public class MEntry<K, V> implements Cache.Entry<K, V> {
 
     boolean valueEquals(V otherValue) {
         if (otherValue == null) {
-            return value == null;
+            return getValue() == null;
         } else {
-            return otherValue.equals(value);
+            return otherValue.equals(getValue());
         }
     }
 
-    void setValue(V val, long updateTime) {
+    boolean setValue(V val, long updateTime) {
         synchronized (key) {
             if (updateTime > lastUpdatedTime) {
                 value = val;
                 lastUpdatedTime = updateTime;
+                return true;
+            } else {
+                return false;
             }
         }
     }
@@ -91,9 +108,49 @@ public class MEntry<K, V> implements Cache.Entry<K, V> {
         }
     }
 
+    /** Set an off-heap value, ref may be null with the value on the heap if too large to store off-heap */
+    boolean setOffHeapValue(MOffHeapStore.OffHeapRef ref, V val, long updateTime) {
+        synchronized (key) {
+            if (updateTime > lastUpdatedTime) {
+                offHeapRef = ref;
+                value = ref != null ? null : val;
+                lastUpdatedTime = updateTime;
+                return true;
+            } else {
+                return false;
+            }
+        }
+    }
+
+    boolean setOffHeapValueIfEquals(V oldVal, MOffHeapStore.OffHeapRef ref, V val, long updateTime) {
+        synchronized (key) {
+            if (updateTime > lastUpdatedTime && valueEquals(oldVal)) {
+                offHeapRef = ref;
+                value = ref != null ? null : val;
+                lastUpdatedTime = updateTime;
+                return true;
+            } else {
+                return false;
+            }
+        }
+    }
+
+    /** When a segment is recycled and the value copied forward, false if the value was replaced in the mean time */
+    boolean moveOffHeapRef(MOffHeapStore.OffHeapRef oldRef, MOffHeapStore.OffHeapRef newRef) {
+        synchronized (key) {
+            if (offHeapRef != oldRef) return false;
+            offHeapRef = newRef;
+            return true;
+        }
+    }
+
     public long getCreatedTime() {
         return createdTime;
     }
+    /** For refresh ahead, a refreshed value starts a new time to live */
+    void resetCreatedTime(long time) {
+        createdTime = time;
+    }
 
     public long getLastUpdatedTime() {
         return lastUpdatedTime;
@@ -103,15 +160,11 @@ public class MEntry<K, V> implements Cache.Entry<K, V> {
         return lastAccessTime;
     }
 
+    /** Approximate count of reads, some reads are not recorded and recent reads may not be counted yet */
     public long getAccessCount() {
         return accessCount;
     }
 
-    /* done directly on fields for performance reasons
-    void countAccess(long accessTime) {
-        accessCount++; if (accessTime > lastAccessTime) lastAccessTime = accessTime;
-    }
-    */
     @SuppressWarnings("unused")
     public boolean isExpired(ExpiryPolicy policy) {
         return isExpired(System.currentTimeMillis(), policy.getExpiryForAccess(), policy.getExpiryForCreation(),
@@ -152,17 +205,19 @@ public class MEntry<K, V> implements Cache.Entry<K, V> {
 
     @Override
     public int hashCode() {
-        return value.hashCode();
+        V curValue = getValue();
+        return curValue != null ? curValue.hashCode() : 0;
     }
 
     @Override
     public boolean equals(Object obj) {
         if (obj == null || thisClass != obj.getClass()) return false;
         MEntry that = (MEntry) obj;
-        if (value == null) {
-            return that.value == null;
+        V curValue = getValue();
+        if (curValue == null) {
+            return that.getValue() == null;
         } else {
-            return value.equals(that.value);
+            return curValue.equals(that.getValue());
         }
     }
 }
@@ -0,0 +1,276 @@
+/*
+ * This software is in the public domain under CC0 1.0 Universal plus a
+ * Grant of Patent License.
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication
+ * along with this software (see the LICENSE.md file). If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package org.moqui.jcache;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/** W-TinyLFU eviction for MCache with max entries or a weigher, enforced on put.
+ *
+ * New entries go in a small LRU window (1% of capacity), entries leaving the window go to the probation segment of a
+ * segmented LRU main region, and entries read while in probation move to the protected segment (80% of main). When
+ * over the limit the candidates from the window are compared with victims from the head of probation by frequency
+ * in a MFrequencySketch and the less frequently used is evicted, so a scan of one-time keys can't push out popular
+ * entries. Each eviction is O(1).
+ *
+ * Updates are done under a lock that is only taken on put, remove, and eviction. Reads are recorded in the cache's
+ * MAccessBuffer, which uses the same lock and drains to onRead() to record frequency and LRU order, so reads never
+ * wait on the lock and some reads are not recorded. */
+final class MEvictionPolicy<K, V> {
+    static final byte none = 0, window = 1, probation = 2, protectedSeg = 3;
+
+    /** Intrusive doubly linked list of entries using MEntry.policyPrev/policyNext */
+    static final class AccessQueue {
+        MEntry head = null, tail = null;
+        int size = 0;
+        void addLast(MEntry entry) {
+            entry.policyPrev = tail;
+            entry.policyNext = null;
+            if (tail == null) head = entry; else tail.policyNext = entry;
+            tail = entry;
+            size++;
+        }
+        void unlink(MEntry entry) {
+            MEntry prev = entry.policyPrev, next = entry.policyNext;
+            if (prev == null) head = next; else prev.policyNext = next;
+            if (next == null) tail = prev; else next.policyPrev = prev;
+            entry.policyPrev = null;
+            entry.policyNext = null;
+            size--;
+        }
+        void moveToLast(MEntry entry) {
+            if (tail == entry) return;
+            unlink(entry);
+            addLast(entry);
+        }
+    }
+
+    private final MCache<K, V> cache;
+    private final MAccessBuffer<K, V> accessBuffer;
+    private final ReentrantLock lock;
+    private final MFrequencySketch sketch;
+    private final AccessQueue windowQueue = new AccessQueue(), probationQueue = new AccessQueue(), protectedQueue = new AccessQueue();
+    volatile int maxEntries;
+
+    MEvictionPolicy(MCache<K, V> cache, MAccessBuffer<K, V> accessBuffer, int maxEntries) {
+        this.cache = cache;
+        this.accessBuffer = accessBuffer;
+        this.lock = accessBuffer.lock;
+        this.maxEntries = maxEntries;
+        // with only a weight limit size the sketch for a medium size cache
+        sketch = new MFrequencySketch(maxEntries > 0 ? maxEntries : 4096);
+        lock.lock();
+        try {
+            accessBuffer.drain();
+            accessBuffer.policy = this;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Called by MAccessBuffer with the lock held for each recorded read */
+    void onRead(MEntry<K, V> entry) {
+        sketch.increment(entry.getKey());
+        onAccess(entry);
+    }
+
+    /** Called after a new entry is put in the cache, evicts if over the limit */
+    void onAdd(MEntry<K, V> entry) {
+        lock.lock();
+        try {
+            accessBuffer.drain();
+            sketch.increment(entry.getKey());
+            // removed or replaced in the mean time
+            if (entry.policyQueue == none && cache.isCurrentEntry(entry)) {
+                entry.policyQueue = window;
+                windowQueue.addLast(entry);
+            }
+            evictIfNeeded();
+        } finally {
+            lock.unlock();
+        }
+    }
+    /** Called after a value is replaced, the weight may be more */
+    void onUpdate(MEntry<K, V> entry) {
+        lock.lock();
+        try {
+            accessBuffer.drain();
+            sketch.increment(entry.getKey());
+            onAccess(entry);
+            evictIfNeeded();
+        } finally {
+            lock.unlock();
+        }
+    }
+    /** Evict if over the limit, for when the max entries is changed */
+    void checkLimit() {
+        lock.lock();
+        try {
+            evictIfNeeded();
+        } finally {
+            lock.unlock();
+        }
+    }
+    /** Called after an entry is removed from the cache */
+    void onRemove(MEntry<K, V> entry) {
+        lock.lock();
+        try {
+            unlink(entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+    void clear() {
+        lock.lock();
+        try {
+            clearQueue(windowQueue);
+            clearQueue(probationQueue);
+            clearQueue(protectedQueue);
+        } finally {
+            lock.unlock();
+        }
+    }
+    /** Stop recording reads and unlink all entries, for when the limit is removed */
+    void close() {
+        lock.lock();
+        try {
+            accessBuffer.drain();
+            accessBuffer.policy = null;
+            clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+    private static void clearQueue(AccessQueue queue) {
+        MEntry entry = queue.head;
+        while (entry != null) {
+            MEntry next = entry.policyNext;
+            entry.policyPrev = null;
+            entry.policyNext = null;
+            entry.policyQueue = none;
+            entry = next;
+        }
+        queue.head = null;
+        queue.tail = null;
+        queue.size = 0;
+    }
+
+    /** Evict at least the given entries and weight, least valuable first (probation, protected, then window) */
+    int evict(int entriesToEvict, long weightToEvict) {
+        lock.lock();
+        try {
+            accessBuffer.drain();
+            int evicted = 0;
+            while (entriesToEvict > 0 || weightToEvict > 0) {
+                MEntry<K, V> victim = firstVictim();
+                if (victim == null) break;
+                entriesToEvict--;
+                weightToEvict -= victim.weight;
+                evictEntry(victim);
+                evicted++;
+            }
+            return evicted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onAccess(MEntry<K, V> entry) {
+        switch (entry.policyQueue) {
+            case window: windowQueue.moveToLast(entry); break;
+            case probation:
+                probationQueue.unlink(entry);
+                entry.policyQueue = protectedSeg;
+                protectedQueue.addLast(entry);
+                // protected full, least recently used goes back to probation
+                int protectedMax = protectedMax();
+                while (protectedQueue.size > protectedMax) {
+                    MEntry demote = protectedQueue.head;
+                    protectedQueue.unlink(demote);
+                    demote.policyQueue = probation;
+                    probationQueue.addLast(demote);
+                }
+                break;
+            case protectedSeg: protectedQueue.moveToLast(entry); break;
+            // not linked: removed, or read before onAdd()
+            default: break;
+        }
+    }
+
+    private int capacity() {
+        int max = maxEntries;
+        return max > 0 ? max : Math.max(100, cache.size());
+    }
+    private int windowMax() { return Math.max(1, capacity() / 100); }
+    private int protectedMax() { return (int) ((capacity() - windowMax()) * 0.8); }
+    private boolean isOverLimit() {
+        int max = maxEntries;
+        if (max > 0 && cache.size() > max) return true;
+        long maxWeight = cache.getMaxWeight();
+        return maxWeight > 0 && cache.getWeight() > maxWeight;
+    }
+
+    private void evictIfNeeded() {
+        // entries leaving the window are candidates for the main region, at the tail of probation
+        int windowMax = windowMax();
+        int candidates = 0;
+        while (windowQueue.size > windowMax) {
+            MEntry entry = windowQueue.head;
+            windowQueue.unlink(entry);
+            entry.policyQueue = probation;
+            probationQueue.addLast(entry);
+            candidates++;
+        }
+        MEntry candidate = candidates > 0 ? probationQueue.tail : null;
+
+        while (isOverLimit()) {
+            MEntry victim = probationQueue.head;
+            if (candidates == 0 || candidate == null || victim == null || victim == candidate) {
+                // nothing to compare, evict the least valuable
+                MEntry lru = firstVictim();
+                if (lru == null) break;
+                if (lru == candidate) { candidate = candidate.policyPrev; candidates--; }
+                evictEntry(lru);
+                continue;
+            }
+            if (sketch.frequency(candidate.getKey()) > sketch.frequency(victim.getKey())) {
+                evictEntry(victim);
+                candidate = candidate.policyPrev;
+            } else {
+                MEntry prevCandidate = candidate.policyPrev;
+                evictEntry(candidate);
+                candidate = prevCandidate;
+            }
+            candidates--;
+        }
+    }
+    private MEntry firstVictim() {
+        if (probationQueue.head != null) return probationQueue.head;
+        if (protectedQueue.head != null) return protectedQueue.head;
+        return windowQueue.head;
+    }
+    @SuppressWarnings("unchecked")
+    private void evictEntry(MEntry victim) {
+        unlink(victim);
+        cache.evictEntry((MEntry<K, V>) victim);
+    }
+    private void unlink(MEntry entry) {
+        switch (entry.policyQueue) {
+            case window: windowQueue.unlink(entry); break;
+            case probation: probationQueue.unlink(entry); break;
+            case protectedSeg: protectedQueue.unlink(entry); break;
+            default: return;
+        }
+        entry.policyQueue = none;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * This software is in the public domain under CC0 1.0 Universal plus a
+ * Grant of Patent License.
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication
+ * along with this software (see the LICENSE.md file). If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package org.moqui.jcache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** Latency histogram with power of 2 microsecond buckets (1us to about 2 hours) and LongAdder counts so recording is
+ * cheap and contention free. Percentiles are the upper bound of the bucket so are within a factor of 2. */
+public class MHistogram {
+    private static final int bucketCount = 34;
+    private final LongAdder[] buckets = new LongAdder[bucketCount];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    public MHistogram() {
+        for (int i = 0; i < bucketCount; i++) buckets[i] = new LongAdder();
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        long micros = nanos / 1000;
+        // bucket i has values less than 2^i micros
+        int bucket = Math.min(bucketCount - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets[bucket].increment();
+        count.increment();
+        totalNanos.add(nanos);
+    }
+
+    public long getCount() { return count.sum(); }
+    public double getAverageMillis() {
+        long curCount = count.sum();
+        return curCount == 0 ? 0 : totalNanos.sum() / (curCount * 1000000.0);
+    }
+    /** Upper bound in milliseconds of the bucket with the given percentile (0 to 100) */
+    public double getPercentileMillis(double percentile) {
+        long[] counts = new long[bucketCount];
+        long total = 0;
+        for (int i = 0; i < bucketCount; i++) { counts[i] = buckets[i].sum(); total += counts[i]; }
+        if (total == 0) return 0;
+        long target = (long) Math.ceil(total * percentile / 100.0);
+        long cumulative = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            cumulative += counts[i];
+            if (cumulative >= target) return (1L << i) / 1000.0;
+        }
+        return (1L << (bucketCount - 1)) / 1000.0;
+    }
+    public void clear() {
+        for (int i = 0; i < bucketCount; i++) buckets[i].reset();
+        count.reset();
+        totalNanos.reset();
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * This software is in the public domain under CC0 1.0 Universal plus a
+ * Grant of Patent License.
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication
+ * along with this software (see the LICENSE.md file). If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package org.moqui.jcache;
+
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/** Off-heap value storage for MCache. Values are serialized with a MValueCodec and appended to fixed size direct
+ * ByteBuffer segments; when all segments are full the oldest is recycled, evicting the entries still in it except
+ * those read since written which are copied forward (second chance) up to half a segment. Replaced and removed values
+ * leave garbage in their segment until it is recycled, so the bytes used never exceed the max bytes.
+ *
+ * Reads do not lock: each segment has a generation incremented when recycled, checked before and after copying the
+ * bytes, and if changed the value is gone and read returns null (a cache miss). */
+class MOffHeapStore<K, V> {
+    static final int maxSegmentSize = 1 << 20;
+    static final int minSegmentSize = 1 << 16;
+
+    static final class Segment {
+        final ByteBuffer buffer;
+        volatile int generation = 0;
+        int position = 0;
+        ArrayList<MEntry> entries = new ArrayList<>();
+        Segment(int size) { buffer = ByteBuffer.allocateDirect(size); }
+    }
+    /** Location of a value, immutable so entries can be read without locking */
+    static final class OffHeapRef {
+        final MOffHeapStore store;
+        final Segment segment;
+        final int generation, offset, length;
+        /** entry access count when written, if more when the segment is recycled the entry gets a second chance */
+        final long accessCount;
+        OffHeapRef(MOffHeapStore store, Segment segment, int offset, int length, long accessCount) {
+            this.store = store; this.segment = segment; this.generation = segment.generation;
+            this.offset = offset; this.length = length; this.accessCount = accessCount;
+        }
+        Object read() { return store.read(this); }
+    }
+
+    private final MCache<K, V> cache;
+    private final MValueCodec<V> codec;
+    private final int segmentSize;
+    private final Segment[] segments;
+    private int currentIndex = 0;
+
+    MOffHeapStore(MCache<K, V> cache, MValueCodec<V> codec, long maxBytes) {
+        this.cache = cache;
+        this.codec = codec;
+        // at least 4 segments so recycling one doesn't drop too much of the cache
+        long size = Math.min(maxSegmentSize, Math.max(minSegmentSize, maxBytes / 4));
+        segmentSize = (int) size;
+        segments = new Segment[(int) Math.max(2L, maxBytes / size)];
+    }
+
+    byte[] encode(V value) { return codec.encode(value); }
+
+    /** Write encoded value bytes for the entry, returns null if too large for a segment (keep on heap instead) */
+    synchronized OffHeapRef write(MEntry<K, V> entry, byte[] bytes) {
+        int length = bytes.length;
+        if (length > segmentSize) return null;
+        Segment segment = segments[currentIndex];
+        if (segment == null) {
+            segment = new Segment(segmentSize);
+            segments[currentIndex] = segment;
+        } else if (segment.position + length > segmentSize) {
+            currentIndex = (currentIndex + 1) % segments.length;
+            segment = segments[currentIndex];
+            if (segment == null) {
+                segment = new Segment(segmentSize);
+                segments[currentIndex] = segment;
+            } else {
+                recycle(segment);
+                // promoted entries may fill the recycled segment so there is no room, at most half so just start over
+                if (segment.position + length > segmentSize) return write(entry, bytes);
+            }
+        }
+        return append(segment, entry, bytes, entry.accessCount);
+    }
+    private OffHeapRef append(Segment segment, MEntry<K, V> entry, byte[] bytes, long accessCount) {
+        int offset = segment.position;
+        segment.buffer.put(offset, bytes, 0, bytes.length);
+        segment.position = offset + bytes.length;
+        segment.entries.add(entry);
+        return new OffHeapRef(this, segment, offset, bytes.length, accessCount);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void recycle(Segment segment) {
+        ArrayList<MEntry> oldEntries = segment.entries;
+        int oldSize = oldEntries.size();
+        int promoteLimit = segmentSize / 2, promoteBytes = 0;
+        ArrayList<MEntry> promoteEntries = new ArrayList<>();
+        ArrayList<byte[]> promoteValues = new ArrayList<>();
+        for (int i = 0; i < oldSize; i++) {
+            MEntry<K, V> entry = (MEntry<K, V>) oldEntries.get(i);
+            OffHeapRef ref = entry.offHeapRef;
+            // value replaced or already in another segment
+            if (ref == null || ref.segment != segment || ref.generation != segment.generation) continue;
+            if (entry.accessCount > ref.accessCount && promoteBytes + ref.length <= promoteLimit && cache.isCurrentEntry(entry)) {
+                byte[] bytes = new byte[ref.length];
+                segment.buffer.get(ref.offset, bytes, 0, ref.length);
+                promoteEntries.add(entry);
+                promoteValues.add(bytes);
+                promoteBytes += ref.length;
+            } else {
+                cache.evictEntry(entry);
+            }
+        }
+
+        // invalidate all refs to this segment before writing over it
+        segment.generation++;
+        VarHandle.storeStoreFence();
+        segment.position = 0;
+        segment.entries = new ArrayList<>();
+
+        int promoteSize = promoteEntries.size();
+        for (int i = 0; i < promoteSize; i++) {
+            MEntry<K, V> entry = (MEntry<K, V>) promoteEntries.get(i);
+            OffHeapRef oldRef = entry.offHeapRef;
+            OffHeapRef newRef = append(segment, entry, promoteValues.get(i), entry.accessCount);
+            if (!entry.moveOffHeapRef(oldRef, newRef)) cache.evictEntry(entry);
+        }
+    }
+
+    /** Read and decode, returns null if the segment has been recycled since the value was written */
+    @SuppressWarnings("unchecked")
+    V read(OffHeapRef ref) {
+        Segment segment = ref.segment;
+        if (segment.generation != ref.generation) return null;
+        byte[] bytes = new byte[ref.length];
+        segment.buffer.get(ref.offset, bytes, 0, ref.length);
+        // make sure the bytes were read before checking the generation again
+        VarHandle.acquireFence();
+        if (segment.generation != ref.generation) return null;
+        return codec.decode(bytes);
+    }
+
+    /** Invalidate all values, for cache clear */
+    synchronized void clear() {
+        for (int i = 0; i < segments.length; i++) {
+            Segment segment = segments[i];
+            if (segment == null) continue;
+            segment.generation++;
+            segment.position = 0;
+            segment.entries = new ArrayList<>();
+        }
+        VarHandle.storeStoreFence();
+        currentIndex = 0;
+    }
+
+    /** Bytes allocated in direct buffers */
+    synchronized long getAllocatedBytes() {
+        long allocated = 0;
+        for (int i = 0; i < segments.length; i++) if (segments[i] != null) allocated += segmentSize;
+        return allocated;
+    }
+    /** Bytes written including garbage from replaced and removed values not yet recycled */
+    synchronized long getUsedBytes() {
+        long used = 0;
+        for (int i = 0; i < segments.length; i++) if (segments[i] != null) used += segments[i].position;
+        return used;
+    }
+    long getMaxBytes() { return (long) segmentSize * segments.length; }
+}
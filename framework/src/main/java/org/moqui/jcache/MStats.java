@@ -14,68 +14,75 @@
 package org.moqui.jcache;
 
 import javax.cache.management.CacheStatisticsMXBean;
+import java.util.concurrent.atomic.LongAdder;
 
+/** Cache statistics with LongAdder counters so concurrent updates are not lost and don't contend on hot caches.
+ * Gets are hits plus misses. If the cache is configured with a load histogram (MCacheConfiguration.setLoadHistogram())
+ * also has the time to load values on a miss. */
 public class MStats implements CacheStatisticsMXBean {
-    long hits = 0;
-    long misses = 0;
-    long gets = 0;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
 
-    long puts = 0;
-    private long removals = 0;
-    long evictions = 0;
-    private long expires = 0;
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder removals = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expires = new LongAdder();
+
+    private MHistogram loadHistogram = null;
 
     // long totalGetMicros = 0, totalPutMicros = 0, totalRemoveMicros = 0;
 
     @Override
     public void clear() {
-        hits = 0;
-        misses = 0;
-        gets = 0;
-        puts = 0;
-        removals = 0;
-        evictions = 0;
-        expires = 0;
+        hits.reset();
+        misses.reset();
+        puts.reset();
+        removals.reset();
+        evictions.reset();
+        expires.reset();
+        if (loadHistogram != null) loadHistogram.clear();
     }
 
     @Override
     public long getCacheHits() {
-        return hits;
+        return hits.sum();
     }
 
     @Override
     public float getCacheHitPercentage() {
-        return (hits / gets) * 100;
+        long hitCount = hits.sum(), gets = hitCount + misses.sum();
+        return gets == 0 ? 0 : (hitCount * 100f) / gets;
     }
 
     @Override
     public long getCacheMisses() {
-        return misses;
+        return misses.sum();
     }
 
     @Override
     public float getCacheMissPercentage() {
-        return (misses / gets) * 100;
+        long missCount = misses.sum(), gets = hits.sum() + missCount;
+        return gets == 0 ? 0 : (missCount * 100f) / gets;
     }
 
     @Override
     public long getCacheGets() {
-        return gets;
+        return hits.sum() + misses.sum();
     }
 
     @Override
     public long getCachePuts() {
-        return puts;
+        return puts.sum();
     }
 
     @Override
     public long getCacheRemovals() {
-        return removals;
+        return removals.sum();
     }
 
     @Override
     public long getCacheEvictions() {
-        return evictions;
+        return evictions.sum();
     }
 
     @Override
@@ -94,33 +101,39 @@ public class MStats implements CacheStatisticsMXBean {
     } // totalRemoveMicros / removals
 
     public long getCacheExpires() {
-        return expires;
+        return expires.sum();
+    }
+
+    /** Histogram of time to load a value after a miss, null if not enabled for the cache */
+    public MHistogram getLoadHistogram() {
+        return loadHistogram;
+    }
+    void enableLoadHistogram() {
+        if (loadHistogram == null) loadHistogram = new MHistogram();
     }
 
-    /* have callers access fields directly for performance reasons:
     void countHit() {
-        gets++; hits++;
-        // totalGetMicros += micros;
+        hits.increment();
     }
     void countMiss() {
-        gets++; misses++;
-        // totalGetMicros += micros;
+        misses.increment();
     }
     void countPut() {
-        puts++;
-        // totalPutMicros += micros;
+        puts.increment();
+    }
+    void countEviction() {
+        evictions.increment();
     }
-    */
     void countRemoval() {
-        removals++;
+        removals.increment();
         // totalRemoveMicros += micros;
     }
 
     void countBulkRemoval(long entries) {
-        removals += entries;
+        removals.add(entries);
     }
 
     void countExpire() {
-        expires++;
+        expires.increment();
     }
 }
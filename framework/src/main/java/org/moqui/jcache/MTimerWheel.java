@@ -0,0 +1,158 @@
+/*
+ * This software is in the public domain under CC0 1.0 Universal plus a
+ * Grant of Patent License.
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication
+ * along with this software (see the LICENSE.md file). If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package org.moqui.jcache;
+
+import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** Hierarchical timer wheel for MCache expiry, so expired entries are removed without scanning the cache.
+ *
+ * Entries are in a bucket by expire time: the first level has 64 buckets of about a second (1024ms), the next levels
+ * 64 buckets of about a minute, an hour, and 3 days, and entries beyond that are in an overflow bucket. On each
+ * advance() only the buckets for the time passed are visited, expired entries are returned and others are put in a
+ * bucket in a lower level (or the same bucket if the expire time moved out because of a read or update). Scheduling
+ * and removing are O(1).
+ *
+ * Access, update, and created times change without rescheduling, they only move the expire time later so the entry
+ * is checked again when its bucket comes up. Uses its own lock and calls nothing that locks while holding it. */
+final class MTimerWheel<K, V> {
+    private static final int[] buckets = { 64, 64, 64, 64, 1 };
+    /** Bucket spans as powers of 2 in milliseconds: ~1s, ~65s, ~70m, ~3.1d, and overflow */
+    private static final int[] shifts = { 10, 16, 22, 28, 34 };
+    /** Time between calls to advance(), the span of a first level bucket */
+    static final long tickMillis = 1L << shifts[0];
+
+    private final MCache<K, V> cache;
+    private final ReentrantLock lock = new ReentrantLock();
+    /** Sentinel entry for each bucket, the head of an intrusive circular list using MEntry.timerPrev/timerNext */
+    private final MEntry[][] wheel;
+    private long currentTime;
+
+    MTimerWheel(MCache<K, V> cache, long currentTime) {
+        this.cache = cache;
+        this.currentTime = currentTime;
+        wheel = new MEntry[buckets.length][];
+        for (int i = 0; i < buckets.length; i++) {
+            wheel[i] = new MEntry[buckets[i]];
+            for (int j = 0; j < buckets[i]; j++) {
+                MEntry sentinel = new MEntry<>(null, null);
+                sentinel.timerPrev = sentinel;
+                sentinel.timerNext = sentinel;
+                wheel[i][j] = sentinel;
+            }
+        }
+    }
+
+    /** Called after a new entry is put in the cache */
+    void schedule(MEntry<K, V> entry) {
+        lock.lock();
+        try {
+            // removed or replaced in the mean time
+            if (entry.timerNext != null || !cache.isCurrentEntry(entry)) return;
+            link(entry, cache.getExpireTime(entry));
+        } finally {
+            lock.unlock();
+        }
+    }
+    /** Called after an entry is removed from the cache */
+    void remove(MEntry<K, V> entry) {
+        lock.lock();
+        try {
+            if (entry.timerNext != null) unlink(entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+    void clear() {
+        lock.lock();
+        try {
+            for (MEntry[] level : wheel) for (MEntry sentinel : level) {
+                MEntry entry = sentinel.timerNext;
+                while (entry != sentinel) {
+                    MEntry next = entry.timerNext;
+                    entry.timerPrev = null;
+                    entry.timerNext = null;
+                    entry = next;
+                }
+                sentinel.timerPrev = sentinel;
+                sentinel.timerNext = sentinel;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Move the wheel to the time, adding expired entries still in the cache to the list and unlinking them */
+    @SuppressWarnings("unchecked")
+    void advance(long time, ArrayList<MEntry<K, V>> expiredList) {
+        lock.lock();
+        try {
+            long previousTime = currentTime;
+            if (time <= previousTime) return;
+            currentTime = time;
+            for (int i = 0; i < shifts.length; i++) {
+                long previousTicks = previousTime >>> shifts[i];
+                long ticks = (time >>> shifts[i]) - previousTicks;
+                // if no bucket boundary passed at this level none passed at higher levels either
+                if (ticks <= 0) break;
+                int mask = buckets[i] - 1;
+                int steps = (int) Math.min(ticks + 1, buckets[i]);
+                int start = (int) (previousTicks & mask);
+                for (int j = 0; j < steps; j++) {
+                    MEntry sentinel = wheel[i][(start + j) & mask];
+                    MEntry entry = sentinel.timerNext;
+                    sentinel.timerPrev = sentinel;
+                    sentinel.timerNext = sentinel;
+                    while (entry != sentinel) {
+                        MEntry next = entry.timerNext;
+                        entry.timerPrev = null;
+                        entry.timerNext = null;
+                        if (cache.isCurrentEntry(entry)) {
+                            long expireTime = cache.getExpireTime(entry);
+                            if (expireTime < time) expiredList.add(entry);
+                            else link(entry, expireTime);
+                        }
+                        entry = next;
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void link(MEntry entry, long expireTime) {
+        // already expired goes in the current bucket, visited on the next advance
+        long time = Math.max(expireTime, currentTime);
+        long delta = time - currentTime;
+        MEntry sentinel = wheel[buckets.length - 1][0];
+        for (int i = 0; i < shifts.length - 1; i++) {
+            if (delta < (1L << shifts[i + 1])) {
+                sentinel = wheel[i][(int) ((time >>> shifts[i]) & (buckets[i] - 1))];
+                break;
+            }
+        }
+        MEntry last = sentinel.timerPrev;
+        entry.timerPrev = last;
+        entry.timerNext = sentinel;
+        last.timerNext = entry;
+        sentinel.timerPrev = entry;
+    }
+    private static void unlink(MEntry entry) {
+        entry.timerPrev.timerNext = entry.timerNext;
+        entry.timerNext.timerPrev = entry.timerPrev;
+        entry.timerPrev = null;
+        entry.timerNext = null;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * This software is in the public domain under CC0 1.0 Universal plus a
+ * Grant of Patent License.
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication
+ * along with this software (see the LICENSE.md file). If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package org.moqui.jcache;
+
+import javax.cache.CacheException;
+import java.io.*;
+
+/** Serializes values for MCache off-heap storage (see MCacheConfiguration.setOffHeap()). Called on every put and get
+ * so should be compact and fast; errors should be thrown as CacheException. */
+public interface MValueCodec<V> {
+    byte[] encode(V value);
+    V decode(byte[] bytes);
+
+    /** Default codec using Java serialization, values must be Serializable */
+    class SerializableCodec<V> implements MValueCodec<V> {
+        @Override
+        public byte[] encode(V value) {
+            try {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+                ObjectOutputStream oos = new ObjectOutputStream(baos);
+                oos.writeObject(value);
+                oos.close();
+                return baos.toByteArray();
+            } catch (IOException e) {
+                throw new CacheException("Error serializing cache value of type " + (value != null ? value.getClass().getName() : "null"), e);
+            }
+        }
+        @Override
+        @SuppressWarnings("unchecked")
+        public V decode(byte[] bytes) {
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                return (V) ois.readObject();
+            } catch (IOException | ClassNotFoundException e) {
+                throw new CacheException("Error deserializing cache value", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+/*
+ * This software is in the public domain under CC0 1.0 Universal plus a
+ * Grant of Patent License.
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication
+ * along with this software (see the LICENSE.md file). If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package org.moqui.jcache;
+
+/** Estimates the memory used by a cache entry, for MCacheConfiguration.setMaxWeight() and the MCacheManager total
+ * weight limit. Called on every put so should be fast, an estimate in bytes is the intended unit but any consistent
+ * measure works if all caches with a weight limit use the same. */
+public interface MWeigher<K, V> {
+    int weigh(K key, V value);
+}
@@ -174,6 +174,13 @@ public class LiteStringMap<V> implements Map<String, V>, Externalizable, Compara
         return valueArray[index];
     }
 
+    /** Like getByIString(key, index) but if the key is not at that index (like a map for a different entity) looks
+     * for the key instead of throwing an exception. For this method the String key must be non-null and interned. */
+    public V getByIStringHint(String key, int index) {
+        if (index >= 0 && index < keyArray.length && keyArray[index] == key) return valueArray[index];
+        return getByIString(key);
+    }
+
     /* ========= Start Mutate Methods ========= */
 
     @Override
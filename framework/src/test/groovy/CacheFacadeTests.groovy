@@ -15,9 +15,30 @@
 
 import org.moqui.Moqui
 import org.moqui.context.ExecutionContext
+import org.moqui.entity.EntityCondition
+import org.moqui.entity.EntityValue
+import org.moqui.impl.context.ExecutionContextFactoryImpl
+import org.moqui.impl.entity.EntityCacheSnapshot
+import org.moqui.impl.entity.EntityCacheValueCodec
+import org.moqui.impl.entity.EntityCacheWeigher
+import org.moqui.impl.entity.EntityFacadeImpl
+import org.moqui.impl.entity.EntityValueBase
 import org.moqui.jcache.MCache
+import org.moqui.jcache.MCacheConfiguration
 import spock.lang.*
 
+import javax.cache.Cache
+import javax.cache.expiry.AccessedExpiryPolicy
+import javax.cache.expiry.CreatedExpiryPolicy
+import javax.cache.expiry.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.function.Function
+import java.util.function.LongSupplier
+
 class CacheFacadeTests extends Specification {
     @Shared
     ExecutionContext ec
@@ -96,5 +117,223 @@ class CacheFacadeTests extends Specification {
         }
     }
 
-    // TODO: test cache expire time
+    def "off-heap cache decodes copies and evicts oldest when full"() {
+        when:
+        MCacheConfiguration conf = new MCacheConfiguration()
+        conf.setOffHeap(256 * 1024, new EntityCacheValueCodec((ExecutionContextFactoryImpl) ec.factory))
+        MCache offHeapCache = new MCache("CacheFacadeOffHeapTests", null, conf)
+        EntityValue testValue = ec.entity.makeValue("moqui.test.TestEntity")
+                .setAll([testId:"OFFHEAP1", testMedium:"Off-heap test", testNumberInteger:42L])
+        offHeapCache.put("value", testValue)
+        EntityValue cachedValue = (EntityValue) offHeapCache.get("value")
+        for (int i = 0; i < 20000; i++) offHeapCache.put("key" + i, "value" + i + " for off-heap test")
+
+        then:
+        cachedValue.getMap() == testValue.getMap()
+        !cachedValue.is(testValue)
+        !((EntityValueBase) cachedValue).isMutable()
+        offHeapCache.get("key19999") == "value19999 for off-heap test"
+        offHeapCache.size() < 20000
+        offHeapCache.getMStats().getCacheEvictions() > 0
+        offHeapCache.getOffHeapAllocatedBytes() <= offHeapCache.getOffHeapMaxBytes()
+
+        cleanup:
+        offHeapCache.close()
+    }
+
+    def "max weight evicts by estimated size"() {
+        when:
+        MCacheConfiguration conf = new MCacheConfiguration()
+        conf.setWeigher(new EntityCacheWeigher()).setMaxWeight(100000)
+        MCache weightCache = new MCache("CacheFacadeWeightTests", null, conf)
+        weightCache.put("list", ec.entity.find("moqui.basic.Enumeration").condition("enumTypeId", "GeoType").list())
+        long listWeight = weightCache.getWeight()
+        weightCache.put("small", "small value")
+        long smallWeight = weightCache.getWeight() - listWeight
+        for (int i = 0; i < 2000; i++) weightCache.put("key" + i, "value " + i + " for max weight test")
+
+        then:
+        listWeight > smallWeight * 10
+        weightCache.getWeight() <= 100000
+        weightCache.size() < 2002
+        weightCache.getMStats().getCacheEvictions() > 0
+
+        cleanup:
+        weightCache.close()
+    }
+
+    def "max entries enforced on put keeps frequently used entries over a scan"() {
+        when:
+        MCacheConfiguration conf = new MCacheConfiguration()
+        conf.setMaxEntries(100)
+        MCache boundedCache = new MCache("CacheFacadeBoundedTests", null, conf)
+        for (int i = 0; i < 50; i++) boundedCache.put("hot" + i, "hot value " + i)
+        int maxSize = 0
+        for (int i = 0; i < 5000; i++) {
+            for (int j = 0; j < 50; j += 10) boundedCache.get("hot" + ((i + j) % 50))
+            boundedCache.put("scan" + i, "scan value " + i)
+            maxSize = Math.max(maxSize, boundedCache.size())
+        }
+        int hotCount = 0
+        for (int i = 0; i < 50; i++) if (boundedCache.containsKey("hot" + i)) hotCount++
+
+        then:
+        maxSize <= 100
+        hotCount > 45
+        boundedCache.getMStats().getCacheEvictions() > 0
+
+        cleanup:
+        boundedCache.close()
+    }
+
+    def "concurrent gets count every hit and load histogram records miss to put"() {
+        when:
+        MCacheConfiguration conf = new MCacheConfiguration()
+        conf.setStatisticsEnabled(true)
+        conf.setLoadHistogram(true)
+        MCache statsCache = new MCache("CacheFacadeStatsTests", null, conf)
+        statsCache.put("key1", "value1")
+        List<Thread> threads = (1..4).collect { Thread.start { for (int i = 0; i < 10000; i++) statsCache.get("key1") } }
+        threads.each { it.join() }
+
+        statsCache.get("key2")
+        Thread.sleep(2)
+        statsCache.put("key2", "value2")
+
+        then:
+        statsCache.getMStats().getCacheHits() == 40000
+        statsCache.getMStats().getCacheMisses() == 1
+        statsCache.getMStats().getLoadHistogram().getCount() == 1
+        statsCache.getMStats().getLoadHistogram().getPercentileMillis(50) >= 1
+
+        cleanup:
+        statsCache.close()
+    }
+
+    def "getOrLoad calls loader once for concurrent misses"() {
+        when:
+        MCache loadCache = new MCache("CacheFacadeLoadTests", null, new MCacheConfiguration())
+        AtomicInteger loadCount = new AtomicInteger()
+        CountDownLatch startLatch = new CountDownLatch(1)
+        List<Object> results = Collections.synchronizedList(new ArrayList<Object>())
+        List<Thread> threads = (1..8).collect { Thread.start {
+            startLatch.await()
+            results.add(loadCache.getOrLoad("key1", { key -> loadCount.incrementAndGet(); Thread.sleep(100); return "value1" }))
+        } }
+        startLatch.countDown()
+        threads.each { it.join() }
+
+        then:
+        loadCount.get() == 1
+        results.size() == 8
+        results.every { it == "value1" }
+        loadCache.get("key1") == "value1"
+
+        cleanup:
+        loadCache.close()
+    }
+
+    def "refresh ahead serves current value and reloads before expiry"() {
+        when:
+        AtomicLong currentTime = new AtomicLong(1000000L)
+        MCacheConfiguration conf = new MCacheConfiguration()
+        conf.setExpiryPolicyFactory(CreatedExpiryPolicy.factoryOf(new Duration(TimeUnit.MILLISECONDS, 400)))
+        conf.setRefreshAhead(0.5).setTimeSource({ -> currentTime.get() } as LongSupplier)
+        MCache refreshCache = new MCache("CacheFacadeRefreshTests", null, conf)
+        AtomicInteger loadCount = new AtomicInteger()
+        // queue refreshes and run them below instead of on the worker thread
+        List<Runnable> refreshTasks = Collections.synchronizedList(new ArrayList<Runnable>())
+        refreshCache.setRefreshLoader({ key -> "value" + loadCount.incrementAndGet() } as Function,
+                { Runnable task -> refreshTasks.add(task) } as Executor)
+        refreshCache.put("key1", "value0")
+        currentTime.addAndGet(100)
+        Object earlyValue = refreshCache.get("key1")
+        int earlyRefreshCount = refreshTasks.size()
+        // past the refresh ahead point of half the time to live
+        currentTime.addAndGet(150)
+        Object staleValue = refreshCache.get("key1")
+        for (Runnable task in new ArrayList<Runnable>(refreshTasks)) task.run()
+        // past the original time to live but refreshed so not expired
+        currentTime.addAndGet(250)
+        Object refreshedValue = refreshCache.get("key1")
+
+        then:
+        refreshCache.isRefreshAhead()
+        earlyValue == "value0"
+        earlyRefreshCount == 0
+        staleValue == "value0"
+        loadCount.get() >= 1
+        refreshedValue == "value1"
+
+        cleanup:
+        refreshCache.close()
+    }
+
+    def "idle entries expire without reads"() {
+        when:
+        AtomicLong currentTime = new AtomicLong(1000000L)
+        MCacheConfiguration conf = new MCacheConfiguration()
+        conf.setExpiryPolicyFactory(AccessedExpiryPolicy.factoryOf(new Duration(TimeUnit.MILLISECONDS, 1500)))
+        conf.setTimeSource({ -> currentTime.get() } as LongSupplier)
+        MCache idleCache = new MCache("CacheFacadeIdleTests", null, conf)
+        for (int i = 0; i < 1000; i++) idleCache.put("key" + i, "value" + i)
+        // advance the clock and the timer wheel, only key0 is read
+        int sizeBeforeIdle = 0
+        for (int i = 1; i <= 50; i++) {
+            currentTime.addAndGet(100)
+            idleCache.get("key0")
+            idleCache.clearExpired()
+            if (i == 14) sizeBeforeIdle = idleCache.size()
+        }
+
+        then:
+        sizeBeforeIdle == 1000
+        idleCache.size() == 1
+        idleCache.getMStats().getCacheExpires() == 999
+        idleCache.get("key0") == "value0"
+
+        cleanup:
+        idleCache.close()
+    }
+
+    def "entity cache snapshot restores entries not changed since saved"() {
+        when:
+        ec.artifactExecution.disableAuthz()
+        EntityFacadeImpl efi = (EntityFacadeImpl) ec.entity
+        File tempFile = File.createTempFile("EntityCacheSnapshotTest", ".bin")
+        EntityCacheSnapshot snapshot = new EntityCacheSnapshot(efi) {
+            @Override File getSnapshotFile() { return tempFile }
+            @Override ArrayList<String> getWarmEntityNames(String attrName, String defaultValue) { return ["moqui.test.TestEntity"] as ArrayList<String> }
+        }
+        Cache<EntityCondition, EntityValueBase> oneCache = efi.getEntityDefinition("moqui.test.TestEntity").getCacheOne(efi.getEntityCache())
+        Closure<EntityValueBase> findCached = { oneCache.find({ Cache.Entry<EntityCondition, EntityValueBase> entry -> entry.value?.get("testId") == "SNAPTST1" })?.value }
+
+        ec.entity.makeValue("moqui.test.TestEntity").setAll([testId:"SNAPTST1", testMedium:"Snapshot value"]).create()
+        ec.entity.find("moqui.test.TestEntity").condition("testId", "SNAPTST1").useCache(true).one()
+        int savedCount = snapshot.save()
+        // restore into an empty cache
+        oneCache.clear()
+        int restoredCount = snapshot.restore()
+        EntityValueBase restoredValue = findCached()
+
+        // change the record after the snapshot, the old entry must not be restored
+        ec.entity.makeValue("moqui.test.TestEntity").setAll([testId:"SNAPTST1", testMedium:"Changed value"]).update()
+        oneCache.clear()
+        int changedRestoredCount = snapshot.restore()
+        EntityValueBase changedValue = findCached()
+        EntityValue currentValue = ec.entity.find("moqui.test.TestEntity").condition("testId", "SNAPTST1").useCache(true).one()
+
+        then:
+        savedCount > 0
+        restoredCount == savedCount
+        restoredValue.get("testMedium") == "Snapshot value"
+        changedRestoredCount == 0
+        changedValue == null
+        currentValue.testMedium == "Changed value"
+
+        cleanup:
+        ec.entity.find("moqui.test.TestEntity").condition("testId", "SNAPTST1").deleteAll()
+        ec.artifactExecution.enableAuthz()
+        tempFile.delete()
+    }
 }
@@ -15,6 +15,10 @@
 
 import org.moqui.entity.EntityException
 import org.moqui.entity.EntityList
+import org.moqui.impl.entity.EntityDbMeta
+import org.moqui.impl.entity.EntityDefinition
+import org.moqui.impl.entity.EntityFacadeImpl
+import org.moqui.impl.entity.EntitySequenceBank
 import spock.lang.*
 
 import org.moqui.context.ExecutionContext
@@ -22,6 +26,7 @@ import org.moqui.entity.EntityValue
 import org.moqui.Moqui
 
 import java.sql.Timestamp
+import java.util.concurrent.RejectedExecutionException
 
 class EntityCrud extends Specification {
     @Shared
@@ -97,6 +102,142 @@ class EntityCrud extends Specification {
         immutableError != null
     }
 
+    def "createBulk TestEntity with different fields"() {
+        when:
+        long beforeCount = ec.entity.find("moqui.test.TestEntity").count()
+        // cache a miss for the first record to make sure the bulk create clears it
+        EntityValue beforeCreate = ec.entity.find("moqui.test.TestEntity").condition("testId", "CRDBULK0").useCache(true).one()
+        int recordCount = 25
+
+        List<EntityValue> createList = new ArrayList<>(recordCount)
+        for (int i = 0; i < recordCount; i++) {
+            EntityValue newValue = ec.entity.makeValue("moqui.test.TestEntity")
+            newValue.setAll([testId:"CRDBULK" + i, testMedium:"Bulk Name ${i}"])
+            // every 10th record has an extra field so goes in a different batch
+            if (i % 10 == 0) newValue.testNumberInteger = i
+            createList.add(newValue)
+        }
+        ec.entity.createBulk(createList)
+
+        long afterCount = ec.entity.find("moqui.test.TestEntity").count()
+        EntityValue firstCreated = ec.entity.find("moqui.test.TestEntity").condition("testId", "CRDBULK0").useCache(true).one()
+        EntityValue lastCreated = ec.entity.find("moqui.test.TestEntity").condition("testId", "CRDBULK24").one()
+        ec.entity.find("moqui.test.TestEntity").condition("testId", "like", "CRDBULK%").deleteAll()
+
+        then:
+        beforeCreate == null
+        afterCount == beforeCount + recordCount
+        firstCreated.testNumberInteger == 0
+        lastCreated.testMedium == "Bulk Name 24"
+        lastCreated.testNumberInteger == null
+        lastCreated.lastUpdatedStamp != null
+    }
+
+    def "createBulk records audit log for each value"() {
+        when:
+        List<EntityValue> createList = new ArrayList<>()
+        for (int i = 0; i < 12; i++)
+            createList.add(ec.entity.makeValue("moqui.service.message.SystemMessage").setAll([systemMessageId:"CRDAUD" + i, statusId:"SmsgProduced"]))
+        ec.entity.createBulk(createList)
+
+        EntityList auditList = ec.entity.find("moqui.entity.EntityAuditLog")
+                .condition("changedEntityName", "moqui.service.message.SystemMessage")
+                .condition("pkPrimaryValue", "like", "CRDAUD%").list()
+        ec.entity.find("moqui.entity.EntityAuditLog").condition("changedEntityName", "moqui.service.message.SystemMessage")
+                .condition("pkPrimaryValue", "like", "CRDAUD%").deleteAll()
+        ec.entity.find("moqui.service.message.SystemMessage").condition("systemMessageId", "like", "CRDAUD%").deleteAll()
+
+        then:
+        auditList.size() == 12
+        auditList.every { it.changedFieldName == "statusId" && it.newValueText == "SmsgProduced" && it.oldValueText == null }
+        auditList*.auditHistorySeqId.unique().size() == 12
+    }
+
+    def "sequencedIdPrimary unique across threads"() {
+        when:
+        Set<String> seqIds = Collections.synchronizedSet(new HashSet<String>())
+        int threadCount = 8, idsPerThread = 200
+        List<Thread> threads = []
+        for (int t = 0; t < threadCount; t++) threads.add(Thread.start {
+            try {
+                // small bank so ranges are used up and prefetched many times
+                for (int i = 0; i < idsPerThread; i++) seqIds.add(ec.factory.entity.sequencedIdPrimary("CrudTestSeqBank", null, 10L))
+            } finally {
+                ec.factory.destroyActiveExecutionContext()
+            }
+        })
+        for (Thread thread in threads) thread.join()
+
+        then:
+        seqIds.size() == threadCount * idsPerThread
+    }
+
+    def "sequence bank gets ranges when prefetch is rejected"() {
+        when:
+        EntitySequenceBank bank = new EntitySequenceBank((EntityFacadeImpl) ec.entity, "CrudTestSeqReject") {
+            @Override protected void submitPrefetch(EntitySequenceBank.Range cur, long bankSize) {
+                throw new RejectedExecutionException("test worker pool full")
+            }
+        }
+        Set<Long> seqNums = new HashSet<>()
+        for (int i = 0; i < 50; i++) seqNums.add(bank.nextSeqNum(0L, 10L))
+
+        then:
+        seqNums.size() == 50
+        !bank.prefetchRunning.get()
+    }
+
+    def "create TestNativeSeq with native sequence IDs"() {
+        when:
+        List<String> seqIds = []
+        for (int i = 0; i < 25; i++) {
+            EntityValue newValue = ec.entity.makeValue("moqui.test.TestNativeSeq").set("testMedium", "Native ${i}")
+            newValue.setSequencedIdPrimary().create()
+            seqIds.add((String) newValue.testId)
+        }
+        long createdCount = ec.entity.find("moqui.test.TestNativeSeq").condition("testId", "in", seqIds).count()
+        ec.entity.find("moqui.test.TestNativeSeq").condition("testId", "in", seqIds).deleteAll()
+        EntityValue svi = ec.entity.find("moqui.entity.SequenceValueItem").condition("seqName", "moqui.test.TestNativeSeq").one()
+
+        then:
+        new HashSet<String>(seqIds).size() == 25
+        createdCount == 25
+        seqIds.every { (it as long) >= 100000L }
+        svi == null
+    }
+
+    def "native sequence IDs not below minimum after temp set bank"() {
+        when:
+        List<String> seqIds = []
+        // a fixed bank ahead of the sequence, when used up the next bank must start past it
+        ec.factory.entity.tempSetSequencedIdPrimary("moqui.test.TestNativeSeq", 100200L, 1L)
+        try {
+            for (int i = 0; i < 15; i++) seqIds.add(ec.factory.entity.sequencedIdPrimary("moqui.test.TestNativeSeq", null, null))
+        } finally {
+            ec.factory.entity.tempResetSequencedIdPrimary("moqui.test.TestNativeSeq")
+        }
+
+        then:
+        new HashSet<String>(seqIds).size() == 15
+        seqIds.every { (it as long) >= 100200L }
+        seqIds.subList(2, 15).every { (it as long) > 100201L }
+    }
+
+    def "native sequence increment and start from existing IDs"() {
+        when:
+        EntityFacadeImpl efi = (EntityFacadeImpl) ec.entity
+        EntityDefinition ed = efi.getEntityDefinition("moqui.test.TestNativeSeq")
+        EntityDbMeta dbMeta = efi.getEntityDbMeta()
+        ec.entity.makeValue("moqui.test.TestNativeSeq").setAll([testId:"NSQ999999", testMedium:"Existing ID"]).create()
+        long sequenceStart = dbMeta.getSequenceStart(ed)
+        ec.entity.find("moqui.test.TestNativeSeq").condition("testId", "NSQ999999").deleteAll()
+
+        then:
+        dbMeta.checkSequence(ed) == 10L
+        dbMeta.getSequenceIncrement(ed) == 10L
+        sequenceStart == 1000000L
+    }
+
     def "delete TestEntity CRDTST1"() {
         when:
         ec.entity.find("moqui.test.TestEntity").condition([testId:"CRDTST1"]).one().delete()
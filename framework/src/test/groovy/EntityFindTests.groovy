@@ -22,7 +22,15 @@ import org.moqui.entity.EntityValue
 import org.moqui.Moqui
 import java.sql.Timestamp
 import org.moqui.entity.EntityCondition
+import org.moqui.entity.EntityFind
 import org.moqui.entity.EntityList
+import org.moqui.impl.context.ExecutionContextImpl
+import org.moqui.impl.entity.EntityCache
+import org.moqui.impl.entity.EntityCloneRouter
+import org.moqui.impl.entity.EntityConditionIndex
+import org.moqui.impl.entity.EntityFacadeImpl
+import org.moqui.impl.entity.EntityFindBase
+import org.moqui.impl.entity.EntityValueBase
 
 class EntityFindTests extends Specification {
     protected final static Logger logger = LoggerFactory.getLogger(EntityFindTests.class)
@@ -116,6 +124,193 @@ class EntityFindTests extends Specification {
         [testNumberInteger:4321, testMedium_not: "Y", testMedium_op: "empty"] | "EXTST1"
     }
 
+    def "find with same shape and different values reuses SQL"() {
+        when:
+        EntityValue first = ec.entity.find("moqui.test.TestEntity").condition("testNumberInteger", 4321).useCache(false).one()
+        EntityValue second = ec.entity.find("moqui.test.TestEntity").condition("testNumberInteger", 1234).useCache(false).one()
+        EntityList inList = ec.entity.find("moqui.test.TestEntity").condition("testId", EntityCondition.IN, ["EXTST1", "EXTST2"])
+                .orderBy("testId").useCache(false).list()
+        EntityList inOtherList = ec.entity.find("moqui.test.TestEntity").condition("testId", EntityCondition.IN, ["EXTST0", "EXTST2"])
+                .orderBy("testId").useCache(false).list()
+        EntityList inLongerList = ec.entity.find("moqui.test.TestEntity").condition("testId", EntityCondition.IN, ["EXTST0", "EXTST1", "EXTST2"])
+                .orderBy("testId").useCache(false).list()
+        long nullCount = ec.entity.find("moqui.test.TestEntity").condition("testId", "EXTST1").condition("testIndicator", null).count()
+        long notNullCount = ec.entity.find("moqui.test.TestEntity").condition("testId", "EXTST1").condition("testIndicator", "Y").count()
+
+        // IN lists of 3 and 4 values are padded to the same size so have the same SQL
+        EntityFind inThreeFind = ec.entity.find("moqui.test.TestEntity").condition("testId", EntityCondition.IN, ["EXTST0", "EXTST1", "EXTST2"])
+        EntityList inThreeList = inThreeFind.useCache(false).list()
+        EntityFind inFourFind = ec.entity.find("moqui.test.TestEntity").condition("testId", EntityCondition.IN, ["EXTST0", "EXTST2", "EXTST3", "EXTST1"])
+        EntityList inFourList = inFourFind.useCache(false).list()
+        long notInCount = ec.entity.find("moqui.test.TestEntity").condition("testId", "EXTST1")
+                .condition("testId", EntityCondition.NOT_IN, ["EXTST0", "EXTST2", "EXTST3"]).useCache(false).count()
+
+        then:
+        first != null
+        first.testId == "EXTST1"
+        second == null
+        inList.size() == 1
+        inOtherList.size() == 0
+        inLongerList.size() == 1
+        nullCount == 1
+        notNullCount == 0
+        inThreeList.size() == 1
+        inFourList.size() == 1
+        inThreeFind.getQueryTextList().last() == inFourFind.getQueryTextList().last()
+        notInCount == 1
+    }
+
+    def "seek pagination matches offset pagination"() {
+        when:
+        List<String> offsetIds = ec.entity.find("moqui.basic.Enumeration").condition("enumTypeId", "GeoType")
+                .orderBy("-enumId").useCache(false).list()*.enumId
+        List<String> seekIds = []
+        String seekToken = null
+        String firstToken = null
+        for (int pageIndex = 0; pageIndex < 20; pageIndex++) {
+            EntityFind ef = ec.entity.find("moqui.basic.Enumeration").condition("enumTypeId", "GeoType")
+                    .orderBy("-enumId").useCache(false).searchFormMap([pageSize:3, pageSeekToken:seekToken], null, null, null, false)
+            EntityList page = ef.list()
+            seekIds.addAll(page*.enumId)
+            seekToken = page.size() == 3 ? ef.makeSeekToken(page.get(2)) : null
+            if (firstToken == null) firstToken = seekToken
+            if (seekToken == null) break
+        }
+
+        // description is nullable, the seek condition would skip null values so no token and offset paging is used
+        EntityFindBase nullableEf = (EntityFindBase) ec.entity.find("moqui.basic.Enumeration").condition("enumTypeId", "GeoType")
+                .orderBy("-description").useCache(false).searchFormMap([pageSize:3, pageIndex:1, pageSeekToken:firstToken], null, null, null, false)
+        List<String> nullableOffsetIds = ec.entity.find("moqui.basic.Enumeration").condition("enumTypeId", "GeoType")
+                .orderBy("-description").useCache(false).offset(3).limit(3).list()*.enumId
+
+        then:
+        offsetIds.size() > 3
+        seekIds == offsetIds
+        !nullableEf.canSeekPaginate()
+        nullableEf.getSeekAfter() == null
+        nullableEf.makeSeekToken([enumId:"GEOT_COUNTRY", description:"Country"]) == null
+        nullableEf.list()*.enumId == nullableOffsetIds
+    }
+
+    def "clone router skips ejected and lagging clones"() {
+        when:
+        EntityCloneRouter router = new EntityCloneRouter((EntityFacadeImpl) ec.entity)
+        ArrayList<String> cloneNames = ["transactional#c1", "transactional#c2", "transactional#c3"] as ArrayList<String>
+        // c1 slow, c2 fast, c3 failing
+        for (int i = 0; i < 10; i++) {
+            router.recordQuery("transactional#c1", 50000000L, false)
+            router.recordQuery("transactional#c2", 1000000L, false)
+            router.recordQuery("transactional#c3", 1000000L, true)
+        }
+        Map<String, Integer> pickCounts = [:]
+        for (int i = 0; i < 1000; i++) {
+            String picked = router.chooseClone("transactional", cloneNames)
+            pickCounts.put(picked, (pickCounts.get(picked) ?: 0) + 1)
+        }
+        router.getStats("transactional#c2").lagSeconds = 120
+        String lagPick = router.chooseClone("transactional", ["transactional#c2", "transactional#c3"] as ArrayList<String>)
+        EntityList cloneList = ec.entity.find("moqui.basic.Enumeration").condition("enumTypeId", "GeoType").useClone(true).list()
+
+        then:
+        pickCounts.get("transactional#c3") == null
+        pickCounts.get("transactional#c2") > pickCounts.get("transactional#c1")
+        lagPick == "transactional"
+        cloneList.size() > 0
+    }
+
+    def "read-only context uses clone until a write"() {
+        when:
+        EntityFacadeImpl efi = (EntityFacadeImpl) ec.entity
+        efi.readOnlyUseClone = true
+        boolean beforeReadOnly = true, inReadOnly = false, forUpdate = true, afterWrite = true, autoCloneRead = true
+        int enumCount = 0
+        // run in a separate thread to get a new ExecutionContext with nothing written yet
+        Thread.start {
+            ExecutionContextImpl eci = efi.ecfi.getEci()
+            try {
+                eci.artifactExecutionFacade.disableAuthz()
+                beforeReadOnly = efi.useCloneForRead(false)
+                eci.pushReadOnly()
+                inReadOnly = efi.useCloneForRead(false)
+                forUpdate = efi.useCloneForRead(true)
+                // no clone configured for the group in tests, so finds still read from and cache the primary
+                autoCloneRead = ((EntityFindBase) eci.entity.find("moqui.basic.Enumeration")).isAutoCloneRead()
+                enumCount = eci.entity.find("moqui.basic.Enumeration").condition("enumTypeId", "GeoType").list().size()
+                eci.transactionFacade.runUseOrBegin(null, "Error in read-only test write", {
+                    eci.entity.makeValue("moqui.test.TestEntity").setAll([testId:"ROCLONE1"]).create()
+                    eci.entity.find("moqui.test.TestEntity").condition("testId", "ROCLONE1").deleteAll()
+                })
+                afterWrite = efi.useCloneForRead(false)
+                eci.popReadOnly()
+            } finally {
+                eci.destroy()
+            }
+        }.join()
+        efi.readOnlyUseClone = false
+
+        then:
+        !beforeReadOnly
+        inReadOnly
+        !forUpdate
+        !autoCloneRead
+        enumCount > 0
+        !afterWrite
+    }
+
+    def "fastFindMany by PK in input order"() {
+        when:
+        List<EntityValue> testList = ec.entity.fastFindMany("moqui.test.TestEntity", false, false,
+                ["EXTST1", "EXTST-NONE", null, "EXTST1"])
+        List<EntityValue> enumList = ec.entity.fastFindMany("moqui.basic.Enumeration", true, false,
+                ["DST_MAILING_SIGNUP", "DST_PURCHASED_DATA", [enumId:"DST_CUSTOMER_ENTRY"]])
+        // again to get all from the one cache
+        List<EntityValue> enumCachedList = ec.entity.fastFindMany("moqui.basic.Enumeration", true, false,
+                ["DST_PURCHASED_DATA", "DST_MAILING_SIGNUP"])
+
+        then:
+        testList.size() == 4
+        testList[0].testMedium == "Test Name"
+        testList[1] == null
+        testList[2] == null
+        testList[3].testId == "EXTST1"
+        enumList*.enumId == ["DST_MAILING_SIGNUP", "DST_PURCHASED_DATA", "DST_CUSTOMER_ENTRY"]
+        enumCachedList*.enumId == ["DST_PURCHASED_DATA", "DST_MAILING_SIGNUP"]
+    }
+
+    def "fastFindMany converts PK passed as String to the field type"() {
+        when:
+        ec.entity.makeValue("moqui.test.TestIntPk").setAll([intId:4567, testMedium:"Int PK"]).create()
+        List<EntityValue> intPkList = ec.entity.fastFindMany("moqui.test.TestIntPk", true, false, ["4567", 4567L, "4568"])
+        // from the one cache, must not be an empty record cached for the String PK
+        EntityValue cachedOne = ec.entity.find("moqui.test.TestIntPk").condition("intId", 4567).useCache(true).one()
+        ec.entity.find("moqui.test.TestIntPk").condition("intId", 4567).deleteAll()
+
+        then:
+        intPkList.size() == 3
+        intPkList[0]?.testMedium == "Int PK"
+        intPkList[1]?.testMedium == "Int PK"
+        intPkList[2] == null
+        cachedOne?.testMedium == "Int PK"
+    }
+
+    def "prefetchRelated serves findRelated from memory"() {
+        when:
+        EntityList enums = ec.entity.find("moqui.basic.Enumeration").condition("enumTypeId", "DataSourceType").list()
+        enums.prefetchRelated("type")
+        EntityList enumTypes = ec.entity.find("moqui.basic.EnumerationType").condition("enumTypeId", "DataSourceType").list()
+        enumTypes.prefetchRelated("moqui.basic.Enumeration")
+        EntityValue firstEnum = enums.get(0)
+        // changing a key field means the prefetched value is not used
+        firstEnum.enumTypeId = "NonExistingType"
+
+        then:
+        enums.size() >= 4
+        enums.get(1).findRelatedOne("type", null, false).description == "Data Source Type"
+        firstEnum.findRelatedOne("type", null, false) == null
+        enumTypes.get(0).findRelated("moqui.basic.Enumeration", null, ["enumId"], null, false).size() == enums.size()
+        enumTypes.get(0).findRelatedCount("moqui.basic.Enumeration", null) == enums.size()
+    }
+
     def "find EnumerationType related FK"() {
         when:
         EntityValue enumType = ec.entity.find("moqui.basic.EnumerationType").condition("enumTypeId", "DataSourceType").one()
@@ -175,6 +370,85 @@ class EntityFindTests extends Specification {
         testEntity2.testMedium == "Test Name 5"
     }
 
+    def "list cache condition index returns possible matches"() {
+        when:
+        EntityConditionIndex condIndex = new EntityConditionIndex()
+        EntityCondition byInteger = ec.entity.conditionFactory.makeCondition([testNumberInteger:4321])
+        EntityCondition byMediumAnd = ec.entity.conditionFactory.makeCondition([testMedium:"Test Name", testIndicator:"Y"])
+        EntityCondition byIn = ec.entity.conditionFactory.makeCondition("testMedium", EntityCondition.IN, ["Other", "Test Name"])
+        EntityCondition byLike = ec.entity.conditionFactory.makeCondition("testMedium", EntityCondition.LIKE, "Test%")
+        for (EntityCondition cond in [byInteger, byMediumAnd, byIn, byLike]) condIndex.add(cond)
+        List<EntityCondition> matchCands = condIndex.getCandidates([testId:"EXTST1", testMedium:"Test Name", testIndicator:"Y", testNumberInteger:4321L])
+        List<EntityCondition> otherCands = condIndex.getCandidates([testId:"EXTST2", testMedium:"Other Name", testNumberInteger:1234L])
+        condIndex.remove(byInteger)
+
+        then:
+        matchCands.size() == 4
+        otherCands == [byLike]
+        condIndex.size() == 4
+    }
+
+    def "compiled condition matchers on entity values"() {
+        when:
+        EntityValue testEntity = ec.entity.find("moqui.test.TestEntity").condition("testId", "EXTST1").one()
+        def cf = ec.entity.conditionFactory
+        EntityCondition andCond = cf.makeCondition([cf.makeCondition("testMedium", EntityCondition.LIKE, "test%"),
+                cf.makeCondition("testNumberInteger", EntityCondition.IN, [1234L, 4321L]),
+                cf.makeCondition("testIndicator", EntityCondition.IS_NULL, null)])
+        EntityCondition orCond = cf.makeCondition([cf.makeCondition("testNumberInteger", EntityCondition.GREATER_THAN, 5000),
+                cf.makeCondition("testMedium", EntityCondition.NOT_EQUAL, "Test Name")], EntityCondition.OR)
+        // String constant for an integer field compared as a number
+        EntityCondition stringNumCond = ec.entity.find("moqui.test.TestEntity").condition("testNumberInteger", "4321").getWhereEntityCondition()
+
+        then:
+        andCond.mapMatches(testEntity.getMap())
+        !orCond.mapMatches(testEntity.getMap())
+        stringNumCond.mapMatches(testEntity.getMap())
+    }
+
+    def "cache invalidate message encoding round trip"() {
+        when:
+        EntityValue testEntity = ec.entity.find("moqui.test.TestEntity").condition("testId", "EXTST1").one()
+        EntityCache.EntityCacheInvalidateBatch eci = new EntityCache.EntityCacheInvalidateBatch((EntityValueBase) testEntity, false, null)
+        eci.add((EntityValueBase) testEntity, true, null)
+        ByteArrayOutputStream baos = new ByteArrayOutputStream()
+        ObjectOutputStream oos = new ObjectOutputStream(baos)
+        oos.writeObject(eci)
+        oos.flush()
+        Object readMessage = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray())).readObject()
+        EntityCache.EntityCacheInvalidateBatch readEci = (EntityCache.EntityCacheInvalidateBatch) readMessage
+
+        then:
+        // not the single record message class so listeners written for it fail instead of clearing only one record
+        !(readMessage instanceof EntityCache.EntityCacheInvalidate)
+        readEci.size() == 2
+        !readEci.isCreateList[0]
+        readEci.isCreateList[1]
+        readEci.evbList[0].resolveEntityName() == "moqui.test.TestEntity"
+        readEci.evbList[0].getMap() == testEntity.getMap()
+        readEci.evbList[1].getMap() == testEntity.getMap()
+    }
+
+    def "one cache version check rejects value older than recorded change"() {
+        when:
+        EntityCache entityCache = ((EntityFacadeImpl) ec.entity).getEntityCache()
+        entityCache.versionCache = ec.cache.getCache("entity.record.version")
+        EntityValueBase cached = (EntityValueBase) ec.entity.find("moqui.test.TestEntity").condition("testId", "EXTST1").one()
+        boolean validBefore = entityCache.isVersionValid(cached.getEntityDefinition(), cached)
+        EntityValueBase changed = (EntityValueBase) cached.cloneValue()
+        changed.set("lastUpdatedStamp", new Timestamp(cached.getTimestamp("lastUpdatedStamp").getTime() + 1000))
+        entityCache.recordVersion(changed, false)
+        boolean validAfter = entityCache.isVersionValid(cached.getEntityDefinition(), cached)
+        boolean changedValid = entityCache.isVersionValid(changed.getEntityDefinition(), changed)
+        entityCache.versionCache.clear()
+        entityCache.versionCache = null
+
+        then:
+        validBefore
+        !validAfter
+        changedValid
+    }
+
     def "auto cache clear for list on update of record not included"() {
         // update the testMedium and make sure we get the new value
         when:
@@ -261,6 +535,29 @@ class EntityFindTests extends Specification {
         reset == before
     }
 
+    def "count cache clear only for matching conditions"() {
+        when:
+        EntityCondition matchCond = ec.entity.find("moqui.test.TestEntity").condition("testMedium", "Count Match").getWhereEntityCondition()
+        EntityCondition otherCond = ec.entity.find("moqui.test.TestEntity").condition("testMedium", "Count Other").getWhereEntityCondition()
+        long before = ec.entity.find("moqui.test.TestEntity").condition("testMedium", "Count Match").useCache(true).count()
+        ec.entity.find("moqui.test.TestEntity").condition("testMedium", "Count Other").useCache(true).count()
+        def countCache = ec.cache.getCache("entity.record.count.moqui.test.TestEntity")
+        boolean bothCached = countCache.containsKey(matchCond) && countCache.containsKey(otherCond)
+        ec.entity.makeValue("moqui.test.TestEntity").setAll([testId:"CNTTST1", testMedium:"Count Match"]).create()
+        boolean matchCleared = !countCache.containsKey(matchCond)
+        boolean otherKept = countCache.containsKey(otherCond)
+        long after = ec.entity.find("moqui.test.TestEntity").condition("testMedium", "Count Match").useCache(true).count()
+        ec.entity.find("moqui.test.TestEntity").condition("testId", "CNTTST1").one().delete()
+        long reset = ec.entity.find("moqui.test.TestEntity").condition("testMedium", "Count Match").useCache(true).count()
+
+        then:
+        bothCached
+        matchCleared
+        otherKept
+        before + 1 == after
+        reset == before
+    }
+
     def "no cache with for update"() {
         when:
         // do query on Geo which has cache=true, with for-update it should not use the cache
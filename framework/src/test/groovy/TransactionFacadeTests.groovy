@@ -17,6 +17,10 @@ import java.sql.Statement
 
 import org.moqui.Moqui
 import org.moqui.context.ExecutionContext
+import org.moqui.impl.context.TransactionCache
+import org.moqui.impl.entity.EntityJavaUtil.EntityWriteInfo
+import org.moqui.impl.entity.EntityJavaUtil.WriteMode
+import org.moqui.impl.entity.EntityValueBase
 
 import spock.lang.Shared
 import spock.lang.Specification
@@ -160,4 +164,83 @@ class TransactionFacadeTests extends Specification {
         rawCon1 == rawCon2
         rawCon1 == rawCon3
     }
+
+    def "test transaction cache flush in batches"() {
+        when:
+        boolean beganTransaction = false
+        try {
+            beganTransaction = ec.transaction.begin(null)
+            ec.transaction.initTransactionCache(false)
+            ec.artifactExecution.disableAuthz()
+            for (int i = 0; i < 10; i++)
+                ec.entity.makeValue("moqui.test.TestEntity").setAll([testId:"TXCBATCH" + i, testMedium:"Before " + i]).create()
+            for (int i = 0; i < 5; i++)
+                ec.entity.makeValue("moqui.test.TestEntity").setAll([testId:"TXCBATCH" + i, testMedium:"After " + i]).update()
+            ec.entity.makeValue("moqui.test.TestEntity").setAll([testId:"TXCBATCH9"]).delete()
+        } finally {
+            ec.artifactExecution.enableAuthz()
+            ec.transaction.commit(beganTransaction)
+        }
+
+        List<String> mediumList = ec.entity.find("moqui.test.TestEntity").condition("testId", "like", "TXCBATCH%")
+                .orderBy("testId").disableAuthz().list()*.testMedium
+        ec.entity.find("moqui.test.TestEntity").condition("testId", "like", "TXCBATCH%").disableAuthz().deleteAll()
+
+        then:
+        mediumList.size() == 9
+        mediumList[0] == "After 0"
+        mediumList[4] == "After 4"
+        mediumList[8] == "Before 8"
+    }
+
+    def "test transaction cache flush batches unrelated entities and keeps same entity order"() {
+        when:
+        List<Object[]> writes = [["C", "moqui.test.TestEntity", "A"], ["C", "moqui.basic.EnumerationType", "T"],
+                ["C", "moqui.test.TestEntity", "B"], ["C", "moqui.basic.Enumeration", "E"], ["C", "moqui.test.TestEntity", "C"],
+                ["U", "moqui.basic.EnumerationType", "T"], ["C", "moqui.basic.Enumeration", "E2"],
+                ["C", "moqui.test.TestEntity", "D"], ["D", "moqui.test.TestEntity", "X"], ["C", "moqui.test.TestEntity", "F"]]
+                .collect { it as Object[] }
+        ArrayList<EntityWriteInfo> writeInfoList = new ArrayList<>()
+        for (Object[] write in writes) {
+            EntityValueBase evb = (EntityValueBase) ec.entity.makeValue((String) write[1])
+            evb.set(evb.getEntityDefinition().getPkFieldNames().get(0), write[2])
+            WriteMode writeMode = write[0] == "C" ? WriteMode.CREATE : (write[0] == "U" ? WriteMode.UPDATE : WriteMode.DELETE)
+            writeInfoList.add(new EntityWriteInfo(evb, writeMode))
+        }
+        List<String> flushOrder = TransactionCache.makeFlushList(writeInfoList).collect { EntityWriteInfo ewi ->
+            ewi.writeMode.name().substring(0, 1) + ":" + ewi.evb.getPrimaryKeys().values().first() }
+
+        then:
+        // TestEntity creates move back past unrelated entities, Enumeration does not move past its EnumerationType,
+        //     writes after a delete of the same entity stay after it
+        flushOrder == ["C:A", "C:B", "C:C", "C:D", "C:T", "C:E", "U:T", "C:E2", "D:X", "C:F"]
+    }
+
+    def "test transaction cache flush keeps update before create for unique field"() {
+        when:
+        ec.artifactExecution.disableAuthz()
+        ec.entity.makeValue("moqui.security.UserAccount").setAll([userId:"TXCUNIQ1", username:"txc-unique-a"]).create()
+        boolean beganTransaction = false
+        try {
+            beganTransaction = ec.transaction.begin(null)
+            ec.transaction.initTransactionCache(false)
+            // move the unique username away, write another entity, then create a record with the old username
+            ec.entity.makeValue("moqui.security.UserAccount").setAll([userId:"TXCUNIQ1", username:"txc-unique-b"]).update()
+            ec.entity.makeValue("moqui.test.TestEntity").setAll([testId:"TXCUNIQ", testMedium:"Unique test"]).create()
+            ec.entity.makeValue("moqui.security.UserAccount").setAll([userId:"TXCUNIQ2", username:"txc-unique-a"]).create()
+        } finally {
+            ec.transaction.commit(beganTransaction)
+        }
+        String username1 = ec.entity.find("moqui.security.UserAccount").condition("userId", "TXCUNIQ1").one()?.username
+        String username2 = ec.entity.find("moqui.security.UserAccount").condition("userId", "TXCUNIQ2").one()?.username
+
+        then:
+        username1 == "txc-unique-b"
+        username2 == "txc-unique-a"
+
+        cleanup:
+        ec.entity.find("moqui.security.UserAccount").condition("userId", "like", "TXCUNIQ%").deleteAll()
+        ec.entity.find("moqui.test.TestEntity").condition("testId", "TXCUNIQ").deleteAll()
+        ec.artifactExecution.enableAuthz()
+    }
 }